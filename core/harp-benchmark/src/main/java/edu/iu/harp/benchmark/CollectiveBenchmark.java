@@ -0,0 +1,101 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package edu.iu.harp.benchmark;
+
+import edu.iu.harp.server.ServerEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*******************************************************
+ * Latency of the collective operations on a
+ * loopback cluster in one JVM, sampled per
+ * operation so JMH reports the percentiles. Use
+ * the JSON result format to track regressions:
+ *
+ * java -jar benchmarks.jar CollectiveBenchmark
+ *   -rf json -rff collective.json
+ *
+ * CollectiveHarness runs the same operations
+ * with one JVM per worker.
+ ******************************************************/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CollectiveBenchmark {
+
+  @Param({"BARRIER", "BCAST_CHAIN", "BCAST_MST",
+    "BCAST_TREE", "ALLREDUCE", "ALLGATHER",
+    "REGROUP", "ROTATE", "PUSH_PULL"})
+  public CollectiveOp op;
+
+  @Param({"4"})
+  public int numWorkers;
+
+  @Param({"1024", "65536", "1048576"})
+  public int partitionByteSize;
+
+  @Param({"1", "16"})
+  public int numPartitions;
+
+  private LocalCluster cluster;
+  private int opCount;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    cluster = new LocalCluster(numWorkers,
+      ServerEngine.BLOCKING, 1);
+    opCount = 0;
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    cluster.stop();
+  }
+
+  @Benchmark
+  public boolean collective() throws Exception {
+    final String contextName =
+      "benchmark-" + (opCount++);
+    List<Boolean> results = cluster.run(
+      (workers, dataMap) -> op.run(contextName,
+        numPartitions, partitionByteSize, dataMap,
+        workers));
+    boolean isSuccess = true;
+    for (boolean result : results) {
+      isSuccess &= result;
+    }
+    return isSuccess;
+  }
+}
@@ -0,0 +1,364 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package edu.iu.harp.benchmark;
+
+import edu.iu.harp.collective.Communication;
+import edu.iu.harp.collective.Driver;
+import edu.iu.harp.io.ConnPool;
+import edu.iu.harp.io.Constant;
+import edu.iu.harp.io.Data;
+import edu.iu.harp.io.DataMap;
+import edu.iu.harp.io.EventQueue;
+import edu.iu.harp.resource.LongArray;
+import edu.iu.harp.resource.Transferable;
+import edu.iu.harp.server.Server;
+import edu.iu.harp.worker.Workers;
+import org.apache.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.net.ServerSocket;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/*******************************************************
+ * Run the collective operations with one JVM per
+ * worker on loopback. The launcher starts a
+ * driver server and the worker processes, which
+ * bootstrap like the main methods of the
+ * collectives and report to the driver when
+ * done. Every configuration is run after a
+ * barrier, the latency of an iteration is the
+ * longest among the workers. Worker 0 writes one
+ * JSON object per configuration to the result
+ * file.
+ *
+ * java -cp benchmarks.jar
+ *   edu.iu.harp.benchmark.CollectiveHarness
+ *   launch [numWorkers] [ops] [partitionByteSizes]
+ *   [numPartitions] [numIterations] [resultFile]
+ *
+ * The lists are comma-separated, ops are the
+ * names in CollectiveOp or "all". The output of
+ * worker i goes to harp-harness-worker-i.log.
+ ******************************************************/
+public class CollectiveHarness {
+
+  private static final Logger LOG =
+    Logger.getLogger(CollectiveHarness.class);
+
+  private static final String CONTEXT =
+    "harness";
+  private static final String REPORT =
+    "report-to-driver";
+
+  public static void main(String[] args)
+    throws Exception {
+    if (args.length == 7 && args[0].equals("launch")) {
+      System.exit(launch(Integer.parseInt(args[1]),
+        args[2], args[3], args[4],
+        Integer.parseInt(args[5]), args[6]) ? 0
+          : 1);
+    } else if (args.length == 10
+      && args[0].equals("worker")) {
+      runWorker(args[1], Integer.parseInt(args[2]),
+        Integer.parseInt(args[3]),
+        Integer.parseInt(args[4]), args[5], args[6],
+        args[7], Integer.parseInt(args[8]),
+        args[9]);
+    } else {
+      System.err.println("Usage: CollectiveHarness"
+        + " launch [numWorkers] [ops]"
+        + " [partitionByteSizes] [numPartitions]"
+        + " [numIterations] [resultFile]");
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Start the driver and the worker processes and
+   * wait for them
+   *
+   * @return true if all the workers reported
+   * @throws Exception
+   */
+  private static boolean launch(int numWorkers,
+    String ops, String sizes, String partitions,
+    int numIterations, String resultFile)
+    throws Exception {
+    String driverHost = "localhost";
+    int driverPort;
+    try (ServerSocket socket = new ServerSocket(0)) {
+      driverPort = socket.getLocalPort();
+    }
+    DataMap dataMap = new DataMap();
+    Workers workers = createWorkers(numWorkers,
+      Constant.UNKNOWN_WORKER_ID);
+    Server server = new Server(driverHost,
+      driverPort, new EventQueue(), dataMap,
+      workers);
+    server.start();
+    new File(resultFile).delete();
+    String java = System.getProperty("java.home")
+      + File.separator + "bin" + File.separator
+      + "java";
+    Process[] processes = new Process[numWorkers];
+    for (int i = 0; i < numWorkers; i++) {
+      processes[i] = new ProcessBuilder(java, "-cp",
+        System.getProperty("java.class.path"),
+        CollectiveHarness.class.getName(), "worker",
+        driverHost, driverPort + "", i + "",
+        numWorkers + "", ops, sizes, partitions,
+        numIterations + "", resultFile)
+          .redirectErrorStream(true)
+          .redirectOutput(new File(
+            "harp-harness-worker-" + i + ".log"))
+          .start();
+    }
+    boolean isSuccess = true;
+    int numReports = 0;
+    while (numReports < numWorkers && isSuccess) {
+      Data data = dataMap.waitAndGetData(CONTEXT,
+        REPORT, 1L);
+      if (data != null) {
+        LOG.info("Worker " + data.getWorkerID()
+          + " reports.");
+        data.release();
+        numReports++;
+      } else {
+        // Stop waiting once a worker fails
+        for (Process process : processes) {
+          if (!process.isAlive()
+            && process.exitValue() != 0) {
+            isSuccess = false;
+          }
+        }
+      }
+    }
+    for (Process process : processes) {
+      if (!isSuccess) {
+        process.destroy();
+      }
+      isSuccess &= process.waitFor() == 0;
+    }
+    ConnPool.get().clean();
+    server.stop();
+    LOG.info("Results are written to " + resultFile);
+    return isSuccess;
+  }
+
+  private static Workers createWorkers(
+    int numWorkers, int selfID) throws Exception {
+    StringBuilder nodes = new StringBuilder("#0\n");
+    for (int i = 0; i < numWorkers; i++) {
+      nodes.append("localhost\n");
+    }
+    return new Workers(new BufferedReader(
+      new StringReader(nodes.toString())), selfID);
+  }
+
+  /**
+   * Run all the configurations on a worker
+   * process
+   */
+  private static void runWorker(String driverHost,
+    int driverPort, int workerID, int numWorkers,
+    String ops, String sizes, String partitions,
+    int numIterations, String resultFile)
+    throws Exception {
+    EventQueue eventQueue = new EventQueue();
+    DataMap dataMap = new DataMap();
+    Workers workers =
+      createWorkers(numWorkers, workerID);
+    Server server =
+      new Server(workers.getSelfInfo().getNode(),
+        workers.getSelfInfo().getPort(),
+        eventQueue, dataMap, workers);
+    server.start();
+    boolean isSuccess = Communication.barrier(
+      CONTEXT, "barrier", dataMap, workers);
+    LOG.info("Barrier: " + isSuccess);
+    int numWarmups = Math.max(numIterations / 10, 1);
+    int configID = 0;
+    PrintWriter writer = null;
+    if (workers.isMaster()) {
+      writer = new PrintWriter(
+        new FileWriter(resultFile, true));
+    }
+    try {
+      for (CollectiveOp op : parseOps(ops)) {
+        for (int numPartitions : parseInts(
+          partitions)) {
+          for (int partitionByteSize : parseInts(
+            sizes)) {
+            if (!isSuccess) {
+              break;
+            }
+            String configName = CONTEXT + "-"
+              + (configID++);
+            long[] latencies = new long[numIterations];
+            for (int i = -numWarmups; i < numIterations
+              && isSuccess; i++) {
+              isSuccess = Communication.barrier(
+                configName, "sync-" + i, dataMap,
+                workers);
+              long startTime = System.nanoTime();
+              isSuccess &= op.run(
+                configName + "-" + i, numPartitions,
+                partitionByteSize, dataMap, workers);
+              if (i >= 0) {
+                latencies[i] =
+                  System.nanoTime() - startTime;
+              }
+            }
+            if (isSuccess) {
+              isSuccess = report(configName, op,
+                numPartitions, partitionByteSize,
+                latencies, writer, dataMap, workers);
+            }
+            dataMap.cleanData(configName);
+          }
+        }
+      }
+    } finally {
+      if (writer != null) {
+        writer.close();
+      }
+    }
+    LOG.info("Benchmarks: " + isSuccess);
+    if (isSuccess) {
+      Driver.reportToDriver(CONTEXT, REPORT,
+        workers.getSelfID(), driverHost,
+        driverPort);
+    }
+    ConnPool.get().clean();
+    server.stop();
+    ForkJoinPool.commonPool().awaitQuiescence(
+      Constant.TERMINATION_TIMEOUT,
+      TimeUnit.SECONDS);
+    System.exit(isSuccess ? 0 : 1);
+  }
+
+  /**
+   * Gather the latencies to worker 0, which
+   * writes the statistics of the longest latency
+   * of each iteration
+   */
+  private static boolean report(String configName,
+    CollectiveOp op, int numPartitions,
+    int partitionByteSize, long[] latencies,
+    PrintWriter writer, DataMap dataMap,
+    Workers workers) {
+    List<Transferable> objs = new LinkedList<>();
+    objs.add(new LongArray(latencies.clone(), 0,
+      latencies.length));
+    if (!Communication.gather(configName, "latency",
+      objs, workers.getMasterID(), dataMap,
+      workers)) {
+      return false;
+    }
+    if (!workers.isMaster()) {
+      return true;
+    }
+    long[] maxLatencies = new long[latencies.length];
+    for (Transferable obj : objs) {
+      LongArray array = (LongArray) obj;
+      for (int i = 0; i < maxLatencies.length; i++) {
+        maxLatencies[i] = Math.max(maxLatencies[i],
+          array.get()[array.start() + i]);
+      }
+    }
+    Arrays.sort(maxLatencies);
+    double sum = 0.0;
+    for (long latency : maxLatencies) {
+      sum += latency;
+    }
+    long numBytes =
+      op.getNumBytes(numPartitions, partitionByteSize);
+    double p50 = percentile(maxLatencies, 0.5);
+    String result = String.format(Locale.ROOT,
+      "{\"op\":\"%s\",\"workers\":%d,"
+        + "\"partitions\":%d,\"partitionBytes\":%d,"
+        + "\"bytes\":%d,\"iterations\":%d,"
+        + "\"meanUs\":%.1f,\"p50Us\":%.1f,"
+        + "\"p90Us\":%.1f,\"p99Us\":%.1f,"
+        + "\"maxUs\":%.1f,\"bandwidthMBps\":%.2f}",
+      op, workers.getNumWorkers(), numPartitions,
+      partitionByteSize, numBytes,
+      maxLatencies.length,
+      sum / maxLatencies.length / 1000.0,
+      p50 / 1000.0,
+      percentile(maxLatencies, 0.9) / 1000.0,
+      percentile(maxLatencies, 0.99) / 1000.0,
+      maxLatencies[maxLatencies.length - 1]
+        / 1000.0,
+      numBytes / (p50 / 1.0e9) / 1.0e6);
+    writer.println(result);
+    writer.flush();
+    System.out.println(result);
+    return true;
+  }
+
+  /**
+   * The nearest-rank percentile of the sorted
+   * values
+   */
+  private static double percentile(long[] sorted,
+    double p) {
+    int rank = (int) Math.ceil(p * sorted.length);
+    return sorted[Math.max(rank, 1) - 1];
+  }
+
+  private static CollectiveOp[] parseOps(
+    String ops) {
+    if (ops.equalsIgnoreCase("all")) {
+      return CollectiveOp.values();
+    }
+    String[] names = ops.split(",");
+    CollectiveOp[] result =
+      new CollectiveOp[names.length];
+    for (int i = 0; i < names.length; i++) {
+      result[i] = CollectiveOp
+        .valueOf(names[i].trim().toUpperCase());
+    }
+    return result;
+  }
+
+  private static int[] parseInts(String values)
+    throws IOException {
+    String[] fields = values.split(",");
+    int[] result = new int[fields.length];
+    for (int i = 0; i < fields.length; i++) {
+      try {
+        result[i] = Integer.parseInt(fields[i].trim());
+      } catch (NumberFormatException e) {
+        throw new IOException(
+          "Not a number list: " + values, e);
+      }
+    }
+    return result;
+  }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package edu.iu.harp.benchmark;
+
+import edu.iu.harp.collective.AllgatherCollective;
+import edu.iu.harp.collective.AllreduceAlgorithm;
+import edu.iu.harp.collective.AllreduceCollective;
+import edu.iu.harp.collective.BcastAlgorithm;
+import edu.iu.harp.collective.BcastCollective;
+import edu.iu.harp.collective.Communication;
+import edu.iu.harp.collective.LocalGlobalSyncCollective;
+import edu.iu.harp.collective.RegroupCollective;
+import edu.iu.harp.example.DoubleArrPlus;
+import edu.iu.harp.io.DataMap;
+import edu.iu.harp.partition.Partition;
+import edu.iu.harp.partition.Partitioner;
+import edu.iu.harp.partition.Table;
+import edu.iu.harp.resource.DoubleArray;
+import edu.iu.harp.worker.Workers;
+
+/*******************************************************
+ * The collective operations measured by the
+ * benchmarks. Each run builds the tables of a
+ * worker, performs the operation and releases the
+ * tables, so every worker of the cluster must run
+ * the same operation with the same context name.
+ ******************************************************/
+public enum CollectiveOp {
+  BARRIER, BCAST_CHAIN, BCAST_MST, BCAST_TREE,
+  ALLREDUCE, ALLGATHER, REGROUP, ROTATE,
+  PUSH_PULL;
+
+  /**
+   * Run the operation on one worker
+   *
+   * @param contextName
+   *          the name of the context, the data
+   *          under it is cleaned at the end
+   * @param numPartitions
+   *          the number of partitions per worker
+   * @param partitionByteSize
+   *          the size of each partition in bytes
+   * @param dataMap
+   *          the DataMap of the worker
+   * @param workers
+   *          the Workers of the worker
+   * @return true if succeeded, false otherwise
+   */
+  public boolean run(String contextName,
+    int numPartitions, int partitionByteSize,
+    DataMap dataMap, Workers workers) {
+    String operationName = name().toLowerCase();
+    int selfID = workers.getSelfID();
+    boolean isSuccess;
+    Table<DoubleArray> table;
+    switch (this) {
+    case BARRIER:
+      isSuccess = Communication.barrier(
+        contextName, operationName, dataMap,
+        workers);
+      break;
+    case BCAST_CHAIN:
+    case BCAST_MST:
+    case BCAST_TREE:
+      table = workers.isMaster()
+        ? createTable(0, numPartitions,
+          partitionByteSize)
+        : createTable(0, 0, partitionByteSize);
+      isSuccess = BcastCollective.broadcast(
+        contextName, operationName, table,
+        workers.getMasterID(),
+        this == BCAST_CHAIN ? BcastAlgorithm.CHAIN
+          : this == BCAST_MST ? BcastAlgorithm.MST
+            : BcastAlgorithm.PIPELINED_TREE,
+        dataMap, workers);
+      table.release();
+      break;
+    case ALLREDUCE:
+      table = createTable(0, numPartitions,
+        partitionByteSize);
+      isSuccess = AllreduceCollective.allreduce(
+        contextName, operationName, table, dataMap,
+        workers, AllreduceAlgorithm.AUTO);
+      table.release();
+      break;
+    case ALLGATHER:
+      table = createTable(selfID * numPartitions,
+        numPartitions, partitionByteSize);
+      isSuccess = AllgatherCollective.allgather(
+        contextName, operationName, table, dataMap,
+        workers);
+      table.release();
+      break;
+    case REGROUP:
+      table = createTable(0, numPartitions,
+        partitionByteSize);
+      isSuccess = RegroupCollective.regroupCombine(
+        contextName, operationName, table,
+        new Partitioner(workers.getNumWorkers()),
+        dataMap, workers);
+      table.release();
+      break;
+    case ROTATE:
+      table = createTable(selfID * numPartitions,
+        numPartitions, partitionByteSize);
+      isSuccess = LocalGlobalSyncCollective.rotate(
+        contextName, operationName, table, null,
+        dataMap, workers);
+      table.release();
+      break;
+    case PUSH_PULL:
+      table = createTable(0, numPartitions,
+        partitionByteSize);
+      Table<DoubleArray> globalTable =
+        createTable(0, 0, partitionByteSize);
+      isSuccess = LocalGlobalSyncCollective.push(
+        contextName, operationName + "-push", table,
+        globalTable,
+        new Partitioner(workers.getNumWorkers()),
+        dataMap, workers)
+        && LocalGlobalSyncCollective.pull(
+          contextName, operationName + "-pull",
+          table, globalTable, true, dataMap,
+          workers);
+      table.release();
+      globalTable.release();
+      break;
+    default:
+      isSuccess = false;
+    }
+    dataMap.cleanData(contextName);
+    return isSuccess;
+  }
+
+  /**
+   * Get the bytes of the table of a worker, used
+   * as the message size of the operation
+   *
+   * @param numPartitions
+   *          the number of partitions per worker
+   * @param partitionByteSize
+   *          the size of each partition in bytes
+   * @return the number of bytes
+   */
+  public long getNumBytes(int numPartitions,
+    int partitionByteSize) {
+    if (this == BARRIER) {
+      return 0L;
+    }
+    return (long) numPartitions
+      * getNumDoubles(partitionByteSize) * 8L;
+  }
+
+  private static int
+    getNumDoubles(int partitionByteSize) {
+    return Math.max(partitionByteSize / 8, 2);
+  }
+
+  private static Table<DoubleArray> createTable(
+    int startID, int numPartitions,
+    int partitionByteSize) {
+    Table<DoubleArray> table =
+      new Table<>(0, new DoubleArrPlus());
+    int numDoubles =
+      getNumDoubles(partitionByteSize);
+    for (int i = 0; i < numPartitions; i++) {
+      DoubleArray array =
+        DoubleArray.create(numDoubles, false);
+      array.get()[0] = 1;
+      table.addPartition(
+        new Partition<>(startID + i, array));
+    }
+    return table;
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.benchmark;
+
+import edu.iu.harp.combiner.DoubleArrCombiner;
+import edu.iu.harp.combiner.IntArrCombiner;
+import edu.iu.harp.combiner.Operation;
+import edu.iu.harp.resource.DoubleArray;
+import edu.iu.harp.resource.IntArray;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*******************************************************
+ * Combine double and int arrays with the array
+ * combiners and with the scalar loops they used
+ * before, a switch on the operation and a
+ * conditional store for MAX and MIN. Sizes above
+ * 2^18 elements are combined in parallel by the
+ * combiners.
+ *
+ * java -jar benchmarks.jar CombinerBenchmark
+ ******************************************************/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CombinerBenchmark {
+
+  @Param({"SUM", "MAX", "MULTIPLY"})
+  public Operation operation;
+
+  /** The number of elements per array */
+  @Param({"1024", "65536", "1048576",
+    "16777216"})
+  public int size;
+
+  private DoubleArray doubles1;
+  private DoubleArray doubles2;
+  private IntArray ints1;
+  private IntArray ints2;
+  private DoubleArrCombiner doubleCombiner;
+  private IntArrCombiner intCombiner;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    Random random = new Random(size);
+    doubles1 = DoubleArray.create(size, false);
+    doubles2 = DoubleArray.create(size, false);
+    ints1 = IntArray.create(size, false);
+    ints2 = IntArray.create(size, false);
+    for (int i = 0; i < size; i++) {
+      // Values near 1 keep MULTIPLY finite
+      doubles1.get()[i] = 1.0 + random.nextDouble() * 1e-9;
+      doubles2.get()[i] = 1.0 + random.nextDouble() * 1e-9;
+      ints1.get()[i] = random.nextInt();
+      ints2.get()[i] = random.nextInt();
+    }
+    doubleCombiner = new DoubleArrCombiner(operation);
+    intCombiner = new IntArrCombiner(operation);
+  }
+
+  @Benchmark
+  public Object doubleCombiner() {
+    return doubleCombiner.combine(doubles1, doubles2);
+  }
+
+  @Benchmark
+  public double[] doubleScalar() {
+    double[] arr1 = doubles1.get();
+    double[] arr2 = doubles2.get();
+    switch (operation) {
+      case SUM:
+        for (int i = 0; i < size; i++) {
+          arr1[i] += arr2[i];
+        }
+        break;
+      case MAX:
+        for (int i = 0; i < size; i++) {
+          if (arr1[i] < arr2[i]) {
+            arr1[i] = arr2[i];
+          }
+        }
+        break;
+      case MULTIPLY:
+        for (int i = 0; i < size; i++) {
+          arr1[i] *= arr2[i];
+        }
+        break;
+      default:
+        break;
+    }
+    return arr1;
+  }
+
+  @Benchmark
+  public Object intCombiner() {
+    return intCombiner.combine(ints1, ints2);
+  }
+
+  @Benchmark
+  public int[] intScalar() {
+    int[] arr1 = ints1.get();
+    int[] arr2 = ints2.get();
+    switch (operation) {
+      case SUM:
+        for (int i = 0; i < size; i++) {
+          arr1[i] += arr2[i];
+        }
+        break;
+      case MAX:
+        for (int i = 0; i < size; i++) {
+          if (arr1[i] < arr2[i]) {
+            arr1[i] = arr2[i];
+          }
+        }
+        break;
+      case MULTIPLY:
+        for (int i = 0; i < size; i++) {
+          arr1[i] *= arr2[i];
+        }
+        break;
+      default:
+        break;
+    }
+    return arr1;
+  }
+}
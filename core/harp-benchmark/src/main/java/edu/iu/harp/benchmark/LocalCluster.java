@@ -0,0 +1,177 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package edu.iu.harp.benchmark;
+
+import edu.iu.harp.io.ConnPool;
+import edu.iu.harp.io.Constant;
+import edu.iu.harp.io.DataMap;
+import edu.iu.harp.io.EventQueue;
+import edu.iu.harp.server.Server;
+import edu.iu.harp.server.ServerEngine;
+import edu.iu.harp.worker.Workers;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import org.apache.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/*******************************************************
+ * A loopback cluster running several workers in
+ * one JVM. Each worker has its own Workers view,
+ * DataMap, EventQueue and Server listening on
+ * localhost, so collective operations go through
+ * the real send and receive paths.
+ ******************************************************/
+public class LocalCluster {
+
+  private static final Logger LOG =
+    Logger.getLogger(LocalCluster.class);
+
+  /*******************************************************
+   * The task run by every worker of the cluster
+   ******************************************************/
+  public interface WorkerTask<T> {
+    /**
+     * Run the task on one worker
+     *
+     * @param workers
+     *          the Workers view of this worker
+     * @param dataMap
+     *          the DataMap of this worker
+     * @return the result
+     * @throws Exception
+     */
+    T run(Workers workers, DataMap dataMap)
+      throws Exception;
+  }
+
+  private final int numWorkers;
+  private final Workers[] workers;
+  private final DataMap[] dataMaps;
+  private final Server[] servers;
+  private final ExecutorService executor;
+
+  /**
+   * Start the workers
+   *
+   * @param numWorkers
+   *          the number of workers
+   * @param engine
+   *          the engine used by the servers
+   * @param numIOThreads
+   *          the number of I/O threads per server
+   * @throws Exception
+   */
+  public LocalCluster(int numWorkers,
+    ServerEngine engine, int numIOThreads)
+    throws Exception {
+    this.numWorkers = numWorkers;
+    workers = new Workers[numWorkers];
+    dataMaps = new DataMap[numWorkers];
+    servers = new Server[numWorkers];
+    StringBuilder nodes = new StringBuilder("#0\n");
+    for (int i = 0; i < numWorkers; i++) {
+      nodes.append("localhost\n");
+    }
+    for (int i = 0; i < numWorkers; i++) {
+      workers[i] = new Workers(new BufferedReader(
+        new StringReader(nodes.toString())), i);
+      dataMaps[i] = new DataMap();
+      servers[i] = new Server(
+        workers[i].getSelfInfo().getNode(),
+        workers[i].getSelfInfo().getPort(),
+        new EventQueue(), dataMaps[i], workers[i],
+        engine, numIOThreads);
+      servers[i].start();
+    }
+    executor =
+      Executors.newFixedThreadPool(numWorkers);
+  }
+
+  /**
+   * Get the number of workers
+   *
+   * @return the number of workers
+   */
+  public int getNumWorkers() {
+    return numWorkers;
+  }
+
+  /**
+   * Run the task on all the workers at the same
+   * time and wait for the results
+   *
+   * @param task
+   *          the task
+   * @return the results ordered by worker ID
+   * @throws Exception
+   */
+  public <T> List<T> run(final WorkerTask<T> task)
+    throws Exception {
+    List<Future<T>> futures =
+      new ObjectArrayList<>(numWorkers);
+    for (int i = 0; i < numWorkers; i++) {
+      final int workerID = i;
+      futures.add(executor.submit(
+        () -> task.run(workers[workerID],
+          dataMaps[workerID])));
+    }
+    List<T> results =
+      new ObjectArrayList<>(numWorkers);
+    for (Future<T> future : futures) {
+      results.add(future.get());
+    }
+    return results;
+  }
+
+  /**
+   * Stop the servers and the task threads
+   */
+  public void stop() {
+    // Cached connections keep the acceptors of
+    // the blocking engine alive
+    ConnPool.get().clean();
+    for (Server server : servers) {
+      server.stop();
+    }
+    executor.shutdown();
+    try {
+      executor.awaitTermination(
+        Constant.TERMINATION_TIMEOUT,
+        TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      LOG.error("Fail to stop the cluster.", e);
+    }
+  }
+
+  /**
+   * Get the number of live threads in this JVM
+   *
+   * @return the number of live threads
+   */
+  public static int getLiveThreadCount() {
+    return ManagementFactory.getThreadMXBean()
+      .getThreadCount();
+  }
+}
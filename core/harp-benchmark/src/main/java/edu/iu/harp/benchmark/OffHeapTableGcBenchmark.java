@@ -0,0 +1,138 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package edu.iu.harp.benchmark;
+
+import edu.iu.harp.combiner.DirectDoubleArrCombiner;
+import edu.iu.harp.combiner.DoubleArrCombiner;
+import edu.iu.harp.combiner.Operation;
+import edu.iu.harp.partition.Partition;
+import edu.iu.harp.partition.Table;
+import edu.iu.harp.resource.DirectDoubleArray;
+import edu.iu.harp.resource.DoubleArray;
+import edu.iu.harp.resource.Simple;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/*******************************************************
+ * Keep a large table of double arrays alive, on
+ * the heap or in direct memory, and measure the
+ * time of a full garbage collection and of
+ * allocating short-lived garbage next to it.
+ * Full collections copy or mark the heap arrays,
+ * while the direct arrays are only a small
+ * buffer object each.
+ *
+ * java -jar benchmarks.jar OffHeapTableGcBenchmark
+ ******************************************************/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms12g",
+  "-Xmx12g", "-XX:MaxDirectMemorySize=12g",
+  "-XX:+UseParallelGC"})
+public class OffHeapTableGcBenchmark {
+
+  public enum Storage {
+    HEAP, DIRECT
+  }
+
+  @Param({"HEAP", "DIRECT"})
+  public Storage storage;
+
+  /** The bytes of the table */
+  @Param({"1073741824", "4294967296"})
+  public long tableBytes;
+
+  /** The number of doubles per partition */
+  @Param({"1048576"})
+  public int partitionSize;
+
+  private Table<? extends Simple> table;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    int numPartitions =
+      (int) (tableBytes / 8 / partitionSize);
+    if (storage == Storage.HEAP) {
+      Table<DoubleArray> heapTable = new Table<>(0,
+        new DoubleArrCombiner(Operation.SUM));
+      for (int i = 0; i < numPartitions; i++) {
+        DoubleArray array =
+          DoubleArray.create(partitionSize, false);
+        array.get()[0] = i;
+        heapTable.addPartition(
+          new Partition<>(i, array));
+      }
+      table = heapTable;
+    } else {
+      Table<DirectDoubleArray> directTable =
+        new Table<>(0, new DirectDoubleArrCombiner(
+          Operation.SUM));
+      for (int i = 0; i < numPartitions; i++) {
+        DirectDoubleArray array =
+          DirectDoubleArray.create(partitionSize,
+            false);
+        array.set(0, i);
+        directTable.addPartition(
+          new Partition<>(i, array));
+      }
+      table = directTable;
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    table.release();
+    table = null;
+  }
+
+  @Benchmark
+  public int fullGc() {
+    System.gc();
+    return table.getNumPartitions();
+  }
+
+  @Benchmark
+  public long allocate() {
+    // Enough garbage for several young
+    // collections, which scan the old to young
+    // references of the table
+    long sum = 0L;
+    for (int i = 0; i < 4096; i++) {
+      double[] garbage = new double[65536];
+      garbage[i] = i;
+      sum += garbage.length;
+    }
+    return sum + table.getNumPartitions();
+  }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package edu.iu.harp.benchmark;
+
+import edu.iu.harp.io.DataUtil;
+import edu.iu.harp.io.Deserializer;
+import edu.iu.harp.io.Serializer;
+import edu.iu.harp.resource.DoubleArray;
+import edu.iu.harp.resource.FloatArray;
+import edu.iu.harp.resource.IntArray;
+import edu.iu.harp.resource.LongArray;
+import edu.iu.harp.resource.ShortArray;
+import edu.iu.harp.resource.Transferable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/*******************************************************
+ * Encode and decode primitive arrays with the
+ * Serializer and the Deserializer, for every
+ * primitive array type and for sizes from 1 KB
+ * to 1 GB of array data.
+ *
+ * java -jar benchmarks.jar PrimitiveArraySerDeBenchmark
+ ******************************************************/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx6g"})
+public class PrimitiveArraySerDeBenchmark {
+
+  public enum ArrayType {
+    SHORT, INT, FLOAT, LONG, DOUBLE
+  }
+
+  @Param({"SHORT", "INT", "FLOAT", "LONG",
+    "DOUBLE"})
+  public ArrayType type;
+
+  @Param({"1024", "1048576", "67108864",
+    "1073741824"})
+  public int byteSize;
+
+  private Transferable array;
+  private byte[] bytes;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    switch (type) {
+      case SHORT:
+        ShortArray shorts =
+          ShortArray.create(byteSize / 2, false);
+        for (int i = 0; i < shorts.size(); i++) {
+          shorts.get()[i] = (short) i;
+        }
+        array = shorts;
+        break;
+      case INT:
+        IntArray ints =
+          IntArray.create(byteSize / 4, false);
+        for (int i = 0; i < ints.size(); i++) {
+          ints.get()[i] = i;
+        }
+        array = ints;
+        break;
+      case FLOAT:
+        FloatArray floats =
+          FloatArray.create(byteSize / 4, false);
+        for (int i = 0; i < floats.size(); i++) {
+          floats.get()[i] = i;
+        }
+        array = floats;
+        break;
+      case LONG:
+        LongArray longs =
+          LongArray.create(byteSize / 8, false);
+        for (int i = 0; i < longs.size(); i++) {
+          longs.get()[i] = i;
+        }
+        array = longs;
+        break;
+      default:
+        DoubleArray doubles =
+          DoubleArray.create(byteSize / 8, false);
+        for (int i = 0; i < doubles.size(); i++) {
+          doubles.get()[i] = i;
+        }
+        array = doubles;
+    }
+    bytes = new byte[array.getNumEnocdeBytes()];
+    encode();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    array.release();
+    array = null;
+    bytes = null;
+  }
+
+  @Benchmark
+  public int encode() throws Exception {
+    Serializer serializer =
+      new Serializer(bytes, 0, bytes.length);
+    array.encode(serializer);
+    return serializer.getPos();
+  }
+
+  @Benchmark
+  public Transferable decode() {
+    // Skip the type byte as
+    // DataUtil.decodeSimpleList does
+    Deserializer din =
+      new Deserializer(bytes, 1, bytes.length);
+    Transferable result;
+    switch (type) {
+      case SHORT:
+        result = DataUtil.deserializeShortArray(din);
+        break;
+      case INT:
+        result = DataUtil.deserializeIntArray(din);
+        break;
+      case FLOAT:
+        result = DataUtil.deserializeFloatArray(din);
+        break;
+      case LONG:
+        result = DataUtil.deserializeLongArray(din);
+        break;
+      default:
+        result =
+          DataUtil.deserializeDoubleArray(din);
+    }
+    // Return the array to the pool so that
+    // the next invocation reuses it
+    result.release();
+    return result;
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package edu.iu.harp.benchmark;
+
+import edu.iu.harp.collective.RegroupCollective;
+import edu.iu.harp.example.DoubleArrPlus;
+import edu.iu.harp.partition.Partition;
+import edu.iu.harp.partition.Partitioner;
+import edu.iu.harp.partition.Table;
+import edu.iu.harp.resource.DoubleArray;
+import edu.iu.harp.server.ServerEngine;
+import org.apache.log4j.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*******************************************************
+ * Compare the blocking and the NIO server
+ * engines: regroup latency on a loopback
+ * cluster, and the number of threads the
+ * servers hold once all the peers are
+ * connected. The thread counts are printed at
+ * the end of each trial.
+ *
+ * java -jar benchmarks.jar ServerEngineBenchmark
+ ******************************************************/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ServerEngineBenchmark {
+
+  private static final Logger LOG =
+    Logger.getLogger(ServerEngineBenchmark.class);
+
+  @Param({"BLOCKING", "NIO"})
+  public ServerEngine engine;
+
+  @Param({"4", "16"})
+  public int numWorkers;
+
+  @Param({"4"})
+  public int numIOThreads;
+
+  @Param({"65536"})
+  public int partitionByteSize;
+
+  @Param({"64"})
+  public int numPartitions;
+
+  private LocalCluster cluster;
+  private int baseThreads;
+  private int opCount;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    baseThreads = LocalCluster.getLiveThreadCount();
+    cluster = new LocalCluster(numWorkers, engine,
+      numIOThreads);
+    opCount = 0;
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    ThreadMXBean threadBean =
+      ManagementFactory.getThreadMXBean();
+    String report = "Engine " + engine
+      + ", workers " + numWorkers
+      + ", live threads " + (threadBean
+        .getThreadCount() - baseThreads)
+      + ", peak threads " + (threadBean
+        .getPeakThreadCount() - baseThreads);
+    System.out.println(report);
+    LOG.info(report);
+    cluster.stop();
+  }
+
+  @Benchmark
+  public boolean regroup() throws Exception {
+    final String opName = "regroup-" + (opCount++);
+    final int doublesSize = partitionByteSize / 8;
+    List<Boolean> results = cluster.run(
+      (workers, dataMap) -> {
+        Table<DoubleArray> table =
+          new Table<>(0, new DoubleArrPlus());
+        for (int i = 0; i < numPartitions; i++) {
+          DoubleArray array =
+            DoubleArray.create(doublesSize, false);
+          array.get()[0] = workers.getSelfID();
+          table.addPartition(
+            new Partition<>(i, array));
+        }
+        boolean isSuccess =
+          RegroupCollective.regroupCombine(
+            "benchmark", opName, table,
+            new Partitioner(workers.getNumWorkers()),
+            dataMap, workers);
+        dataMap.cleanOperationData("benchmark",
+          opName);
+        table.release();
+        return isSuccess;
+      });
+    boolean isSuccess = true;
+    for (boolean result : results) {
+      isSuccess &= result;
+    }
+    return isSuccess;
+  }
+}
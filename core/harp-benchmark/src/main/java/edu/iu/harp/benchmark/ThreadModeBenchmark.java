@@ -0,0 +1,150 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.benchmark;
+
+import edu.iu.harp.schdynamic.ComputeUtil;
+import edu.iu.harp.schdynamic.DynamicScheduler;
+import edu.iu.harp.schdynamic.Task;
+import edu.iu.harp.schdynamic.ThreadMode;
+import org.apache.log4j.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*******************************************************
+ * Compare the platform and the virtual threads of
+ * the DynamicScheduler under many concurrent
+ * blocking loads, e.g. the reads of
+ * PointLoadTask. Each load blocks for a fixed
+ * time, and the scheduler has one task per load
+ * so all the loads block at once. One operation
+ * runs all the loads; multiply the score by
+ * numLoads for the loads per second. The platform
+ * thread counts (the virtual threads are not
+ * counted) are printed at the end of each trial.
+ * VIRTUAL needs JDK 21 or later.
+ *
+ * java -jar benchmarks.jar ThreadModeBenchmark
+ ******************************************************/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ThreadModeBenchmark {
+
+  private static final Logger LOG =
+    Logger.getLogger(ThreadModeBenchmark.class);
+
+  @Param({"PLATFORM", "VIRTUAL"})
+  public ThreadMode threadMode;
+
+  @Param({"10000"})
+  public int numLoads;
+
+  /** The time a load blocks */
+  @Param({"1000"})
+  public int loadMicros;
+
+  private DynamicScheduler<Integer, Integer, LoadTask> scheduler;
+  private Integer[] inputs;
+  private ThreadMXBean threadBean;
+  private int baseThreads;
+
+  /*******************************************************
+   * A load blocking without using the CPU
+   ******************************************************/
+  private static class LoadTask
+    implements Task<Integer, Integer> {
+
+    private final int loadMicros;
+
+    LoadTask(int loadMicros) {
+      this.loadMicros = loadMicros;
+    }
+
+    @Override
+    public Integer run(Integer input)
+      throws Exception {
+      TimeUnit.MICROSECONDS.sleep(loadMicros);
+      return input;
+    }
+  }
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    if (!ComputeUtil.setThreadMode(threadMode)) {
+      throw new IllegalStateException(
+        "Thread mode " + threadMode
+          + " is not supported by this JVM");
+    }
+    threadBean = ManagementFactory.getThreadMXBean();
+    baseThreads = threadBean.getThreadCount();
+    threadBean.resetPeakThreadCount();
+    List<LoadTask> tasks = new ArrayList<>();
+    for (int i = 0; i < numLoads; i++) {
+      tasks.add(new LoadTask(loadMicros));
+    }
+    scheduler = new DynamicScheduler<>(tasks);
+    inputs = new Integer[numLoads];
+    for (int i = 0; i < numLoads; i++) {
+      inputs[i] = i;
+    }
+    scheduler.start();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    String report = "Thread mode " + threadMode
+      + ", loads " + numLoads + ", live threads "
+      + (threadBean.getThreadCount() - baseThreads)
+      + ", peak threads "
+      + (threadBean.getPeakThreadCount()
+        - baseThreads);
+    System.out.println(report);
+    LOG.info(report);
+    scheduler.stop();
+    ComputeUtil.setThreadMode(ThreadMode.PLATFORM);
+  }
+
+  @Benchmark
+  public long load() {
+    scheduler.submitAll(inputs);
+    long sum = 0L;
+    for (int i = 0; i < numLoads; i++) {
+      sum += scheduler.waitForOutput();
+    }
+    return sum;
+  }
+}
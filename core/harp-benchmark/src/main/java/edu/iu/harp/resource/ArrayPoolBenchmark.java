@@ -0,0 +1,98 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package edu.iu.harp.resource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/*******************************************************
+ * Get and release double arrays from all
+ * hardware threads at once, with the synchronized
+ * pool and with the concurrent pool. This class
+ * is in the package of the pools to reach their
+ * package-private methods.
+ *
+ * java -jar benchmarks.jar ArrayPoolBenchmark
+ ******************************************************/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@Threads(Threads.MAX)
+public class ArrayPoolBenchmark {
+
+  public enum PoolType {
+    SYNCHRONIZED, CONCURRENT
+  }
+
+  @Param({"SYNCHRONIZED", "CONCURRENT"})
+  public PoolType poolType;
+
+  /** The number of doubles per array */
+  @Param({"1024", "65536"})
+  public int size;
+
+  /** Get power-of-2 sized arrays or not */
+  @Param({"false", "true"})
+  public boolean approximate;
+
+  private ArrayPool<double[]> pool;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    if (poolType == PoolType.SYNCHRONIZED) {
+      pool = new SynchronizedArrayPool<double[]>() {
+        @Override
+        protected double[] createNewArray(int size) {
+          return new double[size];
+        }
+
+        @Override
+        protected int getLength(double[] array) {
+          return array.length;
+        }
+      };
+    } else {
+      pool = new DoublesPool();
+    }
+  }
+
+  @Benchmark
+  public int getAndRelease() {
+    double[] array =
+      pool.getArray(size, approximate);
+    array[0] = size;
+    pool.releaseArray(array);
+    return array.length;
+  }
+}
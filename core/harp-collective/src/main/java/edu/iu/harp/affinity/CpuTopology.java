@@ -0,0 +1,309 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.affinity;
+
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/*******************************************************
+ * The CPUs of the NUMA nodes (sockets). The
+ * topology is read from the node directories in
+ * /sys, or is one node of all the processors if
+ * /sys is not available. The CPU lists are in the
+ * format of taskset, e.g. "0-7,16-23".
+ ******************************************************/
+public class CpuTopology {
+
+  private static final Logger LOG =
+    Logger.getLogger(CpuTopology.class);
+
+  /** The directory of the NUMA nodes on Linux */
+  public static final String SYS_NODE_DIR =
+    "/sys/devices/system/node";
+
+  /** The CPUs of each node, sorted */
+  private final int[][] nodeCpus;
+
+  /**
+   * Create the topology from the CPUs of the
+   * nodes
+   *
+   * @param nodeCpus
+   *          the CPUs of each node
+   */
+  public CpuTopology(int[][] nodeCpus) {
+    if (nodeCpus.length == 0) {
+      throw new IllegalArgumentException(
+        "No NUMA node.");
+    }
+    this.nodeCpus = new int[nodeCpus.length][];
+    for (int i = 0; i < nodeCpus.length; i++) {
+      this.nodeCpus[i] = nodeCpus[i].clone();
+      Arrays.sort(this.nodeCpus[i]);
+    }
+  }
+
+  /**
+   * Discover the topology of this machine
+   *
+   * @return the topology
+   */
+  public static CpuTopology discover() {
+    return discover(new File(SYS_NODE_DIR));
+  }
+
+  /**
+   * Discover the topology from the node
+   * directories, e.g. node0/cpulist
+   *
+   * @param nodeDir
+   *          the directory of the nodes
+   * @return the topology
+   */
+  static CpuTopology discover(File nodeDir) {
+    TreeMap<Integer, int[]> nodes = new TreeMap<>();
+    File[] files = nodeDir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        String name = file.getName();
+        if (!name.matches("node\\d+")) {
+          continue;
+        }
+        try {
+          int[] cpus = parseCpuList(new String(
+            Files.readAllBytes(
+              new File(file, "cpulist").toPath()),
+            StandardCharsets.US_ASCII));
+          // Nodes of memory only have no CPU
+          if (cpus.length > 0) {
+            nodes.put(
+              Integer.parseInt(name.substring(4)),
+              cpus);
+          }
+        } catch (IOException
+          | IllegalArgumentException e) {
+          LOG.warn("Fail to read " + file, e);
+        }
+      }
+    }
+    if (nodes.isEmpty()) {
+      int numCpus =
+        Runtime.getRuntime().availableProcessors();
+      int[] cpus = new int[numCpus];
+      for (int i = 0; i < numCpus; i++) {
+        cpus[i] = i;
+      }
+      return new CpuTopology(new int[][] { cpus });
+    }
+    return new CpuTopology(
+      nodes.values().toArray(new int[0][]));
+  }
+
+  /**
+   * Parse a CPU list, e.g. "0-3,8,10-11"
+   *
+   * @param cpuList
+   *          the CPU list
+   * @return the CPUs, sorted and distinct
+   */
+  public static int[] parseCpuList(String cpuList) {
+    TreeSet<Integer> cpus = new TreeSet<>();
+    for (String range : cpuList.trim().split(",")) {
+      range = range.trim();
+      if (range.isEmpty()) {
+        continue;
+      }
+      int dash = range.indexOf('-');
+      try {
+        if (dash < 0) {
+          cpus.add(Integer.parseInt(range));
+        } else {
+          int start = Integer
+            .parseInt(range.substring(0, dash).trim());
+          int end = Integer
+            .parseInt(range.substring(dash + 1).trim());
+          if (start < 0 || end < start) {
+            throw new IllegalArgumentException(
+              "Invalid CPU range " + range);
+          }
+          for (int i = start; i <= end; i++) {
+            cpus.add(i);
+          }
+        }
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException(
+          "Invalid CPU list " + cpuList, e);
+      }
+    }
+    int[] array = new int[cpus.size()];
+    int i = 0;
+    for (int cpu : cpus) {
+      array[i++] = cpu;
+    }
+    return array;
+  }
+
+  /**
+   * Format the CPUs as a CPU list
+   *
+   * @param cpus
+   *          the CPUs, sorted
+   * @return the CPU list
+   */
+  public static String toCpuList(int[] cpus) {
+    StringBuilder builder = new StringBuilder();
+    int i = 0;
+    while (i < cpus.length) {
+      int j = i;
+      while (j + 1 < cpus.length
+        && cpus[j + 1] == cpus[j] + 1) {
+        j++;
+      }
+      if (builder.length() > 0) {
+        builder.append(',');
+      }
+      builder.append(cpus[i]);
+      if (j > i) {
+        builder.append('-').append(cpus[j]);
+      }
+      i = j + 1;
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Keep only the CPUs given. The nodes left
+   * without CPUs are removed.
+   *
+   * @param cpus
+   *          the CPUs to keep
+   * @return the topology of the CPUs kept
+   */
+  public CpuTopology restrict(int[] cpus) {
+    int[] sorted = cpus.clone();
+    Arrays.sort(sorted);
+    List<int[]> nodes = new ArrayList<>();
+    for (int[] node : nodeCpus) {
+      int[] kept = Arrays.stream(node)
+        .filter(cpu -> Arrays.binarySearch(sorted,
+          cpu) >= 0)
+        .toArray();
+      if (kept.length > 0) {
+        nodes.add(kept);
+      }
+    }
+    if (nodes.isEmpty()) {
+      throw new IllegalArgumentException(
+        "No CPU in " + toCpuList(sorted));
+    }
+    return new CpuTopology(
+      nodes.toArray(new int[0][]));
+  }
+
+  public int getNumNodes() {
+    return nodeCpus.length;
+  }
+
+  public int getNumCpus() {
+    int numCpus = 0;
+    for (int[] node : nodeCpus) {
+      numCpus += node.length;
+    }
+    return numCpus;
+  }
+
+  /**
+   * Get the CPUs of a node
+   *
+   * @param node
+   *          the index of the node
+   * @return the CPUs, sorted
+   */
+  public int[] getCpus(int node) {
+    return nodeCpus[node].clone();
+  }
+
+  /**
+   * Get the node of a CPU
+   *
+   * @param cpu
+   *          the CPU
+   * @return the index of the node, -1 if not
+   *         found
+   */
+  public int getNode(int cpu) {
+    for (int i = 0; i < nodeCpus.length; i++) {
+      if (Arrays.binarySearch(nodeCpus[i],
+        cpu) >= 0) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Place the tasks on the nodes in contiguous
+   * blocks by task ID, balanced by the number of
+   * CPUs of the nodes
+   *
+   * @param numTasks
+   *          the number of tasks
+   * @return the node of each task
+   */
+  public int[] placeTasks(int numTasks) {
+    int[] taskNodes = new int[numTasks];
+    int numCpus = getNumCpus();
+    int node = 0;
+    // The CPUs of the nodes before the current
+    // one, plus its own
+    long cpuEnd = nodeCpus[0].length;
+    for (int i = 0; i < numTasks; i++) {
+      // Place the task by the middle of its share,
+      // on the lower node if on the boundary
+      long position = (2L * i + 1L) * numCpus;
+      while (node < nodeCpus.length - 1
+        && position > 2L * numTasks * cpuEnd) {
+        node++;
+        cpuEnd += nodeCpus[node].length;
+      }
+      taskNodes[i] = node;
+    }
+    return taskNodes;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < nodeCpus.length; i++) {
+      if (i > 0) {
+        builder.append("; ");
+      }
+      builder.append("node ").append(i)
+        .append(": ").append(toCpuList(nodeCpus[i]));
+    }
+    return builder.toString();
+  }
+}
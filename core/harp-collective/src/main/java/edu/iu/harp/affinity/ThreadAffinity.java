@@ -0,0 +1,194 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.affinity;
+
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/*******************************************************
+ * Bind the threads to the CPUs without native
+ * code. A thread finds its Linux thread ID from
+ * /proc/thread-self and runs "taskset -p -c" on
+ * itself. The binding is disabled by default and
+ * fails with a warning where taskset is missing.
+ * <p>
+ * With the thread bound, the memory it touches
+ * first is allocated on its NUMA node. This holds
+ * for the direct buffers, and for the Java heap
+ * when the JVM runs with -XX:+UseNUMA.
+ ******************************************************/
+public class ThreadAffinity {
+
+  private static final Logger LOG =
+    Logger.getLogger(ThreadAffinity.class);
+
+  private static final String THREAD_SELF =
+    "/proc/thread-self";
+  private static final String TASKSET =
+    "taskset";
+
+  private static ThreadAffinity instance = null;
+
+  private volatile boolean isEnabled;
+  private volatile CpuTopology topology;
+  /** Warn only once if taskset fails */
+  private volatile boolean isWarned;
+
+  private ThreadAffinity() {
+    isEnabled = false;
+    topology = null;
+    isWarned = false;
+  }
+
+  public static ThreadAffinity get() {
+    if (instance != null) {
+      return instance;
+    } else {
+      return create();
+    }
+  }
+
+  private static synchronized ThreadAffinity
+    create() {
+    if (instance == null) {
+      instance = new ThreadAffinity();
+    }
+    return instance;
+  }
+
+  /**
+   * Enable or disable binding the threads of the
+   * schedulers
+   *
+   * @param enabled
+   *          true to bind
+   */
+  public void setEnabled(boolean enabled) {
+    isEnabled = enabled;
+  }
+
+  public boolean isEnabled() {
+    return isEnabled;
+  }
+
+  /**
+   * Restrict the topology to the CPUs given
+   *
+   * @param cpuList
+   *          the CPU list, null or empty for all
+   *          the CPUs
+   */
+  public void setCpus(String cpuList) {
+    CpuTopology discovered = CpuTopology.discover();
+    if (cpuList == null || cpuList.trim().isEmpty()) {
+      topology = discovered;
+    } else {
+      topology = discovered
+        .restrict(CpuTopology.parseCpuList(cpuList));
+    }
+    LOG.info("CPU topology: " + topology);
+  }
+
+  /**
+   * Get the topology of the CPUs used, discovered
+   * at the first call if not set
+   *
+   * @return the topology
+   */
+  public CpuTopology getTopology() {
+    CpuTopology current = topology;
+    if (current == null) {
+      synchronized (this) {
+        if (topology == null) {
+          topology = CpuTopology.discover();
+        }
+        current = topology;
+      }
+    }
+    return current;
+  }
+
+  /**
+   * Get the Linux thread ID of the current thread
+   *
+   * @return the thread ID, -1 if not found
+   */
+  public static int getThreadID() {
+    try {
+      // The link is "<pid>/task/<tid>"
+      Path link = Files
+        .readSymbolicLink(Paths.get(THREAD_SELF));
+      return Integer.parseInt(
+        link.getFileName().toString());
+    } catch (IOException | UnsupportedOperationException
+      | NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * Bind the current thread to the CPUs
+   *
+   * @param cpus
+   *          the CPUs
+   * @return true if bound, false otherwise
+   */
+  public boolean bind(int[] cpus) {
+    int threadID = getThreadID();
+    if (threadID < 0) {
+      warn("Cannot find the thread ID in "
+        + THREAD_SELF, null);
+      return false;
+    }
+    String cpuList = CpuTopology.toCpuList(cpus);
+    ProcessBuilder builder = new ProcessBuilder(
+      TASKSET, "-p", "-c", cpuList,
+      Integer.toString(threadID));
+    builder.redirectErrorStream(true);
+    builder.redirectOutput(new File("/dev/null"));
+    try {
+      Process process = builder.start();
+      int exitValue = process.waitFor();
+      if (exitValue != 0) {
+        warn("Fail to bind thread " + threadID
+          + " to CPUs " + cpuList + ", exit value "
+          + exitValue, null);
+        return false;
+      }
+      return true;
+    } catch (IOException e) {
+      warn("Fail to run " + TASKSET, e);
+      return false;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  private void warn(String message, Exception e) {
+    if (!isWarned) {
+      isWarned = true;
+      LOG.warn(message + ", threads are not bound",
+        e);
+    }
+  }
+}
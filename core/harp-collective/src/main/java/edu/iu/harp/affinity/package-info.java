@@ -0,0 +1,4 @@
+/**
+ * CPU topology and thread affinity
+ */
+package edu.iu.harp.affinity;
@@ -16,9 +16,12 @@
 
 package edu.iu.harp.client;
 
+import edu.iu.harp.io.ConnPool;
 import edu.iu.harp.io.Connection;
+import edu.iu.harp.io.Constant;
 import edu.iu.harp.io.Data;
 import edu.iu.harp.io.DataStatus;
+import edu.iu.harp.io.DirectTransfer;
 import edu.iu.harp.io.IOUtil;
 import edu.iu.harp.io.Serializer;
 import edu.iu.harp.resource.ByteArray;
@@ -27,6 +30,13 @@ import org.apache.log4j.Logger;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * The actual sender for sending the data.
@@ -39,6 +49,15 @@ public class DataSender extends Sender {
   private static final Logger LOG =
           Logger.getLogger(DataSender.class);
 
+  /** The threads sending the stripes of bodies */
+  private static final ExecutorService stripeSenders =
+          Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r);
+            thread.setName("harp-stripe-sender");
+            thread.setDaemon(true);
+            return thread;
+          });
+
   public DataSender(Data data, int destWorkerID,
                     Workers workers, byte command) {
     super(data, destWorkerID, workers, command);
@@ -49,6 +68,29 @@ public class DataSender extends Sender {
     super(data, host, port, command);
   }
 
+  /**
+   * Partition lists of primitive arrays are sent
+   * from the arrays without encoding
+   */
+  @Override
+  protected boolean isBodySentDirectly(Data data) {
+    // Striped bodies are sent from the body array
+    return DirectTransfer.isDirectBody(data)
+            && !(isStripingCommand() && ConnPool.get()
+            .getNumStripes(data.getBodySize()) > 1);
+  }
+
+  /**
+   * Check if the command allows striping the body
+   * across multiple connections
+   *
+   * @return true if the body may be striped
+   */
+  private boolean isStripingCommand() {
+    return getCommand() == Constant.SEND
+            || getCommand() == Constant.SEND_DECODE;
+  }
+
   /**
    * This method defines how to handle the data
    */
@@ -125,6 +167,26 @@ public class DataSender extends Sender {
     ByteArray headArray = data.getHeadArray();
     byte[] headBytes = headArray.get();
     int headArrSize = headArray.size();
+    if (data.getBodyStatus() == DataStatus.DECODED
+            && conn.getChannel() != null) {
+      // The body is not encoded, send the command,
+      // op bytes and head bytes with the arrays
+      ByteBuffer preamble = ByteBuffer
+              .allocate(1 + opArrSize + headArrSize);
+      preamble.put(getCommand());
+      preamble.put(opBytes, 0, opArrSize);
+      preamble.put(headBytes, 0, headArrSize);
+      preamble.flip();
+      DirectTransfer.sendPartitionList(
+              conn.getChannel(), preamble,
+              data.getBody());
+      return;
+    }
+    int numStripes = getNumStripes(conn, data);
+    if (numStripes > 1) {
+      sendStripedBytes(conn, data, numStripes);
+      return;
+    }
     try {
       out.write(getCommand());
       IOUtil.sendBytes(out, opBytes, 0,
@@ -141,6 +203,161 @@ public class DataSender extends Sender {
     }
   }
 
+  /**
+   * Get the number of connections to send the
+   * body array with. Bodies sent through shared
+   * memory are not striped.
+   *
+   * @param conn the Connection object
+   * @param data the Data to be sent
+   * @return the number of stripes, 1 if the body
+   * is not striped
+   */
+  private int getNumStripes(Connection conn,
+                            Data data) {
+    DataStatus bodyStatus = data.getBodyStatus();
+    if (!isStripingCommand() || conn.isShm()
+            || (bodyStatus != DataStatus.ENCODED_ARRAY_DECODED
+            && bodyStatus != DataStatus.ENCODED_ARRAY
+            && bodyStatus != DataStatus.ENCODED_ARRAY_DECODE_FAILED)) {
+      return 1;
+    }
+    return ConnPool.get()
+            .getNumStripes(data.getBodyArray().size());
+  }
+
+  /**
+   * Send the head and the first stripe of the
+   * body through the connection, and the other
+   * stripes through other connections to the same
+   * worker in parallel. The receiver puts the
+   * stripes together by the sender ID and the
+   * transfer ID.
+   *
+   * @param conn       the Connection object
+   * @param data       the Data to be sent
+   * @param numStripes the number of stripes
+   * @throws IOException
+   */
+  private void sendStripedBytes(Connection conn,
+                                final Data data, int numStripes)
+          throws IOException {
+    final long transferID =
+            ConnPool.get().nextTransferID();
+    final int senderID = data.getWorkerID();
+    ByteArray headArray = data.getHeadArray();
+    final ByteArray bodyArray = data.getBodyArray();
+    final int bodySize = bodyArray.size();
+    final int stripeSize =
+            (bodySize + numStripes - 1) / numStripes;
+    List<Future<Void>> futures = new ArrayList<>();
+    for (int i = 1; i < numStripes; i++) {
+      final int offset = i * stripeSize;
+      final int length =
+              Math.min(stripeSize, bodySize - offset);
+      final String host = conn.getNode();
+      final int port = conn.getPort();
+      final int numStripesFinal = numStripes;
+      futures.add(stripeSenders.submit(() -> {
+        Connection stripeConn =
+                Connection.create(host, port, true);
+        if (stripeConn == null) {
+          throw new IOException(
+                  "Cannot connect for stripe.");
+        }
+        try {
+          sendStripe(stripeConn.getOutputStream(),
+                  Constant.STRIPE, senderID, transferID,
+                  numStripesFinal, offset, length,
+                  null, bodyArray);
+          stripeConn.release();
+        } catch (IOException e) {
+          stripeConn.free();
+          throw e;
+        }
+        return null;
+      }));
+    }
+    IOException exception = null;
+    try {
+      sendStripe(conn.getOutputStream(),
+              getCommand() == Constant.SEND_DECODE
+                      ? Constant.STRIPED_SEND_DECODE
+                      : Constant.STRIPED_SEND,
+              senderID, transferID, numStripes, 0,
+              Math.min(stripeSize, bodySize),
+              headArray, bodyArray);
+    } catch (IOException e) {
+      exception = e;
+    }
+    for (Future<Void> future : futures) {
+      try {
+        future.get();
+      } catch (InterruptedException
+              | ExecutionException e) {
+        if (exception == null) {
+          exception =
+                  new IOException("Fail to send stripe.", e);
+        }
+      }
+    }
+    if (exception != null) {
+      throw exception;
+    }
+  }
+
+  /**
+   * Send a stripe of the body. The first stripe
+   * also carries the head.
+   *
+   * @param out         the OutputStream
+   * @param command     the command
+   * @param senderID    the ID of the sender
+   * @param transferID  the ID of the transfer
+   * @param numStripes  the number of stripes
+   * @param offset      the offset of the stripe in
+   *                    the body
+   * @param length      the length of the stripe
+   * @param headArray   the head array, null if not
+   *                    the first stripe
+   * @param bodyArray   the body array
+   * @throws IOException
+   */
+  private static void sendStripe(OutputStream out,
+                                 byte command, int senderID,
+                                 long transferID,
+                                 int numStripes, int offset, int length,
+                                 ByteArray headArray, ByteArray bodyArray)
+          throws IOException {
+    ByteArray opArray =
+            ByteArray.create(Constant.STRIPE_OP_SIZE, true);
+    if (opArray == null) {
+      throw new IOException("Cannot get op array.");
+    }
+    try {
+      Serializer serializer = new Serializer(opArray);
+      serializer.writeInt(
+              headArray == null ? 0 : headArray.size());
+      serializer.writeInt(senderID);
+      serializer.writeLong(transferID);
+      serializer.writeInt(numStripes);
+      serializer.writeInt(offset);
+      serializer.writeInt(length);
+      out.write(command);
+      IOUtil.sendBytes(out, opArray.get(), 0,
+              Constant.STRIPE_OP_SIZE);
+      out.flush();
+    } finally {
+      opArray.release();
+    }
+    if (headArray != null && headArray.size() > 0) {
+      IOUtil.sendBytes(out, headArray.get(),
+              headArray.start(), headArray.size());
+    }
+    IOUtil.sendBytes(out, bodyArray.get(),
+            bodyArray.start() + offset, length);
+  }
+
   /**
    * Send the data body
    *
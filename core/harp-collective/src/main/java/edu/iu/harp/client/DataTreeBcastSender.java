@@ -0,0 +1,231 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.client;
+
+import edu.iu.harp.io.Connection;
+import edu.iu.harp.io.Constant;
+import edu.iu.harp.io.Data;
+import edu.iu.harp.io.IOUtil;
+import edu.iu.harp.io.Serializer;
+import edu.iu.harp.resource.ByteArray;
+import edu.iu.harp.worker.WorkerInfo;
+import edu.iu.harp.worker.Workers;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The actual sender for broadcasting the data
+ * through a pipelined binary tree. The workers are
+ * ranked from the root, the children of rank r are
+ * rank 2r+1 and 2r+2. The body is sent in
+ * PIPELINE_SIZE chunks, and each worker forwards a
+ * chunk to its children as soon as it arrives, so
+ * all the levels of the tree are busy at the same
+ * time. We don't allow the worker broadcasts to
+ * itself.
+ */
+public class DataTreeBcastSender extends DataSender {
+
+  private static final Logger LOG =
+          Logger.getLogger(DataTreeBcastSender.class);
+
+  /** The number of children of a worker */
+  public static final int FANOUT = 2;
+
+  public DataTreeBcastSender(Data data,
+                             Workers workers, byte command) {
+    super(data, getDestID(workers), workers,
+            command);
+  }
+
+  /**
+   * Get the ID of the first child of the root
+   *
+   * @param workers the workers
+   * @return the ID of the destination
+   */
+  private static int getDestID(Workers workers) {
+    int[] childIDs = getChildIDs(
+            workers.getSelfID(), workers.getSelfID(),
+            workers.getMinID(), workers.getMaxID());
+    if (childIDs.length == 0) {
+      return Constant.UNKNOWN_WORKER_ID;
+    } else {
+      return childIDs[0];
+    }
+  }
+
+  /**
+   * Get the IDs of the children of a worker in the
+   * tree rooted at the broadcasting worker
+   *
+   * @param selfID the worker
+   * @param rootID the broadcasting worker
+   * @param minID  the minimum ID among the workers
+   * @param maxID  the maximum ID among the workers
+   * @return the IDs of the children
+   */
+  public static int[] getChildIDs(int selfID,
+                                  int rootID, int minID, int maxID) {
+    int numWorkers = maxID - minID + 1;
+    int rank = (selfID - rootID + numWorkers)
+            % numWorkers;
+    int numChildren = 0;
+    while (numChildren < FANOUT && (long) rank
+            * FANOUT + numChildren + 1 < numWorkers) {
+      numChildren++;
+    }
+    int[] childIDs = new int[numChildren];
+    for (int i = 0; i < numChildren; i++) {
+      int childRank = rank * FANOUT + i + 1;
+      childIDs[i] = minID
+              + (rootID - minID + childRank) % numWorkers;
+    }
+    return childIDs;
+  }
+
+  /**
+   * The body is sent in chunks from the body array
+   */
+  @Override
+  protected boolean isBodySentDirectly(Data data) {
+    return false;
+  }
+
+  /**
+   * Get the ByteArray storing the size of the
+   * head array and the ID of the root
+   *
+   * @param headArrSize the size of the head array
+   * @return the ByteArray storing the size of the
+   * head array
+   */
+  @Override
+  protected ByteArray
+  getOPByteArray(int headArrSize) {
+    ByteArray opArray = ByteArray.create(8, true);
+    if (opArray != null) {
+      try {
+        Serializer serializer = new Serializer(opArray);
+        serializer.writeInt(headArrSize);
+        serializer.writeInt(getWorkers().getSelfID());
+        return opArray;
+      } catch (Exception e) {
+        opArray.release();
+        return null;
+      }
+    } else {
+      return null;
+    }
+  }
+
+  /**
+   * Send the data to all the children of the root
+   *
+   * @param conn    the connection to the first child
+   * @param opArray the ByteArray storing the size of
+   *                the head array
+   * @param data    the Data to be broadcast
+   * @throws IOException
+   */
+  @Override
+  protected void sendDataBytes(Connection conn,
+                               final ByteArray opArray, final Data data)
+          throws IOException {
+    int selfID = getWorkers().getSelfID();
+    int[] childIDs = getChildIDs(selfID, selfID,
+            getWorkers().getMinID(),
+            getWorkers().getMaxID());
+    // The connection to the first child is
+    // managed by Sender
+    Connection[] conns =
+            new Connection[childIDs.length];
+    conns[0] = conn;
+    try {
+      for (int i = 1; i < childIDs.length; i++) {
+        WorkerInfo child =
+                getWorkers().getWorkerInfo(childIDs[i]);
+        if (child != null) {
+          conns[i] = Connection.create(
+                  child.getNode(), child.getPort(), true);
+        }
+        if (conns[i] == null) {
+          throw new IOException(
+                  "Cannot connect to worker "
+                          + childIDs[i]);
+        }
+      }
+      OutputStream[] outs =
+              new OutputStream[conns.length];
+      ByteArray headArray = data.getHeadArray();
+      for (int i = 0; i < conns.length; i++) {
+        outs[i] = conns[i].getOutputStream();
+        outs[i].write(getCommand());
+        IOUtil.sendBytes(outs[i], opArray.get(), 0,
+                opArray.size());
+        if (headArray.size() > 0) {
+          IOUtil.sendBytes(outs[i], headArray.get(),
+                  headArray.start(), headArray.size());
+        }
+        outs[i].flush();
+      }
+      ByteArray bodyArray = data.getBodyArray();
+      if (bodyArray != null) {
+        sendChunks(outs, bodyArray.get(),
+                bodyArray.start(), bodyArray.size());
+      }
+    } catch (IOException e) {
+      LOG.error("Fail to send data bytes.", e);
+      for (int i = 1; i < conns.length; i++) {
+        if (conns[i] != null) {
+          conns[i].free();
+          conns[i] = null;
+        }
+      }
+      throw e;
+    }
+    for (int i = 1; i < conns.length; i++) {
+      conns[i].release();
+    }
+  }
+
+  /**
+   * Send the bytes to all the streams chunk by
+   * chunk
+   *
+   * @param outs  the OutputStreams
+   * @param bytes the bytes
+   * @param start the start index
+   * @param size  the number of bytes
+   * @throws IOException
+   */
+  private static void sendChunks(
+          OutputStream[] outs, byte[] bytes, int start,
+          int size) throws IOException {
+    while (size > 0) {
+      int len = Math.min(size, Constant.PIPELINE_SIZE);
+      for (OutputStream out : outs) {
+        out.write(bytes, start, len);
+        out.flush();
+      }
+      start += len;
+      size -= len;
+    }
+  }
+}
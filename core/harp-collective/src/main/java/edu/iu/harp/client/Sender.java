@@ -16,10 +16,13 @@
 
 package edu.iu.harp.client;
 
+import edu.iu.harp.io.Codec;
+import edu.iu.harp.io.Compression;
 import edu.iu.harp.io.Connection;
 import edu.iu.harp.io.Constant;
 import edu.iu.harp.io.Data;
 import edu.iu.harp.io.DataStatus;
+import edu.iu.harp.metrics.CommMetrics;
 import edu.iu.harp.worker.WorkerInfo;
 import edu.iu.harp.worker.Workers;
 import org.apache.log4j.Logger;
@@ -115,14 +118,27 @@ public abstract class Sender {
     }
     if (data
             .getHeadStatus() == DataStatus.DECODED) {
+      // Compress the body before encoding the
+      // head, which records the compression
+      Codec codec = Compression.get().getCodec(data);
+      if (codec != Codec.NONE && data
+              .getBodyStatus() == DataStatus.DECODED) {
+        DataStatus bodyStatus = data.encodeBody();
+        if (bodyStatus == DataStatus.ENCODE_FAILED_DECODED) {
+          return false;
+        }
+        data.compressBody(codec);
+      }
       DataStatus headStatus = data.encodeHead();
       if (headStatus == DataStatus.ENCODE_FAILED_DECODED) {
         return false;
       }
     }
-    // Encode body
+    // Encode body, unless it is sent directly
+    // from the objects
     if (data
-            .getBodyStatus() == DataStatus.DECODED) {
+            .getBodyStatus() == DataStatus.DECODED
+            && !isBodySentDirectly(data)) {
       DataStatus bodyStatus = data.encodeBody();
       if (bodyStatus == DataStatus.ENCODE_FAILED_DECODED) {
         // No generating encoded data
@@ -138,9 +154,12 @@ public abstract class Sender {
     }
     // Send
     boolean isFailed = false;
+    long startTime = CommMetrics.now();
     try {
       handleData(conn, data);
       conn.release();
+      CommMetrics.get().recordSent(data,
+              CommMetrics.getNumBytes(data), startTime);
     } catch (Exception e) {
       LOG.error("Error in sending data.", e);
       conn.free();
@@ -168,6 +187,17 @@ public abstract class Sender {
     return this.workers;
   }
 
+  /**
+   * Check if the decoded body is sent without
+   * being encoded to the body array
+   *
+   * @param data the Data
+   * @return true if the body is sent directly
+   */
+  protected boolean isBodySentDirectly(Data data) {
+    return false;
+  }
+
   /**
    * Get the command
    *
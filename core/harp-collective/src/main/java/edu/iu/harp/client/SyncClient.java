@@ -18,12 +18,15 @@ package edu.iu.harp.client;
 
 import edu.iu.harp.io.Constant;
 import edu.iu.harp.schdynamic.ComputeUtil;
+import edu.iu.harp.schdynamic.ThreadMode;
 import edu.iu.harp.worker.Workers;
 import org.apache.log4j.Logger;
 
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RecursiveAction;
 
@@ -77,12 +80,21 @@ public class SyncClient implements Runnable {
      */
     @Override
     public void compute() {
-      try {
-        queue.enterConsumeBarrier();
-        queue.send();
-      } catch (Exception e) {
-        LOG.error("Send thread fails.", e);
-      }
+      send(queue);
+    }
+  }
+
+  /**
+   * Drain the queue and send/broadcast
+   *
+   * @param queue the queue
+   */
+  private static void send(SyncQueue queue) {
+    try {
+      queue.enterConsumeBarrier();
+      queue.send();
+    } catch (Exception e) {
+      LOG.error("Send thread fails.", e);
     }
   }
 
@@ -181,6 +193,17 @@ public class SyncClient implements Runnable {
    */
   @Override
   public void run() {
+    // A fixed set of virtual threads sends instead
+    // of blocking the common pool; one thread per
+    // send would leave their cached arrays behind
+    ExecutorService sendExecutor = null;
+    if (ComputeUtil
+            .getThreadMode() == ThreadMode.VIRTUAL) {
+      sendExecutor = Executors.newFixedThreadPool(
+              Math.max(Constant.NUM_THREADS,
+                      workers.getNumWorkers()),
+              ComputeUtil::newThread);
+    }
     while (true) {
       SyncQueue queue = null;
       try {
@@ -191,12 +214,20 @@ public class SyncClient implements Runnable {
         continue;
       }
       if (queue.getDestID() != NO_WORKERS) {
-        SendTask sendTask = new SendTask(queue);
-        sendTask.fork();
+        if (sendExecutor != null) {
+          final SyncQueue sendQueue = queue;
+          sendExecutor.execute(() -> send(sendQueue));
+        } else {
+          SendTask sendTask = new SendTask(queue);
+          sendTask.fork();
+        }
       } else {
         break;
       }
     }
+    if (sendExecutor != null) {
+      sendExecutor.shutdown();
+    }
   }
 
   /**
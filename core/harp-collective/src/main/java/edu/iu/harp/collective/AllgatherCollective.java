@@ -26,6 +26,7 @@ import edu.iu.harp.io.DataType;
 import edu.iu.harp.io.DataUtil;
 import edu.iu.harp.io.EventQueue;
 import edu.iu.harp.io.IOUtil;
+import edu.iu.harp.metrics.CommMetrics;
 import edu.iu.harp.partition.Partition;
 import edu.iu.harp.partition.PartitionUtil;
 import edu.iu.harp.partition.Table;
@@ -149,6 +150,22 @@ public class AllgatherCollective {
             final String operationName,
             final Table<P> table, final DataMap dataMap,
             final Workers workers) {
+    long startTime = CommMetrics.now();
+    boolean isSuccess = allgatherTable(contextName,
+        operationName, table, dataMap, workers);
+    CommMetrics.get().recordCollective("allgather",
+        contextName, operationName, startTime);
+    return isSuccess;
+  }
+
+  /**
+   * Allgather the partitions through the ring
+   */
+  private static <P extends Simple> boolean
+  allgatherTable(final String contextName,
+                 final String operationName,
+                 final Table<P> table, final DataMap dataMap,
+                 final Workers workers) {
     if (workers.isTheOnlyWorker()) {
       return true;
     }
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.collective;
+
+/**
+ * The algorithms available for allreduce.
+ * RECURSIVE_HALVING exchanges the whole table
+ * with a partner in each of the log(N) steps.
+ * RING does a reduce-scatter and an allgather
+ * around the ring of workers, each worker sends
+ * 2(N-1)/N of the table in total. HIERARCHICAL
+ * combines within each rack first and only the
+ * rack leaders communicate across racks. AUTO
+ * selects RECURSIVE_HALVING or RING by the table
+ * size and the number of workers, once per
+ * context.
+ **/
+public enum AllreduceAlgorithm {
+  AUTO, RECURSIVE_HALVING, RING, HIERARCHICAL
+}
@@ -26,19 +26,29 @@ import edu.iu.harp.io.DataType;
 import edu.iu.harp.io.DataUtil;
 import edu.iu.harp.io.EventQueue;
 import edu.iu.harp.io.IOUtil;
+import edu.iu.harp.metrics.CommMetrics;
 import edu.iu.harp.partition.Partition;
 import edu.iu.harp.partition.PartitionUtil;
 import edu.iu.harp.partition.Table;
 import edu.iu.harp.resource.DoubleArray;
+import edu.iu.harp.resource.LongArray;
 import edu.iu.harp.resource.Simple;
 import edu.iu.harp.resource.Transferable;
 import edu.iu.harp.server.Server;
 import edu.iu.harp.worker.Workers;
 import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import org.apache.log4j.Logger;
 
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 
@@ -50,6 +60,32 @@ public class AllreduceCollective {
   private static final Logger LOG =
       Logger.getLogger(AllreduceCollective.class);
 
+  /**
+   * AUTO selects RING when each worker's segment
+   * of the table is at least this size in bytes
+   */
+  public static final int RING_MIN_SEGMENT_BYTES =
+      Constant.PIPELINE_SIZE;
+
+  /**
+   * The algorithms agreed by AUTO, per context,
+   * for each view of the workers
+   */
+  private static final Map<Workers, Map<String, AllreduceAlgorithm>> agreedAlgorithms =
+      Collections.synchronizedMap(new WeakHashMap<>());
+
+  /**
+   * The threads sending the segments of the ring
+   * while the caller waits for the received ones
+   */
+  private static final ExecutorService ringSenders =
+      Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r);
+        thread.setName("harp-ring-sender");
+        thread.setDaemon(true);
+        return thread;
+      });
+
   public static void main(String args[])
       throws Exception {
     String driverHost = args[0];
@@ -59,11 +95,16 @@ public class AllreduceCollective {
     int partitionByteSize =
         Integer.parseInt(args[4]);
     int numPartitions = Integer.parseInt(args[5]);
+    AllreduceAlgorithm algorithm =
+        AllreduceAlgorithm.RECURSIVE_HALVING;
+    if (args.length > 6) {
+      algorithm = AllreduceAlgorithm.valueOf(args[6]);
+    }
     Driver.initLogger(workerID);
     LOG.info("args[] " + driverHost + " "
         + driverPort + " " + workerID + " " + jobID
         + " " + partitionByteSize + " "
-        + numPartitions);
+        + numPartitions + " " + algorithm);
     // ------------------------------------------------
     // Worker initialize
     EventQueue eventQueue = new EventQueue();
@@ -112,7 +153,7 @@ public class AllreduceCollective {
     // Allreduce
     try {
       allreduce(contextName, "allreduce", table,
-          dataMap, workers);
+          dataMap, workers, algorithm);
     } catch (Exception e) {
       LOG.error("Fail to allreduce", e);
     }
@@ -138,7 +179,8 @@ public class AllreduceCollective {
   }
 
   /**
-   * Allreduce communication operation.
+   * Allreduce communication operation with the
+   * recursive halving algorithm.
    *
    * @param contextName   the name of the context
    * @param operationName the name of the operation
@@ -152,9 +194,195 @@ public class AllreduceCollective {
             final String operationName,
             final Table<P> table, final DataMap dataMap,
             final Workers workers) {
+    return allreduce(contextName, operationName,
+        table, dataMap, workers,
+        AllreduceAlgorithm.RECURSIVE_HALVING);
+  }
+
+  /**
+   * Allreduce communication operation with the
+   * given algorithm. All the workers must use the
+   * same algorithm. With AUTO, the workers
+   * exchange the sizes of their tables at the
+   * first allreduce of the context and decide on
+   * the largest ones, so the tables may differ.
+   * The later AUTO allreduces of the context reuse
+   * the decision without communication, so give
+   * the algorithm explicitly in a context whose
+   * tables change much in size.
+   *
+   * @param contextName   the name of the context
+   * @param operationName the name of the operation
+   * @param table         the data Table
+   * @param dataMap       the DataMap
+   * @param workers       the Workers
+   * @param algorithm     the allreduce algorithm
+   * @return true if succeeded, false otherwise
+   */
+  public static <P extends Simple> boolean
+  allreduce(final String contextName,
+            final String operationName,
+            final Table<P> table, final DataMap dataMap,
+            final Workers workers,
+            AllreduceAlgorithm algorithm) {
     if (workers.isTheOnlyWorker()) {
       return true;
     }
+    long startTime = CommMetrics.now();
+    if (algorithm == AllreduceAlgorithm.AUTO) {
+      algorithm = getAgreedAlgorithm(contextName,
+          workers);
+      if (algorithm == null) {
+        algorithm = agreeOnAlgorithm(contextName,
+            operationName, table, dataMap, workers);
+        if (algorithm != null) {
+          agreedAlgorithms.computeIfAbsent(workers,
+              w -> new ConcurrentHashMap<>())
+              .put(contextName, algorithm);
+        }
+      }
+    }
+    boolean isSuccess;
+    if (algorithm == null) {
+      isSuccess = false;
+    } else if (algorithm == AllreduceAlgorithm.RING) {
+      isSuccess = ringAllreduce(contextName,
+          operationName, table, dataMap, workers);
+    } else if (algorithm == AllreduceAlgorithm.HIERARCHICAL) {
+      isSuccess = HierarchicalCollective.allreduce(
+          contextName, operationName, table,
+          HierarchyLevel.RACK, dataMap, workers);
+    } else {
+      isSuccess = recursiveHalvingAllreduce(
+          contextName, operationName, table,
+          dataMap, workers);
+    }
+    CommMetrics.get().recordCollective("allreduce",
+        contextName, operationName, startTime);
+    return isSuccess;
+  }
+
+  /**
+   * Select the allreduce algorithm on the local
+   * table only. The workers may disagree if their
+   * tables differ, see agreeOnAlgorithm.
+   *
+   * @param table   the data Table
+   * @param workers the Workers
+   * @return RING or RECURSIVE_HALVING
+   */
+  public static <P extends Simple> AllreduceAlgorithm
+  selectAlgorithm(Table<P> table, Workers workers) {
+    return selectAlgorithm(table.getNumPartitions(),
+        getNumBytes(table), workers.getNumWorkers());
+  }
+
+  /**
+   * Select the allreduce algorithm. RING is
+   * selected when every worker gets at least one
+   * partition and at least RING_MIN_SEGMENT_BYTES
+   * to reduce, otherwise the fewer steps of
+   * RECURSIVE_HALVING win.
+   *
+   * @param numPartitions the number of partitions
+   * @param numBytes      the number of bytes
+   * @param numWorkers    the number of workers
+   * @return RING or RECURSIVE_HALVING
+   */
+  static AllreduceAlgorithm selectAlgorithm(
+      long numPartitions, long numBytes,
+      int numWorkers) {
+    if (numPartitions < numWorkers) {
+      return AllreduceAlgorithm.RECURSIVE_HALVING;
+    }
+    if (numBytes >= (long) RING_MIN_SEGMENT_BYTES
+        * numWorkers) {
+      return AllreduceAlgorithm.RING;
+    } else {
+      return AllreduceAlgorithm.RECURSIVE_HALVING;
+    }
+  }
+
+  /**
+   * Select the allreduce algorithm on the
+   * largest number of partitions and the largest
+   * number of bytes of the tables of all the
+   * workers, gathered in a small allgather, so
+   * that all the workers select the same one.
+   *
+   * @param contextName   the name of the context
+   * @param operationName the name of the operation
+   * @param table         the data Table
+   * @param dataMap       the DataMap
+   * @param workers       the Workers
+   * @return RING or RECURSIVE_HALVING, null if
+   *         failed
+   */
+  /**
+   * Get the algorithm agreed by AUTO in the
+   * context
+   *
+   * @param contextName the name of the context
+   * @param workers     the Workers
+   * @return the algorithm, null if not agreed yet
+   */
+  static AllreduceAlgorithm getAgreedAlgorithm(
+      String contextName, Workers workers) {
+    Map<String, AllreduceAlgorithm> algorithms =
+        agreedAlgorithms.get(workers);
+    return algorithms == null ? null
+        : algorithms.get(contextName);
+  }
+
+  private static <P extends Simple> AllreduceAlgorithm
+  agreeOnAlgorithm(String contextName,
+                   String operationName, Table<P> table,
+                   DataMap dataMap, Workers workers) {
+    List<Transferable> sizes = new LinkedList<>();
+    sizes.add(new LongArray(new long[]{
+        table.getNumPartitions(), getNumBytes(table)},
+        0, 2));
+    if (!Communication.allgather(contextName,
+        operationName + ".auto", sizes, dataMap,
+        workers)) {
+      return null;
+    }
+    long numPartitions = 0L;
+    long numBytes = 0L;
+    for (Transferable obj : sizes) {
+      LongArray array = (LongArray) obj;
+      long[] longs = array.get();
+      int start = array.start();
+      numPartitions =
+          Math.max(numPartitions, longs[start]);
+      numBytes = Math.max(numBytes, longs[start + 1]);
+    }
+    DataUtil.releaseTransList(sizes);
+    return selectAlgorithm(numPartitions, numBytes,
+        workers.getNumWorkers());
+  }
+
+  private static <P extends Simple> long
+  getNumBytes(Table<P> table) {
+    long numBytes = 0L;
+    for (Partition<P> partition : table
+        .getPartitions()) {
+      numBytes += partition.getNumEnocdeBytes();
+    }
+    return numBytes;
+  }
+
+  /**
+   * Allreduce with recursive halving. In each
+   * step, the whole table is exchanged with the
+   * worker in the other half.
+   */
+  private static <P extends Simple> boolean
+  recursiveHalvingAllreduce(
+      final String contextName,
+      final String operationName,
+      final Table<P> table, final DataMap dataMap,
+      final Workers workers) {
     int selfID = workers.getSelfID();
     int left = workers.getMinID();
     int right = workers.getMaxID();
@@ -290,4 +518,229 @@ public class AllreduceCollective {
     }
     return true;
   }
+
+  /**
+   * Allreduce on a ring of workers. The
+   * partitions are split into N segments by
+   * partition ID. The reduce-scatter phase takes
+   * N - 1 steps: in step i, each worker sends the
+   * segment (selfID - i) to the next worker and
+   * combines the segment (selfID - i - 1) received
+   * from the previous worker. After that, each
+   * worker holds the fully reduced segment
+   * (selfID + 1). The allgather phase takes
+   * another N - 1 steps to pass the reduced
+   * segments around the ring, where the received
+   * segments replace the local ones. In every
+   * step, the sending runs in the background while
+   * waiting for and processing the received
+   * segment.
+   */
+  private static <P extends Simple> boolean
+  ringAllreduce(final String contextName,
+                final String operationName,
+                final Table<P> table, final DataMap dataMap,
+                final Workers workers) {
+    int selfID = workers.getSelfID();
+    int numWorkers = workers.getNumWorkers();
+    // The segments received in advance
+    Int2ObjectOpenHashMap<Data> cachedDataMap =
+        new Int2ObjectOpenHashMap<>();
+    boolean isFailed = false;
+    // Reduce-scatter, the segment ID is used as
+    // the partition ID of the Data
+    for (int i = 0; i < numWorkers - 1; i++) {
+      int sendSegment =
+          Math.floorMod(selfID - i, numWorkers);
+      int recvSegment =
+          Math.floorMod(selfID - i - 1, numWorkers);
+      Data sendData = getSegmentData(contextName,
+          operationName, table, workers,
+          sendSegment, sendSegment);
+      CompletableFuture<Void> sending =
+          sendToNext(sendData, workers);
+      Data recvData = waitSegmentData(contextName,
+          operationName, recvSegment, dataMap,
+          cachedDataMap);
+      sending.join();
+      sendData.releaseHeadArray();
+      sendData.releaseBodyArray();
+      if (recvData == null) {
+        isFailed = true;
+        break;
+      }
+      recvData.releaseHeadArray();
+      recvData.releaseBodyArray();
+      PartitionUtil.addPartitionsToTable(
+          recvData.getBody(), table);
+    }
+    // Allgather, the partition ID of the Data is
+    // the segment ID plus the number of workers.
+    // Each received segment is forwarded as it is,
+    // except the last one.
+    Data sendData = null;
+    if (!isFailed) {
+      int ownSegment =
+          Math.floorMod(selfID + 1, numWorkers);
+      sendData = getSegmentData(contextName,
+          operationName, table, workers, ownSegment,
+          numWorkers + ownSegment);
+    }
+    for (int i = 0; !isFailed
+        && i < numWorkers - 1; i++) {
+      int recvSegment =
+          Math.floorMod(selfID - i, numWorkers);
+      CompletableFuture<Void> sending =
+          sendToNext(sendData, workers);
+      Data recvData = waitSegmentData(contextName,
+          operationName, numWorkers + recvSegment,
+          dataMap, cachedDataMap);
+      sending.join();
+      sendData.releaseHeadArray();
+      sendData.releaseBodyArray();
+      if (i > 0) {
+        // The forwarded segment is not local
+        replaceSegment(sendData.getBody(),
+            Math.floorMod(selfID - i + 1,
+                numWorkers),
+            numWorkers, table);
+      }
+      sendData = recvData;
+      if (recvData == null) {
+        isFailed = true;
+      }
+    }
+    if (isFailed) {
+      // Release
+      for (Data d : cachedDataMap.values()) {
+        d.release();
+      }
+      cachedDataMap = null;
+      table.release();
+      return false;
+    }
+    // The last segment is not forwarded
+    sendData.releaseHeadArray();
+    sendData.releaseBodyArray();
+    replaceSegment(sendData.getBody(),
+        Math.floorMod(selfID + 2, numWorkers),
+        numWorkers, table);
+    return true;
+  }
+
+  /**
+   * Create the Data of the partitions in a
+   * segment of the table
+   *
+   * @param contextName   the name of the context
+   * @param operationName the name of the operation
+   * @param table         the data Table
+   * @param workers       the Workers
+   * @param segment       the segment ID
+   * @param dataID        the partition ID of the
+   *                      Data
+   * @return the Data
+   */
+  private static <P extends Simple> Data
+  getSegmentData(String contextName,
+                 String operationName, Table<P> table,
+                 Workers workers, int segment,
+                 int dataID) {
+    int numWorkers = workers.getNumWorkers();
+    List<Transferable> partitions =
+        new LinkedList<>();
+    for (Partition<P> partition : table
+        .getPartitions()) {
+      if (Math.floorMod(partition.id(),
+          numWorkers) == segment) {
+        partitions.add(partition);
+      }
+    }
+    return new Data(DataType.PARTITION_LIST,
+        contextName, workers.getSelfID(), partitions,
+        DataUtil.getNumTransListBytes(partitions),
+        operationName, dataID);
+  }
+
+  /**
+   * Send the Data to the next worker in the
+   * background, on the ring senders rather than
+   * the common pool used by the apps
+   *
+   * @param data    the Data
+   * @param workers the Workers
+   * @return the sending task
+   */
+  private static CompletableFuture<Void> sendToNext(
+      Data data, Workers workers) {
+    return CompletableFuture.runAsync(() -> {
+      DataSender sender = new DataSender(data,
+          workers.getNextID(), workers,
+          Constant.SEND_DECODE);
+      sender.execute();
+    }, ringSenders);
+  }
+
+  /**
+   * Wait for the Data with the given partition ID.
+   * The Data with other partition IDs received in
+   * the meantime are cached.
+   *
+   * @param contextName   the name of the context
+   * @param operationName the name of the operation
+   * @param dataID        the partition ID of the
+   *                      Data
+   * @param dataMap       the DataMap
+   * @param cachedDataMap the cached Data
+   * @return the Data, null if failed
+   */
+  private static Data waitSegmentData(
+      String contextName, String operationName,
+      int dataID, DataMap dataMap,
+      Int2ObjectOpenHashMap<Data> cachedDataMap) {
+    Data recvData = cachedDataMap.remove(dataID);
+    while (recvData == null) {
+      Data data = IOUtil.waitAndGet(dataMap,
+          contextName, operationName);
+      if (data == null) {
+        return null;
+      } else if (data.getPartitionID() == dataID) {
+        recvData = data;
+      } else {
+        cachedDataMap.put(data.getPartitionID(),
+            data);
+      }
+    }
+    return recvData;
+  }
+
+  /**
+   * Replace the local partitions of a segment
+   * with the reduced partitions
+   *
+   * @param partitions the reduced partitions
+   * @param segment    the segment ID
+   * @param numWorkers the number of workers
+   * @param table      the data Table
+   */
+  private static <P extends Simple> void
+  replaceSegment(List<Transferable> partitions,
+                 int segment, int numWorkers,
+                 Table<P> table) {
+    IntArrayList rmPartitionIDs =
+        new IntArrayList();
+    for (int partitionID : table
+        .getPartitionIDs()) {
+      if (Math.floorMod(partitionID,
+          numWorkers) == segment) {
+        rmPartitionIDs.add(partitionID);
+      }
+    }
+    for (int partitionID : rmPartitionIDs) {
+      table.removePartition(partitionID)
+          .release();
+    }
+    PartitionUtil.addPartitionsToTable(partitions,
+        table);
+  }
 }
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.collective;
+
+import edu.iu.harp.io.Constant;
+import edu.iu.harp.io.DataMap;
+import org.apache.log4j.Logger;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/*******************************************************
+ * Run collective operations on dedicated
+ * communication threads and return futures, so
+ * that the caller can compute while the operation
+ * is in progress. The table of an operation must
+ * not be used by the caller until its future
+ * completes. Operations running at the same time
+ * must have different context or operation names;
+ * a second operation with the names of a running
+ * one is rejected. This is the only isolation
+ * given: the operations still share the receiver
+ * threads of the server, and the queue limit of
+ * the DataMap applies to each queue, so a
+ * receiver waiting for space in the queue of one
+ * operation also delays the data of the others
+ * arriving on the same connection.
+ ******************************************************/
+public class AsyncCollective {
+
+  private static final Logger LOG =
+    Logger.getLogger(AsyncCollective.class);
+
+  private final DataMap dataMap;
+  private final ExecutorService commThreads;
+
+  /**
+   * Create the communication threads
+   *
+   * @param dataMap
+   *          the DataMap
+   * @param numThreads
+   *          the number of operations which can
+   *          run at the same time
+   */
+  public AsyncCollective(DataMap dataMap,
+    int numThreads) {
+    this.dataMap = dataMap;
+    this.commThreads = Executors.newFixedThreadPool(
+      numThreads > 0 ? numThreads
+        : Constant.NUM_THREADS,
+      new ThreadFactory() {
+        private final AtomicInteger threadNum =
+          new AtomicInteger(0);
+
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r);
+          thread.setName("harp-comm-thread-"
+            + threadNum.getAndIncrement());
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+  }
+
+  /**
+   * Start a collective operation. The data of the
+   * operation is cleaned from the DataMap when it
+   * finishes.
+   *
+   * @param contextName
+   *          the name of the operation context
+   * @param operationName
+   *          the name of the operation
+   * @param collective
+   *          the blocking collective operation
+   * @return the future of the result, completed
+   *         exceptionally if an operation with
+   *         the same names is running or the
+   *         handles of the names collide
+   */
+  public CompletableFuture<Boolean> submit(
+    String contextName, String operationName,
+    Supplier<Boolean> collective) {
+    if (!dataMap.startOperation(contextName,
+      operationName)) {
+      CompletableFuture<Boolean> result =
+        new CompletableFuture<>();
+      result.completeExceptionally(
+        new IllegalStateException("Operation "
+          + contextName + "/" + operationName
+          + " is already running or collides"
+          + " with another operation."));
+      return result;
+    }
+    try {
+      return CompletableFuture.supplyAsync(() -> {
+        try {
+          return collective.get();
+        } finally {
+          dataMap.finishOperation(contextName,
+            operationName);
+        }
+      }, commThreads);
+    } catch (RuntimeException e) {
+      // Rejected after shutdown
+      dataMap.finishOperation(contextName,
+        operationName);
+      throw e;
+    }
+  }
+
+  /**
+   * Stop the communication threads after the
+   * running operations finish
+   */
+  public void shutdown() {
+    commThreads.shutdown();
+    try {
+      if (!commThreads.awaitTermination(
+        Constant.TERMINATION_TIMEOUT,
+        TimeUnit.SECONDS)) {
+        LOG.info("Collective operations are "
+          + "still running.");
+        commThreads.shutdownNow();
+      }
+    } catch (InterruptedException e) {
+      commThreads.shutdownNow();
+    }
+  }
+}
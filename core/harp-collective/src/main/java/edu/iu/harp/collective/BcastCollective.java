@@ -19,6 +19,7 @@ package edu.iu.harp.collective;
 import edu.iu.harp.client.DataChainBcastSender;
 import edu.iu.harp.client.DataMSTBcastSender;
 import edu.iu.harp.client.DataSender;
+import edu.iu.harp.client.DataTreeBcastSender;
 import edu.iu.harp.client.Sender;
 import edu.iu.harp.example.DoubleArrPlus;
 import edu.iu.harp.io.ConnPool;
@@ -29,6 +30,7 @@ import edu.iu.harp.io.DataType;
 import edu.iu.harp.io.DataUtil;
 import edu.iu.harp.io.EventQueue;
 import edu.iu.harp.io.IOUtil;
+import edu.iu.harp.metrics.CommMetrics;
 import edu.iu.harp.partition.Partition;
 import edu.iu.harp.partition.PartitionUtil;
 import edu.iu.harp.partition.Table;
@@ -54,6 +56,14 @@ public class BcastCollective {
   protected static final Logger LOG =
       Logger.getLogger(BcastCollective.class);
 
+  /**
+   * AUTO selects CHAIN when the data is at least
+   * this many chunks per worker, below it the
+   * shorter paths of PIPELINED_TREE win
+   */
+  public static final int CHAIN_MIN_CHUNKS_PER_WORKER =
+      1;
+
   public static void main(String args[])
       throws Exception {
     String driverHost = args[0];
@@ -316,6 +326,36 @@ public class BcastCollective {
         break;
       }
     }
+    for (int i = 0; i < numLoops; i++) {
+      long t1 = System.currentTimeMillis();
+      isSuccess = broadcast(contextName,
+          "tree-array-table-bcast-" + i, arrTable,
+          workers.getMasterID(),
+          BcastAlgorithm.PIPELINED_TREE, dataMap,
+          workers);
+      long t2 = System.currentTimeMillis();
+      LOG.info(
+          "Total array table pipelined tree bcast time: "
+              + (t2 - t1));
+      // Release
+      if (!workers.isMaster()) {
+        for (Partition<DoubleArray> partition : arrTable
+            .getPartitions()) {
+          DoubleArray doubleArray =
+              partition.get();
+          int start = doubleArray.start();
+          int size = doubleArray.size();
+          LOG.info("Receive Double Array. first: "
+              + doubleArray.get()[start]
+              + ", last: " + doubleArray.get()[start
+              + size - 1]);
+        }
+        arrTable.release();
+      }
+      if (!isSuccess) {
+        break;
+      }
+    }
     // Release array table on Master
     if (workers.isMaster()) {
       arrTable.release();
@@ -340,6 +380,49 @@ public class BcastCollective {
             String operationName, Table<P> table,
             int bcastWorkerID, boolean useMSTBcast,
             DataMap dataMap, Workers workers) {
+    return broadcast(contextName, operationName,
+        table, bcastWorkerID, useMSTBcast
+            ? BcastAlgorithm.MST : BcastAlgorithm.CHAIN,
+        dataMap, workers);
+  }
+
+  /**
+   * The broadcast communication operation with
+   * the given algorithm. Only the broadcasting
+   * worker uses the algorithm, so the workers may
+   * be given different ones.
+   *
+   * @param contextName   the name of the context
+   * @param operationName the name of the operation
+   * @param table         the data Table
+   * @param bcastWorkerID the worker which broadcasts
+   * @param algorithm     the broadcast algorithm
+   * @param dataMap       the DataMap
+   * @param workers       the Workers
+   * @return true if succeeded, false otherwise
+   */
+  public static <P extends Simple> boolean
+  broadcast(String contextName,
+            String operationName, Table<P> table,
+            int bcastWorkerID, BcastAlgorithm algorithm,
+            DataMap dataMap, Workers workers) {
+    long startTime = CommMetrics.now();
+    boolean isSuccess = broadcastTable(contextName,
+        operationName, table, bcastWorkerID, algorithm,
+        dataMap, workers);
+    CommMetrics.get().recordCollective("broadcast",
+        contextName, operationName, startTime);
+    return isSuccess;
+  }
+
+  /**
+   * Broadcast the partitions with the algorithm
+   */
+  private static <P extends Simple> boolean
+  broadcastTable(String contextName,
+                 String operationName, Table<P> table,
+                 int bcastWorkerID, BcastAlgorithm algorithm,
+                 DataMap dataMap, Workers workers) {
     if (workers.isTheOnlyWorker()) {
       return true;
     }
@@ -354,10 +437,18 @@ public class BcastCollective {
           DataUtil
               .getNumTransListBytes(ownedPartitions),
           operationName, numOwnedPartitions);
+      if (algorithm == BcastAlgorithm.AUTO) {
+        algorithm = selectAlgorithm(
+            sendData.getBodySize(),
+            workers.getNumWorkers());
+      }
       Sender sender = null;
-      if (useMSTBcast) {
+      if (algorithm == BcastAlgorithm.MST) {
         sender = new DataMSTBcastSender(sendData,
             workers, Constant.MST_BCAST_DECODE);
+      } else if (algorithm == BcastAlgorithm.PIPELINED_TREE) {
+        sender = new DataTreeBcastSender(sendData,
+            workers, Constant.TREE_BCAST_DECODE);
       } else {
         sender =
             new DataChainBcastSender(sendData,
@@ -384,4 +475,28 @@ public class BcastCollective {
       }
     }
   }
+
+  /**
+   * Select the broadcast algorithm. Data within
+   * one chunk gains nothing from pipelining, so
+   * MST is selected for its log(N) steps. CHAIN
+   * is selected when the data is long enough to
+   * fill the ring with chunks, otherwise the
+   * log(N) depth of PIPELINED_TREE wins.
+   *
+   * @param numBytes   the size of the data
+   * @param numWorkers the number of workers
+   * @return CHAIN, MST or PIPELINED_TREE
+   */
+  public static BcastAlgorithm selectAlgorithm(
+      long numBytes, int numWorkers) {
+    if (numBytes <= Constant.PIPELINE_SIZE) {
+      return BcastAlgorithm.MST;
+    } else if (numBytes >= (long) Constant.PIPELINE_SIZE
+        * CHAIN_MIN_CHUNKS_PER_WORKER * numWorkers) {
+      return BcastAlgorithm.CHAIN;
+    } else {
+      return BcastAlgorithm.PIPELINED_TREE;
+    }
+  }
 }
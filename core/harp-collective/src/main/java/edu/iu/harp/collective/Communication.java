@@ -26,8 +26,10 @@ import edu.iu.harp.io.DataMap;
 import edu.iu.harp.io.DataType;
 import edu.iu.harp.io.DataUtil;
 import edu.iu.harp.io.IOUtil;
+import edu.iu.harp.metrics.CommMetrics;
 import edu.iu.harp.resource.Transferable;
 import edu.iu.harp.resource.Writable;
+import edu.iu.harp.resource.WritableRegistry;
 import edu.iu.harp.util.Barrier;
 import edu.iu.harp.worker.WorkerInfo;
 import edu.iu.harp.worker.Workers;
@@ -50,7 +52,10 @@ public class Communication {
    * master. If the master gets all the messages,
    * sends true to all workers to leave the
    * barrier. Else it sends false to all the
-   * workers.
+   * workers. The barrier also compares the
+   * fingerprints of the WritableRegistry. The
+   * registered class IDs are used only if all the
+   * workers have the same registry.
    *
    * @param contextName   the name of operation context
    * @param operationName the name of the operation
@@ -61,12 +66,30 @@ public class Communication {
   public static boolean barrier(
       String contextName, String operationName,
       DataMap dataMap, Workers workers) {
+    long startTime = CommMetrics.now();
+    boolean isSuccess = barrierWorkers(contextName,
+        operationName, dataMap, workers);
+    CommMetrics.get().recordCollective("barrier",
+        contextName, operationName, startTime);
+    return isSuccess;
+  }
+
+  /**
+   * Synchronize the workers through the master
+   */
+  private static boolean barrierWorkers(
+      String contextName, String operationName,
+      DataMap dataMap, Workers workers) {
     if (workers.isTheOnlyWorker()) {
+      enableRegistry(WritableRegistry.get()
+          .getFingerprint());
       return true;
     }
     // Send barrier and wait for replies
     if (workers.isMaster()) {
       boolean isBarrierSuccess = true;
+      int fingerprint = WritableRegistry.get()
+          .getFingerprint();
       int numWorkers = workers.getNumWorkers();
       // Collect replies from other workers
       int count = 1;
@@ -76,6 +99,12 @@ public class Communication {
         if (recvData != null) {
           LOG.info("Barrier from Worker "
               + recvData.getWorkerID());
+          Barrier recvBarrier =
+              (Barrier) recvData.getBody().get(0);
+          if (recvBarrier.getFingerprint()
+              != fingerprint) {
+            fingerprint = 0;
+          }
           recvData.release();
           count++;
         } else {
@@ -88,6 +117,7 @@ public class Communication {
       Barrier barrier =
           Writable.create(Barrier.class);
       barrier.setStatus(isBarrierSuccess);
+      barrier.setFingerprint(fingerprint);
       LinkedList<Transferable> commList =
           new LinkedList<>();
       commList.add(barrier);
@@ -123,12 +153,15 @@ public class Communication {
       // Release all the resource used
       sendData.release();
       sendData = null;
+      enableRegistry(fingerprint);
       return isBarrierSuccess;
     } else {
       // From slave workers
       Barrier barrier =
           Writable.create(Barrier.class);
       barrier.setStatus(true);
+      barrier.setFingerprint(WritableRegistry.get()
+          .getFingerprint());
       LinkedList<Transferable> commList =
           new LinkedList<>();
       commList.add(barrier);
@@ -175,6 +208,7 @@ public class Communication {
         if (barrier.getStatus()) {
           isBarrierSuccess = true;
         }
+        enableRegistry(barrier.getFingerprint());
         recvData.release();
         recvData = null;
       }
@@ -182,6 +216,27 @@ public class Communication {
     }
   }
 
+  /**
+   * Encode the registered classes with IDs if
+   * the fingerprint agreed in the barrier is the
+   * one of the local registry
+   *
+   * @param fingerprint the agreed fingerprint, 0
+   *                    if the workers disagree
+   */
+  private static void enableRegistry(
+      int fingerprint) {
+    WritableRegistry registry =
+        WritableRegistry.get();
+    boolean enable = fingerprint != 0
+        && fingerprint == registry.getFingerprint();
+    if (enable != registry.isEnabled()) {
+      LOG.info("Encode registered writables "
+          + "with class IDs: " + enable);
+      registry.setEnabled(enable);
+    }
+  }
+
   /**
    * Gather collective communication operation
    *
@@ -197,6 +252,22 @@ public class Communication {
                                String operationName, List<Transferable> objs,
                                int gatherWorkerID, DataMap dataMap,
                                Workers workers) {
+    long startTime = CommMetrics.now();
+    boolean isSuccess = gatherObjs(contextName,
+        operationName, objs, gatherWorkerID, dataMap,
+        workers);
+    CommMetrics.get().recordCollective("gather",
+        contextName, operationName, startTime);
+    return isSuccess;
+  }
+
+  /**
+   * Gather the objects to the worker
+   */
+  private static boolean gatherObjs(String contextName,
+                                    String operationName, List<Transferable> objs,
+                                    int gatherWorkerID, DataMap dataMap,
+                                    Workers workers) {
     if (workers.isTheOnlyWorker()) {
       return true;
     }
@@ -246,6 +317,22 @@ public class Communication {
       final String operationName,
       List<Transferable> objs, DataMap dataMap,
       Workers workers) {
+    long startTime = CommMetrics.now();
+    boolean isSuccess = allgatherObjs(contextName,
+        operationName, objs, dataMap, workers);
+    CommMetrics.get().recordCollective("allgather",
+        contextName, operationName, startTime);
+    return isSuccess;
+  }
+
+  /**
+   * Allgather the objects through the ring
+   */
+  private static boolean allgatherObjs(
+      final String contextName,
+      final String operationName,
+      List<Transferable> objs, DataMap dataMap,
+      Workers workers) {
     if (workers.isTheOnlyWorker()) {
       return true;
     }
@@ -30,6 +30,7 @@ import edu.iu.harp.io.DataMap;
 import edu.iu.harp.io.DataUtil;
 import edu.iu.harp.io.EventQueue;
 import edu.iu.harp.keyval.ValStatus;
+import edu.iu.harp.metrics.CommMetrics;
 import edu.iu.harp.partition.Partition;
 import edu.iu.harp.partition.PartitionUtil;
 import edu.iu.harp.partition.Partitioner;
@@ -317,6 +318,26 @@ public class GraphCollective {
                Partitioner partitioner,
                Table<P2> staticTable, DataMap dataMap,
                Workers workers) {
+    long startTime = CommMetrics.now();
+    boolean isSuccess = joinTables(contextName,
+        operationName, dynamicTable, partitioner,
+        staticTable, dataMap, workers);
+    CommMetrics.get().recordCollective("join",
+        contextName, operationName, startTime);
+    return isSuccess;
+  }
+
+  /**
+   * Join the dynamic table with the static
+   * table
+   */
+  private static <P1 extends Simple, P2 extends Simple>
+  boolean joinTables(String contextName,
+                     String operationName,
+                     Table<P1> dynamicTable,
+                     Partitioner partitioner,
+                     Table<P2> staticTable, DataMap dataMap,
+                     Workers workers) {
     if (workers.isTheOnlyWorker()) {
       return true;
     }
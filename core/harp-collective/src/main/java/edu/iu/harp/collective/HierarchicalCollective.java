@@ -0,0 +1,622 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.collective;
+
+import edu.iu.harp.client.DataSender;
+import edu.iu.harp.io.Constant;
+import edu.iu.harp.io.Data;
+import edu.iu.harp.io.DataMap;
+import edu.iu.harp.io.DataType;
+import edu.iu.harp.io.DataUtil;
+import edu.iu.harp.io.IOUtil;
+import edu.iu.harp.metrics.CommMetrics;
+import edu.iu.harp.partition.Partition;
+import edu.iu.harp.partition.PartitionUtil;
+import edu.iu.harp.partition.Table;
+import edu.iu.harp.resource.Simple;
+import edu.iu.harp.resource.Transferable;
+import edu.iu.harp.worker.WorkerInfo;
+import edu.iu.harp.worker.Workers;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import org.apache.log4j.Logger;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/*******************************************************
+ * Topology-aware collective communication. The
+ * workers are grouped by rack or by node, and the
+ * worker with the smallest ID in each group is
+ * the leader. Data is first collected within the
+ * groups, then exchanged among the leaders, and
+ * then sent back to the group members, so only
+ * the leaders communicate across the groups.
+ ******************************************************/
+public class HierarchicalCollective {
+
+  @SuppressWarnings("unused")
+  private static final Logger LOG =
+      Logger.getLogger(HierarchicalCollective.class);
+
+  /**
+   * The phases, used as the partition IDs of the
+   * Data. The members send to the leader in
+   * GATHER, the leaders send to each other in
+   * LEADER and the leader sends to the members in
+   * SCATTER.
+   */
+  private static final int GATHER = 0;
+  private static final int LEADER = 1;
+  private static final int SCATTER = 2;
+
+  /**
+   * Group the workers at the given level. The
+   * groups are ordered by their smallest worker
+   * ID, and the worker IDs in each group are in
+   * ascending order.
+   *
+   * @param workers the Workers
+   * @param level   the level of the groups
+   * @return the groups of worker IDs
+   */
+  public static List<IntArrayList> getGroups(
+      Workers workers, HierarchyLevel level) {
+    Map<String, IntArrayList> groups =
+        new LinkedHashMap<>();
+    for (WorkerInfo info : workers
+        .getWorkerInfoList()) {
+      String key;
+      if (level == HierarchyLevel.NODE) {
+        key = info.getNode();
+      } else {
+        key = "#" + info.getRack();
+      }
+      IntArrayList group = groups.get(key);
+      if (group == null) {
+        group = new IntArrayList();
+        groups.put(key, group);
+      }
+      group.add(info.getID());
+    }
+    return new LinkedList<>(groups.values());
+  }
+
+  /**
+   * Get the group containing the worker
+   *
+   * @param groups   the groups of worker IDs
+   * @param workerID the worker ID
+   * @return the group of the worker
+   */
+  private static IntArrayList getGroup(
+      List<IntArrayList> groups, int workerID) {
+    for (IntArrayList group : groups) {
+      if (group.contains(workerID)) {
+        return group;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Hierarchical allreduce. The members send the
+   * tables to the leaders to combine, the leaders
+   * pass the combined tables around the ring of
+   * leaders, and every leader sends the result
+   * back to its members, which replace their
+   * tables with it.
+   *
+   * @param contextName   the name of the context
+   * @param operationName the name of the operation
+   * @param table         the data Table
+   * @param level         the level of the groups
+   * @param dataMap       the DataMap
+   * @param workers       the Workers
+   * @return true if succeeded, false otherwise
+   */
+  public static <P extends Simple> boolean
+  allreduce(final String contextName,
+            final String operationName,
+            final Table<P> table,
+            final HierarchyLevel level,
+            final DataMap dataMap,
+            final Workers workers) {
+    long startTime = CommMetrics.now();
+    boolean isSuccess = allreduceTable(contextName,
+        operationName, table, level, dataMap, workers);
+    CommMetrics.get().recordCollective("hierarchical-allreduce",
+        contextName, operationName, startTime);
+    return isSuccess;
+  }
+
+  /**
+   * Allreduce through the group leaders
+   */
+  private static <P extends Simple> boolean
+  allreduceTable(final String contextName,
+                 final String operationName,
+                 final Table<P> table,
+                 final HierarchyLevel level,
+                 final DataMap dataMap,
+                 final Workers workers) {
+    if (workers.isTheOnlyWorker()) {
+      return true;
+    }
+    int selfID = workers.getSelfID();
+    List<IntArrayList> groups =
+        getGroups(workers, level);
+    IntArrayList group = getGroup(groups, selfID);
+    int leaderID = group.getInt(0);
+    Int2ObjectOpenHashMap<Data> cachedDataMap =
+        new Int2ObjectOpenHashMap<>();
+    boolean isFailed = false;
+    if (selfID != leaderID) {
+      send(contextName, operationName,
+          new LinkedList<>(table.getPartitions()),
+          GATHER, leaderID, workers);
+      Data recvData = waitData(contextName,
+          operationName, SCATTER, leaderID,
+          dataMap, workers, cachedDataMap);
+      if (recvData == null) {
+        isFailed = true;
+      } else {
+        recvData.releaseHeadArray();
+        recvData.releaseBodyArray();
+        // Replace the table with the result
+        table.release();
+        PartitionUtil.addPartitionsToTable(
+            recvData.getBody(), table);
+      }
+    } else {
+      // Combine the tables in the group
+      for (int i = 1; i < group.size(); i++) {
+        Data recvData = waitData(contextName,
+            operationName, GATHER, group.getInt(i),
+            dataMap, workers, cachedDataMap);
+        if (recvData == null) {
+          isFailed = true;
+          break;
+        }
+        recvData.releaseHeadArray();
+        recvData.releaseBodyArray();
+        PartitionUtil.addPartitionsToTable(
+            recvData.getBody(), table);
+      }
+      // Pass the tables around the leaders and
+      // combine the received ones
+      if (!isFailed && groups.size() > 1) {
+        isFailed = !exchangeAmongLeaders(
+            contextName, operationName, table,
+            groups, dataMap, workers, cachedDataMap,
+            true);
+      }
+      if (!isFailed) {
+        scatterToGroup(contextName, operationName,
+            new LinkedList<>(table.getPartitions()),
+            group, workers);
+      }
+    }
+    if (isFailed) {
+      // Release
+      for (Data d : cachedDataMap.values()) {
+        d.release();
+      }
+      cachedDataMap = null;
+      table.release();
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Hierarchical broadcast. The broadcasting
+   * worker sends the table to the leaders of the
+   * other groups and to the members of its own
+   * group, the leaders forward it to their
+   * members.
+   *
+   * @param contextName   the name of the context
+   * @param operationName the name of the operation
+   * @param table         the data Table
+   * @param bcastWorkerID the worker which broadcasts
+   * @param level         the level of the groups
+   * @param dataMap       the DataMap
+   * @param workers       the Workers
+   * @return true if succeeded, false otherwise
+   */
+  public static <P extends Simple> boolean
+  broadcast(String contextName,
+            String operationName, Table<P> table,
+            int bcastWorkerID, HierarchyLevel level,
+            DataMap dataMap, Workers workers) {
+    long startTime = CommMetrics.now();
+    boolean isSuccess = broadcastTable(contextName,
+        operationName, table, bcastWorkerID, level,
+        dataMap, workers);
+    CommMetrics.get().recordCollective("hierarchical-broadcast",
+        contextName, operationName, startTime);
+    return isSuccess;
+  }
+
+  /**
+   * Broadcast through the group leaders
+   */
+  private static <P extends Simple> boolean
+  broadcastTable(String contextName,
+                 String operationName, Table<P> table,
+                 int bcastWorkerID, HierarchyLevel level,
+                 DataMap dataMap, Workers workers) {
+    if (workers.isTheOnlyWorker()) {
+      return true;
+    }
+    int selfID = workers.getSelfID();
+    List<IntArrayList> groups =
+        getGroups(workers, level);
+    IntArrayList group = getGroup(groups, selfID);
+    if (selfID == bcastWorkerID) {
+      LinkedList<Transferable> ownedPartitions =
+          new LinkedList<>(table.getPartitions());
+      Data sendData = new Data(
+          DataType.PARTITION_LIST, contextName,
+          bcastWorkerID, ownedPartitions,
+          DataUtil
+              .getNumTransListBytes(ownedPartitions),
+          operationName, LEADER);
+      for (IntArrayList g : groups) {
+        if (g != group) {
+          sendData(sendData, g.getInt(0), workers);
+        }
+      }
+      for (int i = 0; i < group.size(); i++) {
+        if (group.getInt(i) != selfID) {
+          sendData(sendData, group.getInt(i),
+              workers);
+        }
+      }
+      sendData.releaseHeadArray();
+      sendData.releaseBodyArray();
+      return true;
+    }
+    // Every other worker receives once
+    Data recvData = IOUtil.waitAndGet(dataMap,
+        contextName, operationName);
+    if (recvData == null) {
+      return false;
+    }
+    // Leaders of the other groups forward
+    if (selfID == group.getInt(0)
+        && !group.contains(bcastWorkerID)) {
+      for (int i = 1; i < group.size(); i++) {
+        sendData(recvData, group.getInt(i),
+            workers);
+      }
+    }
+    recvData.releaseHeadArray();
+    recvData.releaseBodyArray();
+    PartitionUtil.addPartitionsToTable(
+        recvData.getBody(), table);
+    return true;
+  }
+
+  /**
+   * Hierarchical allgather. The members send the
+   * tables to the leaders, the leaders pass the
+   * tables of their groups around the ring of
+   * leaders, and every leader sends each member
+   * the partitions the member does not have.
+   *
+   * @param contextName   the name of the context
+   * @param operationName the name of the operation
+   * @param table         the data Table
+   * @param level         the level of the groups
+   * @param dataMap       the DataMap
+   * @param workers       the Workers
+   * @return true if succeeded, false otherwise
+   */
+  public static <P extends Simple> boolean
+  allgather(final String contextName,
+            final String operationName,
+            final Table<P> table,
+            final HierarchyLevel level,
+            final DataMap dataMap,
+            final Workers workers) {
+    long startTime = CommMetrics.now();
+    boolean isSuccess = allgatherTable(contextName,
+        operationName, table, level, dataMap, workers);
+    CommMetrics.get().recordCollective("hierarchical-allgather",
+        contextName, operationName, startTime);
+    return isSuccess;
+  }
+
+  /**
+   * Allgather through the group leaders
+   */
+  private static <P extends Simple> boolean
+  allgatherTable(final String contextName,
+                 final String operationName,
+                 final Table<P> table,
+                 final HierarchyLevel level,
+                 final DataMap dataMap,
+                 final Workers workers) {
+    if (workers.isTheOnlyWorker()) {
+      return true;
+    }
+    int selfID = workers.getSelfID();
+    List<IntArrayList> groups =
+        getGroups(workers, level);
+    IntArrayList group = getGroup(groups, selfID);
+    int leaderID = group.getInt(0);
+    Int2ObjectOpenHashMap<Data> cachedDataMap =
+        new Int2ObjectOpenHashMap<>();
+    boolean isFailed = false;
+    if (selfID != leaderID) {
+      send(contextName, operationName,
+          new LinkedList<>(table.getPartitions()),
+          GATHER, leaderID, workers);
+      Data recvData = waitData(contextName,
+          operationName, SCATTER, leaderID,
+          dataMap, workers, cachedDataMap);
+      if (recvData == null) {
+        isFailed = true;
+      } else {
+        recvData.releaseHeadArray();
+        recvData.releaseBodyArray();
+        PartitionUtil.addPartitionsToTable(
+            recvData.getBody(), table);
+      }
+    } else {
+      // The partition IDs owned by each member
+      Int2ObjectOpenHashMap<IntOpenHashSet> memberPartitionIDs =
+          new Int2ObjectOpenHashMap<>();
+      for (int i = 1; i < group.size(); i++) {
+        int memberID = group.getInt(i);
+        Data recvData = waitData(contextName,
+            operationName, GATHER, memberID,
+            dataMap, workers, cachedDataMap);
+        if (recvData == null) {
+          isFailed = true;
+          break;
+        }
+        recvData.releaseHeadArray();
+        recvData.releaseBodyArray();
+        IntOpenHashSet partitionIDs =
+            new IntOpenHashSet();
+        for (Transferable obj : recvData
+            .getBody()) {
+          partitionIDs.add(((Partition<?>) obj).id());
+        }
+        memberPartitionIDs.put(memberID,
+            partitionIDs);
+        PartitionUtil.addPartitionsToTable(
+            recvData.getBody(), table);
+      }
+      if (!isFailed && groups.size() > 1) {
+        isFailed = !exchangeAmongLeaders(
+            contextName, operationName, table,
+            groups, dataMap, workers, cachedDataMap,
+            false);
+      }
+      if (!isFailed) {
+        for (int i = 1; i < group.size(); i++) {
+          int memberID = group.getInt(i);
+          IntOpenHashSet partitionIDs =
+              memberPartitionIDs.get(memberID);
+          List<Transferable> partitions =
+              new LinkedList<>();
+          for (Partition<P> partition : table
+              .getPartitions()) {
+            if (!partitionIDs
+                .contains(partition.id())) {
+              partitions.add(partition);
+            }
+          }
+          send(contextName, operationName,
+              partitions, SCATTER, memberID, workers);
+        }
+      }
+    }
+    if (isFailed) {
+      for (Data d : cachedDataMap.values()) {
+        d.release();
+      }
+    }
+    return !isFailed;
+  }
+
+  /**
+   * Pass the table of each leader around the ring
+   * of leaders. Each received table is forwarded
+   * to the next leader unless the next leader is
+   * its origin, and then added to the local
+   * table.
+   *
+   * @param contextName   the name of the context
+   * @param operationName the name of the operation
+   * @param table         the data Table
+   * @param groups        the groups of worker IDs
+   * @param dataMap       the DataMap
+   * @param workers       the Workers
+   * @param cachedDataMap the Data received in
+   *                      advance
+   * @param isCombined    if the received tables
+   *                      are combined into the
+   *                      local table as they come,
+   *                      otherwise they are added
+   *                      after all are received
+   * @return true if succeeded, false otherwise
+   */
+  private static <P extends Simple> boolean
+  exchangeAmongLeaders(String contextName,
+                       String operationName, Table<P> table,
+                       List<IntArrayList> groups,
+                       DataMap dataMap, Workers workers,
+                       Int2ObjectOpenHashMap<Data> cachedDataMap,
+                       boolean isCombined) {
+    int selfID = workers.getSelfID();
+    IntArrayList leaderIDs = new IntArrayList();
+    for (IntArrayList group : groups) {
+      leaderIDs.add(group.getInt(0));
+    }
+    int numLeaders = leaderIDs.size();
+    int selfPos = leaderIDs.indexOf(selfID);
+    int nextLeaderID =
+        leaderIDs.getInt((selfPos + 1) % numLeaders);
+    send(contextName, operationName,
+        new LinkedList<>(table.getPartitions()),
+        LEADER, nextLeaderID, workers);
+    List<Transferable> partitions =
+        new LinkedList<>();
+    for (int i = 1; i < numLeaders; i++) {
+      int originID = leaderIDs.getInt(
+          (selfPos - i + numLeaders) % numLeaders);
+      Data recvData = waitData(contextName,
+          operationName, LEADER, originID, dataMap,
+          workers, cachedDataMap);
+      if (recvData == null) {
+        DataUtil.releaseTransList(partitions);
+        return false;
+      }
+      if (originID != nextLeaderID) {
+        sendData(recvData, nextLeaderID, workers);
+      }
+      recvData.releaseHeadArray();
+      recvData.releaseBodyArray();
+      if (isCombined) {
+        PartitionUtil.addPartitionsToTable(
+            recvData.getBody(), table);
+      } else {
+        partitions.addAll(recvData.getBody());
+      }
+    }
+    if (!isCombined) {
+      PartitionUtil.addPartitionsToTable(
+          partitions, table);
+    }
+    return true;
+  }
+
+  /**
+   * Send the partitions to the members of the
+   * group
+   *
+   * @param contextName   the name of the context
+   * @param operationName the name of the operation
+   * @param partitions    the partitions
+   * @param group         the group of worker IDs
+   * @param workers       the Workers
+   */
+  private static void scatterToGroup(
+      String contextName, String operationName,
+      List<Transferable> partitions,
+      IntArrayList group, Workers workers) {
+    if (group.size() < 2) {
+      return;
+    }
+    Data sendData = new Data(
+        DataType.PARTITION_LIST, contextName,
+        workers.getSelfID(), partitions,
+        DataUtil.getNumTransListBytes(partitions),
+        operationName, SCATTER);
+    for (int i = 1; i < group.size(); i++) {
+      sendData(sendData, group.getInt(i), workers);
+    }
+    sendData.releaseHeadArray();
+    sendData.releaseBodyArray();
+  }
+
+  /**
+   * Send the partitions to a worker
+   *
+   * @param contextName   the name of the context
+   * @param operationName the name of the operation
+   * @param partitions    the partitions
+   * @param phase         the phase
+   * @param destID        the destination worker
+   * @param workers       the Workers
+   */
+  private static void send(String contextName,
+                           String operationName,
+                           List<Transferable> partitions,
+                           int phase, int destID,
+                           Workers workers) {
+    Data sendData = new Data(
+        DataType.PARTITION_LIST, contextName,
+        workers.getSelfID(), partitions,
+        DataUtil.getNumTransListBytes(partitions),
+        operationName, phase);
+    sendData(sendData, destID, workers);
+    sendData.releaseHeadArray();
+    sendData.releaseBodyArray();
+  }
+
+  /**
+   * Send the Data to a worker, the encoded arrays
+   * are kept for sending again
+   *
+   * @param data    the Data
+   * @param destID  the destination worker
+   * @param workers the Workers
+   */
+  private static void sendData(Data data,
+                               int destID, Workers workers) {
+    DataSender sender = new DataSender(data,
+        destID, workers, Constant.SEND_DECODE);
+    sender.execute();
+  }
+
+  /**
+   * Wait for the Data of the phase from the
+   * worker. The Data of other phases or workers
+   * received in the meantime are cached.
+   *
+   * @param contextName   the name of the context
+   * @param operationName the name of the operation
+   * @param phase         the phase
+   * @param workerID      the origin worker
+   * @param dataMap       the DataMap
+   * @param workers       the Workers
+   * @param cachedDataMap the cached Data
+   * @return the Data, null if failed
+   */
+  private static Data waitData(String contextName,
+                               String operationName, int phase,
+                               int workerID, DataMap dataMap,
+                               Workers workers,
+                               Int2ObjectOpenHashMap<Data> cachedDataMap) {
+    int numWorkers = workers.getNumWorkers();
+    Data recvData = cachedDataMap
+        .remove(phase * numWorkers + workerID);
+    while (recvData == null) {
+      Data data = IOUtil.waitAndGet(dataMap,
+          contextName, operationName);
+      if (data == null) {
+        return null;
+      } else if (data.getPartitionID() == phase
+          && data.getWorkerID() == workerID) {
+        recvData = data;
+      } else {
+        cachedDataMap.put(data.getPartitionID()
+            * numWorkers + data.getWorkerID(), data);
+      }
+    }
+    return recvData;
+  }
+}
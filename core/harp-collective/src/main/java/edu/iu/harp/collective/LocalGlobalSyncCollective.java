@@ -27,6 +27,7 @@ import edu.iu.harp.io.DataStatus;
 import edu.iu.harp.io.DataType;
 import edu.iu.harp.io.DataUtil;
 import edu.iu.harp.io.EventQueue;
+import edu.iu.harp.metrics.CommMetrics;
 import edu.iu.harp.partition.Partition;
 import edu.iu.harp.partition.PartitionUtil;
 import edu.iu.harp.partition.Partitioner;
@@ -188,9 +189,13 @@ public class LocalGlobalSyncCollective {
       Table<P> localTable, Table<P> globalTable,
       boolean useBcast, DataMap dataMap,
       Workers workers) {
-    return pullGlobalToLocal(contextName,
-        operationName, localTable, globalTable,
-        useBcast, dataMap, workers);
+    long startTime = CommMetrics.now();
+    boolean isSuccess = pullGlobalToLocal(
+        contextName, operationName, localTable,
+        globalTable, useBcast, dataMap, workers);
+    CommMetrics.get().recordCollective("pull",
+        contextName, operationName, startTime);
+    return isSuccess;
   }
 
   /**
@@ -212,9 +217,13 @@ public class LocalGlobalSyncCollective {
                Table<P> localTable, Table<P> globalTable,
                PT partitioner, DataMap dataMap,
                Workers workers) {
-    return pushLocalToGlobal(contextName,
-        operationName, localTable, globalTable,
-        partitioner, dataMap, workers);
+    long startTime = CommMetrics.now();
+    boolean isSuccess = pushLocalToGlobal(
+        contextName, operationName, localTable,
+        globalTable, partitioner, dataMap, workers);
+    CommMetrics.get().recordCollective("push",
+        contextName, operationName, startTime);
+    return isSuccess;
   }
 
   /**
@@ -712,6 +721,24 @@ public class LocalGlobalSyncCollective {
       final String operationName,
       Table<P> globalTable, Int2IntMap rotateMap,
       DataMap dataMap, Workers workers) {
+    long startTime = CommMetrics.now();
+    boolean isSuccess = rotateTable(contextName,
+        operationName, globalTable, rotateMap, dataMap,
+        workers);
+    CommMetrics.get().recordCollective("rotate",
+        contextName, operationName, startTime);
+    return isSuccess;
+  }
+
+  /**
+   * Rotate the partitions to the next worker or
+   * by the map
+   */
+  private static <P extends Simple> boolean rotateTable(
+      final String contextName,
+      final String operationName,
+      Table<P> globalTable, Int2IntMap rotateMap,
+      DataMap dataMap, Workers workers) {
     if (workers.isTheOnlyWorker()) {
       return true;
     }
@@ -26,6 +26,7 @@ import edu.iu.harp.io.DataType;
 import edu.iu.harp.io.DataUtil;
 import edu.iu.harp.io.EventQueue;
 import edu.iu.harp.io.IOUtil;
+import edu.iu.harp.metrics.CommMetrics;
 import edu.iu.harp.partition.Partition;
 import edu.iu.harp.partition.PartitionUtil;
 import edu.iu.harp.partition.Table;
@@ -154,6 +155,25 @@ public class ReduceCollective {
       final int reduceWorkerID,
       final DataMap dataMap,
       final Workers workers) {
+    long startTime = CommMetrics.now();
+    boolean isSuccess = reduceTable(contextName,
+        operationName, table, reduceWorkerID, dataMap,
+        workers);
+    CommMetrics.get().recordCollective("reduce",
+        contextName, operationName, startTime);
+    return isSuccess;
+  }
+
+  /**
+   * Reduce the partitions to the worker
+   */
+  private static <P extends Simple> boolean reduceTable(
+      final String contextName,
+      final String operationName,
+      final Table<P> table,
+      final int reduceWorkerID,
+      final DataMap dataMap,
+      final Workers workers) {
     if (workers.isTheOnlyWorker()) {
       return true;
     }
@@ -22,6 +22,7 @@ import edu.iu.harp.io.Constant;
 import edu.iu.harp.io.DataMap;
 import edu.iu.harp.io.DataUtil;
 import edu.iu.harp.io.EventQueue;
+import edu.iu.harp.metrics.CommMetrics;
 import edu.iu.harp.partition.Partition;
 import edu.iu.harp.partition.PartitionFunction;
 import edu.iu.harp.partition.PartitionUtil;
@@ -156,6 +157,24 @@ public class RegroupCollective {
                  String operationName, Table<P> table,
                  Partitioner partitioner, DataMap dataMap,
                  Workers workers) {
+    long startTime = CommMetrics.now();
+    boolean isSuccess = regroupTable(contextName,
+        operationName, table, partitioner, dataMap,
+        workers);
+    CommMetrics.get().recordCollective("regroup",
+        contextName, operationName, startTime);
+    return isSuccess;
+  }
+
+  /**
+   * Regroup the partitions and combine the
+   * partitions received
+   */
+  private static <P extends Simple> boolean
+  regroupTable(final String contextName,
+               String operationName, Table<P> table,
+               Partitioner partitioner, DataMap dataMap,
+               Workers workers) {
     if (workers.isTheOnlyWorker()) {
       return true;
     }
@@ -270,6 +289,24 @@ public class RegroupCollective {
                     String operationName, Table<P> table,
                     PT partitioner, PF function,
                     DataMap dataMap, Workers workers) {
+    long startTime = CommMetrics.now();
+    boolean isSuccess = aggregateTable(contextName,
+        operationName, table, partitioner, function,
+        dataMap, workers);
+    CommMetrics.get().recordCollective("aggregate",
+        contextName, operationName, startTime);
+    return isSuccess;
+  }
+
+  /**
+   * Regroup, aggregate and allgather the
+   * partitions
+   */
+  private static <P extends Simple, PF extends PartitionFunction<P>, PT extends Partitioner>
+  boolean aggregateTable(String contextName,
+                         String operationName, Table<P> table,
+                         PT partitioner, PF function,
+                         DataMap dataMap, Workers workers) {
     boolean isSuccess = false;
     long time1 = System.currentTimeMillis();
     isSuccess = regroupAggregate(contextName,
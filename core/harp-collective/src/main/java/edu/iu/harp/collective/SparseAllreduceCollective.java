@@ -0,0 +1,459 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.collective;
+
+import edu.iu.harp.client.DataSender;
+import edu.iu.harp.io.Constant;
+import edu.iu.harp.io.Data;
+import edu.iu.harp.io.DataMap;
+import edu.iu.harp.io.DataType;
+import edu.iu.harp.io.DataUtil;
+import edu.iu.harp.io.IOUtil;
+import edu.iu.harp.keyval.Int2IntKVPartition;
+import edu.iu.harp.keyval.Int2IntKVTable;
+import edu.iu.harp.keyval.Long2DoubleKVPartition;
+import edu.iu.harp.keyval.Long2DoubleKVTable;
+import edu.iu.harp.keyval.SparseKVBlock;
+import edu.iu.harp.metrics.CommMetrics;
+import edu.iu.harp.partition.Partition;
+import edu.iu.harp.resource.Transferable;
+import edu.iu.harp.resource.Writable;
+import edu.iu.harp.worker.Workers;
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+import org.apache.log4j.Logger;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+/*******************************************************
+ * Allreduce for key-value tables which exchanges
+ * only the keys in the tables, as SparseKVBlocks
+ * with sorted keys and values instead of a
+ * Writable per partition. The table should hold
+ * only the keys updated since the last allreduce.
+ * <p>
+ * The key space is cut into chunks of
+ * 2^CHUNK_BITS keys, dealt to the workers in
+ * turn. Each worker sends the keys of a chunk to
+ * its owner, which combines them with the
+ * combiner of the table (reduce-scatter). Then
+ * the reduced keys of each owner are passed
+ * around the ring (allgather). A worker receives
+ * each key at most twice instead of once from
+ * every other worker.
+ ******************************************************/
+public class SparseAllreduceCollective {
+
+  @SuppressWarnings("unused")
+  private static final Logger LOG = Logger
+      .getLogger(SparseAllreduceCollective.class);
+
+  /** The keys of a chunk have the same owner */
+  static final int CHUNK_BITS = 10;
+
+  /**
+   * Allreduce the key-value pairs of a
+   * Long2DoubleKVTable
+   *
+   * @param contextName   the name of the context
+   * @param operationName the name of the operation
+   * @param table         the table
+   * @param dataMap       the DataMap
+   * @param workers       the Workers
+   * @return true if succeeded, false otherwise
+   */
+  public static boolean allreduce(
+      final String contextName,
+      final String operationName,
+      final Long2DoubleKVTable table,
+      final DataMap dataMap, final Workers workers) {
+    long startTime = CommMetrics.now();
+    boolean isSuccess = allreduceTable(contextName,
+        operationName, table, dataMap, workers);
+    CommMetrics.get().recordCollective("sparse-allreduce",
+        contextName, operationName, startTime);
+    return isSuccess;
+  }
+
+  /**
+   * Allreduce the pairs of the
+   * Long2DoubleKVTable
+   */
+  private static boolean allreduceTable(
+      final String contextName,
+      final String operationName,
+      final Long2DoubleKVTable table,
+      final DataMap dataMap, final Workers workers) {
+    if (workers.isTheOnlyWorker()) {
+      return true;
+    }
+    int numWorkers = workers.getNumWorkers();
+    int selfID = workers.getSelfID();
+    // Split the local pairs by the owners and
+    // keep only the owned ones in the table
+    long[][] keys =
+        splitKeys(getKeys(table), numWorkers);
+    SparseKVBlock[] blocks =
+        new SparseKVBlock[numWorkers];
+    for (int i = 0; i < numWorkers; i++) {
+      blocks[i] = newBlock(table, keys[i]);
+    }
+    for (Partition<Long2DoubleKVPartition> partition : table
+        .getPartitions()) {
+      ObjectIterator<Long2DoubleMap.Entry> iterator =
+          partition.get().getKVMap()
+              .long2DoubleEntrySet().fastIterator();
+      while (iterator.hasNext()) {
+        if (getOwnerID(iterator.next().getLongKey(),
+            numWorkers) != selfID) {
+          iterator.remove();
+        }
+      }
+    }
+    List<Transferable> recvBlocks = reduceScatter(
+        contextName, operationName, blocks, dataMap,
+        workers);
+    if (recvBlocks == null) {
+      return false;
+    }
+    addBlocks(table, recvBlocks);
+    DataUtil.releaseTransList(recvBlocks);
+    // Gather the reduced pairs of the owners
+    List<Transferable> reducedBlocks = allgather(
+        contextName, operationName,
+        newBlock(table, getKeys(table)), dataMap,
+        workers);
+    if (reducedBlocks == null) {
+      return false;
+    }
+    // The first block is the local one
+    addBlocks(table, reducedBlocks.subList(1,
+        reducedBlocks.size()));
+    DataUtil.releaseTransList(reducedBlocks);
+    return true;
+  }
+
+  /**
+   * Get the keys of the Long2DoubleKVTable in
+   * ascending order
+   */
+  private static long[] getKeys(
+      Long2DoubleKVTable table) {
+    int size = 0;
+    for (Partition<Long2DoubleKVPartition> partition : table
+        .getPartitions()) {
+      size += partition.get().size();
+    }
+    long[] keys = new long[size];
+    int i = 0;
+    for (Partition<Long2DoubleKVPartition> partition : table
+        .getPartitions()) {
+      ObjectIterator<Long2DoubleMap.Entry> iterator =
+          partition.get().getKVMap()
+              .long2DoubleEntrySet().fastIterator();
+      while (iterator.hasNext()) {
+        keys[i++] = iterator.next().getLongKey();
+      }
+    }
+    Arrays.sort(keys);
+    return keys;
+  }
+
+  /**
+   * Create a block with the sorted keys and their
+   * values in the Long2DoubleKVTable
+   */
+  private static SparseKVBlock newBlock(
+      Long2DoubleKVTable table, long[] keys) {
+    double[] vals = new double[keys.length];
+    for (int i = 0; i < keys.length; i++) {
+      vals[i] = table.getVal(keys[i]);
+    }
+    SparseKVBlock block =
+        Writable.create(SparseKVBlock.class);
+    block.set(keys, vals, keys.length);
+    return block;
+  }
+
+  /**
+   * Combine the pairs in the blocks into the
+   * Long2DoubleKVTable
+   */
+  private static void addBlocks(
+      Long2DoubleKVTable table,
+      List<Transferable> blocks) {
+    for (Transferable obj : blocks) {
+      SparseKVBlock recvBlock = (SparseKVBlock) obj;
+      long[] recvKeys = recvBlock.getKeys();
+      double[] recvVals = recvBlock.getDoubleVals();
+      for (int i = 0; i < recvBlock.size(); i++) {
+        table.addKeyVal(recvKeys[i], recvVals[i]);
+      }
+    }
+  }
+
+  /**
+   * Allreduce the key-value pairs of an
+   * Int2IntKVTable
+   *
+   * @param contextName   the name of the context
+   * @param operationName the name of the operation
+   * @param table         the table
+   * @param dataMap       the DataMap
+   * @param workers       the Workers
+   * @return true if succeeded, false otherwise
+   */
+  public static boolean allreduce(
+      final String contextName,
+      final String operationName,
+      final Int2IntKVTable table,
+      final DataMap dataMap, final Workers workers) {
+    long startTime = CommMetrics.now();
+    boolean isSuccess = allreduceTable(contextName,
+        operationName, table, dataMap, workers);
+    CommMetrics.get().recordCollective("sparse-allreduce",
+        contextName, operationName, startTime);
+    return isSuccess;
+  }
+
+  /**
+   * Allreduce the pairs of the Int2IntKVTable
+   */
+  private static boolean allreduceTable(
+      final String contextName,
+      final String operationName,
+      final Int2IntKVTable table,
+      final DataMap dataMap, final Workers workers) {
+    if (workers.isTheOnlyWorker()) {
+      return true;
+    }
+    int numWorkers = workers.getNumWorkers();
+    int selfID = workers.getSelfID();
+    long[][] keys =
+        splitKeys(getKeys(table), numWorkers);
+    SparseKVBlock[] blocks =
+        new SparseKVBlock[numWorkers];
+    for (int i = 0; i < numWorkers; i++) {
+      blocks[i] = newBlock(table, keys[i]);
+    }
+    for (Partition<Int2IntKVPartition> partition : table
+        .getPartitions()) {
+      ObjectIterator<Int2IntMap.Entry> iterator =
+          partition.get().getKVMap()
+              .int2IntEntrySet().fastIterator();
+      while (iterator.hasNext()) {
+        if (getOwnerID(iterator.next().getIntKey(),
+            numWorkers) != selfID) {
+          iterator.remove();
+        }
+      }
+    }
+    List<Transferable> recvBlocks = reduceScatter(
+        contextName, operationName, blocks, dataMap,
+        workers);
+    if (recvBlocks == null) {
+      return false;
+    }
+    addBlocks(table, recvBlocks);
+    DataUtil.releaseTransList(recvBlocks);
+    List<Transferable> reducedBlocks = allgather(
+        contextName, operationName,
+        newBlock(table, getKeys(table)), dataMap,
+        workers);
+    if (reducedBlocks == null) {
+      return false;
+    }
+    addBlocks(table, reducedBlocks.subList(1,
+        reducedBlocks.size()));
+    DataUtil.releaseTransList(reducedBlocks);
+    return true;
+  }
+
+  /**
+   * Get the keys of the Int2IntKVTable in
+   * ascending order
+   */
+  private static long[] getKeys(
+      Int2IntKVTable table) {
+    int size = 0;
+    for (Partition<Int2IntKVPartition> partition : table
+        .getPartitions()) {
+      size += partition.get().size();
+    }
+    long[] keys = new long[size];
+    int i = 0;
+    for (Partition<Int2IntKVPartition> partition : table
+        .getPartitions()) {
+      ObjectIterator<Int2IntMap.Entry> iterator =
+          partition.get().getKVMap()
+              .int2IntEntrySet().fastIterator();
+      while (iterator.hasNext()) {
+        keys[i++] = iterator.next().getIntKey();
+      }
+    }
+    Arrays.sort(keys);
+    return keys;
+  }
+
+  /**
+   * Create a block with the sorted keys and their
+   * values in the Int2IntKVTable
+   */
+  private static SparseKVBlock newBlock(
+      Int2IntKVTable table, long[] keys) {
+    int[] vals = new int[keys.length];
+    for (int i = 0; i < keys.length; i++) {
+      vals[i] = table.getVal((int) keys[i]);
+    }
+    SparseKVBlock block =
+        Writable.create(SparseKVBlock.class);
+    block.set(keys, vals, keys.length);
+    return block;
+  }
+
+  /**
+   * Combine the pairs in the blocks into the
+   * Int2IntKVTable
+   */
+  private static void addBlocks(
+      Int2IntKVTable table,
+      List<Transferable> blocks) {
+    for (Transferable obj : blocks) {
+      SparseKVBlock recvBlock = (SparseKVBlock) obj;
+      long[] recvKeys = recvBlock.getKeys();
+      int[] recvVals = recvBlock.getIntVals();
+      for (int i = 0; i < recvBlock.size(); i++) {
+        table.addKeyVal((int) recvKeys[i],
+            recvVals[i]);
+      }
+    }
+  }
+
+  /**
+   * Get the worker owning the chunk of the key
+   *
+   * @param key        the key
+   * @param numWorkers the number of workers
+   * @return the worker ID
+   */
+  static int getOwnerID(long key, int numWorkers) {
+    return (int) Math.floorMod(key >> CHUNK_BITS,
+        (long) numWorkers);
+  }
+
+  /**
+   * Split the sorted keys by their owners
+   *
+   * @param keys       the keys in ascending order
+   * @param numWorkers the number of workers
+   * @return the keys of each worker in ascending
+   *         order
+   */
+  private static long[][] splitKeys(long[] keys,
+      int numWorkers) {
+    int[] sizes = new int[numWorkers];
+    for (long key : keys) {
+      sizes[getOwnerID(key, numWorkers)]++;
+    }
+    long[][] split = new long[numWorkers][];
+    for (int i = 0; i < numWorkers; i++) {
+      split[i] = new long[sizes[i]];
+      sizes[i] = 0;
+    }
+    for (long key : keys) {
+      int ownerID = getOwnerID(key, numWorkers);
+      split[ownerID][sizes[ownerID]++] = key;
+    }
+    return split;
+  }
+
+  /**
+   * Send each block to its owner and receive the
+   * blocks owned by this worker. The pairs of the
+   * local block are still in the table, so all
+   * the blocks given are released.
+   *
+   * @return the blocks received, null if failed
+   */
+  private static List<Transferable> reduceScatter(
+      String contextName, String operationName,
+      SparseKVBlock[] blocks, DataMap dataMap,
+      Workers workers) {
+    String scatterName =
+        operationName + ".reducescatter";
+    int selfID = workers.getSelfID();
+    boolean isSuccess = true;
+    // Start from the next worker so that the
+    // workers do not all send to the same one
+    for (int i = 1; i < blocks.length; i++) {
+      int destID = (selfID + i) % blocks.length;
+      List<Transferable> objs = new LinkedList<>();
+      objs.add(blocks[destID]);
+      Data data = new Data(DataType.SIMPLE_LIST,
+          contextName, selfID, objs,
+          DataUtil.getNumTransListBytes(objs),
+          scatterName);
+      DataSender sender = new DataSender(data,
+          destID, workers, Constant.SEND_DECODE);
+      isSuccess &= sender.execute();
+      data.release();
+    }
+    blocks[selfID].release();
+    if (!isSuccess) {
+      return null;
+    }
+    List<Transferable> recvBlocks =
+        new LinkedList<>();
+    for (int i = 1; i < blocks.length; i++) {
+      Data data = IOUtil.waitAndGet(dataMap,
+          contextName, scatterName);
+      if (data == null) {
+        DataUtil.releaseTransList(recvBlocks);
+        return null;
+      }
+      data.releaseHeadArray();
+      data.releaseBodyArray();
+      recvBlocks.addAll(data.getBody());
+    }
+    return recvBlocks;
+  }
+
+  /**
+   * Gather the blocks of all the workers
+   *
+   * @return the blocks with the local block first,
+   *         null if failed
+   */
+  private static List<Transferable> allgather(
+      String contextName, String operationName,
+      SparseKVBlock block, DataMap dataMap,
+      Workers workers) {
+    List<Transferable> blocks = new LinkedList<>();
+    blocks.add(block);
+    if (Communication.allgather(contextName,
+        operationName + ".allgather", blocks,
+        dataMap, workers)) {
+      return blocks;
+    } else {
+      // The blocks are released on failure
+      return null;
+    }
+  }
+}
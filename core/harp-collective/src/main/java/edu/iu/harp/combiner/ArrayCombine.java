@@ -0,0 +1,369 @@
+package edu.iu.harp.combiner;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The element-wise kernels of the primitive array
+ * combiners. Each operation is a counted loop
+ * without branches, which the JIT compiler turns
+ * into SIMD instructions where the CPU has them
+ * and runs as scalar code elsewhere. MAX and MIN
+ * use selects instead of conditional stores for
+ * this reason. Arrays longer than
+ * PARALLEL_THRESHOLD are split into ranges
+ * combined on the fork-join pool.
+ */
+final class ArrayCombine {
+
+  /** The smallest array combined in parallel */
+  static final int PARALLEL_THRESHOLD = 1 << 18;
+  /** The elements combined by one task */
+  static final int CHUNK_SIZE = 1 << 16;
+
+  private ArrayCombine() {
+  }
+
+  /**
+   * Combine the elements in a range
+   */
+  private interface RangeCombiner {
+    void combine(int from, int to);
+  }
+
+  /**
+   * Split the range in halves until it is small
+   * enough to combine in one task
+   */
+  private static class RangeTask
+      extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final RangeCombiner combiner;
+    private final int from;
+    private final int to;
+
+    RangeTask(RangeCombiner combiner, int from,
+        int to) {
+      this.combiner = combiner;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from <= CHUNK_SIZE) {
+        combiner.combine(from, to);
+      } else {
+        int mid = (from + to) >>> 1;
+        invokeAll(new RangeTask(combiner, from, mid),
+            new RangeTask(combiner, mid, to));
+      }
+    }
+  }
+
+  /**
+   * Combine the first size elements of arr2 into
+   * arr1
+   *
+   * @param operation the operation
+   * @param arr1      the array combined into
+   * @param arr2      the array to combine
+   * @param size      the number of elements
+   */
+  static void combine(Operation operation,
+      byte[] arr1, byte[] arr2, int size) {
+    if (size < PARALLEL_THRESHOLD) {
+      combine(operation, arr1, arr2, 0, size);
+    } else {
+      new RangeTask((from, to) -> combine(
+          operation, arr1, arr2, from, to), 0, size)
+          .invoke();
+    }
+  }
+
+  private static void combine(Operation operation,
+      byte[] arr1, byte[] arr2, int from, int to) {
+    switch (operation) {
+      case SUM:
+        for (int i = from; i < to; i++) {
+          arr1[i] += arr2[i];
+        }
+        break;
+      case MINUS:
+        for (int i = from; i < to; i++) {
+          arr1[i] -= arr2[i];
+        }
+        break;
+      case MAX:
+        for (int i = from; i < to; i++) {
+          arr1[i] = (byte) Math.max(arr1[i], arr2[i]);
+        }
+        break;
+      case MIN:
+        for (int i = from; i < to; i++) {
+          arr1[i] = (byte) Math.min(arr1[i], arr2[i]);
+        }
+        break;
+      case MULTIPLY:
+        for (int i = from; i < to; i++) {
+          arr1[i] *= arr2[i];
+        }
+        break;
+    }
+  }
+
+  /**
+   * Combine the first size elements of arr2 into
+   * arr1
+   *
+   * @param operation the operation
+   * @param arr1      the array combined into
+   * @param arr2      the array to combine
+   * @param size      the number of elements
+   */
+  static void combine(Operation operation,
+      short[] arr1, short[] arr2, int size) {
+    if (size < PARALLEL_THRESHOLD) {
+      combine(operation, arr1, arr2, 0, size);
+    } else {
+      new RangeTask((from, to) -> combine(
+          operation, arr1, arr2, from, to), 0, size)
+          .invoke();
+    }
+  }
+
+  private static void combine(Operation operation,
+      short[] arr1, short[] arr2, int from, int to) {
+    switch (operation) {
+      case SUM:
+        for (int i = from; i < to; i++) {
+          arr1[i] += arr2[i];
+        }
+        break;
+      case MINUS:
+        for (int i = from; i < to; i++) {
+          arr1[i] -= arr2[i];
+        }
+        break;
+      case MAX:
+        for (int i = from; i < to; i++) {
+          arr1[i] = (short) Math.max(arr1[i], arr2[i]);
+        }
+        break;
+      case MIN:
+        for (int i = from; i < to; i++) {
+          arr1[i] = (short) Math.min(arr1[i], arr2[i]);
+        }
+        break;
+      case MULTIPLY:
+        for (int i = from; i < to; i++) {
+          arr1[i] *= arr2[i];
+        }
+        break;
+    }
+  }
+
+  /**
+   * Combine the first size elements of arr2 into
+   * arr1
+   *
+   * @param operation the operation
+   * @param arr1      the array combined into
+   * @param arr2      the array to combine
+   * @param size      the number of elements
+   */
+  static void combine(Operation operation,
+      int[] arr1, int[] arr2, int size) {
+    if (size < PARALLEL_THRESHOLD) {
+      combine(operation, arr1, arr2, 0, size);
+    } else {
+      new RangeTask((from, to) -> combine(
+          operation, arr1, arr2, from, to), 0, size)
+          .invoke();
+    }
+  }
+
+  private static void combine(Operation operation,
+      int[] arr1, int[] arr2, int from, int to) {
+    switch (operation) {
+      case SUM:
+        for (int i = from; i < to; i++) {
+          arr1[i] += arr2[i];
+        }
+        break;
+      case MINUS:
+        for (int i = from; i < to; i++) {
+          arr1[i] -= arr2[i];
+        }
+        break;
+      case MAX:
+        for (int i = from; i < to; i++) {
+          arr1[i] = Math.max(arr1[i], arr2[i]);
+        }
+        break;
+      case MIN:
+        for (int i = from; i < to; i++) {
+          arr1[i] = Math.min(arr1[i], arr2[i]);
+        }
+        break;
+      case MULTIPLY:
+        for (int i = from; i < to; i++) {
+          arr1[i] *= arr2[i];
+        }
+        break;
+    }
+  }
+
+  /**
+   * Combine the first size elements of arr2 into
+   * arr1
+   *
+   * @param operation the operation
+   * @param arr1      the array combined into
+   * @param arr2      the array to combine
+   * @param size      the number of elements
+   */
+  static void combine(Operation operation,
+      long[] arr1, long[] arr2, int size) {
+    if (size < PARALLEL_THRESHOLD) {
+      combine(operation, arr1, arr2, 0, size);
+    } else {
+      new RangeTask((from, to) -> combine(
+          operation, arr1, arr2, from, to), 0, size)
+          .invoke();
+    }
+  }
+
+  private static void combine(Operation operation,
+      long[] arr1, long[] arr2, int from, int to) {
+    switch (operation) {
+      case SUM:
+        for (int i = from; i < to; i++) {
+          arr1[i] += arr2[i];
+        }
+        break;
+      case MINUS:
+        for (int i = from; i < to; i++) {
+          arr1[i] -= arr2[i];
+        }
+        break;
+      case MAX:
+        for (int i = from; i < to; i++) {
+          arr1[i] = Math.max(arr1[i], arr2[i]);
+        }
+        break;
+      case MIN:
+        for (int i = from; i < to; i++) {
+          arr1[i] = Math.min(arr1[i], arr2[i]);
+        }
+        break;
+      case MULTIPLY:
+        for (int i = from; i < to; i++) {
+          arr1[i] *= arr2[i];
+        }
+        break;
+    }
+  }
+
+  /**
+   * Combine the first size elements of arr2 into
+   * arr1
+   *
+   * @param operation the operation
+   * @param arr1      the array combined into
+   * @param arr2      the array to combine
+   * @param size      the number of elements
+   */
+  static void combine(Operation operation,
+      float[] arr1, float[] arr2, int size) {
+    if (size < PARALLEL_THRESHOLD) {
+      combine(operation, arr1, arr2, 0, size);
+    } else {
+      new RangeTask((from, to) -> combine(
+          operation, arr1, arr2, from, to), 0, size)
+          .invoke();
+    }
+  }
+
+  private static void combine(Operation operation,
+      float[] arr1, float[] arr2, int from, int to) {
+    switch (operation) {
+      case SUM:
+        for (int i = from; i < to; i++) {
+          arr1[i] += arr2[i];
+        }
+        break;
+      case MINUS:
+        for (int i = from; i < to; i++) {
+          arr1[i] -= arr2[i];
+        }
+        break;
+      case MAX:
+        for (int i = from; i < to; i++) {
+          arr1[i] = arr1[i] < arr2[i] ? arr2[i] : arr1[i];
+        }
+        break;
+      case MIN:
+        for (int i = from; i < to; i++) {
+          arr1[i] = arr1[i] > arr2[i] ? arr2[i] : arr1[i];
+        }
+        break;
+      case MULTIPLY:
+        for (int i = from; i < to; i++) {
+          arr1[i] *= arr2[i];
+        }
+        break;
+    }
+  }
+
+  /**
+   * Combine the first size elements of arr2 into
+   * arr1
+   *
+   * @param operation the operation
+   * @param arr1      the array combined into
+   * @param arr2      the array to combine
+   * @param size      the number of elements
+   */
+  static void combine(Operation operation,
+      double[] arr1, double[] arr2, int size) {
+    if (size < PARALLEL_THRESHOLD) {
+      combine(operation, arr1, arr2, 0, size);
+    } else {
+      new RangeTask((from, to) -> combine(
+          operation, arr1, arr2, from, to), 0, size)
+          .invoke();
+    }
+  }
+
+  private static void combine(Operation operation,
+      double[] arr1, double[] arr2, int from, int to) {
+    switch (operation) {
+      case SUM:
+        for (int i = from; i < to; i++) {
+          arr1[i] += arr2[i];
+        }
+        break;
+      case MINUS:
+        for (int i = from; i < to; i++) {
+          arr1[i] -= arr2[i];
+        }
+        break;
+      case MAX:
+        for (int i = from; i < to; i++) {
+          arr1[i] = arr1[i] < arr2[i] ? arr2[i] : arr1[i];
+        }
+        break;
+      case MIN:
+        for (int i = from; i < to; i++) {
+          arr1[i] = arr1[i] > arr2[i] ? arr2[i] : arr1[i];
+        }
+        break;
+      case MULTIPLY:
+        for (int i = from; i < to; i++) {
+          arr1[i] *= arr2[i];
+        }
+        break;
+    }
+  }
+}
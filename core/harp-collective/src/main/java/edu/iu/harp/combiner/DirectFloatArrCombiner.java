@@ -0,0 +1,71 @@
+package edu.iu.harp.combiner;
+
+import edu.iu.harp.partition.PartitionCombiner;
+import edu.iu.harp.partition.PartitionStatus;
+import edu.iu.harp.resource.DirectFloatArray;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Combine two float arrays in direct memory according to a operation
+ * specified. Supported operations are
+ *     SUM,
+ *     MINUS,
+ *     MULTIPLY,
+ *     MAX,
+ *     MIN
+ */
+public class DirectFloatArrCombiner
+    extends PartitionCombiner<DirectFloatArray> {
+
+  private Operation operation;
+
+  public DirectFloatArrCombiner(Operation operation) {
+    this.operation = operation;
+  }
+
+  @Override
+  public PartitionStatus combine(
+      DirectFloatArray curPar, DirectFloatArray newPar) {
+    int size1 = curPar.size();
+    int size2 = newPar.size();
+    if (size1 != size2) {
+      return PartitionStatus.COMBINE_FAILED;
+    }
+    FloatBuffer arr1 = curPar.asFloatBuffer();
+    FloatBuffer arr2 = newPar.asFloatBuffer();
+
+    switch (operation) {
+      case SUM:
+        for (int i = 0; i < size2; i++) {
+          arr1.put(i, arr1.get(i) + arr2.get(i));
+        }
+        break;
+      case MINUS:
+        for (int i = 0; i < size2; i++) {
+          arr1.put(i, arr1.get(i) - arr2.get(i));
+        }
+        break;
+      case MAX:
+        for (int i = 0; i < size2; i++) {
+          if (arr1.get(i) < arr2.get(i)) {
+            arr1.put(i, arr2.get(i));
+          }
+        }
+        break;
+      case MIN:
+        for (int i = 0; i < size2; i++) {
+          if (arr1.get(i) > arr2.get(i)) {
+            arr1.put(i, arr2.get(i));
+          }
+        }
+        break;
+      case MULTIPLY:
+        for (int i = 0; i < size2; i++) {
+          arr1.put(i, arr1.get(i) * arr2.get(i));
+        }
+        break;
+    }
+    return PartitionStatus.COMBINED;
+  }
+}
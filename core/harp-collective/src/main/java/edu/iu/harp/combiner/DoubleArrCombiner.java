@@ -33,37 +33,7 @@ public class DoubleArrCombiner extends PartitionCombiner<DoubleArray> {
       return PartitionStatus.COMBINE_FAILED;
     }
 
-    switch (operation) {
-      case SUM:
-        for (int i = 0; i < size2; i++) {
-          arr1[i] += arr2[i];
-        }
-        break;
-      case MINUS:
-        for (int i = 0; i < size2; i++) {
-          arr1[i] -= arr2[i];
-        }
-        break;
-      case MAX:
-        for (int i = 0; i < size2; i++) {
-          if (arr1[i] < arr2[i]) {
-            arr1[i] = arr2[i];
-          }
-        }
-        break;
-      case MIN:
-        for (int i = 0; i < size2; i++) {
-          if (arr1[i] > arr2[i]) {
-            arr1[i] = arr2[i];
-          }
-        }
-        break;
-      case MULTIPLY:
-        for (int i = 0; i < size2; i++) {
-          arr1[i] *= arr2[i];
-        }
-        break;
-    }
+    ArrayCombine.combine(operation, arr1, arr2, size2);
     return PartitionStatus.COMBINED;
   }
 }
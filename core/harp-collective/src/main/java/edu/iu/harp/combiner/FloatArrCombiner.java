@@ -0,0 +1,39 @@
+package edu.iu.harp.combiner;
+
+import edu.iu.harp.partition.PartitionCombiner;
+import edu.iu.harp.partition.PartitionStatus;
+import edu.iu.harp.resource.FloatArray;
+
+/**
+ * Combine two float arrays according to a operation specified.
+ * Supported operations are
+ *     SUM,
+ *     MINUS,
+ *     MULTIPLY,
+ *     MAX,
+ *     MIN
+ */
+public class FloatArrCombiner extends PartitionCombiner<FloatArray> {
+  private Operation operation;
+
+  public FloatArrCombiner(Operation operation) {
+    this.operation = operation;
+  }
+
+  @Override
+  public PartitionStatus combine(
+      FloatArray curPar, FloatArray newPar) {
+    float[] arr1 = curPar.get();
+    int size1 = curPar.size();
+    float[] arr2 = newPar.get();
+    int size2 = newPar.size();
+    if (size1 != size2) {
+      // throw new Exception("size1: " + size1
+      // + ", size2: " + size2);
+      return PartitionStatus.COMBINE_FAILED;
+    }
+
+    ArrayCombine.combine(operation, arr1, arr2, size2);
+    return PartitionStatus.COMBINED;
+  }
+}
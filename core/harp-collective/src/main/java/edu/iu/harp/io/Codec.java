@@ -0,0 +1,28 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.io;
+
+/**
+ * The codecs available for compressing the data
+ * body on the wire. LZ is the in-project LZ4
+ * style codec. SHUFFLE_LZ groups the bytes of
+ * 8-byte elements before LZ, which suits tables
+ * of doubles and longs.
+ **/
+public enum Codec {
+  NONE, LZ, SHUFFLE_LZ
+}
@@ -0,0 +1,330 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.io;
+
+import edu.iu.harp.resource.ByteArray;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/*******************************************************
+ * The compression of data bodies on the wire. The
+ * codec is chosen per operation name, with a
+ * default for other operations, and bodies smaller
+ * than the threshold are sent raw. A compressed
+ * body starts with the codec and the raw size, and
+ * the head of the data carries a flag, so the
+ * receivers decompress without any setting.
+ ******************************************************/
+public class Compression {
+
+  private static final Logger LOG =
+    Logger.getLogger(Compression.class);
+
+  /** The default smallest body to compress */
+  public static final int DEFAULT_THRESHOLD =
+    64 * 1024;
+  /** The codec byte and the raw size */
+  public static final int HEADER_SIZE = 5;
+  /** The element width of the shuffle filter */
+  private static final int SHUFFLE_WIDTH = 8;
+
+  private static Compression instance = null;
+
+  private volatile Codec defaultCodec;
+  private volatile int threshold;
+  private final ConcurrentHashMap<String, Codec> operationCodecs;
+
+  private final LongAdder numCompressed;
+  private final LongAdder numSkipped;
+  private final LongAdder rawBytes;
+  private final LongAdder compressedBytes;
+  private final LongAdder compressNanos;
+  private final LongAdder decompressNanos;
+
+  private Compression() {
+    defaultCodec = Codec.NONE;
+    threshold = DEFAULT_THRESHOLD;
+    operationCodecs = new ConcurrentHashMap<>();
+    numCompressed = new LongAdder();
+    numSkipped = new LongAdder();
+    rawBytes = new LongAdder();
+    compressedBytes = new LongAdder();
+    compressNanos = new LongAdder();
+    decompressNanos = new LongAdder();
+  }
+
+  public static Compression get() {
+    if (instance != null) {
+      return instance;
+    } else {
+      return create();
+    }
+  }
+
+  private static synchronized Compression
+    create() {
+    if (instance == null) {
+      instance = new Compression();
+    }
+    return instance;
+  }
+
+  /**
+   * Set the codec of the operations without their
+   * own codec
+   *
+   * @param codec
+   *          the codec
+   */
+  public void setDefaultCodec(Codec codec) {
+    defaultCodec = codec;
+  }
+
+  public Codec getDefaultCodec() {
+    return defaultCodec;
+  }
+
+  /**
+   * Set the codec of an operation
+   *
+   * @param operationName
+   *          the name of the operation
+   * @param codec
+   *          the codec, or null to use the default
+   */
+  public void setCodec(String operationName,
+    Codec codec) {
+    if (codec == null) {
+      operationCodecs.remove(operationName);
+    } else {
+      operationCodecs.put(operationName, codec);
+    }
+  }
+
+  /**
+   * Set the smallest body size to compress
+   *
+   * @param bytes
+   *          the threshold in bytes
+   */
+  public void setThreshold(int bytes) {
+    threshold = bytes;
+  }
+
+  public int getThreshold() {
+    return threshold;
+  }
+
+  /**
+   * Get the codec to send the data with
+   *
+   * @param data
+   *          the data to send
+   * @return the codec, NONE if the body is not
+   *         compressed
+   */
+  public Codec getCodec(Data data) {
+    Codec codec = null;
+    String operationName = data.getOperationName();
+    if (operationName != null) {
+      codec = operationCodecs.get(operationName);
+    }
+    if (codec == null) {
+      codec = defaultCodec;
+    }
+    if (data.getBodySize() < threshold) {
+      return Codec.NONE;
+    }
+    return codec;
+  }
+
+  /**
+   * Compress the encoded body
+   *
+   * @param raw
+   *          the encoded body
+   * @param codec
+   *          the codec
+   * @return the compressed body, or null if it is
+   *         not smaller than the raw body
+   */
+  public ByteArray compress(ByteArray raw,
+    Codec codec) {
+    if (codec == Codec.NONE) {
+      return null;
+    }
+    long startTime = System.nanoTime();
+    int rawSize = raw.size();
+    byte[] src = raw.get();
+    int srcOff = raw.start();
+    ByteArray shuffled = null;
+    if (codec == Codec.SHUFFLE_LZ) {
+      shuffled = ByteArray.create(rawSize, true);
+      if (shuffled == null) {
+        return null;
+      }
+      LzCodec.shuffle(src, srcOff, rawSize,
+        shuffled.get(), 0, SHUFFLE_WIDTH);
+      src = shuffled.get();
+      srcOff = 0;
+    }
+    ByteArray out = ByteArray.create(HEADER_SIZE
+      + LzCodec.maxCompressedLength(rawSize), true);
+    if (out == null) {
+      if (shuffled != null) {
+        shuffled.release();
+      }
+      return null;
+    }
+    byte[] dst = out.get();
+    int size = HEADER_SIZE + LzCodec.compress(src,
+      srcOff, rawSize, dst, HEADER_SIZE);
+    if (shuffled != null) {
+      shuffled.release();
+    }
+    compressNanos.add(System.nanoTime() - startTime);
+    if (size >= rawSize) {
+      numSkipped.increment();
+      out.release();
+      return null;
+    }
+    dst[0] = (byte) codec.ordinal();
+    dst[1] = (byte) (rawSize >>> 24);
+    dst[2] = (byte) (rawSize >>> 16);
+    dst[3] = (byte) (rawSize >>> 8);
+    dst[4] = (byte) rawSize;
+    numCompressed.increment();
+    rawBytes.add(rawSize);
+    compressedBytes.add(size);
+    return new ByteArray(dst, 0, size);
+  }
+
+  /**
+   * Decompress a body compressed by any codec
+   *
+   * @param compressed
+   *          the compressed body
+   * @return the raw body
+   * @throws IOException
+   *           if the body is corrupted
+   */
+  public ByteArray decompress(ByteArray compressed)
+    throws IOException {
+    long startTime = System.nanoTime();
+    byte[] src = compressed.get();
+    int start = compressed.start();
+    int size = compressed.size();
+    if (size < HEADER_SIZE) {
+      throw new IOException(
+        "Compressed body is too short.");
+    }
+    int codecID = src[start];
+    if (codecID <= Codec.NONE.ordinal()
+      || codecID >= Codec.values().length) {
+      throw new IOException(
+        "Unknown codec " + codecID);
+    }
+    Codec codec = Codec.values()[codecID];
+    int rawSize = ((src[start + 1] & 0xff) << 24)
+      | ((src[start + 2] & 0xff) << 16)
+      | ((src[start + 3] & 0xff) << 8)
+      | (src[start + 4] & 0xff);
+    ByteArray raw = ByteArray.create(rawSize, true);
+    if (raw == null) {
+      throw new IOException(
+        "Cannot get array of size " + rawSize);
+    }
+    ByteArray shuffled = null;
+    try {
+      if (codec == Codec.SHUFFLE_LZ) {
+        shuffled = ByteArray.create(rawSize, true);
+        LzCodec.decompress(src, start + HEADER_SIZE,
+          size - HEADER_SIZE, shuffled.get(), 0,
+          rawSize);
+        LzCodec.unshuffle(shuffled.get(), 0,
+          rawSize, raw.get(), raw.start(),
+          SHUFFLE_WIDTH);
+      } else {
+        LzCodec.decompress(src, start + HEADER_SIZE,
+          size - HEADER_SIZE, raw.get(),
+          raw.start(), rawSize);
+      }
+    } catch (IOException e) {
+      raw.release();
+      throw e;
+    } finally {
+      if (shuffled != null) {
+        shuffled.release();
+      }
+    }
+    decompressNanos
+      .add(System.nanoTime() - startTime);
+    return raw;
+  }
+
+  /**
+   * Get the raw bytes divided by the compressed
+   * bytes of all the compressed bodies
+   *
+   * @return the compression ratio
+   */
+  public double getRatio() {
+    long compressed = compressedBytes.sum();
+    return compressed == 0L ? 1.0
+      : (double) rawBytes.sum() / compressed;
+  }
+
+  public long getNumCompressed() {
+    return numCompressed.sum();
+  }
+
+  /**
+   * Get the number of bodies sent raw because
+   * compression did not make them smaller
+   *
+   * @return the number of bodies
+   */
+  public long getNumSkipped() {
+    return numSkipped.sum();
+  }
+
+  public long getCompressNanos() {
+    return compressNanos.sum();
+  }
+
+  public long getDecompressNanos() {
+    return decompressNanos.sum();
+  }
+
+  /**
+   * Log the compression counters
+   */
+  public void log() {
+    LOG.info("Compression: compressed="
+      + numCompressed.sum() + ", skipped="
+      + numSkipped.sum() + ", raw bytes="
+      + rawBytes.sum() + ", compressed bytes="
+      + compressedBytes.sum() + ", ratio="
+      + getRatio() + ", compress (ms)="
+      + compressNanos.sum() / 1000000L
+      + ", decompress (ms)="
+      + decompressNanos.sum() / 1000000L);
+  }
+}
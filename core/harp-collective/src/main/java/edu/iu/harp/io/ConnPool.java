@@ -23,6 +23,8 @@ import org.apache.log4j.Logger;
 
 import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
 
 /*******************************************************
  * This class manages connection objects
@@ -32,11 +34,38 @@ public class ConnPool {
   private static final Logger LOG =
     Logger.getLogger(ConnPool.class);
 
+  /** The default smallest size of a stripe */
+  public static final int DEFAULT_STRIPE_SIZE =
+    16 * 1024 * 1024;
+
   private static ConnPool instance = null;
 
   private Object2ObjectOpenHashMap<HostPort, Pool> connMap =
     new Object2ObjectOpenHashMap<>();
 
+  /**
+   * Cached connections to this host write
+   * through shared memory if enabled
+   */
+  private volatile boolean useShm = false;
+
+  /**
+   * The largest number of connections a body is
+   * striped across, 1 disables striping
+   */
+  private volatile int maxStripes = 1;
+  private volatile int stripeSize =
+    DEFAULT_STRIPE_SIZE;
+
+  /**
+   * The IDs of the striped transfers, starting
+   * from a random number so that the IDs from
+   * different processes do not collide
+   */
+  private final AtomicLong transferID =
+    new AtomicLong(
+      ThreadLocalRandom.current().nextLong());
+
   /*******************************************************
    * The class for host and port information
    ******************************************************/
@@ -114,6 +143,77 @@ public class ConnPool {
     return instance;
   }
 
+  /**
+   * Enable or disable the shared memory
+   * transport for new connections to workers on
+   * this host. It is disabled by default and is
+   * only enabled on x86 if the shared memory
+   * directory is writable.
+   * 
+   * @param useShm
+   *          use shared memory or not
+   */
+  public void setUseShm(boolean useShm) {
+    this.useShm =
+      useShm && ShmRing.isSupported(Constant.SHM_DIR);
+    if (useShm && !this.useShm) {
+      LOG.info("Shared memory is not supported "
+        + "on " + System.getProperty("os.arch")
+        + " or in " + Constant.SHM_DIR);
+    }
+  }
+
+  /**
+   * Check if the shared memory transport is used
+   * 
+   * @return true if shared memory is used
+   */
+  public boolean isShmUsed() {
+    return this.useShm;
+  }
+
+  /**
+   * Stripe large bodies across multiple
+   * connections to the same worker. The number of
+   * stripes grows with the body size, one for
+   * every stripeSize bytes, up to maxStripes.
+   * 
+   * @param maxStripes
+   *          the largest number of stripes, 1
+   *          disables striping
+   * @param stripeSize
+   *          the smallest size of a stripe
+   */
+  public void setStriping(int maxStripes,
+    int stripeSize) {
+    this.maxStripes = Math.max(maxStripes, 1);
+    this.stripeSize = Math.max(stripeSize, 1);
+  }
+
+  /**
+   * Get the number of connections to send a body
+   * with
+   * 
+   * @param bodySize
+   *          the size of the body
+   * @return the number of stripes, 1 if the body
+   *         is not striped
+   */
+  public int getNumStripes(int bodySize) {
+    int numStripes = bodySize / stripeSize;
+    return Math.max(1,
+      Math.min(maxStripes, numStripes));
+  }
+
+  /**
+   * Get a new ID of a striped transfer
+   * 
+   * @return the ID
+   */
+  public long nextTransferID() {
+    return transferID.getAndIncrement();
+  }
+
   /**
    * Get a connection object by host and port
    * information.
@@ -156,7 +256,9 @@ public class ConnPool {
 
   /**
    * Create a new connection for the host and the
-   * port
+   * port. Only cached connections use shared
+   * memory, one-off connections such as the one
+   * stopping a server always use the socket.
    * 
    * @param host
    *          the host
@@ -175,7 +277,8 @@ public class ConnPool {
       isFailed = false;
       try {
         conn =
-          new Connection(host, port, 0, useCache);
+          new Connection(host, port, 0, useCache,
+            useCache && useShm);
       } catch (Exception e) {
         isFailed = true;
         count++;
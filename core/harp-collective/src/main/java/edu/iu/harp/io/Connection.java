@@ -16,24 +16,37 @@
 
 package edu.iu.harp.io;
 
+import org.apache.log4j.Logger;
+
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
 import java.net.Socket;
 import java.net.SocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
 
 /*******************************************************
  * The connection object as a client
  ******************************************************/
 public class Connection {
 
+  private static final Logger LOG =
+      Logger.getLogger(Connection.class);
+
   private final String node;
   private final int port;
   private OutputStream out;
   private InputStream in;
   private Socket socket;
+  private GatheringByteChannel channel;
+  private ShmRing ring;
   private final boolean useCache;
 
   /**
@@ -48,6 +61,26 @@ public class Connection {
    */
   Connection(String node, int port, int timeOutMs,
              boolean useCache) throws Exception {
+    this(node, port, timeOutMs, useCache, false);
+  }
+
+  /**
+   * Construct a connection. If the shared memory
+   * is used and the host is this host, the data
+   * is written to a ring in shared memory after
+   * the connection is set up.
+   *
+   * @param node      the host
+   * @param port      the port
+   * @param timeOutMs the timeout value to be used in
+   *                  milliseconds.
+   * @param useCache  use cache or not
+   * @param useShm    use shared memory or not
+   * @throws Exception
+   */
+  Connection(String node, int port, int timeOutMs,
+             boolean useCache, boolean useShm)
+      throws Exception {
     this.node = node;
     this.port = port;
     this.useCache = useCache;
@@ -56,17 +89,104 @@ public class Connection {
           InetAddress.getByName(node);
       SocketAddress sockaddr =
           new InetSocketAddress(addr, port);
-      this.socket = new Socket();
+      // Open through a channel so that bodies can
+      // be written from direct buffers
+      SocketChannel socketChannel =
+          SocketChannel.open();
+      this.channel = socketChannel;
+      this.socket = socketChannel.socket();
       IOUtil.setSocketOptions(socket);
       this.socket.connect(sockaddr, timeOutMs);
       this.out = socket.getOutputStream();
       this.in = socket.getInputStream();
+      if (useShm && isLocal(addr)) {
+        openRing();
+      }
     } catch (Exception e) {
       close();
       throw e;
     }
   }
 
+  /**
+   * Check if the address belongs to this host
+   *
+   * @param addr the address
+   * @return true if the address is local
+   */
+  private static boolean isLocal(InetAddress addr) {
+    if (addr.isLoopbackAddress()
+        || addr.isAnyLocalAddress()) {
+      return true;
+    }
+    try {
+      return NetworkInterface
+          .getByInetAddress(addr) != null;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Ask the server to read from a ring in shared
+   * memory. If the ring cannot be created or the
+   * server refuses it, the socket is used.
+   *
+   * @throws IOException
+   */
+  private void openRing() throws IOException {
+    ShmRing shmRing;
+    try {
+      shmRing = ShmRing.create(Constant.SHM_DIR,
+          Constant.SHM_RING_SIZE);
+    } catch (IOException e) {
+      LOG.info("Fail to create the ring to "
+          + node + ":" + port + ", "
+          + e.getMessage());
+      return;
+    }
+    try {
+      byte[] pathBytes = shmRing.getPath()
+          .getBytes(StandardCharsets.UTF_8);
+      DataOutputStream dout =
+          new DataOutputStream(out);
+      dout.write(Constant.SHM_CONNECT);
+      dout.writeInt(pathBytes.length);
+      dout.write(pathBytes);
+      dout.flush();
+      int reply = in.read();
+      if (reply < 0) {
+        throw new IOException(
+            "The connection is closed.");
+      }
+      if (reply == Constant.SHM_ACCEPTED) {
+        shmRing.setPeer(socket);
+        this.ring = shmRing;
+        this.channel = shmRing;
+        this.out = Channels.newOutputStream(shmRing);
+      } else {
+        shmRing.close();
+      }
+    } catch (IOException e) {
+      shmRing.close();
+      throw e;
+    } finally {
+      // Both ends have mapped the file or
+      // the ring is not used
+      shmRing.unlink();
+    }
+  }
+
+  /**
+   * Check if the data is sent through shared
+   * memory
+   *
+   * @return true if shared memory is used
+   */
+  public boolean isShm() {
+    return this.ring != null;
+  }
+
   /**
    * Get the host
    *
@@ -103,6 +223,17 @@ public class Connection {
     return this.in;
   }
 
+  /**
+   * Get the channel writing the same bytes as the
+   * OutputStream, either the SocketChannel or the
+   * ring in shared memory
+   *
+   * @return the channel
+   */
+  public GatheringByteChannel getChannel() {
+    return this.channel;
+  }
+
   /**
    * Close the connection
    */
@@ -121,6 +252,9 @@ public class Connection {
         }
       } catch (IOException e) {
       }
+      if (ring != null) {
+        ring.close();
+      }
       try {
         if (socket != null) {
           socket.close();
@@ -128,8 +262,10 @@ public class Connection {
       } catch (IOException e) {
       }
       out = null;
+      ring = null;
       in = null;
       socket = null;
+      channel = null;
     }
   }
 
@@ -31,6 +31,24 @@ public class Constant {
   public static final byte MST_BCAST = 5;
   public static final byte MST_BCAST_DECODE = 6;
   public static final byte CONNECTION_END = 7;
+  public static final byte SHM_CONNECT = 8;
+  // A body striped across connections, the
+  // first stripe follows the head
+  public static final byte STRIPED_SEND = 9;
+  public static final byte STRIPED_SEND_DECODE = 10;
+  // One of the other stripes
+  public static final byte STRIPE = 11;
+  // The head size, the sender ID, the transfer
+  // ID, the number of stripes, the offset and the
+  // length of a stripe
+  public static final int STRIPE_OP_SIZE = 28;
+  // Broadcast through a pipelined binary tree
+  public static final byte TREE_BCAST = 12;
+  public static final byte TREE_BCAST_DECODE = 13;
+
+  // Replies to SHM_CONNECT
+  public static final byte SHM_REJECTED = 0;
+  public static final byte SHM_ACCEPTED = 1;
 
   public static final int DATA_MAX_WAIT_TIME =
     1800; // seconds
@@ -43,6 +61,12 @@ public class Constant {
   // 256 KB
   public static final int BUFFER_SIZE = 262144;
   // 256 KB
+  // The directory and the size of the rings
+  // between workers on the same host
+  public static final String SHM_DIR = "/dev/shm";
+  public static final int SHM_RING_SIZE =
+    16 * PIPELINE_SIZE;
+  // 4 MB
   public static final int MAX_ARRAY_SIZE =
     Integer.MAX_VALUE - 5;
 
@@ -16,6 +16,8 @@
 
 package edu.iu.harp.io;
 
+import edu.iu.harp.metrics.CommMetrics;
+import edu.iu.harp.metrics.CommStage;
 import edu.iu.harp.resource.ByteArray;
 import edu.iu.harp.resource.Transferable;
 import org.apache.log4j.Logger;
@@ -50,6 +52,16 @@ public class Data {
    * Only required in collective communication
    */
   private String operationName = null;
+  /**
+   * The handle and the check of the operation, if
+   * the head received carries them instead of the
+   * names
+   */
+  private long operationHandle = 0L;
+  private long operationCheck = 0L;
+  private boolean isHandleReceived = false;
+  /** The key in the DataMap, created once */
+  private OperationKey operationKey = null;
   /**
    * Only required in collective communication
    */
@@ -59,6 +71,20 @@ public class Data {
    * The size in bytes of the body
    */
   private int bodySize = 0;
+  /**
+   * If the body array is compressed
+   */
+  private boolean isBodyCompressed = false;
+  /**
+   * The position of the body size in the head
+   * array received
+   */
+  private int bodySizePos = -1;
+  /**
+   * The bytes counted in the queue of the
+   * operation by DataMap
+   */
+  private long queuedBytes = 0L;
   /**
    * Data object contained
    */
@@ -167,7 +193,8 @@ public class Data {
    */
   public boolean isData() {
     if (bodyType == DataType.UNKNOWN_DATA_TYPE
-        || contextName == null || bodySize == 0
+        || (contextName == null && !isHandleReceived)
+        || bodySize == 0
       // We don't detect worker ID
         ) {
       return false;
@@ -181,7 +208,7 @@ public class Data {
    * @return true if this is an operation data
    */
   public boolean isOperationData() {
-    if (operationName == null) {
+    if (operationName == null && !isHandleReceived) {
       return false;
     } else {
       return isData();
@@ -209,8 +236,15 @@ public class Data {
     contextName = null;
     workerID = Constant.UNKNOWN_WORKER_ID;
     operationName = null;
+    operationHandle = 0L;
+    operationCheck = 0L;
+    isHandleReceived = false;
+    operationKey = null;
     partitionID = Constant.UNKNOWN_PARTITION_ID;
     bodySize = 0;
+    isBodyCompressed = false;
+    bodySizePos = -1;
+    queuedBytes = 0L;
     body = null;
   }
 
@@ -250,6 +284,61 @@ public class Data {
     return operationName;
   }
 
+  /**
+   * Get the handle of the operation
+   *
+   * @return the handle of the operation
+   */
+  public long getOperationHandle() {
+    if (!isHandleReceived
+        && operationName != null) {
+      return OperationRegistry.getHandle(
+          contextName, operationName);
+    }
+    return operationHandle;
+  }
+
+  /**
+   * Get the check of the operation names
+   *
+   * @return the check of the operation
+   */
+  public long getOperationCheck() {
+    if (!isHandleReceived
+        && operationName != null) {
+      return OperationRegistry.getCheck(
+          contextName, operationName);
+    }
+    return operationCheck;
+  }
+
+  /**
+   * Get the key of the operation in the DataMap
+   *
+   * @return the key of the operation
+   */
+  public OperationKey getOperationKey() {
+    if (operationKey == null) {
+      operationKey = new OperationKey(
+          getOperationHandle(), getOperationCheck());
+    }
+    return operationKey;
+  }
+
+  /**
+   * Set the names of the data received with the
+   * operation handle
+   *
+   * @param conName the name of the context
+   * @param opName  the name of the operation
+   */
+  void setNames(String conName, String opName) {
+    if (isHandleReceived && contextName == null) {
+      contextName = conName;
+      operationName = opName;
+    }
+  }
+
   /**
    * Get the ID of the partition
    *
@@ -268,6 +357,23 @@ public class Data {
     return bodySize;
   }
 
+  long getQueuedBytes() {
+    return queuedBytes;
+  }
+
+  void setQueuedBytes(long bytes) {
+    queuedBytes = bytes;
+  }
+
+  /**
+   * Check if the body array is compressed
+   *
+   * @return true if the body array is compressed
+   */
+  public boolean isBodyCompressed() {
+    return isBodyCompressed;
+  }
+
   /**
    * Get the body
    *
@@ -384,11 +490,25 @@ public class Data {
   }
 
   /**
-   * Decode the headArray as the head
+   * Decode the headArray as the head and prepare
+   * the body array for receiving
    *
-   * @return
+   * @return the DataStatus of the head
    */
   public DataStatus decodeHeadArray() {
+    return decodeHeadArray(true);
+  }
+
+  /**
+   * Decode the headArray as the head
+   *
+   * @param isBodyArrayPrepared
+   *          true if to prepare the body array
+   *          for receiving
+   * @return the DataStatus of the head
+   */
+  public DataStatus
+    decodeHeadArray(boolean isBodyArrayPrepared) {
     if (headStatus == DataStatus.ENCODED_ARRAY) {
       // Decode head array to fields
       // If head array is null, the status cannot
@@ -397,18 +517,32 @@ public class Data {
           new Deserializer(headArray);
       boolean isFailed = false;
       try {
-        bodyType = deserializer.readByte();
+        byte type = deserializer.readByte();
+        isBodyCompressed =
+            (type & DataType.COMPRESSED) != 0;
+        isHandleReceived =
+            (type & DataType.OPERATION_HANDLE) != 0;
+        bodyType = (byte) (type
+            & ~(DataType.COMPRESSED
+            | DataType.OPERATION_HANDLE));
         // LOG.info("body type: " + bodyType);
-        contextName = deserializer.readUTF();
+        if (isHandleReceived) {
+          operationHandle = deserializer.readLong();
+          operationCheck = deserializer.readLong();
+        } else {
+          contextName = deserializer.readUTF();
+        }
         workerID = deserializer.readInt();
+        bodySizePos = deserializer.getPos();
         bodySize = deserializer.readInt();
       } catch (IOException e) {
         LOG.error("Fail to decode head array", e);
         resetHead();
         isFailed = true;
       }
-      if (!isFailed && (deserializer
-          .getPos() < deserializer.getLength())) {
+      if (!isFailed && !isHandleReceived
+          && (deserializer.getPos() < deserializer
+          .getLength())) {
         try {
           operationName = deserializer.readUTF();
         } catch (IOException e) {
@@ -435,21 +569,54 @@ public class Data {
       } else {
         headStatus =
             DataStatus.ENCODED_ARRAY_DECODED;
-        if (bodyArray == null
-            && bodyStatus == DataStatus.DECODE_FAILED) {
-          // Prepare body array
-          // if there is no such one
-          bodyArray =
-              ByteArray.create(bodySize, true);
-          if (bodyArray != null) {
-            bodyStatus = DataStatus.ENCODED_ARRAY;
-          }
+        if (isBodyArrayPrepared) {
+          prepareBodyArray();
         }
       }
     }
     return headStatus;
   }
 
+  /**
+   * Prepare the body array for receiving if there
+   * is no such one. The head must be decoded.
+   *
+   * @return the DataStatus of the body
+   */
+  public DataStatus prepareBodyArray() {
+    if (headStatus == DataStatus.ENCODED_ARRAY_DECODED
+        && bodyArray == null
+        && bodyStatus == DataStatus.DECODE_FAILED) {
+      bodyArray =
+          ByteArray.create(bodySize, true);
+      if (bodyArray != null) {
+        bodyStatus = DataStatus.ENCODED_ARRAY;
+      }
+    }
+    return bodyStatus;
+  }
+
+  /**
+   * Set the body received as objects directly,
+   * without the body array. The head must be
+   * decoded and the body array not prepared.
+   *
+   * @param objs
+   *          the body received
+   * @return the DataStatus of the body
+   */
+  public DataStatus
+    setReceivedBody(List<Transferable> objs) {
+    if (headStatus == DataStatus.ENCODED_ARRAY_DECODED
+        && bodyArray == null
+        && bodyStatus == DataStatus.DECODE_FAILED
+        && objs != null) {
+      body = objs;
+      bodyStatus = DataStatus.DECODED;
+    }
+    return bodyStatus;
+  }
+
   /**
    * Reset the Head
    */
@@ -458,7 +625,13 @@ public class Data {
     contextName = null;
     workerID = Constant.UNKNOWN_WORKER_ID;
     bodySize = 0;
+    isBodyCompressed = false;
+    bodySizePos = -1;
     operationName = null;
+    operationHandle = 0L;
+    operationCheck = 0L;
+    isHandleReceived = false;
+    operationKey = null;
     partitionID = Constant.UNKNOWN_PARTITION_ID;
   }
 
@@ -472,9 +645,16 @@ public class Data {
         || headStatus == DataStatus.ENCODED_ARRAY_DECODED
         || headStatus == DataStatus.ENCODE_FAILED_DECODED)
         && bodyStatus == DataStatus.ENCODED_ARRAY) {
+      long startTime = CommMetrics.now();
       // If body status is encoded array
       // body array cannot be null.
       // body object must be null;
+      if (isBodyCompressed
+          && !decompressBodyArray()) {
+        bodyStatus =
+            DataStatus.ENCODED_ARRAY_DECODE_FAILED;
+        return bodyStatus;
+      }
       if (bodyType == DataType.SIMPLE_LIST) {
         body =
             DataUtil.decodeSimpleList(bodyArray);
@@ -492,10 +672,77 @@ public class Data {
         bodyStatus =
             DataStatus.ENCODED_ARRAY_DECODED;
       }
+      CommMetrics.get().record(this,
+          CommStage.DECODE, startTime);
     }
     return bodyStatus;
   }
 
+  /**
+   * Replace the compressed body array with the
+   * raw one. The head array received is updated
+   * to describe the raw body, so that the data
+   * can still be forwarded as it is.
+   *
+   * @return true if succeeded, false otherwise
+   */
+  private boolean decompressBodyArray() {
+    ByteArray rawArray = null;
+    try {
+      rawArray =
+          Compression.get().decompress(bodyArray);
+    } catch (IOException e) {
+      LOG.error("Fail to decompress body array",
+          e);
+      return false;
+    }
+    bodyArray.release();
+    bodyArray = rawArray;
+    bodySize = rawArray.size();
+    isBodyCompressed = false;
+    if (headArray != null && bodySizePos >= 0) {
+      byte[] headBytes = headArray.get();
+      headBytes[headArray.start()] =
+          isHandleReceived ? (byte) (bodyType
+              | DataType.OPERATION_HANDLE) : bodyType;
+      try {
+        new Serializer(headBytes, bodySizePos,
+            bodySizePos + 4).writeInt(bodySize);
+      } catch (IOException e) {
+        LOG.error("Fail to update head array", e);
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Compress the encoded body array. It must be
+   * done before the head is encoded, as the head
+   * records the compressed size. The body stays
+   * raw if the codec does not make it smaller.
+   *
+   * @param codec
+   *          the codec
+   * @return true if the body array is compressed
+   */
+  public boolean compressBody(Codec codec) {
+    if (headStatus == DataStatus.DECODED
+        && bodyStatus == DataStatus.ENCODED_ARRAY_DECODED
+        && !isBodyCompressed
+        && codec != Codec.NONE) {
+      ByteArray compressed =
+          Compression.get().compress(bodyArray, codec);
+      if (compressed != null) {
+        bodyArray.release();
+        bodyArray = compressed;
+        bodySize = compressed.size();
+        isBodyCompressed = true;
+      }
+    }
+    return isBodyCompressed;
+  }
+
   /**
    * Encode the head as a ByteArray
    *
@@ -506,12 +753,20 @@ public class Data {
       // Encode fields to head array
       boolean isOpData = isOperationData();
       boolean isParData = isPartitionData();
+      // The handle and the check replace both names
+      boolean useHandle = isOpData
+          && OperationRegistry.isEnabled();
       // bodyType, contextName, workerID, bodySize
-      int headArrSize =
-          9 + (4 + 2 * contextName.length());
-      if (isOpData) {
-        headArrSize +=
-            (4 + 2 * operationName.length());
+      int headArrSize;
+      if (useHandle) {
+        headArrSize = 9 + 16;
+      } else {
+        headArrSize =
+            9 + (4 + 2 * contextName.length());
+        if (isOpData) {
+          headArrSize +=
+              (4 + 2 * operationName.length());
+        }
       }
       if (isParData) {
         headArrSize += 4;
@@ -522,8 +777,19 @@ public class Data {
           new Serializer(headArray);
       boolean isFailed = false;
       try {
-        serializer.writeByte(bodyType);
-        serializer.writeUTF(contextName);
+        byte type = bodyType;
+        if (isBodyCompressed) {
+          type |= DataType.COMPRESSED;
+        }
+        if (useHandle) {
+          type |= DataType.OPERATION_HANDLE;
+          serializer.writeByte(type);
+          serializer.writeLong(getOperationHandle());
+          serializer.writeLong(getOperationCheck());
+        } else {
+          serializer.writeByte(type);
+          serializer.writeUTF(contextName);
+        }
         serializer.writeInt(workerID);
         serializer.writeInt(bodySize);
       } catch (Exception e) {
@@ -533,7 +799,7 @@ public class Data {
             e);
         isFailed = true;
       }
-      if (!isFailed & isOpData) {
+      if (!isFailed & isOpData & !useHandle) {
         try {
           serializer.writeUTF(operationName);
         } catch (Exception e) {
@@ -575,6 +841,7 @@ public class Data {
    */
   public DataStatus encodeBody() {
     if (bodyStatus == DataStatus.DECODED) {
+      long startTime = CommMetrics.now();
       if (headStatus == DataStatus.DECODED
           || headStatus == DataStatus.ENCODED_ARRAY_DECODED
           || headStatus == DataStatus.ENCODE_FAILED_DECODED) {
@@ -608,6 +875,8 @@ public class Data {
         bodyStatus =
             DataStatus.ENCODE_FAILED_DECODED;
       }
+      CommMetrics.get().record(this,
+          CommStage.ENCODE, startTime);
     }
     return bodyStatus;
   }
@@ -16,72 +16,270 @@
 
 package edu.iu.harp.io;
 
+import edu.iu.harp.metrics.CommMetrics;
+import edu.iu.harp.metrics.CommStage;
 import org.apache.log4j.Logger;
 
 import java.util.Map.Entry;
-import java.util.concurrent.BlockingQueue;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /*******************************************************
  * A wrapper for operations on queues associated
  * with communication contextName and
  * operationName. The main data structure is a map
- * from contextName to a sub-map; The sub-map is a
- * map from operationName to a BlockingQueue. The
- * BlockingQueue is a queue for the Data. All
- * operations are conducted on this map.
+ * from the key of the operation, given by the
+ * OperationRegistry of this DataMap, to a queue
+ * for the Data. All operations are conducted on
+ * this map.
+ * <p>
+ * The bytes queued for each operation can be
+ * limited. A receiver reserves the bytes of the
+ * body after reading the head and waits while the
+ * queue is full, so it stops reading the
+ * connection and the sender is slowed down by TCP
+ * flow control. The bytes are returned when the
+ * Data is taken from the queue.
  ******************************************************/
 public class DataMap {
 
-  @SuppressWarnings("unused")
   private static final Logger LOG =
     Logger.getLogger(DataMap.class);
 
-  private ConcurrentMap<String, ConcurrentMap<String, BlockingQueue<Data>>> dataMap;
+  /**
+   * The default longest time to wait for space in
+   * a queue, in milliseconds. The Data is queued
+   * anyway after this time, so a receiver is not
+   * blocked by an operation which is never
+   * consumed.
+   */
+  public static final long DEFAULT_MAX_BLOCK_TIME =
+    10000L;
+
+  /*******************************************************
+   * The Data of an operation and the bytes queued
+   * or reserved
+   ******************************************************/
+  private static class OperationQueue {
+    private final LinkedBlockingQueue<Data> queue =
+      new LinkedBlockingQueue<>();
+    /** Guarded by this */
+    private long numBytes = 0L;
+    /** Guarded by this */
+    private boolean isRemoved = false;
+  }
+
+  /*******************************************************
+   * The operation a thread last waited for. The
+   * key is reused while the thread passes the
+   * same name strings and no names are removed
+   * from the registry.
+   ******************************************************/
+  private static class LastOperation {
+    private String contextName;
+    private String operationName;
+    private int version;
+    private OperationKey key;
+  }
+
+  private ConcurrentMap<OperationKey, OperationQueue> dataMap;
+  private final OperationRegistry registry;
+  private final ThreadLocal<LastOperation> lastOperations;
+  /** The operations running asynchronously */
+  private final Set<OperationKey> activeOperations;
   private final int initialCapacity =
     Constant.NUM_THREADS;
 
+  /** The bytes allowed per queue, 0 for no limit */
+  private volatile long maxOperationBytes;
+  private volatile long maxBlockTime;
+
+  private final AtomicLong queuedBytes;
+  private final AtomicLong peakQueuedBytes;
+  private final LongAdder numBlocked;
+  private final LongAdder blockedNanos;
+  private final LongAdder numOverflows;
+
   public DataMap() {
     dataMap =
       new ConcurrentHashMap<>(initialCapacity);
+    registry = new OperationRegistry();
+    lastOperations =
+      ThreadLocal.withInitial(LastOperation::new);
+    activeOperations =
+      ConcurrentHashMap.newKeySet();
+    maxOperationBytes = 0L;
+    maxBlockTime = DEFAULT_MAX_BLOCK_TIME;
+    queuedBytes = new AtomicLong(0L);
+    peakQueuedBytes = new AtomicLong(0L);
+    numBlocked = new LongAdder();
+    blockedNanos = new LongAdder();
+    numOverflows = new LongAdder();
   }
 
   /**
-   * Create a queue for the operation under the
-   * context
+   * Limit the bytes queued for each operation. A
+   * Data larger than the limit is still accepted
+   * by an empty queue. The receivers wait on
+   * their own threads, so the limit is not
+   * supported by the NIO engine of the server.
+   * 
+   * @param maxBytes
+   *          the bytes allowed per operation, 0 for
+   *          no limit
+   * @param maxBlockMillis
+   *          the longest time a receiver waits for
+   *          space before queuing the Data anyway
+   */
+  public void setQueueLimit(long maxBytes,
+    long maxBlockMillis) {
+    maxOperationBytes = Math.max(maxBytes, 0L);
+    maxBlockTime = Math.max(maxBlockMillis, 0L);
+  }
+
+  public long getQueueLimit() {
+    return maxOperationBytes;
+  }
+
+  /**
+   * Get the registry of the operations of this
+   * DataMap
+   * 
+   * @return the registry
+   */
+  public OperationRegistry getRegistry() {
+    return registry;
+  }
+
+  /**
+   * Register the operation, reusing the key of
+   * the last registration of this thread
    * 
    * @param contextName
    *          the name of the context
    * @param operationName
    *          the name of the operation
-   * @return the queue of the data of the
-   *         operation
+   * @return the key, null if the operation
+   *         collides with another one
    */
-  private BlockingQueue<Data>
-    createOperationDataQueue(String contextName,
-      String operationName) {
-    ConcurrentMap<String, BlockingQueue<Data>> opDataMap =
-      dataMap.get(contextName);
-    if (opDataMap == null) {
-      opDataMap =
-        new ConcurrentHashMap<>(initialCapacity);
-      ConcurrentMap<String, BlockingQueue<Data>> oldOpDataMap =
-        dataMap.putIfAbsent(contextName,
-          opDataMap);
-      if (oldOpDataMap != null) {
-        opDataMap = oldOpDataMap;
+  private OperationKey register(String contextName,
+    String operationName) {
+    LastOperation last = lastOperations.get();
+    int version = registry.getVersion();
+    // The same strings are passed while waiting
+    // in an operation
+    if (last.contextName == contextName
+      && last.operationName == operationName
+      && last.version == version) {
+      return last.key;
+    }
+    OperationKey key =
+      registry.register(contextName, operationName);
+    if (key != null) {
+      last.contextName = contextName;
+      last.operationName = operationName;
+      last.version = version;
+      last.key = key;
+    }
+    return key;
+  }
+
+  /**
+   * Give the names registered to the Data
+   * received with the operation handle
+   * 
+   * @param data
+   *          the Data received
+   */
+  public void resolveNames(Data data) {
+    if (data.getContextName() == null
+      && data.isOperationData()) {
+      String[] names =
+        registry.getNames(data.getOperationKey());
+      if (names != null) {
+        data.setNames(names[0], names[1]);
       }
     }
-    BlockingQueue<Data> opDataQueue =
-      opDataMap.get(operationName);
+  }
+
+  /**
+   * Mark the operation under the context as
+   * running. Operations running at the same time
+   * must have different names, otherwise they
+   * would take the data of each other from the
+   * same queue. Only the names are checked; the
+   * queues of the operations share the receivers
+   * and the queue limit.
+   * 
+   * @param contextName
+   *          the name of the context
+   * @param operationName
+   *          the name of the operation
+   * @return true if marked, false if an operation
+   *         with the same names is running or
+   *         the handles collide
+   */
+  public boolean startOperation(String contextName,
+    String operationName) {
+    OperationKey key =
+      register(contextName, operationName);
+    return key != null
+      && activeOperations.add(key);
+  }
+
+  /**
+   * Clean the data of the operation under the
+   * context and mark it as finished
+   * 
+   * @param contextName
+   *          the name of the context
+   * @param operationName
+   *          the name of the operation
+   */
+  public void finishOperation(String contextName,
+    String operationName) {
+    cleanOperationData(contextName, operationName);
+    activeOperations.remove(
+      OperationKey.of(contextName, operationName));
+  }
+
+  /**
+   * Check if the operation under the context is
+   * running
+   * 
+   * @param contextName
+   *          the name of the context
+   * @param operationName
+   *          the name of the operation
+   * @return true if running
+   */
+  public boolean isOperationActive(
+    String contextName, String operationName) {
+    return activeOperations.contains(
+      OperationKey.of(contextName, operationName));
+  }
+
+  /**
+   * Create a queue for the operation
+   * 
+   * @param key
+   *          the key of the operation
+   * @return the queue of the data of the
+   *         operation
+   */
+  private OperationQueue
+    createOperationDataQueue(OperationKey key) {
+    OperationQueue opDataQueue =
+      dataMap.get(key);
     if (opDataQueue == null) {
-      opDataQueue = new LinkedBlockingQueue<>();
-      BlockingQueue<Data> oldOpDataQueue =
-        opDataMap.putIfAbsent(operationName,
-          opDataQueue);
+      opDataQueue = new OperationQueue();
+      OperationQueue oldOpDataQueue =
+        dataMap.putIfAbsent(key, opDataQueue);
       if (oldOpDataQueue != null) {
         opDataQueue = oldOpDataQueue;
       }
@@ -89,6 +287,105 @@ public class DataMap {
     return opDataQueue;
   }
 
+  /**
+   * Reserve the bytes of the body in the queue of
+   * the operation, waiting while the queue is
+   * full. Call this after the head is decoded and
+   * before the body is received.
+   * 
+   * @param data
+   *          the Data being received
+   */
+  public void reserve(Data data) {
+    long bytes = data.getBodySize();
+    if (!data.isOperationData() || bytes <= 0L
+      || data.getQueuedBytes() != 0L) {
+      return;
+    }
+    OperationQueue opDataQueue =
+      createOperationDataQueue(
+        data.getOperationKey());
+    long limit = maxOperationBytes;
+    synchronized (opDataQueue) {
+      if (limit > 0L && opDataQueue.numBytes > 0L
+        && opDataQueue.numBytes + bytes > limit) {
+        numBlocked.increment();
+        long startTime = System.nanoTime();
+        long deadline = startTime + TimeUnit.MILLISECONDS
+          .toNanos(maxBlockTime);
+        try {
+          while (!opDataQueue.isRemoved
+            && opDataQueue.numBytes > 0L
+            && opDataQueue.numBytes + bytes > limit) {
+            long remaining =
+              deadline - System.nanoTime();
+            if (remaining <= 0L) {
+              numOverflows.increment();
+              break;
+            }
+            TimeUnit.NANOSECONDS
+              .timedWait(opDataQueue, remaining);
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        blockedNanos
+          .add(System.nanoTime() - startTime);
+      }
+      opDataQueue.numBytes += bytes;
+    }
+    data.setQueuedBytes(bytes);
+    addQueuedBytes(bytes);
+  }
+
+  private void addQueuedBytes(long bytes) {
+    long total = queuedBytes.addAndGet(bytes);
+    if (bytes > 0L) {
+      peakQueuedBytes.accumulateAndGet(total,
+        Math::max);
+    }
+  }
+
+  /**
+   * Return the bytes of the Data taken from the
+   * queue and wake up the waiting receivers
+   */
+  private void returnBytes(
+    OperationQueue opDataQueue, Data data) {
+    long bytes = data.getQueuedBytes();
+    if (bytes != 0L) {
+      data.setQueuedBytes(0L);
+      addQueuedBytes(-bytes);
+      synchronized (opDataQueue) {
+        // Reserved in a queue removed by cleaning
+        opDataQueue.numBytes =
+          Math.max(opDataQueue.numBytes - bytes, 0L);
+        opDataQueue.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Cancel the reservation of the Data which
+   * fails to be received
+   * 
+   * @param data
+   *          the Data reserved
+   */
+  public void cancelReserve(Data data) {
+    if (data.getQueuedBytes() == 0L) {
+      return;
+    }
+    OperationQueue opDataQueue =
+      dataMap.get(data.getOperationKey());
+    if (opDataQueue != null) {
+      returnBytes(opDataQueue, data);
+    } else {
+      addQueuedBytes(-data.getQueuedBytes());
+      data.setQueuedBytes(0L);
+    }
+  }
+
   /**
    * Wait and get the data from the queue of the
    * operation under the context
@@ -99,31 +396,55 @@ public class DataMap {
    *          the name of the operation
    * @param maxWaitTime
    *          maximum waiting time
-   * @return the data
+   * @return the data, null if none arrives in
+   *         time or the operation collides with
+   *         another one
    * @throws InterruptedException
    */
   public Data waitAndGetData(String contextName,
     String operationName, long maxWaitTime)
     throws InterruptedException {
-    BlockingQueue<Data> opDataQueue =
-      createOperationDataQueue(contextName,
-        operationName);
-    return opDataQueue.poll(maxWaitTime,
+    OperationKey key =
+      register(contextName, operationName);
+    if (key == null) {
+      return null;
+    }
+    OperationQueue opDataQueue =
+      createOperationDataQueue(key);
+    long startTime = CommMetrics.now();
+    Data data = opDataQueue.queue.poll(maxWaitTime,
       TimeUnit.SECONDS);
+    CommMetrics.get().record(contextName,
+      operationName, CommStage.QUEUE_WAIT, startTime);
+    if (data != null) {
+      returnBytes(opDataQueue, data);
+      // Received with the handle only
+      data.setNames(contextName, operationName);
+    }
+    return data;
   }
 
   /**
-   * Put the Data to the DataMap
+   * Put the Data to the DataMap. The bytes of a
+   * Data not reserved are counted without
+   * waiting.
    * 
    * @param data
    *          the Data to be put
    */
   public void putData(Data data) {
-    BlockingQueue<Data> opDataQueue =
+    OperationQueue opDataQueue =
       createOperationDataQueue(
-        data.getContextName(),
-        data.getOperationName());
-    opDataQueue.add(data);
+        data.getOperationKey());
+    long bytes = data.getBodySize();
+    if (data.getQueuedBytes() == 0L && bytes > 0L) {
+      synchronized (opDataQueue) {
+        opDataQueue.numBytes += bytes;
+      }
+      data.setQueuedBytes(bytes);
+      addQueuedBytes(bytes);
+    }
+    opDataQueue.queue.add(data);
   }
 
   /**
@@ -137,17 +458,33 @@ public class DataMap {
    */
   public void cleanOperationData(
     String contextName, String operationName) {
-    ConcurrentMap<String, BlockingQueue<Data>> opDataMap =
-      dataMap.get(contextName);
-    if (opDataMap != null) {
-      BlockingQueue<Data> opDataQueue =
-        opDataMap.remove(operationName);
-      if (opDataQueue != null) {
-        for (Data data : opDataQueue) {
-          data.release();
-        }
-        opDataQueue.clear();
-      }
+    OperationKey key =
+      OperationKey.of(contextName, operationName);
+    registry.unregister(key);
+    releaseQueue(dataMap.remove(key));
+  }
+
+  /**
+   * Release the Data in a queue removed from the
+   * map and wake up the waiting receivers
+   * 
+   * @param opDataQueue
+   *          the queue removed
+   */
+  private void releaseQueue(
+    OperationQueue opDataQueue) {
+    if (opDataQueue == null) {
+      return;
+    }
+    synchronized (opDataQueue) {
+      opDataQueue.isRemoved = true;
+      opDataQueue.notifyAll();
+    }
+    Data data;
+    while ((data =
+      opDataQueue.queue.poll()) != null) {
+      returnBytes(opDataQueue, data);
+      data.release();
     }
   }
 
@@ -159,19 +496,11 @@ public class DataMap {
    *          the name of the context
    */
   public void cleanData(String contextName) {
-    ConcurrentMap<String, BlockingQueue<Data>> opDataMap =
-      dataMap.remove(contextName);
-    if (opDataMap != null) {
-      for (Entry<String, BlockingQueue<Data>> entry : opDataMap
-        .entrySet()) {
-        BlockingQueue<Data> opDataQueue =
-          entry.getValue();
-        if (opDataQueue != null) {
-          for (Data data : opDataQueue) {
-            data.release();
-          }
-          opDataQueue.clear();
-        }
+    registry.unregisterContext(contextName);
+    for (Entry<OperationKey, OperationQueue> entry : dataMap
+      .entrySet()) {
+      if (entry.getKey().isInContext(contextName)) {
+        releaseQueue(dataMap.remove(entry.getKey()));
       }
     }
   }
@@ -180,17 +509,67 @@ public class DataMap {
    * Clean the DataMap
    */
   public void clean() {
-    ConcurrentMap<String, ConcurrentMap<String, BlockingQueue<Data>>> tmpDataMap =
+    ConcurrentMap<OperationKey, OperationQueue> tmpDataMap =
       null;
     synchronized (this) {
       tmpDataMap = dataMap;
       dataMap =
         new ConcurrentHashMap<>(initialCapacity);
     }
-    for (Entry<String, ConcurrentMap<String, BlockingQueue<Data>>> entry : tmpDataMap
-      .entrySet()) {
-      cleanData(entry.getKey());
+    for (OperationQueue opDataQueue : tmpDataMap
+      .values()) {
+      releaseQueue(opDataQueue);
     }
-    dataMap.clear();
+    tmpDataMap.clear();
+  }
+
+  /**
+   * Get the bytes queued or reserved in all the
+   * queues
+   * 
+   * @return the number of bytes
+   */
+  public long getQueuedBytes() {
+    return queuedBytes.get();
+  }
+
+  public long getPeakQueuedBytes() {
+    return peakQueuedBytes.get();
+  }
+
+  /**
+   * Get the number of times a receiver waited for
+   * space in a queue
+   * 
+   * @return the number of waits
+   */
+  public long getNumBlocked() {
+    return numBlocked.sum();
+  }
+
+  public long getBlockedNanos() {
+    return blockedNanos.sum();
+  }
+
+  /**
+   * Get the number of Data queued over the limit
+   * after the longest waiting time
+   * 
+   * @return the number of Data
+   */
+  public long getNumOverflows() {
+    return numOverflows.sum();
+  }
+
+  /**
+   * Log the queue counters
+   */
+  public void log() {
+    LOG.info("Queued bytes: " + queuedBytes.get()
+      + ", peak queued bytes: "
+      + peakQueuedBytes.get() + ", blocked: "
+      + numBlocked.sum() + ", blocked time (ms): "
+      + blockedNanos.sum() / 1000000L
+      + ", overflows: " + numOverflows.sum());
   }
 }
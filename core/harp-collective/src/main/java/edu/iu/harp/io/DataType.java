@@ -31,4 +31,16 @@ public class DataType {
   public static final byte WRITABLE = 7;
   public static final byte SIMPLE_LIST = 8;
   public static final byte PARTITION_LIST = 9;
+  // Arrays in direct memory
+  public static final byte DIRECT_INT_ARRAY = 10;
+  public static final byte DIRECT_FLOAT_ARRAY = 11;
+  public static final byte DIRECT_DOUBLE_ARRAY = 12;
+  // Writable encoded with a registered class ID
+  public static final byte REGISTERED_WRITABLE = 13;
+  // The flag in the body type of a head whose
+  // body array is compressed
+  public static final byte COMPRESSED = 0x40;
+  // The flag in the body type of a head carrying
+  // the operation handle instead of the names
+  public static final byte OPERATION_HANDLE = 0x20;
 }
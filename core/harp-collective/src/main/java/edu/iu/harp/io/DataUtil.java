@@ -20,6 +20,7 @@ import edu.iu.harp.client.Event;
 import edu.iu.harp.client.EventType;
 import edu.iu.harp.partition.Partition;
 import edu.iu.harp.resource.ByteArray;
+import edu.iu.harp.resource.DirectArray;
 import edu.iu.harp.resource.DoubleArray;
 import edu.iu.harp.resource.FloatArray;
 import edu.iu.harp.resource.IntArray;
@@ -28,13 +29,17 @@ import edu.iu.harp.resource.ShortArray;
 import edu.iu.harp.resource.Simple;
 import edu.iu.harp.resource.Transferable;
 import edu.iu.harp.resource.Writable;
+import edu.iu.harp.resource.WritableRegistry;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import org.apache.log4j.Logger;
 
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.RecursiveTask;
 
 /*******************************************************
  * The operations, including deserialization,
@@ -45,6 +50,18 @@ public class DataUtil {
   private static final Logger LOG =
       Logger.getLogger(DataUtil.class);
 
+  /**
+   * The smallest partition list in bytes decoded
+   * in parallel
+   */
+  public static final int PARALLEL_DECODE_BYTES =
+      1 << 20;
+  /**
+   * The partition bytes decoded by one task
+   */
+  private static final int DECODE_TASK_BYTES =
+      1 << 18;
+
   /**
    * Deserialize the data from a Deserializer as a
    * ByteArray
@@ -100,10 +117,8 @@ public class DataUtil {
     ShortArray shortArray =
         ShortArray.create(shortsSize, false);
     try {
-      short[] shorts = shortArray.get();
-      for (int i = 0; i < shortsSize; i++) {
-        shorts[i] = din.readShort();
-      }
+      din.readShorts(shortArray.get(), 0,
+          shortsSize);
       return shortArray;
     } catch (Exception e) {
       shortArray.release();
@@ -130,10 +145,7 @@ public class DataUtil {
     IntArray intAray =
         IntArray.create(intsSize, false);
     try {
-      int[] ints = intAray.get();
-      for (int i = 0; i < intsSize; i++) {
-        ints[i] = din.readInt();
-      }
+      din.readInts(intAray.get(), 0, intsSize);
       return intAray;
     } catch (Exception e) {
       intAray.release();
@@ -160,10 +172,8 @@ public class DataUtil {
     FloatArray floatArray =
         FloatArray.create(floatsSize, false);
     try {
-      float[] floats = floatArray.get();
-      for (int i = 0; i < floatsSize; i++) {
-        floats[i] = din.readFloat();
-      }
+      din.readFloats(floatArray.get(), 0,
+          floatsSize);
       return floatArray;
     } catch (Exception e) {
       floatArray.release();
@@ -192,10 +202,8 @@ public class DataUtil {
     LongArray longArray =
         LongArray.create(longsSize, false);
     try {
-      long[] longs = longArray.get();
-      for (int i = 0; i < longsSize; i++) {
-        longs[i] = din.readLong();
-      }
+      din.readLongs(longArray.get(), 0,
+          longsSize);
       return longArray;
     } catch (Exception e) {
       LOG.error("Fail to deserialize long array",
@@ -228,11 +236,9 @@ public class DataUtil {
     if (doubleArray == null) {
       return null;
     }
-    double[] doubles = doubleArray.get();
     try {
-      for (int i = 0; i < doublesSize; i++) {
-        doubles[i] = din.readDouble();
-      }
+      din.readDoubles(doubleArray.get(), 0,
+          doublesSize);
       return doubleArray;
     } catch (Exception e) {
       LOG.error(
@@ -242,6 +248,42 @@ public class DataUtil {
     }
   }
 
+  /**
+   * Deserialize the data from a Deserializer as a
+   * DirectArray of the data type
+   *
+   * @param din      the Deserializer
+   * @param dataType the data type of the array
+   * @return a DirectArray deserialized from the
+   * Deserializer
+   */
+  public static DirectArray
+  deserializeDirectArray(Deserializer din,
+      byte dataType) {
+    int size = 0;
+    try {
+      size = din.readInt();
+    } catch (IOException e) {
+      LOG.error(
+          "Fail to deserialize direct array", e);
+      return null;
+    }
+    DirectArray directArray =
+        DirectArray.create(dataType, size);
+    if (directArray == null) {
+      return null;
+    }
+    try {
+      din.readFully(directArray.slice());
+      return directArray;
+    } catch (Exception e) {
+      LOG.error(
+          "Fail to deserialize direct array", e);
+      directArray.release();
+      return null;
+    }
+  }
+
   /**
    * Deserialize the data from a Deserializer as a
    * Writable
@@ -278,6 +320,47 @@ public class DataUtil {
     }
   }
 
+  /**
+   * Deserialize the data from a Deserializer as a
+   * Writable encoded with a registered class ID
+   *
+   * @param din the Deserializer
+   * @return a Writable deserialized from the
+   * Deserializer
+   */
+  public static Writable
+  deserializeRegisteredWritable(DataInput din) {
+    int classID = -1;
+    try {
+      classID = din.readUnsignedShort();
+    } catch (Exception e) {
+      LOG.error(
+          "Fail to deserialize the class ID", e);
+      return null;
+    }
+    Class<? extends Writable> clazz =
+        WritableRegistry.get().getClass(classID);
+    if (clazz == null) {
+      LOG.error("Unknown class ID " + classID);
+      return null;
+    }
+    Writable obj = Writable.create(clazz);
+    if (obj == null) {
+      return null;
+    }
+    try {
+      obj.read(din);
+      return obj;
+    } catch (Exception e) {
+      LOG.error(
+          "Fail to deserialize writable with class name "
+              + clazz.getName(),
+          e);
+      obj.release();
+      return null;
+    }
+  }
+
   /**
    * Decode the ByteArray as a list of
    * Transferable objects
@@ -314,8 +397,14 @@ public class DataUtil {
         obj = deserializeLongArray(decoder);
       } else if (dataType == DataType.DOUBLE_ARRAY) {
         obj = deserializeDoubleArray(decoder);
+      } else if (dataType == DataType.DIRECT_INT_ARRAY
+          || dataType == DataType.DIRECT_FLOAT_ARRAY
+          || dataType == DataType.DIRECT_DOUBLE_ARRAY) {
+        obj = deserializeDirectArray(decoder, dataType);
       } else if (dataType == DataType.WRITABLE) {
         obj = deserializeWritable(decoder);
+      } else if (dataType == DataType.REGISTERED_WRITABLE) {
+        obj = deserializeRegisteredWritable(decoder);
       } else {
         LOG.info("Unkown data type.");
       }
@@ -338,10 +427,174 @@ public class DataUtil {
   public static List<Transferable>
   decodePartitionList(
       final ByteArray byteArray) {
-    List<Transferable> partitions =
-        new LinkedList<>();
+    if (byteArray.size() >= PARALLEL_DECODE_BYTES
+        && ReceivePool.get().getNumThreads() > 1) {
+      // The partitions are decoded in parallel if
+      // their offsets are known
+      int[] offsets =
+          getPartitionOffsets(byteArray);
+      if (offsets != null && offsets.length > 2) {
+        return ReceivePool.get().invoke(
+            new PartitionDecoder(byteArray.get(),
+                offsets, 0, offsets.length - 1));
+      }
+    }
+    return decodePartitions(
+        new Deserializer(byteArray));
+  }
+
+  /**
+   * Find the offset of each partition in the
+   * ByteArray. The offsets are known only if all
+   * the partitions are arrays.
+   *
+   * @param byteArray the ByteArray of partitions
+   * @return the offsets of the partitions and the
+   * end offset, null if not all the partitions
+   * are arrays
+   */
+  static int[]
+  getPartitionOffsets(ByteArray byteArray) {
+    IntArrayList offsets = new IntArrayList();
     Deserializer decoder =
         new Deserializer(byteArray);
+    int end = decoder.getPos();
+    try {
+      while (decoder.getPos() < decoder
+          .getLength()) {
+        int pos = decoder.getPos();
+        byte dataType = decoder.readByte();
+        if (dataType == DataType.UNKNOWN_DATA_TYPE) {
+          break;
+        }
+        int elementBytes =
+            getElementBytes(dataType);
+        if (elementBytes == 0 || decoder
+            .getLength() - decoder.getPos() < 4) {
+          return null;
+        }
+        int size = decoder.readInt();
+        // The elements and the partition ID
+        long next = (long) decoder.getPos()
+            + (long) size * elementBytes + 4L;
+        if (size < 0
+            || next > decoder.getLength()) {
+          return null;
+        }
+        offsets.add(pos);
+        decoder.skipBytes(
+            (int) (next - decoder.getPos()));
+        end = decoder.getPos();
+      }
+    } catch (IOException e) {
+      return null;
+    }
+    offsets.add(end);
+    return offsets.toIntArray();
+  }
+
+  /**
+   * Get the number of bytes of an array element
+   *
+   * @param dataType the array type
+   * @return the number of bytes, 0 if not an array
+   */
+  private static int
+  getElementBytes(byte dataType) {
+    switch (dataType) {
+      case DataType.BYTE_ARRAY:
+        return 1;
+      case DataType.SHORT_ARRAY:
+        return 2;
+      case DataType.INT_ARRAY:
+      case DataType.FLOAT_ARRAY:
+      case DataType.DIRECT_INT_ARRAY:
+      case DataType.DIRECT_FLOAT_ARRAY:
+        return 4;
+      case DataType.LONG_ARRAY:
+      case DataType.DOUBLE_ARRAY:
+      case DataType.DIRECT_DOUBLE_ARRAY:
+        return 8;
+      default:
+        return 0;
+    }
+  }
+
+  /**
+   * Decode the partitions in a range of bytes,
+   * split by the byte size into the tasks of the
+   * pool. The order of the partitions is kept.
+   */
+  private static class PartitionDecoder
+      extends RecursiveTask<List<Transferable>> {
+    private static final long serialVersionUID = 1L;
+
+    private final byte[] bytes;
+    private final int[] offsets;
+    private final int start;
+    private final int end;
+
+    PartitionDecoder(byte[] bytes, int[] offsets,
+                     int start, int end) {
+      this.bytes = bytes;
+      this.offsets = offsets;
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    protected List<Transferable> compute() {
+      if (end - start == 1
+          || offsets[end]
+          - offsets[start] <= DECODE_TASK_BYTES) {
+        return decodePartitions(new Deserializer(
+            bytes, offsets[start], offsets[end]));
+      }
+      // Split at the partition nearest to the
+      // middle byte
+      int middle = Arrays.binarySearch(offsets,
+          start + 1, end,
+          (offsets[start] + offsets[end]) >>> 1);
+      if (middle < 0) {
+        middle = -middle - 1;
+      }
+      if (middle >= end) {
+        middle = end - 1;
+      }
+      PartitionDecoder left = new PartitionDecoder(
+          bytes, offsets, start, middle);
+      left.fork();
+      List<Transferable> rightPartitions =
+          new PartitionDecoder(bytes, offsets,
+              middle, end).compute();
+      List<Transferable> leftPartitions =
+          left.join();
+      if (leftPartitions == null
+          || rightPartitions == null) {
+        if (leftPartitions != null) {
+          releaseTransList(leftPartitions);
+        }
+        if (rightPartitions != null) {
+          releaseTransList(rightPartitions);
+        }
+        return null;
+      }
+      leftPartitions.addAll(rightPartitions);
+      return leftPartitions;
+    }
+  }
+
+  /**
+   * Decode the partitions from the Deserializer
+   * until its end
+   *
+   * @param decoder the Deserializer
+   * @return a list of Partitions, null if failed
+   */
+  private static List<Transferable>
+  decodePartitions(Deserializer decoder) {
+    List<Transferable> partitions =
+        new LinkedList<>();
     while (decoder.getPos() < decoder
         .getLength()) {
       byte dataType = DataType.UNKNOWN_DATA_TYPE;
@@ -371,8 +624,16 @@ public class DataUtil {
       } else if (dataType == DataType.DOUBLE_ARRAY) {
         partition =
             deserializeDoubleArray(decoder);
+      } else if (dataType == DataType.DIRECT_INT_ARRAY
+          || dataType == DataType.DIRECT_FLOAT_ARRAY
+          || dataType == DataType.DIRECT_DOUBLE_ARRAY) {
+        partition =
+            deserializeDirectArray(decoder, dataType);
       } else if (dataType == DataType.WRITABLE) {
         partition = deserializeWritable(decoder);
+      } else if (dataType == DataType.REGISTERED_WRITABLE) {
+        partition =
+            deserializeRegisteredWritable(decoder);
       } else {
         LOG.info("Unkown data type.");
       }
@@ -503,12 +764,16 @@ public class DataUtil {
     // + data.isData() + ", head status: "
     // + data.getHeadStatus() + ", body status: "
     // + data.getBodyStatus());
+    // The body is decoded if it is received
+    // directly without the body array
     if ((data
         .getHeadStatus() == DataStatus.ENCODED_ARRAY_DECODED)
         && (data
         .getBodyStatus() == DataStatus.ENCODED_ARRAY
         || data
-        .getBodyStatus() == DataStatus.ENCODED_ARRAY_DECODED)) {
+        .getBodyStatus() == DataStatus.ENCODED_ARRAY_DECODED
+        || data
+        .getBodyStatus() == DataStatus.DECODED)) {
       if (data.isOperationData()) {
         dataMap.putData(data);
       } else if (data.isData()) {
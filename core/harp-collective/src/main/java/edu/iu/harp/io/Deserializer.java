@@ -21,6 +21,7 @@ import org.apache.log4j.Logger;
 
 import java.io.DataInput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /*******************************************************
  * A class for Deserialization implemented
@@ -247,4 +248,137 @@ public class Deserializer implements DataInput {
     }
     return new String(chars);
   }
+
+  /**
+   * Check the bytes for reading length values of
+   * the element size to v[off]
+   */
+  private void checkBulkRead(int arrLen, int off,
+    int length, int elementBytes)
+    throws IOException {
+    if (off < 0 || length < 0
+      || (off + length) > arrLen
+      || (pos + (long) length * elementBytes) > len) {
+      throw new IOException("Cannot read.");
+    }
+  }
+
+  /**
+   * Read short values in bulk. The result is the
+   * same as calling readShort for each value.
+   * 
+   * @param v
+   *          the array to fill
+   * @param off
+   *          the start index in the array
+   * @param length
+   *          the number of values
+   * @throws IOException
+   */
+  public void readShorts(short[] v, int off,
+    int length) throws IOException {
+    checkBulkRead(v.length, off, length, 2);
+    ByteBuffer.wrap(bytes, pos, length * 2)
+      .asShortBuffer().get(v, off, length);
+    pos += length * 2;
+  }
+
+  /**
+   * Read int values in bulk. The result is the
+   * same as calling readInt for each value.
+   * 
+   * @param v
+   *          the array to fill
+   * @param off
+   *          the start index in the array
+   * @param length
+   *          the number of values
+   * @throws IOException
+   */
+  public void readInts(int[] v, int off,
+    int length) throws IOException {
+    checkBulkRead(v.length, off, length, 4);
+    ByteBuffer.wrap(bytes, pos, length * 4)
+      .asIntBuffer().get(v, off, length);
+    pos += length * 4;
+  }
+
+  /**
+   * Read float values in bulk. The result is the
+   * same as calling readFloat for each value.
+   * 
+   * @param v
+   *          the array to fill
+   * @param off
+   *          the start index in the array
+   * @param length
+   *          the number of values
+   * @throws IOException
+   */
+  public void readFloats(float[] v, int off,
+    int length) throws IOException {
+    checkBulkRead(v.length, off, length, 4);
+    ByteBuffer.wrap(bytes, pos, length * 4)
+      .asFloatBuffer().get(v, off, length);
+    pos += length * 4;
+  }
+
+  /**
+   * Read long values in bulk. The result is the
+   * same as calling readLong for each value.
+   * 
+   * @param v
+   *          the array to fill
+   * @param off
+   *          the start index in the array
+   * @param length
+   *          the number of values
+   * @throws IOException
+   */
+  public void readLongs(long[] v, int off,
+    int length) throws IOException {
+    checkBulkRead(v.length, off, length, 8);
+    ByteBuffer.wrap(bytes, pos, length * 8)
+      .asLongBuffer().get(v, off, length);
+    pos += length * 8;
+  }
+
+  /**
+   * Read double values in bulk. The result is the
+   * same as calling readDouble for each value.
+   * 
+   * @param v
+   *          the array to fill
+   * @param off
+   *          the start index in the array
+   * @param length
+   *          the number of values
+   * @throws IOException
+   */
+  public void readDoubles(double[] v, int off,
+    int length) throws IOException {
+    checkBulkRead(v.length, off, length, 8);
+    ByteBuffer.wrap(bytes, pos, length * 8)
+      .asDoubleBuffer().get(v, off, length);
+    pos += length * 8;
+  }
+
+  /**
+   * Fill the remaining bytes of the buffer in
+   * bulk. The position of the buffer is moved to
+   * its limit.
+   * 
+   * @param dst
+   *          the buffer to fill
+   * @throws IOException
+   */
+  public void readFully(ByteBuffer dst)
+    throws IOException {
+    int length = dst.remaining();
+    if ((pos + (long) length) > len) {
+      throw new IOException("Cannot read.");
+    }
+    dst.put(bytes, pos, length);
+    pos += length;
+  }
 }
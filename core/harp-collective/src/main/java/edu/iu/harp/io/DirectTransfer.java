@@ -0,0 +1,575 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package edu.iu.harp.io;
+
+import edu.iu.harp.partition.Partition;
+import edu.iu.harp.resource.Array;
+import edu.iu.harp.resource.ByteArray;
+import edu.iu.harp.resource.DirectArray;
+import edu.iu.harp.resource.DirectBufferPool;
+import edu.iu.harp.resource.DoubleArray;
+import edu.iu.harp.resource.FloatArray;
+import edu.iu.harp.resource.IntArray;
+import edu.iu.harp.resource.LongArray;
+import edu.iu.harp.resource.ResourcePool;
+import edu.iu.harp.resource.ShortArray;
+import edu.iu.harp.resource.Simple;
+import edu.iu.harp.resource.Transferable;
+import org.apache.log4j.Logger;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.LinkedList;
+import java.util.List;
+
+/*******************************************************
+ * Send and receive partition lists of primitive
+ * arrays without the encoded body array. Array
+ * data is moved between the arrays and the
+ * socket channel through pooled direct buffers,
+ * one chunk at a time. Arrays in direct memory
+ * are written and filled by the channel as they
+ * are, without the pooled buffer. The bytes on
+ * the wire are the same as the ones produced by
+ * DataUtil.encodeTransList, so both sides can
+ * use either path.
+ ******************************************************/
+public class DirectTransfer {
+
+  private static final Logger LOG =
+    Logger.getLogger(DirectTransfer.class);
+
+  /**
+   * Check if the body of the data can be sent
+   * directly from the arrays. The body must be a
+   * non-empty decoded partition list of primitive
+   * arrays matching the body size in the head.
+   *
+   * @param data
+   *          the Data
+   * @return true if the body can be sent
+   *         directly
+   */
+  public static boolean isDirectBody(Data data) {
+    if (data.getBodyType() != DataType.PARTITION_LIST
+      || data.getBodyStatus() != DataStatus.DECODED
+      || data.getBody() == null
+      || data.getBody().isEmpty()) {
+      return false;
+    }
+    long size = 0;
+    for (Transferable trans : data.getBody()) {
+      if (!(trans instanceof Partition)) {
+        return false;
+      }
+      Simple simple = ((Partition<?>) trans).get();
+      if (getArrayType(simple)
+        == DataType.UNKNOWN_DATA_TYPE) {
+        return false;
+      }
+      size += trans.getNumEnocdeBytes();
+    }
+    return size == data.getBodySize();
+  }
+
+  /**
+   * Get the data type of a primitive array
+   *
+   * @param simple
+   *          the object
+   * @return the data type, or
+   *         DataType.UNKNOWN_DATA_TYPE if it is
+   *         not a primitive array
+   */
+  private static byte getArrayType(Simple simple) {
+    if (simple instanceof DoubleArray) {
+      return DataType.DOUBLE_ARRAY;
+    } else if (simple instanceof IntArray) {
+      return DataType.INT_ARRAY;
+    } else if (simple instanceof FloatArray) {
+      return DataType.FLOAT_ARRAY;
+    } else if (simple instanceof LongArray) {
+      return DataType.LONG_ARRAY;
+    } else if (simple instanceof ShortArray) {
+      return DataType.SHORT_ARRAY;
+    } else if (simple instanceof ByteArray) {
+      return DataType.BYTE_ARRAY;
+    } else if (simple instanceof DirectArray) {
+      return ((DirectArray) simple).getDataType();
+    } else {
+      return DataType.UNKNOWN_DATA_TYPE;
+    }
+  }
+
+  /**
+   * Get the number of bytes of each element
+   *
+   * @param dataType
+   *          the data type of the array
+   * @return the number of bytes of each element
+   */
+  private static int getElementBytes(
+    byte dataType) {
+    switch (dataType) {
+      case DataType.BYTE_ARRAY:
+        return 1;
+      case DataType.SHORT_ARRAY:
+        return 2;
+      case DataType.INT_ARRAY:
+      case DataType.FLOAT_ARRAY:
+      case DataType.DIRECT_INT_ARRAY:
+      case DataType.DIRECT_FLOAT_ARRAY:
+        return 4;
+      case DataType.LONG_ARRAY:
+      case DataType.DOUBLE_ARRAY:
+      case DataType.DIRECT_DOUBLE_ARRAY:
+        return 8;
+      default:
+        return 0;
+    }
+  }
+
+  /**
+   * Send the partition list. The preamble (the
+   * command, op and head bytes) is sent together
+   * with the first chunk of the body in one
+   * gathering write.
+   *
+   * @param channel
+   *          the channel to write
+   * @param preamble
+   *          the bytes before the body
+   * @param partitions
+   *          the partitions checked by
+   *          isDirectBody
+   * @throws IOException
+   */
+  public static void sendPartitionList(
+    GatheringByteChannel channel,
+    ByteBuffer preamble,
+    List<Transferable> partitions)
+    throws IOException {
+    DirectBufferPool pool =
+      ResourcePool.get().getDirectBufferPool();
+    ByteBuffer buffer = pool.getBuffer();
+    ByteBuffer[] buffers =
+      new ByteBuffer[] { preamble, buffer };
+    try {
+      for (Transferable trans : partitions) {
+        Partition<?> partition =
+          (Partition<?>) trans;
+        Simple simple = partition.get();
+        byte dataType = getArrayType(simple);
+        int elementBytes =
+          getElementBytes(dataType);
+        if (buffer.remaining() < 5) {
+          flush(channel, buffers);
+        }
+        buffer.put(dataType);
+        if (simple instanceof DirectArray) {
+          DirectArray directArray =
+            (DirectArray) simple;
+          buffer.putInt(directArray.size());
+          flush(channel, buffers);
+          ByteBuffer src = directArray.slice();
+          while (src.hasRemaining()) {
+            channel.write(src);
+          }
+          buffer.putInt(partition.id());
+          continue;
+        }
+        Array<?> array = (Array<?>) simple;
+        buffer.putInt(array.size());
+        int pos = array.start();
+        int end = pos + array.size();
+        while (pos < end) {
+          int len = Math.min(end - pos,
+            buffer.remaining() / elementBytes);
+          if (len == 0) {
+            flush(channel, buffers);
+            continue;
+          }
+          putElements(buffer, array, dataType, pos,
+            len);
+          pos += len;
+        }
+        if (buffer.remaining() < 4) {
+          flush(channel, buffers);
+        }
+        buffer.putInt(partition.id());
+      }
+      flush(channel, buffers);
+    } finally {
+      pool.releaseBuffer(buffer);
+    }
+  }
+
+  /**
+   * Copy array elements to the buffer
+   */
+  private static void putElements(
+    ByteBuffer buffer, Array<?> array,
+    byte dataType, int pos, int len) {
+    switch (dataType) {
+      case DataType.DOUBLE_ARRAY:
+        buffer.asDoubleBuffer()
+          .put((double[]) array.get(), pos, len);
+        break;
+      case DataType.INT_ARRAY:
+        buffer.asIntBuffer()
+          .put((int[]) array.get(), pos, len);
+        break;
+      case DataType.FLOAT_ARRAY:
+        buffer.asFloatBuffer()
+          .put((float[]) array.get(), pos, len);
+        break;
+      case DataType.LONG_ARRAY:
+        buffer.asLongBuffer()
+          .put((long[]) array.get(), pos, len);
+        break;
+      case DataType.SHORT_ARRAY:
+        buffer.asShortBuffer()
+          .put((short[]) array.get(), pos, len);
+        break;
+      default:
+        buffer.put((byte[]) array.get(), pos, len);
+        return;
+    }
+    buffer.position(buffer.position()
+      + len * getElementBytes(dataType));
+  }
+
+  /**
+   * Write the preamble (if not written yet) and
+   * the filled part of the buffer, then clear the
+   * buffer for filling.
+   */
+  private static void flush(
+    GatheringByteChannel channel,
+    ByteBuffer[] buffers) throws IOException {
+    ByteBuffer buffer = buffers[1];
+    buffer.flip();
+    if (buffers[0].hasRemaining()) {
+      while (buffers[0].hasRemaining()
+        || buffer.hasRemaining()) {
+        channel.write(buffers);
+      }
+    } else {
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    }
+    buffer.clear();
+  }
+
+  /**
+   * Receive a partition list of the body size
+   * from the channel. Primitive arrays are filled
+   * from the pooled direct buffer without the
+   * encoded body array. If other types are met,
+   * the rest of the body is received as an array
+   * and decoded by DataUtil.
+   *
+   * @param channel
+   *          the channel to read
+   * @param bodySize
+   *          the size of the body in bytes
+   * @return the list of partitions
+   * @throws IOException
+   */
+  public static List<Transferable>
+    receivePartitionList(
+      ReadableByteChannel channel, int bodySize)
+      throws IOException {
+    List<Transferable> partitions =
+      new LinkedList<>();
+    DirectBufferPool pool =
+      ResourcePool.get().getDirectBufferPool();
+    BodyReader reader = new BodyReader(channel,
+      pool.getBuffer(), bodySize);
+    try {
+      while (reader.hasRemaining()) {
+        reader.fill(1);
+        byte dataType = reader.buffer.get();
+        int elementBytes =
+          getElementBytes(dataType);
+        if (elementBytes == 0) {
+          List<Transferable> rest =
+            reader.receiveRest(dataType);
+          if (rest == null) {
+            throw new IOException(
+              "Fail to decode partition list.");
+          }
+          partitions.addAll(rest);
+          break;
+        }
+        reader.fill(4);
+        int size = reader.buffer.getInt();
+        if (dataType == DataType.DIRECT_INT_ARRAY
+          || dataType == DataType.DIRECT_FLOAT_ARRAY
+          || dataType == DataType.DIRECT_DOUBLE_ARRAY) {
+          partitions.add(
+            receiveDirectArray(reader, dataType, size));
+          continue;
+        }
+        Array<?> array = createArray(dataType, size);
+        if (array == null) {
+          throw new IOException(
+            "Fail to create array of size "
+              + size);
+        }
+        int partitionID =
+          Constant.UNKNOWN_PARTITION_ID;
+        try {
+          int pos = 0;
+          while (pos < size) {
+            reader.fill(elementBytes);
+            int len = Math.min(size - pos,
+              reader.buffer.remaining()
+                / elementBytes);
+            getElements(reader.buffer, array,
+              dataType, pos, len);
+            pos += len;
+          }
+          reader.fill(4);
+          partitionID = reader.buffer.getInt();
+        } catch (IOException e) {
+          array.release();
+          throw e;
+        }
+        partitions.add(
+          new Partition<Simple>(partitionID, array));
+      }
+      return partitions;
+    } catch (IOException e) {
+      LOG.error("Fail to receive partition list.",
+        e);
+      DataUtil.releaseTransList(partitions);
+      throw e;
+    } finally {
+      pool.releaseBuffer(reader.buffer);
+    }
+  }
+
+  /**
+   * Receive an array in direct memory and its
+   * partition ID
+   */
+  private static Partition<Simple>
+    receiveDirectArray(BodyReader reader,
+      byte dataType, int size)
+      throws IOException {
+    DirectArray array =
+      DirectArray.create(dataType, size);
+    if (array == null) {
+      throw new IOException(
+        "Fail to create direct array of size "
+          + size);
+    }
+    try {
+      reader.readFully(array.slice());
+      reader.fill(4);
+      return new Partition<Simple>(
+        reader.buffer.getInt(), array);
+    } catch (IOException e) {
+      array.release();
+      throw e;
+    }
+  }
+
+  /**
+   * Create an array from the ResourcePool
+   */
+  private static Array<?> createArray(
+    byte dataType, int size) {
+    switch (dataType) {
+      case DataType.DOUBLE_ARRAY:
+        return DoubleArray.create(size, false);
+      case DataType.INT_ARRAY:
+        return IntArray.create(size, false);
+      case DataType.FLOAT_ARRAY:
+        return FloatArray.create(size, false);
+      case DataType.LONG_ARRAY:
+        return LongArray.create(size, false);
+      case DataType.SHORT_ARRAY:
+        return ShortArray.create(size, false);
+      default:
+        return ByteArray.create(size, false);
+    }
+  }
+
+  /**
+   * Copy elements from the buffer to the array
+   */
+  private static void getElements(
+    ByteBuffer buffer, Array<?> array,
+    byte dataType, int pos, int len) {
+    switch (dataType) {
+      case DataType.DOUBLE_ARRAY:
+        buffer.asDoubleBuffer()
+          .get((double[]) array.get(), pos, len);
+        break;
+      case DataType.INT_ARRAY:
+        buffer.asIntBuffer()
+          .get((int[]) array.get(), pos, len);
+        break;
+      case DataType.FLOAT_ARRAY:
+        buffer.asFloatBuffer()
+          .get((float[]) array.get(), pos, len);
+        break;
+      case DataType.LONG_ARRAY:
+        buffer.asLongBuffer()
+          .get((long[]) array.get(), pos, len);
+        break;
+      case DataType.SHORT_ARRAY:
+        buffer.asShortBuffer()
+          .get((short[]) array.get(), pos, len);
+        break;
+      default:
+        buffer.get((byte[]) array.get(), pos, len);
+        return;
+    }
+    buffer.position(buffer.position()
+      + len * getElementBytes(dataType));
+  }
+
+  /*******************************************************
+   * Read the body through the buffer, never
+   * beyond the body size
+   ******************************************************/
+  private static class BodyReader {
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer;
+    /** The bytes not read from the channel yet */
+    private int remaining;
+
+    private BodyReader(ReadableByteChannel channel,
+      ByteBuffer buffer, int bodySize) {
+      this.channel = channel;
+      this.buffer = buffer;
+      this.remaining = bodySize;
+      // Empty for reading
+      this.buffer.limit(0);
+    }
+
+    private boolean hasRemaining() {
+      return buffer.hasRemaining()
+        || remaining > 0;
+    }
+
+    /**
+     * Make sure that at least n bytes are
+     * buffered
+     */
+    private void fill(int n) throws IOException {
+      if (buffer.remaining() >= n) {
+        return;
+      }
+      buffer.compact();
+      while (buffer.position() < n) {
+        if (remaining == 0) {
+          throw new EOFException(
+            "Unexpected end of the body.");
+        }
+        buffer.limit(Math.min(buffer.capacity(),
+          buffer.position() + remaining));
+        int len = channel.read(buffer);
+        if (len < 0) {
+          throw new EOFException(
+            "Unexpected end of the stream.");
+        }
+        remaining -= len;
+      }
+      buffer.flip();
+    }
+
+    /**
+     * Fill the destination with the buffered
+     * bytes first, then read the channel into it
+     * directly
+     */
+    private void readFully(ByteBuffer dst)
+      throws IOException {
+      if (dst.remaining()
+        > buffer.remaining() + (long) remaining) {
+        throw new EOFException(
+          "Unexpected end of the body.");
+      }
+      int len =
+        Math.min(buffer.remaining(), dst.remaining());
+      int limit = buffer.limit();
+      buffer.limit(buffer.position() + len);
+      dst.put(buffer);
+      buffer.limit(limit);
+      while (dst.hasRemaining()) {
+        len = channel.read(dst);
+        if (len < 0) {
+          throw new EOFException(
+            "Unexpected end of the stream.");
+        }
+        remaining -= len;
+      }
+    }
+
+    /**
+     * Receive the rest of the body into a byte
+     * array, the data type is already read
+     */
+    private List<Transferable> receiveRest(
+      byte dataType) throws IOException {
+      int size = 1 + buffer.remaining() + remaining;
+      ByteArray restArray =
+        ByteArray.create(size, true);
+      if (restArray == null) {
+        throw new IOException(
+          "Fail to create array of size " + size);
+      }
+      try {
+        byte[] bytes = restArray.get();
+        int pos = restArray.start();
+        bytes[pos++] = dataType;
+        int len = buffer.remaining();
+        buffer.get(bytes, pos, len);
+        pos += len;
+        while (remaining > 0) {
+          buffer.clear();
+          buffer.limit(
+            Math.min(buffer.capacity(), remaining));
+          len = channel.read(buffer);
+          if (len < 0) {
+            throw new EOFException(
+              "Unexpected end of the stream.");
+          }
+          remaining -= len;
+          buffer.flip();
+          buffer.get(bytes, pos, len);
+          pos += len;
+        }
+        buffer.limit(0);
+        return DataUtil.decodePartitionList(
+          new ByteArray(bytes, restArray.start(),
+            size));
+      } finally {
+        restArray.release();
+      }
+    }
+  }
+}
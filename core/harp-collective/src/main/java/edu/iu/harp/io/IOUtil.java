@@ -18,6 +18,7 @@ package edu.iu.harp.io;
 
 import org.apache.log4j.Logger;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -49,6 +50,15 @@ public class IOUtil {
   public static void sendBytes(
     final OutputStream out, final byte[] bytes,
     int start, int size) throws IOException {
+    // Write in pipeline sized pieces, streams on
+    // socket channels copy each write to a
+    // temporary direct buffer of the same size
+    while (size > Constant.PIPELINE_SIZE) {
+      out.write(bytes, start,
+        Constant.PIPELINE_SIZE);
+      start += Constant.PIPELINE_SIZE;
+      size -= Constant.PIPELINE_SIZE;
+    }
     out.write(bytes, start, size);
     out.flush();
   }
@@ -60,7 +70,11 @@ public class IOUtil {
     byte[] bytes, int start, int size)
     throws IOException {
     while (size > 0) {
-      int len = in.read(bytes, start, size);
+      int len = in.read(bytes, start,
+        Math.min(size, Constant.PIPELINE_SIZE));
+      if (len < 0) {
+        throw new EOFException();
+      }
       size -= len;
       start += len;
     }
@@ -0,0 +1,331 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.io;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/*******************************************************
+ * A fast LZ77 byte codec using the LZ4 block
+ * format: a token with the literal length and the
+ * match length, the literals, a two-byte little
+ * endian offset and the extra match length.
+ * Matches are found with a single hash table of
+ * 4-byte sequences, trading ratio for speed.
+ * <p>
+ * The byte shuffle filter groups the i-th bytes
+ * of fixed-width elements, so that the similar
+ * high bytes of doubles become runs the codec can
+ * match.
+ ******************************************************/
+public class LzCodec {
+
+  private static final int MIN_MATCH = 4;
+  /** The last bytes are always literals */
+  private static final int LAST_LITERALS = 5;
+  /** No match starts in the last bytes */
+  private static final int MF_LIMIT = 12;
+  private static final int MAX_OFFSET = 65535;
+  private static final int HASH_LOG = 14;
+  /** Skip faster in data without matches */
+  private static final int SKIP_TRIGGER = 6;
+
+  private static final ThreadLocal<int[]> hashTables =
+    ThreadLocal.withInitial(
+      () -> new int[1 << HASH_LOG]);
+
+  /**
+   * Get the largest size of the compressed bytes
+   *
+   * @param len
+   *          the number of bytes to compress
+   * @return the largest compressed size
+   */
+  public static int maxCompressedLength(int len) {
+    return len + len / 255 + 16;
+  }
+
+  /**
+   * Compress the bytes
+   *
+   * @param src
+   *          the source bytes
+   * @param srcOff
+   *          the start of the source
+   * @param len
+   *          the number of bytes to compress
+   * @param dst
+   *          the destination, with at least
+   *          maxCompressedLength(len) bytes
+   * @param dstOff
+   *          the start of the destination
+   * @return the number of compressed bytes
+   */
+  public static int compress(byte[] src,
+    int srcOff, int len, byte[] dst, int dstOff) {
+    int srcEnd = srcOff + len;
+    int op = dstOff;
+    int anchor = srcOff;
+    if (len >= MF_LIMIT + 1) {
+      int[] table = hashTables.get();
+      Arrays.fill(table, -1);
+      int matchLimit = srcEnd - LAST_LITERALS;
+      int limit = srcEnd - MF_LIMIT;
+      int ip = srcOff;
+      while (ip < limit) {
+        int seq = readInt(src, ip);
+        int h = hash(seq);
+        int ref = table[h];
+        table[h] = ip;
+        if (ref < 0 || ip - ref > MAX_OFFSET
+          || readInt(src, ref) != seq) {
+          ip += 1 + ((ip - anchor) >>> SKIP_TRIGGER);
+          continue;
+        }
+        // Extend the match backwards and forwards
+        while (ip > anchor && ref > srcOff
+          && src[ip - 1] == src[ref - 1]) {
+          ip--;
+          ref--;
+        }
+        int matchLen = MIN_MATCH;
+        while (ip + matchLen < matchLimit
+          && src[ip + matchLen] == src[ref
+            + matchLen]) {
+          matchLen++;
+        }
+        op = writeSequence(src, anchor, ip - anchor,
+          ip - ref, matchLen, dst, op);
+        ip += matchLen;
+        anchor = ip;
+        if (ip < limit) {
+          // Index a position inside the match
+          table[hash(readInt(src, ip - 2))] =
+            ip - 2;
+        }
+      }
+    }
+    return writeLastLiterals(src, anchor,
+      srcEnd - anchor, dst, op) - dstOff;
+  }
+
+  private static int writeSequence(byte[] src,
+    int litStart, int litLen, int offset,
+    int matchLen, byte[] dst, int op) {
+    int tokenPos = op++;
+    int ml = matchLen - MIN_MATCH;
+    int token = (Math.min(litLen, 15) << 4)
+      | Math.min(ml, 15);
+    dst[tokenPos] = (byte) token;
+    op = writeLength(litLen, dst, op);
+    System.arraycopy(src, litStart, dst, op,
+      litLen);
+    op += litLen;
+    dst[op++] = (byte) offset;
+    dst[op++] = (byte) (offset >>> 8);
+    return writeLength(ml, dst, op);
+  }
+
+  private static int writeLastLiterals(
+    byte[] src, int litStart, int litLen,
+    byte[] dst, int op) {
+    dst[op++] = (byte) (Math.min(litLen, 15) << 4);
+    op = writeLength(litLen, dst, op);
+    System.arraycopy(src, litStart, dst, op,
+      litLen);
+    return op + litLen;
+  }
+
+  /**
+   * Write the part of a length beyond the 4 bits
+   * in the token
+   */
+  private static int writeLength(int len,
+    byte[] dst, int op) {
+    if (len >= 15) {
+      len -= 15;
+      while (len >= 255) {
+        dst[op++] = (byte) 255;
+        len -= 255;
+      }
+      dst[op++] = (byte) len;
+    }
+    return op;
+  }
+
+  /**
+   * Decompress the bytes
+   *
+   * @param src
+   *          the compressed bytes
+   * @param srcOff
+   *          the start of the compressed bytes
+   * @param len
+   *          the number of compressed bytes
+   * @param dst
+   *          the destination
+   * @param dstOff
+   *          the start of the destination
+   * @param rawLen
+   *          the number of decompressed bytes
+   * @throws IOException
+   *           if the bytes are corrupted
+   */
+  public static void decompress(byte[] src,
+    int srcOff, int len, byte[] dst, int dstOff,
+    int rawLen) throws IOException {
+    int srcEnd = srcOff + len;
+    int dstEnd = dstOff + rawLen;
+    int ip = srcOff;
+    int op = dstOff;
+    try {
+      while (ip < srcEnd) {
+        int token = src[ip++] & 0xff;
+        int litLen = token >>> 4;
+        if (litLen == 15) {
+          int b;
+          do {
+            b = src[ip++] & 0xff;
+            litLen += b;
+          } while (b == 255);
+        }
+        if (ip + litLen > srcEnd
+          || op + litLen > dstEnd) {
+          throw new IOException(
+            "Corrupted literals at " + ip);
+        }
+        System.arraycopy(src, ip, dst, op, litLen);
+        ip += litLen;
+        op += litLen;
+        if (ip == srcEnd) {
+          break;
+        }
+        int offset = (src[ip] & 0xff)
+          | ((src[ip + 1] & 0xff) << 8);
+        ip += 2;
+        int matchLen = token & 15;
+        if (matchLen == 15) {
+          int b;
+          do {
+            b = src[ip++] & 0xff;
+            matchLen += b;
+          } while (b == 255);
+        }
+        matchLen += MIN_MATCH;
+        int ref = op - offset;
+        if (offset == 0 || ref < dstOff
+          || op + matchLen > dstEnd) {
+          throw new IOException(
+            "Corrupted match at " + ip);
+        }
+        if (offset >= matchLen) {
+          System.arraycopy(dst, ref, dst, op,
+            matchLen);
+          op += matchLen;
+        } else {
+          // The match overlaps the output
+          for (int i = 0; i < matchLen; i++) {
+            dst[op++] = dst[ref++];
+          }
+        }
+      }
+    } catch (ArrayIndexOutOfBoundsException e) {
+      throw new IOException(
+        "Corrupted compressed bytes.", e);
+    }
+    if (op != dstEnd) {
+      throw new IOException("Decompressed "
+        + (op - dstOff) + " bytes, expected "
+        + rawLen);
+    }
+  }
+
+  /**
+   * Group the i-th bytes of the elements together
+   *
+   * @param src
+   *          the source bytes
+   * @param srcOff
+   *          the start of the source
+   * @param len
+   *          the number of bytes
+   * @param dst
+   *          the destination
+   * @param dstOff
+   *          the start of the destination
+   * @param width
+   *          the width of an element in bytes
+   */
+  public static void shuffle(byte[] src,
+    int srcOff, int len, byte[] dst, int dstOff,
+    int width) {
+    int n = len / width;
+    for (int i = 0; i < n; i++) {
+      int s = srcOff + i * width;
+      for (int b = 0; b < width; b++) {
+        dst[dstOff + b * n + i] = src[s + b];
+      }
+    }
+    int tail = n * width;
+    System.arraycopy(src, srcOff + tail, dst,
+      dstOff + tail, len - tail);
+  }
+
+  /**
+   * Reverse the byte shuffle filter
+   *
+   * @param src
+   *          the shuffled bytes
+   * @param srcOff
+   *          the start of the shuffled bytes
+   * @param len
+   *          the number of bytes
+   * @param dst
+   *          the destination
+   * @param dstOff
+   *          the start of the destination
+   * @param width
+   *          the width of an element in bytes
+   */
+  public static void unshuffle(byte[] src,
+    int srcOff, int len, byte[] dst, int dstOff,
+    int width) {
+    int n = len / width;
+    for (int b = 0; b < width; b++) {
+      int s = srcOff + b * n;
+      for (int i = 0; i < n; i++) {
+        dst[dstOff + i * width + b] = src[s + i];
+      }
+    }
+    int tail = n * width;
+    System.arraycopy(src, srcOff + tail, dst,
+      dstOff + tail, len - tail);
+  }
+
+  private static int readInt(byte[] bytes,
+    int pos) {
+    return (bytes[pos] & 0xff)
+      | ((bytes[pos + 1] & 0xff) << 8)
+      | ((bytes[pos + 2] & 0xff) << 16)
+      | ((bytes[pos + 3] & 0xff) << 24);
+  }
+
+  private static int hash(int seq) {
+    return (seq * -1640531535) >>> (32
+      - HASH_LOG);
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.io;
+
+/*******************************************************
+ * The key of an operation in the DataMap: the
+ * handle and the check of the names. Two
+ * operations whose handles collide are kept apart
+ * by their checks, hashed in another way from
+ * the names and their lengths.
+ ******************************************************/
+public final class OperationKey {
+
+  private final long handle;
+  private final long check;
+
+  public OperationKey(long handle, long check) {
+    this.handle = handle;
+    this.check = check;
+  }
+
+  /**
+   * Get the key of the operation
+   *
+   * @param contextName
+   *          the name of the context
+   * @param operationName
+   *          the name of the operation
+   * @return the key
+   */
+  public static OperationKey of(String contextName,
+    String operationName) {
+    return new OperationKey(
+      OperationRegistry.getHandle(contextName,
+        operationName),
+      OperationRegistry.getCheck(contextName,
+        operationName));
+  }
+
+  public long getHandle() {
+    return handle;
+  }
+
+  public long getCheck() {
+    return check;
+  }
+
+  /**
+   * Check if the operation is under the context,
+   * by both the handle and the check
+   *
+   * @param contextName
+   *          the name of the context
+   * @return true if under the context
+   */
+  public boolean isInContext(String contextName) {
+    return OperationRegistry.isInContext(handle,
+      check, contextName);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof OperationKey)) {
+      return false;
+    }
+    OperationKey other = (OperationKey) obj;
+    return handle == other.handle
+      && check == other.check;
+  }
+
+  @Override
+  public int hashCode() {
+    return Long.hashCode(handle);
+  }
+
+  @Override
+  public String toString() {
+    return Long.toHexString(handle) + "/"
+      + Long.toHexString(check);
+  }
+}
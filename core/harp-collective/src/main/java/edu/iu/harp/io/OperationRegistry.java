@@ -0,0 +1,256 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.io;
+
+import org.apache.log4j.Logger;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*******************************************************
+ * The handles of the operations. A handle is a
+ * long computed from the names, the hash of the
+ * context name in the high 32 bits and the hash
+ * of the operation name in the low 32 bits, so
+ * all the workers agree on the handles without
+ * communication. The head of an operation data
+ * carries the handle instead of the names.
+ * <p>
+ * As names built per iteration make collisions
+ * of 32-bit hashes likely over long jobs, the
+ * head also carries a check, another 64-bit hash
+ * of the names and their lengths. The DataMap
+ * routes the data by both as an OperationKey, so
+ * operations or contexts whose handles collide
+ * are still kept apart.
+ * <p>
+ * Each DataMap keeps the names of the operations
+ * registered on it, to give the names of the
+ * data received and to detect two operations
+ * with the same handle and check. Workers in the
+ * same JVM have their own registries.
+ ******************************************************/
+public class OperationRegistry {
+
+  private static final Logger LOG =
+    Logger.getLogger(OperationRegistry.class);
+
+  private static volatile boolean isEnabled = true;
+
+  /** The names of the registered operations */
+  private final ConcurrentHashMap<OperationKey, String[]> names;
+  /** Changed when names are removed */
+  private final AtomicInteger version;
+
+  public OperationRegistry() {
+    names = new ConcurrentHashMap<>();
+    version = new AtomicInteger(0);
+  }
+
+  /**
+   * Send the handles in the heads of the data, or
+   * the names if disabled. The data received is
+   * decoded in both ways. This applies to all the
+   * data sent from this JVM.
+   *
+   * @param enabled
+   *          use the handles or not
+   */
+  public static void setEnabled(boolean enabled) {
+    isEnabled = enabled;
+  }
+
+  public static boolean isEnabled() {
+    return isEnabled;
+  }
+
+  /**
+   * Get the handle of the operation
+   *
+   * @param contextName
+   *          the name of the context
+   * @param operationName
+   *          the name of the operation
+   * @return the handle
+   */
+  public static long getHandle(
+    String contextName, String operationName) {
+    return ((long) hash(contextName) << 32)
+      | (hash(operationName) & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Get the check of the operation, the second
+   * hash of the context name in the high 32 bits
+   * and of the operation name in the low 32 bits
+   *
+   * @param contextName
+   *          the name of the context
+   * @param operationName
+   *          the name of the operation
+   * @return the check
+   */
+  public static long getCheck(
+    String contextName, String operationName) {
+    return ((long) check(contextName) << 32)
+      | (check(operationName) & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Check if the operation belongs to the context
+   *
+   * @param handle
+   *          the handle
+   * @param check
+   *          the check
+   * @param contextName
+   *          the name of the context
+   * @return true if the operation is under the
+   *         context
+   */
+  public static boolean isInContext(long handle,
+    long check, String contextName) {
+    return (int) (handle >>> 32) == hash(
+      contextName)
+      && (int) (check >>> 32) == check(
+        contextName);
+  }
+
+  /**
+   * FNV-1a of the chars, then the final mix of
+   * MurmurHash3
+   */
+  private static int hash(String name) {
+    int h = 0x811C9DC5;
+    for (int i = 0; i < name.length(); i++) {
+      h = (h ^ name.charAt(i)) * 0x01000193;
+    }
+    h ^= h >>> 16;
+    h *= 0x85EBCA6B;
+    h ^= h >>> 13;
+    h *= 0xC2B2AE35;
+    h ^= h >>> 16;
+    return h;
+  }
+
+  /**
+   * The multiply-xorshift of MurmurHash2 over the
+   * chars, seeded with the length, then the final
+   * mix of MurmurHash3 with other shifts
+   */
+  private static int check(String name) {
+    int h = 0x9747B28C ^ name.length();
+    for (int i = 0; i < name.length(); i++) {
+      int k = name.charAt(i) * 0x5BD1E995;
+      k ^= k >>> 24;
+      h = (h * 0x5BD1E995) ^ (k * 0x5BD1E995);
+    }
+    h ^= h >>> 13;
+    h *= 0x5BD1E995;
+    h ^= h >>> 15;
+    return h;
+  }
+
+  /**
+   * Register the names of the operation
+   *
+   * @param contextName
+   *          the name of the context
+   * @param operationName
+   *          the name of the operation
+   * @return the key of the operation, null if
+   *         another registered operation has the
+   *         same handle and check
+   */
+  public OperationKey register(String contextName,
+    String operationName) {
+    OperationKey key =
+      OperationKey.of(contextName, operationName);
+    String[] oldNames = names.get(key);
+    if (oldNames == null) {
+      oldNames = names.putIfAbsent(key,
+        new String[] {contextName, operationName});
+    }
+    if (oldNames != null
+      && !(oldNames[0].equals(contextName)
+        && oldNames[1].equals(operationName))) {
+      LOG.error("Operation " + contextName + "/"
+        + operationName
+        + " has the same handle and check as "
+        + oldNames[0] + "/" + oldNames[1]);
+      return null;
+    }
+    return key;
+  }
+
+  /**
+   * Get the version of the names, changed when
+   * names are removed
+   *
+   * @return the version
+   */
+  public int getVersion() {
+    return version.get();
+  }
+
+  /**
+   * Get the names of a registered operation
+   *
+   * @param key
+   *          the key of the operation
+   * @return the context name and the operation
+   *         name, null if not registered
+   */
+  public String[] getNames(OperationKey key) {
+    return names.get(key);
+  }
+
+  /**
+   * Remove the names of the operation
+   *
+   * @param key
+   *          the key of the operation
+   */
+  public void unregister(OperationKey key) {
+    if (names.remove(key) != null) {
+      version.incrementAndGet();
+    }
+  }
+
+  /**
+   * Remove the names of the handles under the
+   * context
+   *
+   * @param contextName
+   *          the name of the context
+   */
+  public void unregisterContext(
+    String contextName) {
+    if (names.keySet().removeIf(
+      key -> key.isInContext(contextName))) {
+      version.incrementAndGet();
+    }
+  }
+
+  /**
+   * Remove all the names
+   */
+  public void clear() {
+    names.clear();
+    version.incrementAndGet();
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.io;
+
+import org.apache.log4j.Logger;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*******************************************************
+ * The bounded Fork-Join pool decoding the data
+ * received and combining the partitions received
+ * into the tables. The receivers used to fork the
+ * decoders into the common pool, which is shared
+ * with the parallel streams of the apps and is
+ * not sized by Harp.
+ ******************************************************/
+public class ReceivePool {
+
+  private static final Logger LOG =
+      Logger.getLogger(ReceivePool.class);
+
+  private static ReceivePool instance = null;
+
+  private volatile int numThreads;
+  private volatile ForkJoinPool pool;
+  private final AtomicInteger threadCount;
+
+  private ReceivePool() {
+    numThreads = Constant.NUM_THREADS;
+    pool = null;
+    threadCount = new AtomicInteger();
+  }
+
+  public static ReceivePool get() {
+    if (instance != null) {
+      return instance;
+    } else {
+      return create();
+    }
+  }
+
+  private static synchronized ReceivePool
+  create() {
+    if (instance == null) {
+      instance = new ReceivePool();
+    }
+    return instance;
+  }
+
+  /**
+   * Set the number of the threads. The pool in
+   * use finishes the tasks submitted and a new
+   * pool is created at the next task.
+   *
+   * @param num the number of the threads, the
+   *            number of the processors if not
+   *            positive
+   */
+  public synchronized void setNumThreads(int num) {
+    if (num <= 0) {
+      num = Constant.NUM_THREADS;
+    }
+    if (num != numThreads) {
+      numThreads = num;
+      if (pool != null) {
+        pool.shutdown();
+        pool = null;
+      }
+      LOG.info("Receive threads: " + num);
+    }
+  }
+
+  public int getNumThreads() {
+    return numThreads;
+  }
+
+  /**
+   * Get the pool, created at the first call
+   *
+   * @return the pool
+   */
+  public ForkJoinPool getPool() {
+    ForkJoinPool current = pool;
+    if (current == null) {
+      synchronized (this) {
+        if (pool == null) {
+          pool = new ForkJoinPool(numThreads,
+              p -> {
+                ForkJoinWorkerThread thread =
+                    ForkJoinPool.defaultForkJoinWorkerThreadFactory
+                        .newThread(p);
+                thread.setName("harp-receive-"
+                    + threadCount.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+              }, null, false);
+        }
+        current = pool;
+      }
+    }
+    return current;
+  }
+
+  /**
+   * Run the task asynchronously in the pool
+   *
+   * @param task the task
+   */
+  public void execute(ForkJoinTask<?> task) {
+    getPool().execute(task);
+  }
+
+  /**
+   * Run the task in the pool and wait for the
+   * result. A task already running in the pool
+   * forks its subtasks there directly.
+   *
+   * @param task the task
+   * @return the result
+   */
+  public <T> T invoke(ForkJoinTask<T> task) {
+    ForkJoinPool current = getPool();
+    if (ForkJoinTask.getPool() == current) {
+      return task.invoke();
+    } else {
+      return current.invoke(task);
+    }
+  }
+}
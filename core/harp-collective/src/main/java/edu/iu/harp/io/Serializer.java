@@ -21,6 +21,7 @@ import org.apache.log4j.Logger;
 
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /*******************************************************
  * A class for serialization implemented
@@ -239,4 +240,121 @@ public class Serializer implements DataOutput {
   public void writeUTF(String s) throws IOException {
     writeChars(s);
   }
+
+  /**
+   * Check the space for writing length values of
+   * the element size from v[off]
+   */
+  private void checkBulkWrite(int arrLen,
+      int off, int length, int elementBytes)
+      throws IOException {
+    if (off < 0 || length < 0
+        || (off + length) > arrLen
+        || (pos + (long) length * elementBytes) > len) {
+      throw new IOException("Cannot write.");
+    }
+  }
+
+  /**
+   * Write short values in bulk. The bytes are the
+   * same as calling writeShort on each value.
+   *
+   * @param v      the array
+   * @param off    the start index in the array
+   * @param length the number of values
+   * @throws IOException
+   */
+  public void writeShorts(short[] v, int off, int length)
+      throws IOException {
+    checkBulkWrite(v.length, off, length, 2);
+    ByteBuffer.wrap(bytes, pos, length * 2)
+        .asShortBuffer().put(v, off, length);
+    pos += length * 2;
+  }
+
+  /**
+   * Write int values in bulk. The bytes are the
+   * same as calling writeInt on each value.
+   *
+   * @param v      the array
+   * @param off    the start index in the array
+   * @param length the number of values
+   * @throws IOException
+   */
+  public void writeInts(int[] v, int off, int length)
+      throws IOException {
+    checkBulkWrite(v.length, off, length, 4);
+    ByteBuffer.wrap(bytes, pos, length * 4)
+        .asIntBuffer().put(v, off, length);
+    pos += length * 4;
+  }
+
+  /**
+   * Write float values in bulk. The bytes are the
+   * same as calling writeFloat on each value.
+   *
+   * @param v      the array
+   * @param off    the start index in the array
+   * @param length the number of values
+   * @throws IOException
+   */
+  public void writeFloats(float[] v, int off, int length)
+      throws IOException {
+    checkBulkWrite(v.length, off, length, 4);
+    ByteBuffer.wrap(bytes, pos, length * 4)
+        .asFloatBuffer().put(v, off, length);
+    pos += length * 4;
+  }
+
+  /**
+   * Write long values in bulk. The bytes are the
+   * same as calling writeLong on each value.
+   *
+   * @param v      the array
+   * @param off    the start index in the array
+   * @param length the number of values
+   * @throws IOException
+   */
+  public void writeLongs(long[] v, int off, int length)
+      throws IOException {
+    checkBulkWrite(v.length, off, length, 8);
+    ByteBuffer.wrap(bytes, pos, length * 8)
+        .asLongBuffer().put(v, off, length);
+    pos += length * 8;
+  }
+
+  /**
+   * Write double values in bulk. The bytes are the
+   * same as calling writeDouble on each value.
+   *
+   * @param v      the array
+   * @param off    the start index in the array
+   * @param length the number of values
+   * @throws IOException
+   */
+  public void writeDoubles(double[] v, int off, int length)
+      throws IOException {
+    checkBulkWrite(v.length, off, length, 8);
+    ByteBuffer.wrap(bytes, pos, length * 8)
+        .asDoubleBuffer().put(v, off, length);
+    pos += length * 8;
+  }
+
+  /**
+   * Write the remaining bytes of the buffer in
+   * bulk. The position of the buffer is moved to
+   * its limit.
+   *
+   * @param src the buffer
+   * @throws IOException
+   */
+  public void write(ByteBuffer src)
+      throws IOException {
+    int length = src.remaining();
+    if ((pos + (long) length) > len) {
+      throw new IOException("Cannot write.");
+    }
+    src.get(bytes, pos, length);
+    pos += length;
+  }
 }
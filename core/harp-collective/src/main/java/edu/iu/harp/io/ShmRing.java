@@ -0,0 +1,632 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.io;
+
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/*******************************************************
+ * A single-producer single-consumer byte ring in
+ * a memory-mapped file, used to move data between
+ * two workers on the same host without TCP.
+ * <p>
+ * The file starts with a header holding the write
+ * sequence, the read sequence, the close flags
+ * and the waiting flags of both ends, each on its
+ * own cache line. The sequences count bytes ever
+ * written and read, so the free space is
+ * capacity - (write - read). The client side
+ * creates the ring and writes, the server side
+ * opens it and reads.
+ * <p>
+ * An end that stays idle after spinning sets its
+ * waiting flag and blocks on the TCP socket of
+ * the peer. The peer writes a byte to the socket
+ * as a doorbell when it moves its sequence or
+ * closes while the flag is set. The mapping is
+ * unmapped when the end is closed.
+ * <p>
+ * Java 8 has no fences for memory shared with
+ * another process. The accesses to the mapping
+ * are ordered by volatile accesses to a field of
+ * this JVM, which is only enough where the
+ * hardware keeps the order of stores and of
+ * loads (x86). The ring is not supported on other
+ * architectures, where the peer could see the
+ * write sequence before the data.
+ ******************************************************/
+public class ShmRing
+  implements GatheringByteChannel,
+  ReadableByteChannel {
+
+  private static final Logger LOG =
+    Logger.getLogger(ShmRing.class);
+
+  private static final int WRITE_SEQ = 0;
+  private static final int READ_SEQ = 64;
+  private static final int WRITER_CLOSED = 128;
+  private static final int READER_CLOSED = 192;
+  private static final int WRITER_WAITING = 256;
+  private static final int READER_WAITING = 320;
+  private static final int HEADER_SIZE = 384;
+
+  /** The architectures with ordered stores and loads */
+  private static final boolean IS_ORDERED_ARCH =
+    isOrderedArch(System.getProperty("os.arch"));
+
+  /** Spins before yielding, yields before blocking */
+  private static final int SPIN_COUNT = 1000;
+  private static final int YIELD_COUNT = 100;
+  /** The park interval of a ring without a peer */
+  private static final long MAX_PARK_NANOS =
+    1000000L;
+
+  /** Unmaps a buffer, null if not available */
+  private static final Unmapper UNMAPPER =
+    newUnmapper();
+
+  private final String path;
+  private final boolean isWriter;
+  private final MappedByteBuffer buffer;
+  /** The view of the data region */
+  private final ByteBuffer data;
+  private final int capacity;
+  private volatile boolean open;
+  private final AtomicBoolean closing;
+  /**
+   * The calls using the mapping, plus one until
+   * closed. The last one unmaps it.
+   */
+  private final AtomicInteger users;
+  /**
+   * Written and read to order the accesses to
+   * the mapping like a volatile variable
+   */
+  private volatile long fence;
+  /** The TCP socket of the peer, the doorbell */
+  private Socket peer;
+  private final byte[] bells;
+  /** The number of the waits of this end */
+  private long numWaits;
+  /** The last wait of the peer rung */
+  private long lastRung;
+
+  private ShmRing(String path, boolean isWriter,
+    MappedByteBuffer buffer) {
+    this.path = path;
+    this.isWriter = isWriter;
+    this.buffer = buffer;
+    this.buffer.order(ByteOrder.nativeOrder());
+    this.buffer.position(HEADER_SIZE);
+    this.data = this.buffer.slice();
+    this.buffer.position(0);
+    this.capacity = this.data.capacity();
+    this.open = true;
+    this.closing = new AtomicBoolean(false);
+    this.users = new AtomicInteger(1);
+    this.fence = 0L;
+    this.peer = null;
+    this.bells = new byte[64];
+    this.numWaits = 0L;
+    this.lastRung = 0L;
+  }
+
+  /**
+   * Check if the shared memory transport can be
+   * used in this directory on this architecture
+   *
+   * @param dir
+   *          the directory of the ring files
+   * @return true if supported
+   */
+  public static boolean isSupported(String dir) {
+    File file = new File(dir);
+    return IS_ORDERED_ARCH && file.isDirectory()
+      && file.canWrite();
+  }
+
+  /**
+   * Check if the architecture keeps the order of
+   * the stores and of the loads, as the ring
+   * needs without real fences
+   *
+   * @param arch
+   *          the value of os.arch
+   * @return true for x86
+   */
+  static boolean isOrderedArch(String arch) {
+    return arch != null && (arch.equals("amd64")
+      || arch.equals("x86_64") || arch.equals("x86")
+      || arch.matches("i[3-6]86"));
+  }
+
+  /**
+   * Create a new ring file as the writer
+   *
+   * @param dir
+   *          the directory of the ring file
+   * @param capacity
+   *          the size of the data region in bytes
+   * @return the ring
+   * @throws IOException
+   */
+  public static ShmRing create(String dir,
+    int capacity) throws IOException {
+    checkArch();
+    File file = File.createTempFile("harp-",
+      ".ring", new File(dir));
+    try {
+      return new ShmRing(file.getPath(), true,
+        map(file, HEADER_SIZE + capacity));
+    } catch (IOException e) {
+      file.delete();
+      throw e;
+    }
+  }
+
+  /**
+   * Open a ring file created by the writer
+   *
+   * @param path
+   *          the path of the ring file
+   * @return the ring
+   * @throws IOException
+   */
+  public static ShmRing open(String path)
+    throws IOException {
+    checkArch();
+    File file = new File(path);
+    long length = file.length();
+    if (length <= HEADER_SIZE
+      || length > Integer.MAX_VALUE) {
+      throw new IOException(
+        "Invalid ring file " + path);
+    }
+    return new ShmRing(path, false,
+      map(file, (int) length));
+  }
+
+  private static void checkArch()
+    throws IOException {
+    if (!IS_ORDERED_ARCH) {
+      throw new IOException("The ring is not "
+        + "supported on " + System.getProperty(
+          "os.arch"));
+    }
+  }
+
+  private static MappedByteBuffer map(File file,
+    int size) throws IOException {
+    try (RandomAccessFile raf =
+      new RandomAccessFile(file, "rw");
+      FileChannel fc = raf.getChannel()) {
+      // The mapping stays valid after the file
+      // channel is closed
+      return fc.map(FileChannel.MapMode.READ_WRITE,
+        0, size);
+    }
+  }
+
+  /**
+   * Get the path of the ring file
+   *
+   * @return the path
+   */
+  public String getPath() {
+    return path;
+  }
+
+  /**
+   * Remove the ring file. The mapping stays valid
+   * for both ends after they have opened it.
+   */
+  public void unlink() {
+    new File(path).delete();
+  }
+
+  /**
+   * Set the TCP socket of the peer. Nothing else
+   * is sent on it after the ring is set up, so it
+   * carries the doorbells and its end of stream
+   * means the peer is gone. Without a peer, an
+   * idle end parks in short intervals.
+   *
+   * @param socket
+   *          the socket to the peer
+   * @throws IOException
+   */
+  public void setPeer(Socket socket)
+    throws IOException {
+    // Wake up now and then to check if this end
+    // is closed
+    socket.setSoTimeout(Constant.LONG_SLEEP);
+    this.peer = socket;
+  }
+
+  @Override
+  public int write(ByteBuffer src)
+    throws IOException {
+    if (!isWriter) {
+      throw new IOException(
+        "Cannot write to the read end.");
+    }
+    enter();
+    try {
+      int written = 0;
+      long writeSeq = buffer.getLong(WRITE_SEQ);
+      while (src.hasRemaining()) {
+        long free = waitForSpace(writeSeq);
+        int pos = (int) (writeSeq % capacity);
+        int len = (int) Math.min(
+          Math.min(free, src.remaining()),
+          capacity - pos);
+        data.limit(pos + len);
+        data.position(pos);
+        int srcLimit = src.limit();
+        src.limit(src.position() + len);
+        data.put(src);
+        src.limit(srcLimit);
+        // Publish the bytes before the sequence
+        fullFence();
+        writeSeq += len;
+        buffer.putLong(WRITE_SEQ, writeSeq);
+        ringPeer(READER_WAITING);
+        written += len;
+      }
+      return written;
+    } finally {
+      exit();
+    }
+  }
+
+  @Override
+  public long write(ByteBuffer[] srcs,
+    int offset, int length) throws IOException {
+    long written = 0L;
+    for (int i = offset; i < offset
+      + length; i++) {
+      written += write(srcs[i]);
+    }
+    return written;
+  }
+
+  @Override
+  public long write(ByteBuffer[] srcs)
+    throws IOException {
+    return write(srcs, 0, srcs.length);
+  }
+
+  @Override
+  public int read(ByteBuffer dst)
+    throws IOException {
+    if (isWriter) {
+      throw new IOException(
+        "Cannot read from the write end.");
+    }
+    if (!dst.hasRemaining()) {
+      return 0;
+    }
+    enter();
+    try {
+      long readSeq = buffer.getLong(READ_SEQ);
+      long available = waitForData(readSeq);
+      if (available < 0L) {
+        return -1;
+      }
+      int pos = (int) (readSeq % capacity);
+      int len = (int) Math.min(
+        Math.min(available, dst.remaining()),
+        capacity - pos);
+      data.limit(pos + len);
+      data.position(pos);
+      dst.put(data);
+      // Finish reading the bytes before the
+      // writer can reuse them
+      fullFence();
+      buffer.putLong(READ_SEQ, readSeq + len);
+      ringPeer(WRITER_WAITING);
+      return len;
+    } finally {
+      exit();
+    }
+  }
+
+  /**
+   * Wait until the ring has free space
+   *
+   * @param writeSeq
+   *          the current write sequence
+   * @return the number of free bytes
+   * @throws IOException
+   */
+  private long waitForSpace(long writeSeq)
+    throws IOException {
+    for (int count = 0;; count++) {
+      if (!open) {
+        throw new ClosedChannelException();
+      }
+      long readSeq = buffer.getLong(READ_SEQ);
+      fullFence();
+      long free = capacity - (writeSeq - readSeq);
+      if (free > 0L) {
+        return free;
+      }
+      if (buffer.getLong(READER_CLOSED) != 0L) {
+        throw new IOException(
+          "The read end is closed.");
+      }
+      backoff(count, WRITER_WAITING, READ_SEQ,
+        readSeq, READER_CLOSED);
+    }
+  }
+
+  /**
+   * Wait until the ring has data
+   *
+   * @param readSeq
+   *          the current read sequence
+   * @return the number of available bytes, or -1
+   *         if the writer has closed
+   * @throws IOException
+   */
+  private long waitForData(long readSeq)
+    throws IOException {
+    for (int count = 0;; count++) {
+      if (!open) {
+        throw new ClosedChannelException();
+      }
+      long writeSeq = buffer.getLong(WRITE_SEQ);
+      fullFence();
+      if (writeSeq != readSeq) {
+        return writeSeq - readSeq;
+      }
+      if (buffer.getLong(WRITER_CLOSED) != 0L) {
+        // Check again for the bytes written
+        // before closing
+        fullFence();
+        writeSeq = buffer.getLong(WRITE_SEQ);
+        return writeSeq != readSeq
+          ? writeSeq - readSeq : -1L;
+      }
+      backoff(count, READER_WAITING, WRITE_SEQ,
+        writeSeq, WRITER_CLOSED);
+    }
+  }
+
+  /**
+   * Spin, then yield, then block on the doorbell.
+   * The waiting flag is set before the sequence
+   * and the close flag of the peer are checked
+   * again, and the peer checks the flag after
+   * moving them, so one of the two sees the
+   * other.
+   *
+   * @param count
+   *          the number of checks done
+   * @param waiting
+   *          the offset of the waiting flag
+   * @param seqOffset
+   *          the offset of the sequence of the peer
+   * @param seq
+   *          the sequence of the peer last seen
+   * @param closed
+   *          the offset of the close flag of the
+   *          peer
+   * @throws IOException
+   */
+  private void backoff(int count, int waiting,
+    int seqOffset, long seq, int closed)
+    throws IOException {
+    if (count < SPIN_COUNT) {
+      return;
+    } else if (count < SPIN_COUNT + YIELD_COUNT) {
+      Thread.yield();
+      return;
+    }
+    buffer.putLong(waiting, ++numWaits);
+    fullFence();
+    try {
+      if (buffer.getLong(seqOffset) == seq
+        && buffer.getLong(closed) == 0L) {
+        awaitBell();
+      }
+    } finally {
+      buffer.putLong(waiting, 0L);
+    }
+  }
+
+  /**
+   * Block until the peer rings the doorbell or
+   * the socket times out
+   *
+   * @throws IOException
+   */
+  private void awaitBell() throws IOException {
+    Socket socket = peer;
+    if (socket == null) {
+      LockSupport.parkNanos(MAX_PARK_NANOS);
+      return;
+    }
+    try {
+      InputStream in = socket.getInputStream();
+      if (in.read(bells) < 0) {
+        throw new IOException(
+          "The peer closed the connection.");
+      }
+    } catch (SocketTimeoutException e) {
+    }
+  }
+
+  /**
+   * Ring the doorbell once per wait of the peer.
+   * A bell left over from a wait ended by the
+   * check again only wakes the next wait early.
+   *
+   * @param waiting
+   *          the offset of the waiting flag of the
+   *          peer
+   */
+  private void ringPeer(int waiting) {
+    fullFence();
+    long wait = buffer.getLong(waiting);
+    Socket socket = peer;
+    if (wait == 0L || wait == lastRung
+      || socket == null) {
+      return;
+    }
+    lastRung = wait;
+    try {
+      OutputStream out = socket.getOutputStream();
+      out.write(1);
+      out.flush();
+    } catch (IOException e) {
+      // The peer is gone, this end sees it at its
+      // next wait
+    }
+  }
+
+  /**
+   * A volatile write followed by a volatile read,
+   * so that the JIT does not reorder the accesses
+   * to the mapping across it. The hardware order
+   * seen by the peer process is only kept on x86,
+   * see isOrderedArch.
+   */
+  private void fullFence() {
+    fence = 1L;
+    long ignored = fence;
+  }
+
+  private void enter() throws IOException {
+    for (;;) {
+      int num = users.get();
+      if (num == 0) {
+        throw new ClosedChannelException();
+      }
+      if (users.compareAndSet(num, num + 1)) {
+        return;
+      }
+    }
+  }
+
+  private void exit() {
+    if (users.decrementAndGet() == 0) {
+      unmap();
+    }
+  }
+
+  @Override
+  public boolean isOpen() {
+    return open;
+  }
+
+  /**
+   * Close this end of the ring. The other end sees
+   * the close flag once it has drained the data.
+   * The mapping is unmapped once no call on this
+   * end uses it.
+   */
+  @Override
+  public void close() {
+    if (closing.compareAndSet(false, true)) {
+      open = false;
+      fullFence();
+      buffer.putLong(isWriter ? WRITER_CLOSED
+        : READER_CLOSED, 1L);
+      ringPeer(isWriter ? READER_WAITING
+        : WRITER_WAITING);
+      exit();
+    }
+  }
+
+  private void unmap() {
+    if (UNMAPPER != null) {
+      try {
+        UNMAPPER.unmap(buffer);
+      } catch (Exception e) {
+        LOG.info("Fail to unmap the ring " + path
+          + ", " + e.getMessage());
+      }
+    }
+  }
+
+  private interface Unmapper {
+    void unmap(ByteBuffer buffer) throws Exception;
+  }
+
+  /**
+   * Find how to unmap a buffer in this JVM,
+   * through the cleaner of the buffer on JDK 8 or
+   * through invokeCleaner on later ones. Without
+   * either, the mapping is left to the garbage
+   * collector.
+   *
+   * @return the unmapper, null if not available
+   */
+  private static Unmapper newUnmapper() {
+    try {
+      Class<?> unsafeClass =
+        Class.forName("sun.misc.Unsafe");
+      Method invokeCleaner = unsafeClass
+        .getMethod("invokeCleaner", ByteBuffer.class);
+      Field field =
+        unsafeClass.getDeclaredField("theUnsafe");
+      field.setAccessible(true);
+      Object unsafe = field.get(null);
+      return buffer -> invokeCleaner.invoke(unsafe,
+        buffer);
+    } catch (Exception e) {
+    }
+    try {
+      Method getCleaner = Class
+        .forName("sun.nio.ch.DirectBuffer")
+        .getMethod("cleaner");
+      Method clean = Class
+        .forName("sun.misc.Cleaner")
+        .getMethod("clean");
+      return buffer -> {
+        Object cleaner = getCleaner.invoke(buffer);
+        if (cleaner != null) {
+          clean.invoke(cleaner);
+        }
+      };
+    } catch (Exception e) {
+      LOG.info("Ring mappings are not unmapped: "
+        + e.getMessage());
+      return null;
+    }
+  }
+}
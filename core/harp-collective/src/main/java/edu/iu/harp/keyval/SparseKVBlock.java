@@ -0,0 +1,324 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.keyval;
+
+import edu.iu.harp.resource.Writable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/*******************************************************
+ * SparseKVBlock holds the sorted keys and the
+ * values of a worker in a sparse allreduce. In
+ * the sparse mode, the keys are written as the
+ * first key and the variable-length gaps between
+ * the keys. When the keys cover at least
+ * DENSE_THRESHOLD of their range, the block
+ * switches to the dense mode and writes the first
+ * key and a bitmap of the range instead.
+ ******************************************************/
+public class SparseKVBlock extends Writable {
+
+  /** The smallest density of the dense mode */
+  public static final double DENSE_THRESHOLD =
+    0.125;
+
+  private static final byte DOUBLE_VALS = 0;
+  private static final byte INT_VALS = 1;
+  private static final byte SPARSE = 0;
+  private static final byte DENSE = 1;
+
+  private byte valType;
+  private byte mode;
+  private int size;
+  private long[] keys;
+  private double[] doubleVals;
+  private int[] intVals;
+  /** The number of bytes of the keys */
+  private int numKeyBytes;
+
+  public SparseKVBlock() {
+    clear();
+  }
+
+  /**
+   * Set the keys and the double values
+   *
+   * @param keys
+   *          the keys in ascending order, without
+   *          duplicates
+   * @param vals
+   *          the values of the keys
+   * @param size
+   *          the number of keys
+   */
+  public void set(long[] keys, double[] vals,
+    int size) {
+    this.valType = DOUBLE_VALS;
+    this.keys = keys;
+    this.doubleVals = vals;
+    this.intVals = null;
+    this.size = size;
+    chooseMode();
+  }
+
+  /**
+   * Set the keys and the int values
+   *
+   * @param keys
+   *          the keys in ascending order, without
+   *          duplicates
+   * @param vals
+   *          the values of the keys
+   * @param size
+   *          the number of keys
+   */
+  public void set(long[] keys, int[] vals,
+    int size) {
+    this.valType = INT_VALS;
+    this.keys = keys;
+    this.doubleVals = null;
+    this.intVals = vals;
+    this.size = size;
+    chooseMode();
+  }
+
+  /**
+   * Choose the mode by the density of the keys in
+   * their range
+   */
+  private void chooseMode() {
+    mode = SPARSE;
+    if (size == 0) {
+      numKeyBytes = 0;
+      return;
+    }
+    long range = keys[size - 1] - keys[0] + 1L;
+    if (range > 0L && range <= Integer.MAX_VALUE
+      && size >= DENSE_THRESHOLD * range) {
+      mode = DENSE;
+      numKeyBytes = 8 + 4 + (int) ((range + 7L) / 8L);
+    } else {
+      numKeyBytes = 8;
+      for (int i = 1; i < size; i++) {
+        numKeyBytes +=
+          getNumVarLongBytes(keys[i] - keys[i - 1]);
+      }
+    }
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public long[] getKeys() {
+    return keys;
+  }
+
+  /**
+   * Get the double values
+   *
+   * @return the values, null if the block holds
+   *         int values
+   */
+  public double[] getDoubleVals() {
+    return doubleVals;
+  }
+
+  /**
+   * Get the int values
+   *
+   * @return the values, null if the block holds
+   *         double values
+   */
+  public int[] getIntVals() {
+    return intVals;
+  }
+
+  /**
+   * Indicates if the keys are written as a bitmap
+   *
+   * @return true if in the dense mode
+   */
+  public boolean isDense() {
+    return mode == DENSE;
+  }
+
+  /**
+   * Get the number of bytes of encoded data
+   */
+  @Override
+  public int getNumWriteBytes() {
+    return 6 + numKeyBytes
+      + size * (valType == DOUBLE_VALS ? 8 : 4);
+  }
+
+  /**
+   * Write this to DataOutput
+   */
+  @Override
+  public void write(DataOutput out)
+    throws IOException {
+    out.writeByte(valType);
+    out.writeByte(mode);
+    out.writeInt(size);
+    if (size > 0) {
+      out.writeLong(keys[0]);
+      if (mode == DENSE) {
+        int range = (int) (keys[size - 1] - keys[0]) + 1;
+        out.writeInt(range);
+        int bits = 0;
+        int byteIndex = 0;
+        for (int i = 0; i < size; i++) {
+          int offset = (int) (keys[i] - keys[0]);
+          while (byteIndex < (offset >>> 3)) {
+            out.writeByte(bits);
+            bits = 0;
+            byteIndex++;
+          }
+          bits |= 1 << (offset & 7);
+        }
+        out.writeByte(bits);
+      } else {
+        for (int i = 1; i < size; i++) {
+          writeVarLong(out, keys[i] - keys[i - 1]);
+        }
+      }
+    }
+    if (valType == DOUBLE_VALS) {
+      for (int i = 0; i < size; i++) {
+        out.writeDouble(doubleVals[i]);
+      }
+    } else {
+      for (int i = 0; i < size; i++) {
+        out.writeInt(intVals[i]);
+      }
+    }
+  }
+
+  /**
+   * Read this from DataInput
+   */
+  @Override
+  public void read(DataInput in)
+    throws IOException {
+    valType = in.readByte();
+    mode = in.readByte();
+    size = in.readInt();
+    if (keys == null || keys.length < size) {
+      keys = new long[size];
+    }
+    numKeyBytes = 0;
+    if (size > 0) {
+      long firstKey = in.readLong();
+      numKeyBytes = 8;
+      if (mode == DENSE) {
+        int range = in.readInt();
+        int numBitmapBytes = (range + 7) >>> 3;
+        numKeyBytes += 4 + numBitmapBytes;
+        int count = 0;
+        for (int i = 0; i < numBitmapBytes; i++) {
+          int bits = in.readByte() & 0xff;
+          while (bits != 0) {
+            if (count == size) {
+              throw new IOException(
+                "Too many keys in the bitmap.");
+            }
+            int bit = Integer.numberOfTrailingZeros(bits);
+            keys[count++] = firstKey + (i << 3) + bit;
+            bits &= bits - 1;
+          }
+        }
+        if (count != size) {
+          throw new IOException("Read " + count
+            + " keys, expected " + size);
+        }
+      } else {
+        keys[0] = firstKey;
+        for (int i = 1; i < size; i++) {
+          long gap = readVarLong(in);
+          numKeyBytes += getNumVarLongBytes(gap);
+          keys[i] = keys[i - 1] + gap;
+        }
+      }
+    }
+    if (valType == DOUBLE_VALS) {
+      intVals = null;
+      if (doubleVals == null
+        || doubleVals.length < size) {
+        doubleVals = new double[size];
+      }
+      for (int i = 0; i < size; i++) {
+        doubleVals[i] = in.readDouble();
+      }
+    } else {
+      doubleVals = null;
+      if (intVals == null || intVals.length < size) {
+        intVals = new int[size];
+      }
+      for (int i = 0; i < size; i++) {
+        intVals[i] = in.readInt();
+      }
+    }
+  }
+
+  /**
+   * Clear the block. The arrays are kept for
+   * reading.
+   */
+  @Override
+  public void clear() {
+    valType = DOUBLE_VALS;
+    mode = SPARSE;
+    size = 0;
+    numKeyBytes = 0;
+  }
+
+  private static int getNumVarLongBytes(
+    long val) {
+    int numBytes = 1;
+    while ((val & ~0x7FL) != 0L) {
+      val >>>= 7;
+      numBytes++;
+    }
+    return numBytes;
+  }
+
+  private static void writeVarLong(
+    DataOutput out, long val) throws IOException {
+    while ((val & ~0x7FL) != 0L) {
+      out.writeByte((int) ((val & 0x7F) | 0x80));
+      val >>>= 7;
+    }
+    out.writeByte((int) val);
+  }
+
+  private static long readVarLong(DataInput in)
+    throws IOException {
+    long val = 0L;
+    for (int shift = 0; shift < 64; shift += 7) {
+      int b = in.readByte();
+      val |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return val;
+      }
+    }
+    throw new IOException(
+      "Malformed variable-length key gap.");
+  }
+}
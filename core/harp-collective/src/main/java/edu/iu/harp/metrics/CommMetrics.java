@@ -0,0 +1,432 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.metrics;
+
+import edu.iu.harp.io.Data;
+import org.apache.log4j.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*******************************************************
+ * The registry of the communication metrics of
+ * the process, by context and operation. The
+ * digits in the names are replaced by '#', so the
+ * operations named by iteration share one entry.
+ * <p>
+ * The metrics are disabled by default. A caller
+ * takes the start time with now(), which does not
+ * read the clock when disabled, and passes it to a
+ * record method, which then returns at once.
+ ******************************************************/
+public class CommMetrics
+  implements CommMetricsMXBean {
+
+  private static final Logger LOG =
+    Logger.getLogger(CommMetrics.class);
+
+  /** The name of the MXBean */
+  public static final String OBJECT_NAME =
+    "edu.iu.harp:type=CommMetrics";
+  /** The start time taken when disabled */
+  public static final long NOT_STARTED =
+    Long.MIN_VALUE;
+  /** The name of the data without names */
+  private static final String UNKNOWN = "?";
+
+  private static CommMetrics instance = null;
+  private static volatile boolean isEnabled =
+    false;
+
+  private final ConcurrentHashMap<String, OperationMetrics> operations;
+  /** Guarded by this */
+  private ScheduledExecutorService dumper;
+
+  private CommMetrics() {
+    operations = new ConcurrentHashMap<>();
+    dumper = null;
+  }
+
+  public static CommMetrics get() {
+    if (instance != null) {
+      return instance;
+    } else {
+      return create();
+    }
+  }
+
+  private static synchronized CommMetrics
+    create() {
+    if (instance == null) {
+      instance = new CommMetrics();
+    }
+    return instance;
+  }
+
+  /**
+   * Get the start time of a timed stage
+   *
+   * @return the current time in nanoseconds, or
+   *         NOT_STARTED if disabled
+   */
+  public static long now() {
+    return isEnabled ? System.nanoTime()
+      : NOT_STARTED;
+  }
+
+  /**
+   * Get the time since the start time
+   *
+   * @param startTime
+   *          the time given by now()
+   * @return the nanoseconds, 0 if not started
+   */
+  public static long elapsed(long startTime) {
+    return startTime == NOT_STARTED ? 0L
+      : System.nanoTime() - startTime;
+  }
+
+  /**
+   * Get the bytes of the head array and the body
+   * of the data on the wire
+   *
+   * @param data
+   *          the data
+   * @return the number of bytes
+   */
+  public static long getNumBytes(Data data) {
+    long numBytes = data.getHeadArray() == null
+      ? 0L : data.getHeadArray().size();
+    if (data.getBodyArray() != null) {
+      return numBytes + data.getBodyArray().size();
+    } else {
+      return numBytes + data.getBodySize();
+    }
+  }
+
+  @Override
+  public void setEnabled(boolean enabled) {
+    isEnabled = enabled;
+  }
+
+  @Override
+  public boolean isEnabled() {
+    return isEnabled;
+  }
+
+  /**
+   * Get the metrics of the operation under the
+   * context
+   *
+   * @param contextName
+   *          the name of the context
+   * @param operationName
+   *          the name of the operation
+   * @return the metrics
+   */
+  public OperationMetrics getOperationMetrics(
+    String contextName, String operationName) {
+    String conName = normalize(contextName);
+    String opName = normalize(operationName);
+    String key = conName + "/" + opName;
+    OperationMetrics metrics = operations.get(key);
+    if (metrics == null) {
+      metrics = operations.computeIfAbsent(key,
+        k -> new OperationMetrics(conName, opName));
+    }
+    return metrics;
+  }
+
+  /**
+   * Get the metrics of the operation of the data.
+   * The data received with the handle has the
+   * names given by DataMap.resolveNames.
+   */
+  private OperationMetrics
+    getOperationMetrics(Data data) {
+    return getOperationMetrics(
+      data.getContextName(),
+      data.getOperationName());
+  }
+
+  /**
+   * Replace the digits with '#'
+   */
+  static String normalize(String name) {
+    if (name == null) {
+      return UNKNOWN;
+    }
+    StringBuilder builder = null;
+    for (int i = 0; i < name.length(); i++) {
+      char c = name.charAt(i);
+      if (c >= '0' && c <= '9') {
+        if (builder == null) {
+          builder = new StringBuilder(name.length());
+          builder.append(name, 0, i);
+        }
+        if (builder.length() == 0 || builder
+          .charAt(builder.length() - 1) != '#') {
+          builder.append('#');
+        }
+      } else if (builder != null) {
+        builder.append(c);
+      }
+    }
+    return builder == null ? name
+      : builder.toString();
+  }
+
+  /**
+   * Record the time of a stage of the data
+   *
+   * @param data
+   *          the data
+   * @param stage
+   *          the stage
+   * @param startTime
+   *          the time given by now()
+   */
+  public void record(Data data, CommStage stage,
+    long startTime) {
+    if (startTime == NOT_STARTED) {
+      return;
+    }
+    getOperationMetrics(data).record(stage,
+      System.nanoTime() - startTime);
+  }
+
+  /**
+   * Record the time of a stage of the operation
+   *
+   * @param contextName
+   *          the name of the context
+   * @param operationName
+   *          the name of the operation
+   * @param stage
+   *          the stage
+   * @param startTime
+   *          the time given by now()
+   */
+  public void record(String contextName,
+    String operationName, CommStage stage,
+    long startTime) {
+    if (startTime == NOT_STARTED) {
+      return;
+    }
+    getOperationMetrics(contextName, operationName)
+      .record(stage, System.nanoTime() - startTime);
+  }
+
+  /**
+   * Record the data sent
+   *
+   * @param data
+   *          the data
+   * @param numBytes
+   *          the bytes written
+   * @param startTime
+   *          the time given by now() before
+   *          writing
+   */
+  public void recordSent(Data data,
+    long numBytes, long startTime) {
+    if (startTime == NOT_STARTED) {
+      return;
+    }
+    OperationMetrics metrics =
+      getOperationMetrics(data);
+    metrics.record(CommStage.SEND,
+      System.nanoTime() - startTime);
+    metrics.addSent(numBytes);
+  }
+
+  /**
+   * Record the data received
+   *
+   * @param data
+   *          the data
+   * @param numBytes
+   *          the bytes read
+   * @param nanos
+   *          the time spent in reading, given by
+   *          elapsed()
+   */
+  public void recordReceived(Data data,
+    long numBytes, long nanos) {
+    if (!isEnabled) {
+      return;
+    }
+    OperationMetrics metrics =
+      getOperationMetrics(data);
+    metrics.record(CommStage.RECEIVE, nanos);
+    metrics.addReceived(numBytes);
+  }
+
+  /**
+   * Record the time of a collective
+   *
+   * @param collectiveName
+   *          the name of the collective
+   * @param contextName
+   *          the name of the context
+   * @param operationName
+   *          the name of the operation
+   * @param startTime
+   *          the time given by now()
+   */
+  public void recordCollective(
+    String collectiveName, String contextName,
+    String operationName, long startTime) {
+    if (startTime == NOT_STARTED) {
+      return;
+    }
+    getOperationMetrics(contextName, operationName)
+      .recordCollective(collectiveName,
+        System.nanoTime() - startTime);
+  }
+
+  /**
+   * Get the metrics of all the operations
+   *
+   * @return the metrics sorted by the names
+   */
+  public List<OperationMetrics>
+    getOperationMetrics() {
+    return new ArrayList<>(
+      new TreeMap<>(operations).values());
+  }
+
+  @Override
+  public long getBytesSent() {
+    long bytes = 0L;
+    for (OperationMetrics metrics : operations
+      .values()) {
+      bytes += metrics.getBytesSent();
+    }
+    return bytes;
+  }
+
+  @Override
+  public long getBytesReceived() {
+    long bytes = 0L;
+    for (OperationMetrics metrics : operations
+      .values()) {
+      bytes += metrics.getBytesReceived();
+    }
+    return bytes;
+  }
+
+  @Override
+  public String[] getReport() {
+    List<OperationMetrics> metricsList =
+      getOperationMetrics();
+    String[] report = new String[metricsList.size()];
+    for (int i = 0; i < report.length; i++) {
+      report[i] = metricsList.get(i).toString();
+    }
+    return report;
+  }
+
+  /**
+   * Remove the metrics of all the operations
+   */
+  @Override
+  public void reset() {
+    operations.clear();
+  }
+
+  /**
+   * Register the MXBean to the platform MBean
+   * server
+   *
+   * @return true if registered, false otherwise
+   */
+  public boolean registerMBean() {
+    MBeanServer server =
+      ManagementFactory.getPlatformMBeanServer();
+    try {
+      ObjectName name = new ObjectName(OBJECT_NAME);
+      synchronized (this) {
+        if (!server.isRegistered(name)) {
+          server.registerMBean(this, name);
+        }
+      }
+      return true;
+    } catch (JMException e) {
+      LOG.error("Fail to register MXBean.", e);
+      return false;
+    }
+  }
+
+  /**
+   * Log the metrics periodically
+   *
+   * @param periodMillis
+   *          the period in milliseconds
+   */
+  public synchronized void
+    startDump(long periodMillis) {
+    stopDump();
+    if (periodMillis <= 0L) {
+      return;
+    }
+    dumper = Executors
+      .newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r);
+        thread.setName("harp-metrics-dump");
+        thread.setDaemon(true);
+        return thread;
+      });
+    dumper.scheduleAtFixedRate(this::log,
+      periodMillis, periodMillis,
+      TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Stop logging the metrics periodically
+   */
+  public synchronized void stopDump() {
+    if (dumper != null) {
+      dumper.shutdownNow();
+      dumper = null;
+    }
+  }
+
+  /**
+   * Log the metrics of the operations
+   */
+  public void log() {
+    if (operations.isEmpty()) {
+      return;
+    }
+    LOG.info("Communication metrics: bytes sent="
+      + getBytesSent() + ", bytes received="
+      + getBytesReceived());
+    for (String line : getReport()) {
+      LOG.info(line);
+    }
+  }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.metrics;
+
+/*******************************************************
+ * The stages of a data transfer timed by the
+ * communication metrics
+ ******************************************************/
+public enum CommStage {
+  /** Encoding the body to the body array */
+  ENCODE,
+  /** Decoding the body array to the body */
+  DECODE,
+  /** Writing the data to the connection */
+  SEND,
+  /** Reading the data from the connection */
+  RECEIVE,
+  /** Waiting for the data in the DataMap */
+  QUEUE_WAIT
+}
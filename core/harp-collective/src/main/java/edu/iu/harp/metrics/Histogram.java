@@ -0,0 +1,120 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/*******************************************************
+ * A histogram of durations in nanoseconds. Bucket
+ * i counts the values below 2^i, so recording
+ * takes a few adds without locks and a percentile
+ * is at most twice the exact one.
+ ******************************************************/
+public class Histogram {
+
+  /** Non-negative longs have at most 63 bits */
+  private static final int NUM_BUCKETS = 64;
+
+  private final LongAdder[] buckets;
+  private final LongAdder count;
+  private final LongAdder sum;
+  private final LongAccumulator max;
+
+  public Histogram() {
+    buckets = new LongAdder[NUM_BUCKETS];
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      buckets[i] = new LongAdder();
+    }
+    count = new LongAdder();
+    sum = new LongAdder();
+    max = new LongAccumulator(Math::max, 0L);
+  }
+
+  /**
+   * Record a value
+   *
+   * @param nanos
+   *          the duration in nanoseconds
+   */
+  public void record(long nanos) {
+    if (nanos < 0L) {
+      nanos = 0L;
+    }
+    buckets[getBucket(nanos)].increment();
+    count.increment();
+    sum.add(nanos);
+    max.accumulate(nanos);
+  }
+
+  static int getBucket(long nanos) {
+    return NUM_BUCKETS
+      - Long.numberOfLeadingZeros(nanos);
+  }
+
+  public long getCount() {
+    return count.sum();
+  }
+
+  public long getSum() {
+    return sum.sum();
+  }
+
+  public long getMax() {
+    return max.get();
+  }
+
+  public double getMean() {
+    long n = count.sum();
+    return n == 0L ? 0.0 : (double) sum.sum() / n;
+  }
+
+  /**
+   * Get the upper bound of the bucket holding the
+   * percentile, capped by the largest value
+   *
+   * @param p
+   *          the percentile, between 0 and 1
+   * @return the duration in nanoseconds
+   */
+  public long getPercentile(double p) {
+    long n = count.sum();
+    if (n == 0L) {
+      return 0L;
+    }
+    long rank =
+      Math.max((long) Math.ceil(p * n), 1L);
+    long seen = 0L;
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      seen += buckets[i].sum();
+      if (seen >= rank) {
+        long upper = i == 0 ? 0L : (1L << i) - 1L;
+        return Math.min(upper, getMax());
+      }
+    }
+    return getMax();
+  }
+
+  @Override
+  public String toString() {
+    return "count=" + getCount() + ", mean (us)="
+      + (long) (getMean() / 1000.0)
+      + ", p50 (us)=" + getPercentile(0.5) / 1000L
+      + ", p99 (us)=" + getPercentile(0.99) / 1000L
+      + ", max (us)=" + getMax() / 1000L;
+  }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/*******************************************************
+ * The counters and the histograms of an operation
+ * under a context. A collective calling other
+ * collectives with the same names is timed under
+ * each collective name.
+ ******************************************************/
+public class OperationMetrics {
+
+  private final String contextName;
+  private final String operationName;
+
+  private final LongAdder numSent;
+  private final LongAdder bytesSent;
+  private final LongAdder numReceived;
+  private final LongAdder bytesReceived;
+  private final Histogram[] stages;
+  private final ConcurrentHashMap<String, Histogram> collectives;
+
+  OperationMetrics(String contextName,
+    String operationName) {
+    this.contextName = contextName;
+    this.operationName = operationName;
+    numSent = new LongAdder();
+    bytesSent = new LongAdder();
+    numReceived = new LongAdder();
+    bytesReceived = new LongAdder();
+    stages = new Histogram[CommStage.values().length];
+    for (int i = 0; i < stages.length; i++) {
+      stages[i] = new Histogram();
+    }
+    collectives = new ConcurrentHashMap<>();
+  }
+
+  void addSent(long bytes) {
+    numSent.increment();
+    bytesSent.add(bytes);
+  }
+
+  void addReceived(long bytes) {
+    numReceived.increment();
+    bytesReceived.add(bytes);
+  }
+
+  void record(CommStage stage, long nanos) {
+    stages[stage.ordinal()].record(nanos);
+  }
+
+  void recordCollective(String collectiveName,
+    long nanos) {
+    Histogram histogram =
+      collectives.get(collectiveName);
+    if (histogram == null) {
+      histogram = collectives.computeIfAbsent(
+        collectiveName, name -> new Histogram());
+    }
+    histogram.record(nanos);
+  }
+
+  /**
+   * Get the name of the context. The digits in
+   * the names are replaced by '#'.
+   *
+   * @return the name of the context
+   */
+  public String getContextName() {
+    return contextName;
+  }
+
+  public String getOperationName() {
+    return operationName;
+  }
+
+  public long getNumSent() {
+    return numSent.sum();
+  }
+
+  /**
+   * Get the bytes written to the connections,
+   * including the heads
+   *
+   * @return the number of bytes
+   */
+  public long getBytesSent() {
+    return bytesSent.sum();
+  }
+
+  public long getNumReceived() {
+    return numReceived.sum();
+  }
+
+  public long getBytesReceived() {
+    return bytesReceived.sum();
+  }
+
+  /**
+   * Get the histogram of a stage
+   *
+   * @param stage
+   *          the stage
+   * @return the histogram
+   */
+  public Histogram getHistogram(CommStage stage) {
+    return stages[stage.ordinal()];
+  }
+
+  /**
+   * Get the histograms of the collectives run
+   * under the names
+   *
+   * @return the histograms by the collective
+   *         names
+   */
+  public Map<String, Histogram> getCollectives() {
+    return new TreeMap<>(collectives);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    builder.append(contextName).append('/')
+      .append(operationName).append(": sent=")
+      .append(getNumSent()).append(" (")
+      .append(getBytesSent())
+      .append(" bytes), received=")
+      .append(getNumReceived()).append(" (")
+      .append(getBytesReceived()).append(" bytes)");
+    for (CommStage stage : CommStage.values()) {
+      Histogram histogram = getHistogram(stage);
+      if (histogram.getCount() > 0L) {
+        builder.append("; ").append(stage)
+          .append(": ").append(histogram);
+      }
+    }
+    for (Map.Entry<String, Histogram> entry : getCollectives()
+      .entrySet()) {
+      builder.append("; ").append(entry.getKey())
+        .append(": ").append(entry.getValue());
+    }
+    return builder.toString();
+  }
+}
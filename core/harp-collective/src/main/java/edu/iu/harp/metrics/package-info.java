@@ -0,0 +1,4 @@
+/**
+ * Communication metrics and tracing
+ */
+package edu.iu.harp.metrics;
@@ -0,0 +1,537 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.partition;
+
+import edu.iu.harp.resource.Simple;
+import it.unimi.dsi.fastutil.ints.AbstractInt2ObjectMap;
+import it.unimi.dsi.fastutil.ints.AbstractIntIterator;
+import it.unimi.dsi.fastutil.ints.AbstractIntSet;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import it.unimi.dsi.fastutil.objects.AbstractObjectCollection;
+import it.unimi.dsi.fastutil.objects.AbstractObjectIterator;
+import it.unimi.dsi.fastutil.objects.AbstractObjectSet;
+import it.unimi.dsi.fastutil.objects.ObjectCollection;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+import it.unimi.dsi.fastutil.objects.ObjectSet;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+
+/*******************************************************
+ * The partitions by ID in a flat array of the
+ * partition bodies, indexed by the IDs from 0.
+ * The array doubles to take larger IDs; the IDs
+ * beyond twice the array, and the negative IDs,
+ * go to an overflow hash map. The Partition
+ * wrappers of the bodies in the array are created
+ * when first asked for, and then kept.
+ ******************************************************/
+class DensePartitionMap<P extends Simple>
+    extends AbstractInt2ObjectMap<Partition<P>> {
+
+  private static final long serialVersionUID =
+      -2403164279523187624L;
+
+  private static final int MIN_CAPACITY = 16;
+  /** The fewest IDs in a split of iteration */
+  private static final int MIN_SPLIT_SIZE = 64;
+
+  private P[] values;
+  private Partition<P>[] wrappers;
+  /** The number of bodies in the array */
+  private int numDense;
+  private final Int2ObjectOpenHashMap<Partition<P>> overflow;
+
+  DensePartitionMap(int capacity) {
+    capacity = Math.max(capacity, MIN_CAPACITY);
+    values = newValues(capacity);
+    wrappers = newWrappers(capacity);
+    numDense = 0;
+    overflow = new Int2ObjectOpenHashMap<>();
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <P extends Simple> P[] newValues(
+      int capacity) {
+    return (P[]) new Simple[capacity];
+  }
+
+  @SuppressWarnings({"rawtypes", "unchecked"})
+  private static <P extends Simple> Partition<P>[]
+      newWrappers(int capacity) {
+    return new Partition[capacity];
+  }
+
+  /**
+   * Check if the ID is in the array, growing the
+   * array for IDs below twice its length
+   */
+  private boolean toDense(int id) {
+    if (id < 0) {
+      return false;
+    } else if (id < values.length) {
+      return true;
+    } else if (id < 2 * values.length) {
+      grow(Math.max(2 * values.length, id + 1));
+      return true;
+    } else {
+      return false;
+    }
+  }
+
+  private void grow(int capacity) {
+    values = Arrays.copyOf(values, capacity);
+    wrappers = Arrays.copyOf(wrappers, capacity);
+    // Move the IDs now in the array
+    IntIterator iterator =
+        overflow.keySet().iterator();
+    while (iterator.hasNext()) {
+      int id = iterator.nextInt();
+      if (id >= 0 && id < capacity) {
+        Partition<P> partition = overflow.get(id);
+        iterator.remove();
+        values[id] = partition.get();
+        wrappers[id] = partition;
+        numDense++;
+      }
+    }
+  }
+
+  private boolean isDense(int id) {
+    return id >= 0 && id < values.length;
+  }
+
+  /**
+   * Get the wrapper of the body in the array
+   */
+  private Partition<P> getWrapper(int id) {
+    P value = values[id];
+    if (value == null) {
+      return null;
+    }
+    Partition<P> partition = wrappers[id];
+    if (partition == null) {
+      partition = new Partition<>(id, value);
+      wrappers[id] = partition;
+    }
+    return partition;
+  }
+
+  @Override
+  public Partition<P> get(int id) {
+    if (isDense(id)) {
+      return getWrapper(id);
+    } else {
+      return overflow.get(id);
+    }
+  }
+
+  /**
+   * Get the partition body without the wrapper
+   *
+   * @param id the partition ID
+   * @return the body, null if not found
+   */
+  P getValue(int id) {
+    if (isDense(id)) {
+      return values[id];
+    } else {
+      Partition<P> partition = overflow.get(id);
+      return partition == null ? null
+          : partition.get();
+    }
+  }
+
+  @Override
+  public Partition<P> put(int id,
+                          Partition<P> partition) {
+    if (toDense(id)) {
+      Partition<P> old = getWrapper(id);
+      if (old == null) {
+        numDense++;
+      }
+      values[id] = partition.get();
+      wrappers[id] = partition;
+      return old;
+    } else {
+      return overflow.put(id, partition);
+    }
+  }
+
+  /**
+   * Put the partition body, without a wrapper if
+   * the ID is in the array
+   *
+   * @param id    the partition ID
+   * @param value the body
+   */
+  void putValue(int id, P value) {
+    if (toDense(id)) {
+      if (values[id] == null) {
+        numDense++;
+      }
+      values[id] = value;
+      wrappers[id] = null;
+    } else {
+      overflow.put(id, new Partition<>(id, value));
+    }
+  }
+
+  @Override
+  public Partition<P> remove(int id) {
+    if (isDense(id)) {
+      Partition<P> old = getWrapper(id);
+      if (old != null) {
+        values[id] = null;
+        wrappers[id] = null;
+        numDense--;
+      }
+      return old;
+    } else {
+      return overflow.remove(id);
+    }
+  }
+
+  @Override
+  public boolean containsKey(int id) {
+    if (isDense(id)) {
+      return values[id] != null;
+    } else {
+      return overflow.containsKey(id);
+    }
+  }
+
+  @Override
+  public int size() {
+    return numDense + overflow.size();
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+  @Override
+  public void clear() {
+    Arrays.fill(values, null);
+    Arrays.fill(wrappers, null);
+    numDense = 0;
+    overflow.clear();
+  }
+
+  /**
+   * Get the length of the array
+   *
+   * @return the length
+   */
+  int getCapacity() {
+    return values.length;
+  }
+
+  /**
+   * Run the action on the bodies and the IDs, in
+   * the order of the IDs in the array, then the
+   * IDs in the overflow map
+   *
+   * @param action the action
+   */
+  void forEachValue(ObjIntConsumer<? super P> action) {
+    P[] array = values;
+    for (int i = 0; i < array.length; i++) {
+      if (array[i] != null) {
+        action.accept(array[i], i);
+      }
+    }
+    for (Partition<P> partition : overflow.values()) {
+      action.accept(partition.get(), partition.id());
+    }
+  }
+
+  /**
+   * Get the spliterator of the partitions. The
+   * array is split into halves, and the overflow
+   * map stays in the last split.
+   *
+   * @return the spliterator
+   */
+  Spliterator<Partition<P>> spliterator() {
+    return new PartitionSpliterator(0,
+        values.length, true);
+  }
+
+  /*******************************************************
+   * Iterate the IDs in the array, then the IDs in
+   * the overflow map
+   ******************************************************/
+  private class IDIterator extends AbstractIntIterator {
+    private int next = 0;
+    private int lastID = 0;
+    private boolean isLastDense = false;
+    private boolean canRemove = false;
+    private IntIterator overflowIterator = null;
+
+    IDIterator() {
+      advance();
+    }
+
+    private void advance() {
+      while (next < values.length
+          && values[next] == null) {
+        next++;
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (next < values.length) {
+        return true;
+      }
+      if (overflowIterator == null) {
+        overflowIterator =
+            overflow.keySet().iterator();
+      }
+      return overflowIterator.hasNext();
+    }
+
+    @Override
+    public int nextInt() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      if (next < values.length) {
+        lastID = next++;
+        isLastDense = true;
+        advance();
+      } else {
+        lastID = overflowIterator.nextInt();
+        isLastDense = false;
+      }
+      canRemove = true;
+      return lastID;
+    }
+
+    @Override
+    public void remove() {
+      if (!canRemove) {
+        throw new IllegalStateException();
+      }
+      canRemove = false;
+      if (isLastDense) {
+        DensePartitionMap.this.remove(lastID);
+      } else {
+        overflowIterator.remove();
+      }
+    }
+  }
+
+  @Override
+  public IntSet keySet() {
+    return new AbstractIntSet() {
+      @Override
+      public IntIterator iterator() {
+        return new IDIterator();
+      }
+
+      @Override
+      public int size() {
+        return DensePartitionMap.this.size();
+      }
+
+      @Override
+      public boolean contains(int id) {
+        return containsKey(id);
+      }
+
+      @Override
+      public boolean remove(int id) {
+        return DensePartitionMap.this.remove(id) != null;
+      }
+
+      @Override
+      public void clear() {
+        DensePartitionMap.this.clear();
+      }
+    };
+  }
+
+  @Override
+  public ObjectCollection<Partition<P>> values() {
+    return new AbstractObjectCollection<Partition<P>>() {
+      @Override
+      public ObjectIterator<Partition<P>> iterator() {
+        IDIterator ids = new IDIterator();
+        return new AbstractObjectIterator<Partition<P>>() {
+          @Override
+          public boolean hasNext() {
+            return ids.hasNext();
+          }
+
+          @Override
+          public Partition<P> next() {
+            return get(ids.nextInt());
+          }
+
+          @Override
+          public void remove() {
+            ids.remove();
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return DensePartitionMap.this.size();
+      }
+
+      @Override
+      public void clear() {
+        DensePartitionMap.this.clear();
+      }
+    };
+  }
+
+  @Override
+  public ObjectSet<Int2ObjectMap.Entry<Partition<P>>>
+      int2ObjectEntrySet() {
+    return new AbstractObjectSet<Int2ObjectMap.Entry<Partition<P>>>() {
+      @Override
+      public ObjectIterator<Int2ObjectMap.Entry<Partition<P>>>
+          iterator() {
+        IDIterator ids = new IDIterator();
+        return new AbstractObjectIterator<Int2ObjectMap.Entry<Partition<P>>>() {
+          @Override
+          public boolean hasNext() {
+            return ids.hasNext();
+          }
+
+          @Override
+          public Int2ObjectMap.Entry<Partition<P>> next() {
+            int id = ids.nextInt();
+            return new AbstractInt2ObjectMap.BasicEntry<>(
+                id, get(id));
+          }
+
+          @Override
+          public void remove() {
+            ids.remove();
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return DensePartitionMap.this.size();
+      }
+    };
+  }
+
+  /*******************************************************
+   * Split the IDs of the array in halves. The
+   * wrappers are created in the splits, which
+   * cover disjoint IDs.
+   ******************************************************/
+  private class PartitionSpliterator
+      implements Spliterator<Partition<P>> {
+    private int index;
+    private final int end;
+    private final boolean hasOverflow;
+    private Iterator<Partition<P>> overflowIterator;
+
+    PartitionSpliterator(int start, int end,
+                         boolean hasOverflow) {
+      this.index = start;
+      this.end = end;
+      this.hasOverflow = hasOverflow;
+      this.overflowIterator = null;
+    }
+
+    @Override
+    public boolean tryAdvance(
+        Consumer<? super Partition<P>> action) {
+      while (index < end) {
+        Partition<P> partition = getWrapper(index++);
+        if (partition != null) {
+          action.accept(partition);
+          return true;
+        }
+      }
+      if (hasOverflow) {
+        if (overflowIterator == null) {
+          overflowIterator = overflow.values().iterator();
+        }
+        if (overflowIterator.hasNext()) {
+          action.accept(overflowIterator.next());
+          return true;
+        }
+      }
+      return false;
+    }
+
+    @Override
+    public void forEachRemaining(
+        Consumer<? super Partition<P>> action) {
+      for (; index < end; index++) {
+        Partition<P> partition = getWrapper(index);
+        if (partition != null) {
+          action.accept(partition);
+        }
+      }
+      if (hasOverflow) {
+        if (overflowIterator == null) {
+          overflowIterator = overflow.values().iterator();
+        }
+        overflowIterator.forEachRemaining(action);
+      }
+    }
+
+    @Override
+    public Spliterator<Partition<P>> trySplit() {
+      int size = end - index;
+      if (size < 2 * MIN_SPLIT_SIZE
+          || overflowIterator != null) {
+        return null;
+      }
+      int mid = (index + end) >>> 1;
+      Spliterator<Partition<P>> prefix =
+          new PartitionSpliterator(index, mid, false);
+      index = mid;
+      return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+      long size = Math.max(end - index, 0);
+      if (hasOverflow) {
+        size += overflow.size();
+      }
+      return size;
+    }
+
+    @Override
+    public int characteristics() {
+      return Spliterator.DISTINCT
+          | Spliterator.NONNULL;
+    }
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.partition;
+
+import edu.iu.harp.resource.Simple;
+
+import java.util.Spliterator;
+import java.util.function.ObjIntConsumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/*******************************************************
+ * A table for the partition IDs from 0 to N-1,
+ * as used by most of the apps. The partition
+ * bodies are kept in a flat array indexed by ID,
+ * with the other IDs in an overflow hash map. The
+ * table works with all the collectives; the
+ * methods on the bodies skip the Partition
+ * wrappers in the hot loops.
+ ******************************************************/
+public class DenseTable<P extends Simple>
+    extends Table<P> {
+
+  private final DensePartitionMap<P> densePartitions;
+
+  /**
+   * Constructor.
+   *
+   * @param tableID       the ID of the table
+   * @param combiner      the combiner used for
+   *                      partitions
+   * @param numPartitions the expected number of
+   *                      the partition IDs from 0
+   */
+  public DenseTable(int tableID,
+                    PartitionCombiner<P> combiner,
+                    int numPartitions) {
+    this(tableID, combiner,
+        new DensePartitionMap<>(numPartitions));
+  }
+
+  private DenseTable(int tableID,
+                     PartitionCombiner<P> combiner,
+                     DensePartitionMap<P> partitions) {
+    super(tableID, combiner, partitions);
+    this.densePartitions = partitions;
+  }
+
+  /**
+   * Get the partition body by partitionID
+   *
+   * @param partitionID
+   * @return the body, null if not found
+   */
+  public final P getValue(int partitionID) {
+    return densePartitions.getValue(partitionID);
+  }
+
+  /**
+   * Add a partition body without the wrapper. If
+   * the ID already exists in this table, combine
+   * the body with the body of the same ID.
+   *
+   * @param partitionID the partition ID
+   * @param value       the partition body
+   * @return partition status
+   */
+  public final PartitionStatus addValue(int partitionID,
+                                        P value) {
+    if (value == null) {
+      return PartitionStatus.ADD_FAILED;
+    }
+    P curValue =
+        densePartitions.getValue(partitionID);
+    if (curValue == null) {
+      densePartitions.putValue(partitionID, value);
+      return PartitionStatus.ADDED;
+    } else {
+      return getCombiner().combine(curValue, value);
+    }
+  }
+
+  /**
+   * Run the action on each partition body and its
+   * ID, in the order of the IDs from 0, without
+   * the wrappers
+   *
+   * @param action the action
+   */
+  public final void forEachValue(
+      ObjIntConsumer<? super P> action) {
+    densePartitions.forEachValue(action);
+  }
+
+  /**
+   * Get the spliterator of the partitions, split
+   * by the ranges of the IDs
+   *
+   * @return the spliterator
+   */
+  public final Spliterator<Partition<P>> spliterator() {
+    return densePartitions.spliterator();
+  }
+
+  /**
+   * Get the stream of the partitions
+   *
+   * @param isParallel parallel or sequential
+   * @return the stream
+   */
+  public final Stream<Partition<P>> stream(
+      boolean isParallel) {
+    return StreamSupport.stream(spliterator(),
+        isParallel);
+  }
+}
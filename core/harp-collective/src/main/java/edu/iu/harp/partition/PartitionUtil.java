@@ -24,6 +24,7 @@ import edu.iu.harp.io.DataMap;
 import edu.iu.harp.io.DataType;
 import edu.iu.harp.io.DataUtil;
 import edu.iu.harp.io.IOUtil;
+import edu.iu.harp.io.ReceivePool;
 import edu.iu.harp.resource.Simple;
 import edu.iu.harp.resource.Transferable;
 import edu.iu.harp.resource.Writable;
@@ -32,6 +33,7 @@ import edu.iu.harp.util.PartitionSet;
 import edu.iu.harp.worker.WorkerInfo;
 import edu.iu.harp.worker.Workers;
 import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
 import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.objects.ObjectArrayList;
@@ -40,6 +42,7 @@ import org.apache.log4j.Logger;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.RecursiveAction;
 
 /*******************************************************
  * Utils used on partitions, including receive,
@@ -84,7 +87,10 @@ public class PartitionUtil {
   }
 
   /**
-   * Add a list of partitions to table in parallel
+   * Add a list of partitions to table in parallel.
+   * The new partition IDs are added serially; the
+   * partitions of the existing IDs are combined
+   * in the receive pool, each ID by one task.
    *
    * @param partitions the list of partitions
    * @param table      the table to be added partitions
@@ -111,22 +117,63 @@ public class PartitionUtil {
       }
     }
     if (!combineMap.isEmpty()) {
+      ReceivePool.get().invoke(
+          new CombineTask<>(table,
+              new ObjectArrayList<>(combineMap
+                  .int2ObjectEntrySet()),
+              0, combineMap.size()));
+    }
+    partitions.clear();
+  }
+
+  /**
+   * Combine the lists of partitions into the
+   * partitions of the table. The range of the IDs
+   * is split until each task owns one ID, so the
+   * tasks never combine into the same partition
+   * and need no lock.
+   */
+  private static class CombineTask<P extends Simple>
+      extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final Table<P> table;
+    private final List<Int2ObjectMap.Entry<List<Partition<P>>>> entries;
+    private final int start;
+    private final int end;
+
+    CombineTask(Table<P> table,
+                List<Int2ObjectMap.Entry<List<Partition<P>>>> entries,
+                int start, int end) {
+      this.table = table;
+      this.entries = entries;
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    protected void compute() {
+      if (end - start > 1) {
+        int middle = (start + end) >>> 1;
+        invokeAll(
+            new CombineTask<>(table, entries,
+                start, middle),
+            new CombineTask<>(table, entries,
+                middle, end));
+        return;
+      }
       PartitionCombiner<P> combiner =
           table.getCombiner();
-      combineMap.int2ObjectEntrySet()
-          .parallelStream().forEach(e -> {
-        int id = e.getIntKey();
-        List<Partition<P>> list = e.getValue();
-        Partition<P> partition =
-            table.getPartition(id);
-        for (Partition<P> p : list) {
-          combiner.combine(partition.get(),
-              p.get());
-          p.release();
-        }
-      });
+      Int2ObjectMap.Entry<List<Partition<P>>> e =
+          entries.get(start);
+      Partition<P> partition =
+          table.getPartition(e.getIntKey());
+      for (Partition<P> p : e.getValue()) {
+        combiner.combine(partition.get(),
+            p.get());
+        p.release();
+      }
     }
-    partitions.clear();
   }
 
   public static <P extends Simple> boolean regroupPartitionCount(String contextName,
@@ -17,6 +17,7 @@
 package edu.iu.harp.partition;
 
 import edu.iu.harp.resource.Simple;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
 import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.ints.IntSet;
 import it.unimi.dsi.fastutil.objects.ObjectCollection;
@@ -28,7 +29,7 @@ import it.unimi.dsi.fastutil.objects.ObjectCollection;
 public class Table<P extends Simple> {
 
   private final int tableID;
-  private final Int2ObjectOpenHashMap<Partition<P>> partitions;
+  private final Int2ObjectMap<Partition<P>> partitions;
   /*
    * Combiner defines how to merge two partitions
    */
@@ -58,6 +59,24 @@ public class Table<P extends Simple> {
     this.combiner = combiner;
   }
 
+  /**
+   * Constructor for the tables storing the
+   * partitions in another map
+   *
+   * @param tableID    the ID of the table
+   * @param combiner   the combiner used for
+   *                   partitions
+   * @param partitions the empty map storing the
+   *                   partitions by ID
+   */
+  protected Table(int tableID,
+                  PartitionCombiner<P> combiner,
+                  Int2ObjectMap<Partition<P>> partitions) {
+    this.tableID = tableID;
+    this.partitions = partitions;
+    this.combiner = combiner;
+  }
+
   /**
    * Get the table ID
    *
@@ -17,13 +17,6 @@
 package edu.iu.harp.resource;
 
 import edu.iu.harp.io.Constant;
-import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
-import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
-import it.unimi.dsi.fastutil.objects.ObjectIterator;
-import org.apache.log4j.Logger;
-
-import java.util.HashSet;
-import java.util.LinkedList;
 
 /*******************************************************
  * The abstract class of pools. An ArrayPool is
@@ -33,31 +26,6 @@ import java.util.LinkedList;
  ******************************************************/
 public abstract class ArrayPool<T> {
 
-  private static final Logger LOG =
-    Logger.getLogger(ArrayPool.class);
-  /* A map from size to ArrayStore */
-  private Int2ObjectOpenHashMap<ArrayStore> arrayMap;
-
-  /**
-   * ArrayStore is used for buffering Arrays.
-   * freeQueue stores not-in-use Arrays, which can
-   * be used as required to avoid reallocating
-   * Arrays. inUseSet stores in-use arrays.
-   */
-  private class ArrayStore {
-    private LinkedList<T> freeQueue;
-    private HashSet<T> inUseSet;
-
-    private ArrayStore() {
-      freeQueue = new LinkedList<>();
-      inUseSet = new HashSet<>();
-    }
-  }
-
-  public ArrayPool() {
-    arrayMap = new Int2ObjectOpenHashMap<>();
-  }
-
   /**
    * If approximate is true, the return value is
    * the smallest power of 2 which is no less than
@@ -70,8 +38,8 @@ public abstract class ArrayPool<T> {
    *          true or false
    * @return the adjusted size
    */
-  private int getAdjustedArraySize(int size,
-    boolean approximate) {
+  protected static int getAdjustedArraySize(
+    int size, boolean approximate) {
     if (approximate) {
       int shift = 32
         - Integer.numberOfLeadingZeros(size - 1);
@@ -99,6 +67,17 @@ public abstract class ArrayPool<T> {
    */
   protected abstract int getLength(T array);
 
+  /**
+   * Get the number of bytes the array holds. By
+   * default one byte per element.
+   * 
+   * @param array
+   * @return the number of bytes
+   */
+  protected long getNumBytes(T array) {
+    return getLength(array);
+  }
+
   /**
    * If approximate is false, get an array of
    * required size. else, get an array of adjusted
@@ -110,148 +89,36 @@ public abstract class ArrayPool<T> {
    * @param approximate
    * @return an array
    */
-  synchronized T getArray(int size,
-    boolean approximate) {
-    int originSize = size;
-    if (originSize <= 0) {
-      return null;
-    }
-    int adjustSize = getAdjustedArraySize(
-      originSize, approximate);
-    if (adjustSize < originSize) {
-      return null;
-    }
-    ArrayStore arrayStore =
-      arrayMap.get(adjustSize);
-    if (arrayStore == null) {
-      arrayStore = new ArrayStore();
-      arrayMap.put(adjustSize, arrayStore);
-    }
-    if (arrayStore.freeQueue.isEmpty()) {
-      try {
-        T array = createNewArray(adjustSize);
-        arrayStore.inUseSet.add(array);
-        // LOG
-        // .info("Create a new array with original
-        // size: "
-        // + originSize
-        // + ", adjusted size: "
-        // + adjustSize
-        // + ", with type: "
-        // + array.getClass().getName());
-        return array;
-      } catch (Throwable t) {
-        LOG.error(
-          "Cannot create array with size "
-            + adjustSize
-            + ", current total memory: "
-            + Runtime.getRuntime().totalMemory()
-            + ", current free memory "
-            + Runtime.getRuntime().freeMemory(),
-          t);
-        return null;
-      }
-    } else {
-      T array =
-        arrayStore.freeQueue.removeFirst();
-      arrayStore.inUseSet.add(array);
-      // LOG
-      // .info("Get an existing array with
-      // adjusted size: "
-      // + adjustSize
-      // + ", with type "
-      // + array.getClass().getName());
-      return array;
-    }
-  }
+  abstract T getArray(int size,
+    boolean approximate);
 
   /**
-   * Release the array by moving the array from
-   * inUseSet to freeQueue. The array can be used
-   * as a new array later.
+   * Release the array. The array can be used as a
+   * new array later.
    * 
    * @param array
    *          the array to release
    * @return true if succeeded, false if failed.
    */
-  synchronized boolean releaseArray(T array) {
-    if (array == null) {
-      return false;
-    }
-    int size = getLength(array);
-    ArrayStore arrayStore = arrayMap.get(size);
-    if (arrayStore == null) {
-      // LOG
-      // .info("Fail to release an array with
-      // size: "
-      // + size
-      // + ", with type "
-      // + array.getClass().getName()
-      // + ". no such store.");
-      return false;
-    } else {
-      if (arrayStore.inUseSet.remove(array)) {
-        arrayStore.freeQueue.add(array);
-        return true;
-      } else {
-        // LOG
-        // .info("Fail to release an array with
-        // size: "
-        // + size
-        // + ", with type "
-        // + array.getClass().getName()
-        // + ". no such an array.");
-        return false;
-      }
-    }
-  }
+  abstract boolean releaseArray(T array);
 
   /**
-   * Free the array by removing it from the
-   * inUseSet. It is no longer available.
+   * Free the array. It is no longer tracked by
+   * the pool.
    * 
    * @param array
    *          the array to be freed
    * @return true if succeeded, false if failed
    */
-  synchronized boolean freeArray(T array) {
-    int size = getLength(array);
-    // LOG.info("Free an array with size: " + size
-    // + ", with type "
-    // + array.getClass().getName());
-    ArrayStore arrayStore = arrayMap.get(size);
-    if (arrayStore == null) {
-      return false;
-    } else {
-      return arrayStore.inUseSet.remove(array);
-    }
-  }
+  abstract boolean freeArray(T array);
 
   /**
-   * Clean all arrays in freeQueue, namely remove
-   * all not-in-use arrays.
+   * Clean all not-in-use arrays.
    */
-  synchronized void clean() {
-    for (ArrayStore store : arrayMap.values()) {
-      store.freeQueue.clear();
-    }
-  }
+  abstract void clean();
 
   /**
    * Logging the usage of the arrays.
    */
-  synchronized void log() {
-    ObjectIterator<Int2ObjectMap.Entry<ArrayStore>> iterator =
-      arrayMap.int2ObjectEntrySet()
-        .fastIterator();
-    while (iterator.hasNext()) {
-      Int2ObjectMap.Entry<ArrayStore> entry =
-        iterator.next();
-      LOG.info(this + ": size="
-        + entry.getIntKey() + ", use="
-        + entry.getValue().inUseSet.size()
-        + ", released="
-        + entry.getValue().freeQueue.size());
-    }
-  }
+  abstract void log();
 }
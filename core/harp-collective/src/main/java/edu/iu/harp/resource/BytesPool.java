@@ -19,7 +19,7 @@ package edu.iu.harp.resource;
 /*******************************************************
  * A pool used for caching byte arrays.
  ******************************************************/
-public class BytesPool extends ArrayPool<byte[]> {
+public class BytesPool extends ConcurrentArrayPool<byte[]> {
 
   public BytesPool() {
     super();
@@ -0,0 +1,776 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.resource;
+
+import org.apache.log4j.Logger;
+
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/*******************************************************
+ * An ArrayPool with per-thread magazines in front
+ * of shared lock-free stacks. Each size class has
+ * a lock-free stack of free arrays, and each
+ * thread keeps a small magazine of free arrays
+ * per size class. A magazine has a lock, which is
+ * taken by other threads only to drain it, so it
+ * is not contended while its thread gets and
+ * releases arrays of the same size.
+ * <p>
+ * The free arrays and the bytes they hold are
+ * counted only when an array moves between a
+ * magazine and the shared stack, or is created
+ * or dropped. A magazine counts its own arrays,
+ * hits and last use, and the stats sum the
+ * magazines when they are read. The magazines of
+ * a size are registered, so that clean drops
+ * their arrays, and the magazines of the threads
+ * which exited are flushed to the shared stack.
+ * <p>
+ * Each array is tracked by a slot which is
+ * created once with the array. Getting a cached
+ * array only marks its slot; releasing looks the
+ * slot up in a map which is only written when
+ * arrays are created or dropped, and flips it
+ * back, which rejects arrays that were not
+ * created by the pool and arrays released twice.
+ * <p>
+ * The maximum retained bytes of the pool and a
+ * byte budget, which may be shared with other
+ * pools, both count the arrays in the shared
+ * stacks only. They are checked when arrays move
+ * to or from the shared stacks, so getting and
+ * releasing through a magazine touches neither.
+ * If an array moved to a shared stack does not
+ * fit in the budget, free arrays of the least
+ * recently used size, the largest first among
+ * sizes used at the same time, are evicted from
+ * the shared stacks. Each magazine keeps at most
+ * MAGAZINE_SIZE arrays on top of the limits, and
+ * no array larger than them.
+ ******************************************************/
+public abstract class ConcurrentArrayPool<T>
+  extends ArrayPool<T> {
+
+  private static final Logger LOG =
+    Logger.getLogger(ConcurrentArrayPool.class);
+
+  /** The number of arrays a thread caches per size */
+  private static final int MAGAZINE_SIZE = 4;
+  /**
+   * The number of the registered magazines of a
+   * size at which the magazines of the threads
+   * which exited are flushed
+   */
+  private static final int MIN_FLUSH_MAGAZINES = 16;
+  /**
+   * The sizes used within this time are evicted
+   * by size instead of by last use
+   */
+  private static final long USE_RESOLUTION_NANOS =
+    1000000L;
+  private static final long ORIGIN_NANOS =
+    System.nanoTime();
+
+  /** Size classes of power-of-2 sizes by exponent */
+  private final AtomicReferenceArray<SizeClass> powerOfTwoClasses;
+  /** Size classes of other sizes */
+  private final ConcurrentHashMap<Integer, SizeClass> otherClasses;
+  /** The slots of all arrays known by the pool */
+  private final ConcurrentHashMap<T, Slot<T>> slots;
+  /** The bytes of the arrays in the shared stacks */
+  private final AtomicLong sharedBytes;
+  private volatile long maxRetainedBytes;
+  private volatile PoolBudget budget;
+  private final LongAdder misses;
+  private final LongAdder evictions;
+
+  /**
+   * The state of an array. True if in use.
+   */
+  private static final class Slot<T>
+    extends AtomicBoolean {
+    private static final long serialVersionUID =
+      1L;
+    private final T array;
+
+    private Slot(T array) {
+      super(true);
+      this.array = array;
+    }
+  }
+
+  /**
+   * The node of a free stack
+   */
+  private static final class Node<T> {
+    private final Slot<T> slot;
+    private Node<T> next;
+
+    private Node(Slot<T> slot) {
+      this.slot = slot;
+    }
+  }
+
+  /**
+   * The free arrays cached by a thread and their
+   * counters, guarded by the lock of the magazine
+   */
+  private static final class Magazine<T> {
+    private final Object[] slots =
+      new Object[MAGAZINE_SIZE];
+    private int count = 0;
+    /** The arrays got from the magazine */
+    private long hits = 0L;
+    /** Nanoseconds since the origin */
+    private long lastUse = now();
+    private final WeakReference<Thread> owner;
+
+    private Magazine(Thread owner) {
+      this.owner = new WeakReference<>(owner);
+    }
+
+    private boolean isOwnerAlive() {
+      Thread thread = owner.get();
+      return thread != null && thread.isAlive();
+    }
+  }
+
+  /**
+   * The arrays of one size
+   */
+  private final class SizeClass {
+    private final int size;
+    /** The bytes of an array, set at the first one */
+    private volatile long arrayBytes;
+    private final AtomicReference<Node<T>> top;
+    private final ThreadLocal<Magazine<T>> magazines;
+    /** The magazines of all the threads */
+    private final ConcurrentLinkedQueue<Magazine<T>> allMagazines;
+    private final AtomicInteger numMagazines;
+    private volatile int flushAt;
+    /** The arrays tracked, in use or free */
+    private final LongAdder numArrays;
+    /** The arrays in the shared stack */
+    private final AtomicInteger numShared;
+    /**
+     * The hits on the shared stack and the hits of
+     * the magazines unregistered
+     */
+    private final LongAdder sharedHits;
+    /**
+     * The last use by the magazines unregistered,
+     * nanoseconds since the origin
+     */
+    private volatile long lastUse;
+
+    private SizeClass(int size) {
+      this.size = size;
+      this.arrayBytes = 0L;
+      this.top = new AtomicReference<>();
+      this.magazines =
+        ThreadLocal.withInitial(this::register);
+      this.allMagazines =
+        new ConcurrentLinkedQueue<>();
+      this.numMagazines = new AtomicInteger();
+      this.flushAt = MIN_FLUSH_MAGAZINES;
+      this.numArrays = new LongAdder();
+      this.numShared = new AtomicInteger();
+      this.sharedHits = new LongAdder();
+      this.lastUse = now();
+    }
+
+    /**
+     * Take a free array from the magazine of this
+     * thread, or from the shared stack
+     *
+     * @return the slot of the array, or null
+     */
+    @SuppressWarnings("unchecked")
+    private Slot<T> poll() {
+      Magazine<T> magazine = magazines.get();
+      synchronized (magazine) {
+        magazine.lastUse = now();
+        if (magazine.count > 0) {
+          int i = --magazine.count;
+          Slot<T> slot =
+            (Slot<T>) magazine.slots[i];
+          magazine.slots[i] = null;
+          magazine.hits++;
+          return slot;
+        }
+      }
+      Slot<T> slot = pollShared();
+      if (slot != null) {
+        sharedHits.increment();
+      }
+      return slot;
+    }
+
+    /**
+     * Take a free array from the shared stack and
+     * uncount it
+     *
+     * @return the slot of the array, or null
+     */
+    private Slot<T> pollShared() {
+      Node<T> node;
+      do {
+        node = top.get();
+        if (node == null) {
+          return null;
+        }
+      } while (!top.compareAndSet(node, node.next));
+      uncountShared();
+      return node.slot;
+    }
+
+    private void uncountShared() {
+      numShared.decrementAndGet();
+      sharedBytes.addAndGet(-arrayBytes);
+      budget.release(arrayBytes);
+    }
+
+    /**
+     * Put a free array to the magazine of this
+     * thread, or to the shared stack if the
+     * magazine is full
+     *
+     * @param slot
+     *          the slot of the array
+     */
+    private void offer(Slot<T> slot) {
+      Magazine<T> magazine = magazines.get();
+      synchronized (magazine) {
+        magazine.lastUse = now();
+        if (magazine.count < MAGAZINE_SIZE) {
+          magazine.slots[magazine.count++] = slot;
+          return;
+        }
+      }
+      moveToShared(slot);
+    }
+
+    /**
+     * Count a free array and put it to the shared
+     * stack, or drop it if it does not fit in the
+     * limit of the pool or in the budget
+     *
+     * @param slot
+     *          the slot of the array
+     */
+    private void moveToShared(Slot<T> slot) {
+      boolean isReserved = reserveShared(arrayBytes);
+      if (isReserved
+        && !budget.reserve(arrayBytes)) {
+        sharedBytes.addAndGet(-arrayBytes);
+        isReserved = false;
+      }
+      if (!isReserved) {
+        drop(slot);
+        evictions.increment();
+        return;
+      }
+      numShared.incrementAndGet();
+      Node<T> node = new Node<>(slot);
+      do {
+        node.next = top.get();
+      } while (!top.compareAndSet(node.next, node));
+    }
+
+    /**
+     * Create and register the magazine of this
+     * thread. As the registered magazines double,
+     * the ones of the threads which exited are
+     * flushed and unregistered.
+     *
+     * @return the magazine
+     */
+    private Magazine<T> register() {
+      Magazine<T> magazine =
+        new Magazine<>(Thread.currentThread());
+      allMagazines.add(magazine);
+      if (numMagazines.incrementAndGet() >= flushAt) {
+        drainMagazines(this::moveToShared, false);
+        flushAt = Math.max(MIN_FLUSH_MAGAZINES,
+          numMagazines.get() * 2);
+      }
+      return magazine;
+    }
+
+    /**
+     * Take the arrays out of the magazines. The
+     * magazines of the threads which exited are
+     * unregistered and their hits are kept. The
+     * action runs out of the lock of the
+     * magazine, as it may evict.
+     *
+     * @param action
+     *          the action on each array taken
+     * @param all
+     *          true to drain the magazines of the
+     *          live threads too
+     */
+    @SuppressWarnings("unchecked")
+    private void drainMagazines(
+      Consumer<Slot<T>> action, boolean all) {
+      Iterator<Magazine<T>> iterator =
+        allMagazines.iterator();
+      Object[] drained = new Object[MAGAZINE_SIZE];
+      while (iterator.hasNext()) {
+        Magazine<T> magazine = iterator.next();
+        boolean isAlive = magazine.isOwnerAlive();
+        if (!isAlive) {
+          iterator.remove();
+          numMagazines.decrementAndGet();
+        } else if (!all) {
+          continue;
+        }
+        int numDrained;
+        synchronized (magazine) {
+          numDrained = magazine.count;
+          for (int i = 0; i < numDrained; i++) {
+            drained[i] = magazine.slots[i];
+            magazine.slots[i] = null;
+          }
+          magazine.count = 0;
+          if (!isAlive) {
+            sharedHits.add(magazine.hits);
+            magazine.hits = 0L;
+            lastUse =
+              Math.max(lastUse, magazine.lastUse);
+          }
+        }
+        for (int i = 0; i < numDrained; i++) {
+          action.accept((Slot<T>) drained[i]);
+          drained[i] = null;
+        }
+      }
+    }
+
+    /**
+     * Get the number of the free arrays, in the
+     * magazines and in the shared stack
+     *
+     * @return the number of arrays
+     */
+    private long getNumFree() {
+      long numFree = numShared.get();
+      for (Magazine<T> magazine : allMagazines) {
+        synchronized (magazine) {
+          numFree += magazine.count;
+        }
+      }
+      return numFree;
+    }
+
+    private long getHits() {
+      long numHits = sharedHits.sum();
+      for (Magazine<T> magazine : allMagazines) {
+        synchronized (magazine) {
+          numHits += magazine.hits;
+        }
+      }
+      return numHits;
+    }
+
+    /**
+     * Get the last use of the size, by any thread
+     *
+     * @return nanoseconds since the origin
+     */
+    private long getLastUse() {
+      long last = lastUse;
+      for (Magazine<T> magazine : allMagazines) {
+        synchronized (magazine) {
+          last = Math.max(last, magazine.lastUse);
+        }
+      }
+      return last;
+    }
+
+    /**
+     * Drop all the arrays in the magazines and in
+     * the shared stack
+     */
+    private void clean() {
+      drainMagazines(this::drop, true);
+      Node<T> node = top.getAndSet(null);
+      while (node != null) {
+        uncountShared();
+        drop(node.slot);
+        node = node.next;
+      }
+    }
+
+    /**
+     * Forget an array not counted as free, left to
+     * the garbage collector
+     *
+     * @param slot
+     *          the slot of the array
+     */
+    private void drop(Slot<T> slot) {
+      slots.remove(slot.array);
+      numArrays.decrement();
+    }
+  }
+
+  private static long now() {
+    return System.nanoTime() - ORIGIN_NANOS;
+  }
+
+  public ConcurrentArrayPool() {
+    powerOfTwoClasses =
+      new AtomicReferenceArray<>(Integer.SIZE);
+    otherClasses = new ConcurrentHashMap<>();
+    slots = new ConcurrentHashMap<>();
+    sharedBytes = new AtomicLong();
+    maxRetainedBytes = Long.MAX_VALUE;
+    misses = new LongAdder();
+    evictions = new LongAdder();
+    setBudget(new PoolBudget(Long.MAX_VALUE));
+  }
+
+  /**
+   * Count the free arrays in the shared stacks
+   * against the budget. Set before the pool is
+   * used.
+   *
+   * @param budget
+   *          the budget shared with other pools
+   */
+  void setBudget(PoolBudget budget) {
+    this.budget = budget;
+    budget.register(this);
+  }
+
+  /**
+   * Get the counters of the pool, summed over the
+   * magazines of all the threads
+   *
+   * @return the stats
+   */
+  public PoolStats getStats() {
+    long[] sums = new long[2];
+    forEachSizeClass(sizeClass -> {
+      sums[0] += sizeClass.getHits();
+      sums[1] += sizeClass.getNumFree()
+        * sizeClass.arrayBytes;
+    });
+    return new PoolStats(sums[0], misses.sum(),
+      evictions.sum(), sums[1]);
+  }
+
+  /**
+   * Set the maximum number of bytes of the free
+   * arrays kept by the pool in the shared stacks.
+   * Released arrays beyond it are left to the
+   * garbage collector.
+   *
+   * @param maxRetainedBytes
+   *          the maximum number of bytes
+   */
+  public void
+    setMaxRetainedBytes(long maxRetainedBytes) {
+    this.maxRetainedBytes = maxRetainedBytes;
+  }
+
+  /**
+   * Get the maximum number of bytes of the free
+   * arrays kept by the pool in the shared stacks
+   *
+   * @return the maximum number of bytes
+   */
+  public long getMaxRetainedBytes() {
+    return maxRetainedBytes;
+  }
+
+  /**
+   * Get the number of bytes of the free arrays
+   * kept by the pool, in the magazines and in the
+   * shared stacks
+   *
+   * @return the number of bytes
+   */
+  public long getRetainedBytes() {
+    return getStats().getRetainedBytes();
+  }
+
+  /**
+   * Get the number of bytes of the free arrays in
+   * the shared stacks, which is kept within the
+   * maximum
+   *
+   * @return the number of bytes
+   */
+  long getSharedBytes() {
+    return sharedBytes.get();
+  }
+
+  /**
+   * Get the number of the arrays tracked by the
+   * pool, in use or free
+   *
+   * @return the number of arrays
+   */
+  int getNumArrays() {
+    return slots.size();
+  }
+
+  /**
+   * Apply an action to all size classes
+   *
+   * @param action
+   *          the action
+   */
+  private void forEachSizeClass(
+    Consumer<SizeClass> action) {
+    for (int i = 0; i < powerOfTwoClasses
+      .length(); i++) {
+      SizeClass sizeClass =
+        powerOfTwoClasses.get(i);
+      if (sizeClass != null) {
+        action.accept(sizeClass);
+      }
+    }
+    otherClasses.values().forEach(action);
+  }
+
+  /**
+   * The size class to evict from: the least
+   * recently used one with free arrays in the
+   * shared stack, the largest first if used at
+   * the same time
+   */
+  private final class Victim {
+    private SizeClass sizeClass = null;
+    private long lastUse = Long.MAX_VALUE;
+
+    private void consider(SizeClass candidate) {
+      if (candidate.top.get() == null) {
+        return;
+      }
+      long use = candidate.getLastUse();
+      if (sizeClass == null
+        || use - lastUse < -USE_RESOLUTION_NANOS
+        || (use - lastUse <= USE_RESOLUTION_NANOS
+          && candidate.size > sizeClass.size)) {
+        sizeClass = candidate;
+        lastUse = use;
+      }
+    }
+  }
+
+  private Victim findVictim() {
+    Victim victim = new Victim();
+    forEachSizeClass(victim::consider);
+    return victim;
+  }
+
+  /**
+   * Get the last use of the size to evict from
+   *
+   * @return the last use, or Long.MAX_VALUE if
+   *         no array can be evicted
+   */
+  long getVictimLastUse() {
+    return findVictim().lastUse;
+  }
+
+  /**
+   * Count the bytes of an array moved to the
+   * shared stacks if they fit in the limit of the
+   * pool
+   *
+   * @param numBytes
+   *          the number of bytes
+   * @return true if the array can be kept
+   */
+  private boolean reserveShared(long numBytes) {
+    long max = maxRetainedBytes;
+    if (max == Long.MAX_VALUE) {
+      sharedBytes.addAndGet(numBytes);
+      return true;
+    }
+    long current;
+    do {
+      current = sharedBytes.get();
+      if (current + numBytes > max) {
+        return false;
+      }
+    } while (!sharedBytes.compareAndSet(current,
+      current + numBytes));
+    return true;
+  }
+
+  /**
+   * Evict a free array of the size to evict from
+   *
+   * @return true if an array was evicted
+   */
+  boolean evict() {
+    SizeClass victim = findVictim().sizeClass;
+    if (victim == null) {
+      return false;
+    }
+    Slot<T> slot = victim.pollShared();
+    if (slot == null) {
+      return false;
+    }
+    victim.drop(slot);
+    evictions.increment();
+    return true;
+  }
+
+  /**
+   * Get the size class of the size
+   *
+   * @param size
+   *          the size of the arrays
+   * @param create
+   *          create the size class if missing
+   * @return the size class, or null
+   */
+  private SizeClass getSizeClass(int size,
+    boolean create) {
+    if ((size & (size - 1)) == 0) {
+      int index = Integer.numberOfTrailingZeros(size);
+      SizeClass sizeClass =
+        powerOfTwoClasses.get(index);
+      if (sizeClass == null && create) {
+        powerOfTwoClasses.compareAndSet(index, null,
+          new SizeClass(size));
+        sizeClass = powerOfTwoClasses.get(index);
+      }
+      return sizeClass;
+    } else if (create) {
+      return otherClasses.computeIfAbsent(size,
+        SizeClass::new);
+    } else {
+      return otherClasses.get(size);
+    }
+  }
+
+  @Override
+  T getArray(int size, boolean approximate) {
+    int originSize = size;
+    if (originSize <= 0) {
+      return null;
+    }
+    int adjustSize = getAdjustedArraySize(
+      originSize, approximate);
+    if (adjustSize < originSize) {
+      return null;
+    }
+    SizeClass sizeClass =
+      getSizeClass(adjustSize, true);
+    Slot<T> slot = sizeClass.poll();
+    if (slot != null) {
+      slot.set(true);
+      return slot.array;
+    }
+    misses.increment();
+    try {
+      T array = createNewArray(adjustSize);
+      if (sizeClass.arrayBytes == 0L) {
+        sizeClass.arrayBytes = getNumBytes(array);
+      }
+      slots.put(array, new Slot<>(array));
+      sizeClass.numArrays.increment();
+      return array;
+    } catch (Throwable t) {
+      LOG.error(
+        "Cannot create array with size "
+          + adjustSize
+          + ", current total memory: "
+          + Runtime.getRuntime().totalMemory()
+          + ", current free memory "
+          + Runtime.getRuntime().freeMemory(),
+        t);
+      return null;
+    }
+  }
+
+  @Override
+  boolean releaseArray(T array) {
+    if (array == null) {
+      return false;
+    }
+    Slot<T> slot = slots.get(array);
+    if (slot == null
+      || !slot.compareAndSet(true, false)) {
+      // Not from the pool, freed or released
+      return false;
+    }
+    SizeClass sizeClass =
+      getSizeClass(getLength(array), false);
+    long numBytes = sizeClass.arrayBytes;
+    if (numBytes > maxRetainedBytes
+      || numBytes > budget.getMaxBytes()) {
+      sizeClass.drop(slot);
+      evictions.increment();
+      return true;
+    }
+    sizeClass.offer(slot);
+    return true;
+  }
+
+  @Override
+  boolean freeArray(T array) {
+    Slot<T> slot = slots.get(array);
+    if (slot == null
+      || !slot.compareAndSet(true, false)) {
+      return false;
+    }
+    getSizeClass(getLength(array), false)
+      .drop(slot);
+    return true;
+  }
+
+  /**
+   * Drop the free arrays in the magazines of all
+   * the threads and in the shared stacks
+   */
+  @Override
+  void clean() {
+    forEachSizeClass(SizeClass::clean);
+  }
+
+  @Override
+  void log() {
+    forEachSizeClass(this::log);
+    LOG.info(this + ": " + getStats());
+  }
+
+  private void log(SizeClass sizeClass) {
+    long numFree = sizeClass.getNumFree();
+    LOG.info(this + ": size=" + sizeClass.size
+      + ", use="
+      + (sizeClass.numArrays.sum() - numFree)
+      + ", released=" + numFree);
+  }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.resource;
+
+import edu.iu.harp.io.DataType;
+import edu.iu.harp.io.Serializer;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/*******************************************************
+ * The abstract class of arrays in direct memory.
+ * The elements are kept big-endian, in the same
+ * layout as the encoded arrays, so that they are
+ * encoded and sent with bulk copies, and they do
+ * not add to the heap scanned by the garbage
+ * collector. The encoded bytes are the same as
+ * the heap arrays' except the data type.
+ ******************************************************/
+public abstract class DirectArray
+  extends Simple {
+
+  /** The chunk size of encoding to a DataOutput */
+  private static final int CHUNK_SIZE = 8192;
+
+  /** The buffer holding the elements from 0 */
+  protected ByteBuffer buffer = null;
+  /** Size of the array data, -1 by default */
+  protected int size = -1;
+
+  public DirectArray(ByteBuffer buffer,
+    int size) {
+    this.buffer = buffer.order(ByteOrder.BIG_ENDIAN);
+    this.size = size;
+  }
+
+  /**
+   * Get the number of bytes of each element
+   *
+   * @return the number of bytes
+   */
+  protected abstract int getElementBytes();
+
+  /**
+   * Get the data type written in the encoded
+   * bytes
+   *
+   * @return the data type
+   */
+  public abstract byte getDataType();
+
+  /**
+   * Get the buffer holding the elements.
+   *
+   * @return the buffer
+   */
+  public ByteBuffer getBuffer() {
+    return buffer;
+  }
+
+  /**
+   * Get a buffer over the bytes of the elements,
+   * from position 0 to the end of the last
+   * element. It shares the memory of the array.
+   *
+   * @return the buffer
+   */
+  public ByteBuffer slice() {
+    ByteBuffer dup = buffer.duplicate();
+    dup.position(0);
+    dup.limit(size * getElementBytes());
+    return dup;
+  }
+
+  /**
+   * Get the size of the array.
+   *
+   * @return array size
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Get the number of Bytes of encoded data. One
+   * byte for storing DataType, four bytes for
+   * storing the size, and the bytes of the
+   * elements.
+   */
+  @Override
+  public int getNumEnocdeBytes() {
+    return size * getElementBytes() + 5;
+  }
+
+  /**
+   * Encode the array as DataOutput
+   */
+  @Override
+  public void encode(DataOutput out)
+    throws IOException {
+    out.writeByte(getDataType());
+    out.writeInt(size);
+    ByteBuffer src = slice();
+    if (out instanceof Serializer) {
+      ((Serializer) out).write(src);
+    } else {
+      byte[] chunk = new byte[Math.min(CHUNK_SIZE,
+        src.remaining())];
+      while (src.hasRemaining()) {
+        int len =
+          Math.min(chunk.length, src.remaining());
+        src.get(chunk, 0, len);
+        out.write(chunk, 0, len);
+      }
+    }
+  }
+
+  /**
+   * Get a buffer of the DirectArrayPool
+   *
+   * @param numBytes
+   *          the number of bytes required
+   * @param approximate
+   *          round the capacity up to a power of
+   *          2 or not
+   * @return the buffer, or null if failed
+   */
+  protected static ByteBuffer
+    getBuffer(long numBytes, boolean approximate) {
+    if (numBytes <= 0
+      || numBytes > Integer.MAX_VALUE) {
+      return null;
+    }
+    int capacity = ArrayPool.getAdjustedArraySize(
+      (int) numBytes, approximate);
+    if (capacity < numBytes) {
+      return null;
+    }
+    return ResourcePool.get().getDirectArrayPool()
+      .getBuffer(capacity);
+  }
+
+  /**
+   * Create an array of the data type from the
+   * DirectArrayPool
+   *
+   * @param dataType
+   *          the data type
+   * @param size
+   *          the number of elements
+   * @return the array, or null if failed
+   */
+  public static DirectArray create(byte dataType,
+    int size) {
+    switch (dataType) {
+      case DataType.DIRECT_INT_ARRAY:
+        return DirectIntArray.create(size, false);
+      case DataType.DIRECT_FLOAT_ARRAY:
+        return DirectFloatArray.create(size, false);
+      case DataType.DIRECT_DOUBLE_ARRAY:
+        return DirectDoubleArray.create(size, false);
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Release the buffer to the DirectArrayPool
+   */
+  @Override
+  public void release() {
+    ResourcePool.get().getDirectArrayPool()
+      .releaseBuffer(buffer);
+    this.reset();
+  }
+
+  /**
+   * Free the buffer from the DirectArrayPool
+   */
+  @Override
+  public void free() {
+    ResourcePool.get().getDirectArrayPool()
+      .freeBuffer(buffer);
+    this.reset();
+  }
+
+  /**
+   * Reset the array
+   */
+  protected void reset() {
+    buffer = null;
+    size = -1;
+  }
+}
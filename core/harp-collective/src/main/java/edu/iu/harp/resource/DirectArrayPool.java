@@ -0,0 +1,176 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.resource;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+import org.apache.log4j.Logger;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.LinkedList;
+
+/*******************************************************
+ * A pool of direct ByteBuffers backing the
+ * arrays in direct memory, cached by capacity.
+ * Direct memory is only returned to the system
+ * when the garbage collector finds the buffers,
+ * so the released buffers are reused and at
+ * most maxRetainedBytes of them are kept.
+ ******************************************************/
+public class DirectArrayPool {
+
+  private static final Logger LOG =
+    Logger.getLogger(DirectArrayPool.class);
+
+  /** A map from capacity to free buffers */
+  private final Int2ObjectOpenHashMap<LinkedList<ByteBuffer>> freeMap;
+  private long retainedBytes;
+  private long maxRetainedBytes;
+  private int numInUse;
+
+  DirectArrayPool(long maxRetainedBytes) {
+    this.freeMap = new Int2ObjectOpenHashMap<>();
+    this.retainedBytes = 0L;
+    this.maxRetainedBytes = maxRetainedBytes;
+    this.numInUse = 0;
+  }
+
+  /**
+   * Get a cleared big-endian buffer of the
+   * capacity. Use a cached buffer if there is
+   * one, else allocate a new one.
+   *
+   * @param capacity
+   *          the capacity in bytes
+   * @return a direct ByteBuffer, or null if
+   *         direct memory is exhausted
+   */
+  public synchronized ByteBuffer
+    getBuffer(int capacity) {
+    ByteBuffer buffer = null;
+    LinkedList<ByteBuffer> freeQueue =
+      freeMap.get(capacity);
+    if (freeQueue != null) {
+      buffer = freeQueue.poll();
+    }
+    if (buffer != null) {
+      retainedBytes -= capacity;
+    } else {
+      try {
+        buffer = ByteBuffer.allocateDirect(capacity);
+      } catch (OutOfMemoryError e) {
+        LOG.error("Cannot allocate direct buffer "
+          + "with capacity " + capacity, e);
+        return null;
+      }
+    }
+    buffer.clear();
+    buffer.order(ByteOrder.BIG_ENDIAN);
+    numInUse++;
+    return buffer;
+  }
+
+  /**
+   * Return the buffer to the pool. It is not kept
+   * if it exceeds the limit.
+   *
+   * @param buffer
+   *          the buffer to release
+   */
+  public synchronized void
+    releaseBuffer(ByteBuffer buffer) {
+    if (buffer == null || !buffer.isDirect()) {
+      return;
+    }
+    numInUse--;
+    int capacity = buffer.capacity();
+    if (retainedBytes + capacity
+      > maxRetainedBytes) {
+      return;
+    }
+    LinkedList<ByteBuffer> freeQueue =
+      freeMap.get(capacity);
+    if (freeQueue == null) {
+      freeQueue = new LinkedList<>();
+      freeMap.put(capacity, freeQueue);
+    }
+    freeQueue.add(buffer);
+    retainedBytes += capacity;
+  }
+
+  /**
+   * The buffer is no longer used by the pool
+   *
+   * @param buffer
+   *          the buffer to free
+   */
+  public synchronized void
+    freeBuffer(ByteBuffer buffer) {
+    if (buffer != null) {
+      numInUse--;
+    }
+  }
+
+  /**
+   * Set the limit of the bytes of the free
+   * buffers kept by the pool
+   *
+   * @param maxRetainedBytes
+   *          the maximum number of bytes
+   */
+  public synchronized void
+    setMaxRetainedBytes(long maxRetainedBytes) {
+    this.maxRetainedBytes = maxRetainedBytes;
+  }
+
+  /**
+   * Get the bytes of the free buffers kept by the
+   * pool
+   *
+   * @return the number of bytes
+   */
+  public synchronized long getRetainedBytes() {
+    return retainedBytes;
+  }
+
+  /**
+   * Drop all the cached buffers
+   */
+  public synchronized void clean() {
+    freeMap.clear();
+    retainedBytes = 0L;
+  }
+
+  /**
+   * Log the usage of the pool
+   */
+  public synchronized void log() {
+    ObjectIterator<Int2ObjectMap.Entry<LinkedList<ByteBuffer>>> iterator =
+      freeMap.int2ObjectEntrySet().fastIterator();
+    while (iterator.hasNext()) {
+      Int2ObjectMap.Entry<LinkedList<ByteBuffer>> entry =
+        iterator.next();
+      LOG.info("Direct arrays, capacity: "
+        + entry.getIntKey() + ", cached: "
+        + entry.getValue().size());
+    }
+    LOG.info("Direct arrays, in use: " + numInUse
+      + ", retained bytes: " + retainedBytes);
+  }
+}
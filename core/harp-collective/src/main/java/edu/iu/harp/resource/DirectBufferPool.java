@@ -0,0 +1,108 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package edu.iu.harp.resource;
+
+import edu.iu.harp.io.Constant;
+import org.apache.log4j.Logger;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.LinkedList;
+
+/*******************************************************
+ * A pool of direct ByteBuffers of
+ * Constant.PIPELINE_SIZE bytes. The buffers are
+ * used to move array data between the heap and
+ * socket channels chunk by chunk, so that no
+ * encoded copy of the whole body is created.
+ ******************************************************/
+public class DirectBufferPool {
+
+  private static final Logger LOG =
+    Logger.getLogger(DirectBufferPool.class);
+
+  private final int bufferSize;
+  private final LinkedList<ByteBuffer> freeQueue;
+  private int numInUse;
+
+  DirectBufferPool(int bufferSize) {
+    this.bufferSize = bufferSize;
+    this.freeQueue = new LinkedList<>();
+    this.numInUse = 0;
+  }
+
+  /**
+   * Get a cleared big-endian buffer. Use a cached
+   * buffer if there is one, else allocate a new
+   * one.
+   *
+   * @return a direct ByteBuffer
+   */
+  public synchronized ByteBuffer getBuffer() {
+    ByteBuffer buffer = freeQueue.poll();
+    if (buffer == null) {
+      buffer = ByteBuffer.allocateDirect(bufferSize);
+    }
+    buffer.clear();
+    buffer.order(ByteOrder.BIG_ENDIAN);
+    numInUse++;
+    return buffer;
+  }
+
+  /**
+   * Return the buffer to the pool. At most
+   * Constant.NUM_THREADS buffers are cached.
+   *
+   * @param buffer
+   *          the buffer to release
+   */
+  public synchronized void
+    releaseBuffer(ByteBuffer buffer) {
+    numInUse--;
+    if (buffer != null && buffer.isDirect()
+      && buffer.capacity() == bufferSize
+      && freeQueue.size() < Constant.NUM_THREADS) {
+      freeQueue.add(buffer);
+    }
+  }
+
+  /**
+   * Get the size of the buffers
+   *
+   * @return the size of the buffers in bytes
+   */
+  public int getBufferSize() {
+    return bufferSize;
+  }
+
+  /**
+   * Drop all the cached buffers
+   */
+  public synchronized void clean() {
+    freeQueue.clear();
+  }
+
+  /**
+   * Log the usage of the pool
+   */
+  public synchronized void log() {
+    LOG.info("Direct buffers, size: " + bufferSize
+      + ", cached: " + freeQueue.size()
+      + ", in use: " + numInUse);
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.resource;
+
+import edu.iu.harp.io.DataType;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+/*******************************************************
+ * An array of floats in direct memory.
+ ******************************************************/
+public final class DirectFloatArray
+  extends DirectArray {
+
+  public DirectFloatArray(ByteBuffer buffer,
+    int size) {
+    super(buffer, size);
+  }
+
+  @Override
+  protected int getElementBytes() {
+    return 4;
+  }
+
+  @Override
+  public byte getDataType() {
+    return DataType.DIRECT_FLOAT_ARRAY;
+  }
+
+  /**
+   * Get the element at the index
+   *
+   * @param i
+   *          the index
+   * @return the element
+   */
+  public float get(int i) {
+    return buffer.getFloat(i << 2);
+  }
+
+  /**
+   * Set the element at the index
+   *
+   * @param i
+   *          the index
+   * @param v
+   *          the value
+   */
+  public void set(int i, float v) {
+    buffer.putFloat(i << 2, v);
+  }
+
+  /**
+   * Get a FloatBuffer view of the elements, from
+   * index 0 to the size
+   *
+   * @return the view
+   */
+  public FloatBuffer asFloatBuffer() {
+    return slice().asFloatBuffer();
+  }
+
+  /**
+   * Create an array. Firstly try to get a buffer
+   * from ResourcePool; if failed, allocate a new
+   * buffer.
+   *
+   * @param len
+   *          the number of elements
+   * @param approximate
+   *          round the capacity up to a power of
+   *          2 or not
+   * @return the array, or null if failed
+   */
+  public static DirectFloatArray create(int len,
+    boolean approximate) {
+    if (len > 0) {
+      ByteBuffer buffer = getBuffer(
+        (long) len * 4, approximate);
+      if (buffer != null) {
+        return new DirectFloatArray(buffer, len);
+      } else {
+        return null;
+      }
+    } else {
+      return null;
+    }
+  }
+}
@@ -20,7 +20,7 @@ package edu.iu.harp.resource;
  * A pool used for caching double arrays.
  ******************************************************/
 public class DoublesPool
-  extends ArrayPool<double[]> {
+  extends ConcurrentArrayPool<double[]> {
 
   public DoublesPool() {
     super();
@@ -41,4 +41,12 @@ public class DoublesPool
   protected int getLength(double[] array) {
     return array.length;
   }
+
+  /**
+   * Get the number of bytes of the array
+   */
+  @Override
+  protected long getNumBytes(double[] array) {
+    return (long) array.length * Double.BYTES;
+  }
 }
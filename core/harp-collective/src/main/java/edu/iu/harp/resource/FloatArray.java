@@ -17,6 +17,7 @@
 package edu.iu.harp.resource;
 
 import edu.iu.harp.io.DataType;
+import edu.iu.harp.io.Serializer;
 import edu.iu.harp.resource.Array;
 
 import java.io.DataOutput;
@@ -51,10 +52,15 @@ public final class FloatArray
   public void encode(DataOutput out)
     throws IOException {
     out.writeByte(DataType.FLOAT_ARRAY);
-    int len = start + size;
     out.writeInt(size);
-    for (int i = start; i < len; i++) {
-      out.writeFloat(array[i]);
+    if (out instanceof Serializer) {
+      ((Serializer) out).writeFloats(array, start,
+        size);
+    } else {
+      int len = start + size;
+      for (int i = start; i < len; i++) {
+        out.writeFloat(array[i]);
+      }
     }
   }
 
@@ -20,7 +20,7 @@ package edu.iu.harp.resource;
  * A pool used for caching float arrays.
  ******************************************************/
 public class FloatsPool
-  extends ArrayPool<float[]> {
+  extends ConcurrentArrayPool<float[]> {
 
   public FloatsPool() {
     super();
@@ -41,4 +41,12 @@ public class FloatsPool
   protected int getLength(float[] array) {
     return array.length;
   }
+
+  /**
+   * Get the number of bytes of the array
+   */
+  @Override
+  protected long getNumBytes(float[] array) {
+    return (long) array.length * Float.BYTES;
+  }
 }
@@ -17,6 +17,7 @@
 package edu.iu.harp.resource;
 
 import edu.iu.harp.io.DataType;
+import edu.iu.harp.io.Serializer;
 import edu.iu.harp.resource.Array;
 
 import java.io.DataOutput;
@@ -50,10 +51,15 @@ public final class IntArray extends Array<int[]> {
   public void encode(DataOutput out)
     throws IOException {
     out.writeByte(DataType.INT_ARRAY);
-    int len = start + size;
     out.writeInt(size);
-    for (int i = start; i < len; i++) {
-      out.writeInt(array[i]);
+    if (out instanceof Serializer) {
+      ((Serializer) out).writeInts(array, start,
+        size);
+    } else {
+      int len = start + size;
+      for (int i = start; i < len; i++) {
+        out.writeInt(array[i]);
+      }
     }
   }
 
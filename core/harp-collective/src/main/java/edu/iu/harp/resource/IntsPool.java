@@ -19,7 +19,7 @@ package edu.iu.harp.resource;
 /*******************************************************
  * A pool used for caching int arrays.
  ******************************************************/
-public class IntsPool extends ArrayPool<int[]> {
+public class IntsPool extends ConcurrentArrayPool<int[]> {
 
   public IntsPool() {
     super();
@@ -40,4 +40,12 @@ public class IntsPool extends ArrayPool<int[]> {
   protected int getLength(int[] array) {
     return array.length;
   }
+
+  /**
+   * Get the number of bytes of the array
+   */
+  @Override
+  protected long getNumBytes(int[] array) {
+    return (long) array.length * Integer.BYTES;
+  }
 }
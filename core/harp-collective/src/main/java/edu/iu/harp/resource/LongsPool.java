@@ -19,7 +19,7 @@ package edu.iu.harp.resource;
 /*******************************************************
  * A pool used for caching long-type arrays.
  ******************************************************/
-public class LongsPool extends ArrayPool<long[]> {
+public class LongsPool extends ConcurrentArrayPool<long[]> {
 
   public LongsPool() {
     super();
@@ -40,4 +40,12 @@ public class LongsPool extends ArrayPool<long[]> {
   protected int getLength(long[] array) {
     return array.length;
   }
+
+  /**
+   * Get the number of bytes of the array
+   */
+  @Override
+  protected long getNumBytes(long[] array) {
+    return (long) array.length * Long.BYTES;
+  }
 }
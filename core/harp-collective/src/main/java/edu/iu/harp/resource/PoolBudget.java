@@ -0,0 +1,155 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.resource;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*******************************************************
+ * The bytes of free arrays kept in the shared
+ * stacks of a group of pools, and the limit of
+ * them. The arrays in the magazines of the
+ * threads are not counted. If an array moved to
+ * a shared stack does not fit, free arrays of
+ * the least recently used sizes are evicted from
+ * the shared stacks until it fits. The bytes are
+ * reserved with CAS, so concurrent moves never
+ * overshoot the limit.
+ ******************************************************/
+class PoolBudget {
+
+  private final AtomicLong sharedBytes;
+  private final CopyOnWriteArrayList<ConcurrentArrayPool<?>> pools;
+  private volatile long maxBytes;
+
+  PoolBudget(long maxBytes) {
+    this.sharedBytes = new AtomicLong();
+    this.pools = new CopyOnWriteArrayList<>();
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Add a pool sharing this budget
+   *
+   * @param pool
+   *          the pool
+   */
+  void register(ConcurrentArrayPool<?> pool) {
+    pools.addIfAbsent(pool);
+  }
+
+  long getMaxBytes() {
+    return maxBytes;
+  }
+
+  /**
+   * Set the limit. Arrays are evicted when they
+   * next move to the shared stacks, not at once.
+   *
+   * @param maxBytes
+   *          the maximum number of bytes
+   */
+  void setMaxBytes(long maxBytes) {
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Get the bytes counted against the limit, the
+   * free arrays in the shared stacks
+   *
+   * @return the number of bytes
+   */
+  long getSharedBytes() {
+    return sharedBytes.get();
+  }
+
+  /**
+   * Get the bytes of the free arrays kept by the
+   * pools, in the magazines and in the shared
+   * stacks
+   *
+   * @return the number of bytes
+   */
+  long getRetainedBytes() {
+    long numBytes = 0L;
+    for (ConcurrentArrayPool<?> pool : pools) {
+      numBytes += pool.getRetainedBytes();
+    }
+    return numBytes;
+  }
+
+  /**
+   * Count the bytes of an array moved to a shared
+   * stack if they fit, evicting other free arrays
+   * if needed
+   *
+   * @param numBytes
+   *          the number of bytes
+   * @return true if the array can be kept
+   */
+  boolean reserve(long numBytes) {
+    long max = maxBytes;
+    if (max == Long.MAX_VALUE) {
+      sharedBytes.addAndGet(numBytes);
+      return true;
+    }
+    if (numBytes > max) {
+      return false;
+    }
+    while (true) {
+      long current = sharedBytes.get();
+      if (current + numBytes <= max) {
+        if (sharedBytes.compareAndSet(current,
+          current + numBytes)) {
+          return true;
+        }
+      } else if (!evict()) {
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Uncount the bytes of a free array taken out
+   * of a shared stack
+   *
+   * @param numBytes
+   *          the number of bytes
+   */
+  void release(long numBytes) {
+    sharedBytes.addAndGet(-numBytes);
+  }
+
+  /**
+   * Evict a free array from the shared stacks of
+   * the pool with the least recently used size
+   *
+   * @return false if no array can be evicted
+   */
+  private boolean evict() {
+    ConcurrentArrayPool<?> victim = null;
+    long victimLastUse = Long.MAX_VALUE;
+    for (ConcurrentArrayPool<?> pool : pools) {
+      long lastUse = pool.getVictimLastUse();
+      if (lastUse < victimLastUse) {
+        victim = pool;
+        victimLastUse = lastUse;
+      }
+    }
+    return victim != null && victim.evict();
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.resource;
+
+/*******************************************************
+ * A snapshot of the counters of an array pool
+ ******************************************************/
+public final class PoolStats {
+
+  private final long hits;
+  private final long misses;
+  private final long evictions;
+  private final long retainedBytes;
+
+  PoolStats(long hits, long misses,
+    long evictions, long retainedBytes) {
+    this.hits = hits;
+    this.misses = misses;
+    this.evictions = evictions;
+    this.retainedBytes = retainedBytes;
+  }
+
+  /**
+   * Get the number of arrays reused from the pool
+   *
+   * @return the number of hits
+   */
+  public long getHits() {
+    return hits;
+  }
+
+  /**
+   * Get the number of arrays newly allocated
+   *
+   * @return the number of misses
+   */
+  public long getMisses() {
+    return misses;
+  }
+
+  /**
+   * Get the number of released arrays which were
+   * not kept or were evicted to stay within the
+   * byte budget
+   *
+   * @return the number of evictions
+   */
+  public long getEvictions() {
+    return evictions;
+  }
+
+  /**
+   * Get the number of bytes of the free arrays
+   * kept by the pool
+   *
+   * @return the number of bytes
+   */
+  public long getRetainedBytes() {
+    return retainedBytes;
+  }
+
+  /**
+   * Add up the counters of two pools
+   *
+   * @param other
+   *          the stats of the other pool
+   * @return the sum
+   */
+  public PoolStats add(PoolStats other) {
+    return new PoolStats(hits + other.hits,
+      misses + other.misses,
+      evictions + other.evictions,
+      retainedBytes + other.retainedBytes);
+  }
+
+  @Override
+  public String toString() {
+    return "hits=" + hits + ", misses=" + misses
+      + ", evictions=" + evictions
+      + ", retainedBytes=" + retainedBytes;
+  }
+}
@@ -16,8 +16,24 @@
 
 package edu.iu.harp.resource;
 
+import edu.iu.harp.io.Constant;
+import org.apache.log4j.Logger;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 public class ResourcePool {
 
+  private static final Logger LOG =
+    Logger.getLogger(ResourcePool.class);
+
+  /**
+   * The default limit of the bytes of the free
+   * arrays, a quarter of the maximum heap size
+   */
+  public static final long DEFAULT_MAX_RETAINED_BYTES =
+    Runtime.getRuntime().maxMemory() / 4;
+
   private static ResourcePool instance = null;
 
   private final BytesPool byteArrays;
@@ -27,6 +43,10 @@ public class ResourcePool {
   private final LongsPool longArrays;
   private final DoublesPool doubleArrays;
   private final WritablePool writables;
+  private final DirectBufferPool directBuffers;
+  private final DirectArrayPool directArrays;
+  /** Shared by the array pools */
+  private final PoolBudget budget;
 
   private ResourcePool() {
     byteArrays = new BytesPool();
@@ -36,6 +56,18 @@ public class ResourcePool {
     longArrays = new LongsPool();
     doubleArrays = new DoublesPool();
     writables = new WritablePool();
+    directBuffers =
+      new DirectBufferPool(Constant.PIPELINE_SIZE);
+    directArrays =
+      new DirectArrayPool(DEFAULT_MAX_RETAINED_BYTES);
+    budget =
+      new PoolBudget(DEFAULT_MAX_RETAINED_BYTES);
+    byteArrays.setBudget(budget);
+    shortArrays.setBudget(budget);
+    intArrays.setBudget(budget);
+    floatArrays.setBudget(budget);
+    longArrays.setBudget(budget);
+    doubleArrays.setBudget(budget);
   }
 
   public static ResourcePool get() {
@@ -82,6 +114,67 @@ public class ResourcePool {
     return writables;
   }
 
+  public DirectBufferPool getDirectBufferPool() {
+    return directBuffers;
+  }
+
+  public DirectArrayPool getDirectArrayPool() {
+    return directArrays;
+  }
+
+  /**
+   * Set the limit of the bytes of the free arrays
+   * kept in the shared stacks of all the array
+   * pools. Free arrays of the least recently used
+   * sizes are evicted to stay within it. The
+   * arrays cached by each thread are not counted.
+   * 
+   * @param maxBytes
+   *          the maximum number of bytes,
+   *          Long.MAX_VALUE for no limit
+   */
+  public void setMaxRetainedBytes(long maxBytes) {
+    budget.setMaxBytes(maxBytes);
+  }
+
+  /**
+   * Get the limit of the bytes of the free arrays
+   * in the shared stacks
+   * 
+   * @return the maximum number of bytes
+   */
+  public long getMaxRetainedBytes() {
+    return budget.getMaxBytes();
+  }
+
+  /**
+   * Get the bytes of the free arrays kept by all
+   * the array pools
+   * 
+   * @return the number of bytes
+   */
+  public long getRetainedBytes() {
+    return budget.getRetainedBytes();
+  }
+
+  /**
+   * Get the counters of the array pools by type
+   * 
+   * @return a map from the array type to the
+   *         stats
+   */
+  public Map<String, PoolStats> getStats() {
+    Map<String, PoolStats> stats =
+      new LinkedHashMap<>();
+    stats.put("byte", byteArrays.getStats());
+    stats.put("short", shortArrays.getStats());
+    stats.put("int", intArrays.getStats());
+    stats.put("float", floatArrays.getStats());
+    stats.put("long", longArrays.getStats());
+    stats.put("double", doubleArrays.getStats());
+    return stats;
+  }
+
   public void clean() {
     byteArrays.clean();
     shortArrays.clean();
@@ -90,6 +183,8 @@ public class ResourcePool {
     longArrays.clean();
     doubleArrays.clean();
     writables.clean();
+    directBuffers.clean();
+    directArrays.clean();
   }
 
   public void log() {
@@ -100,5 +195,11 @@ public class ResourcePool {
     longArrays.log();
     doubleArrays.log();
     writables.log();
+    directBuffers.log();
+    directArrays.log();
+    LOG.info("Array pools, retained bytes: "
+      + budget.getRetainedBytes() + ", shared: "
+      + budget.getSharedBytes() + ", max: "
+      + budget.getMaxBytes());
   }
 }
@@ -17,6 +17,7 @@
 package edu.iu.harp.resource;
 
 import edu.iu.harp.io.DataType;
+import edu.iu.harp.io.Serializer;
 
 import java.io.DataOutput;
 import java.io.IOException;
@@ -50,10 +51,15 @@ public final class ShortArray
   public void encode(DataOutput out)
     throws IOException {
     out.writeByte(DataType.SHORT_ARRAY);
-    int len = start + size;
     out.writeInt(size);
-    for (int i = start; i < len; i++) {
-      out.writeShort(array[i]);
+    if (out instanceof Serializer) {
+      ((Serializer) out).writeShorts(array, start,
+        size);
+    } else {
+      int len = start + size;
+      for (int i = start; i < len; i++) {
+        out.writeShort(array[i]);
+      }
     }
   }
 
@@ -20,7 +20,7 @@ package edu.iu.harp.resource;
  * A pool used for caching short-type arrays.
  ******************************************************/
 public class ShortsPool
-  extends ArrayPool<short[]> {
+  extends ConcurrentArrayPool<short[]> {
 
   public ShortsPool() {
     super();
@@ -41,4 +41,12 @@ public class ShortsPool
   protected int getLength(short[] array) {
     return array.length;
   }
+
+  /**
+   * Get the number of bytes of the array
+   */
+  @Override
+  protected long getNumBytes(short[] array) {
+    return (long) array.length * Short.BYTES;
+  }
 }
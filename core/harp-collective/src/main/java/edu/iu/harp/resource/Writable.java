@@ -21,8 +21,6 @@ import edu.iu.harp.io.DataType;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
 
 /*******************************************************
  * ByteArray class for managing writable objects.
@@ -34,19 +32,32 @@ public abstract class Writable extends Simple {
    */
   @Override
   public final int getNumEnocdeBytes() {
+    if (WritableRegistry.get()
+      .getID(this.getClass()) >= 0) {
+      return 1 + 2 + getNumWriteBytes();
+    }
     return 1
       + this.getClass().getName().length() * 2 + 4
       + getNumWriteBytes();
   }
 
   /**
-   * Encode the writable as DataOutput
+   * Encode the writable as DataOutput. A
+   * registered class is written as its ID, other
+   * classes as their names.
    */
   @Override
   public final void encode(DataOutput out)
     throws IOException {
-    out.writeByte(DataType.WRITABLE);
-    out.writeUTF(this.getClass().getName());
+    int classID = WritableRegistry.get()
+      .getID(this.getClass());
+    if (classID >= 0) {
+      out.writeByte(DataType.REGISTERED_WRITABLE);
+      out.writeShort(classID);
+    } else {
+      out.writeByte(DataType.WRITABLE);
+      out.writeUTF(this.getClass().getName());
+    }
     this.write(out);
   }
 
@@ -57,18 +68,8 @@ public abstract class Writable extends Simple {
    */
   public final static <W extends Writable> W
     newInstance(Class<W> clazz) {
-    try {
-      Constructor<W> constructor =
-        clazz.getConstructor();
-      return constructor.newInstance();
-    } catch (InstantiationException |
-      IllegalAccessException |
-      IllegalArgumentException |
-      InvocationTargetException |
-      NoSuchMethodException |
-      SecurityException e) {
-      return null;
-    }
+    return WritableRegistry.get()
+      .newInstance(clazz);
   }
 
   /**
@@ -92,11 +93,8 @@ public abstract class Writable extends Simple {
    */
   public final static <W extends Writable>
     Class<W> forClass(String className) {
-    try {
-      return (Class<W>) Class.forName(className);
-    } catch (ClassNotFoundException e) {
-      return null;
-    }
+    return WritableRegistry.get()
+      .forName(className);
   }
 
   /**
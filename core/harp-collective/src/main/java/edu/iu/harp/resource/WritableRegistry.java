@@ -0,0 +1,326 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.resource;
+
+import org.apache.log4j.Logger;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*******************************************************
+ * A per-job registry of Writable classes. A
+ * registered class is encoded with a short ID
+ * instead of its class name.
+ * <p>
+ * Every worker registers the same classes and
+ * seals the registry before the handshake
+ * barrier. IDs follow the order of the class
+ * names, so they do not depend on the order of
+ * registration. The barrier compares the
+ * fingerprints of the registries and IDs are
+ * only written after all workers agree.
+ * Unregistered classes are still encoded with
+ * their names.
+ * <p>
+ * The constructors of all Writable classes and
+ * the classes looked up by name are cached.
+ ******************************************************/
+public class WritableRegistry {
+
+  private static final Logger LOG =
+    Logger.getLogger(WritableRegistry.class);
+
+  /** The largest number of registered classes */
+  public static final int MAX_NUM_CLASSES =
+    Short.MAX_VALUE + 1;
+
+  private static WritableRegistry instance =
+    null;
+
+  /** The classes registered, sorted by name */
+  private final TreeMap<String, Class<? extends Writable>> registered;
+  /** The classes indexed by ID after sealing */
+  private volatile Class<?>[] classes;
+  /** The IDs of the classes after sealing */
+  private volatile Map<Class<?>, Integer> ids;
+  private volatile int fingerprint;
+  /** If IDs are written when encoding */
+  private volatile boolean enabled;
+
+  private final ConcurrentHashMap<String, Class<? extends Writable>> classesByName;
+  private final ClassValue<MethodHandle> constructors;
+
+  private WritableRegistry() {
+    registered = new TreeMap<>();
+    classes = null;
+    ids = null;
+    fingerprint = 0;
+    enabled = false;
+    classesByName = new ConcurrentHashMap<>();
+    constructors = new ClassValue<MethodHandle>() {
+      @Override
+      protected MethodHandle
+        computeValue(Class<?> clazz) {
+        try {
+          return MethodHandles.publicLookup()
+            .findConstructor(clazz,
+              MethodType.methodType(void.class))
+            .asType(MethodType
+              .methodType(Writable.class));
+        } catch (NoSuchMethodException
+          | IllegalAccessException e) {
+          LOG.error("No public constructor without "
+            + "arguments in " + clazz.getName(), e);
+          return null;
+        }
+      }
+    };
+  }
+
+  public static WritableRegistry get() {
+    if (instance != null) {
+      return instance;
+    } else {
+      return create();
+    }
+  }
+
+  private static synchronized WritableRegistry
+    create() {
+    if (instance == null) {
+      instance = new WritableRegistry();
+    }
+    return instance;
+  }
+
+  /**
+   * Register a Writable class
+   *
+   * @param clazz
+   *          the class
+   * @throws IllegalStateException
+   *           if the registry is sealed
+   */
+  public synchronized void
+    register(Class<? extends Writable> clazz) {
+    if (classes != null) {
+      throw new IllegalStateException(
+        "The registry is sealed, cannot register "
+          + clazz.getName());
+    }
+    if (registered.size() >= MAX_NUM_CLASSES) {
+      throw new IllegalStateException(
+        "Too many registered classes.");
+    }
+    registered.put(clazz.getName(), clazz);
+  }
+
+  /**
+   * Register a Writable class by its name
+   *
+   * @param className
+   *          the name of the class
+   * @return true if the class is found and
+   *         registered, false otherwise
+   */
+  public boolean register(String className) {
+    Class<? extends Writable> clazz =
+      forName(className);
+    if (clazz == null) {
+      LOG.error(
+        "Cannot register class " + className);
+      return false;
+    }
+    register(clazz);
+    return true;
+  }
+
+  /**
+   * Assign IDs to the registered classes. No
+   * class can be registered afterwards.
+   *
+   * @return the fingerprint of the registry
+   */
+  public synchronized int seal() {
+    if (classes != null) {
+      return fingerprint;
+    }
+    Class<?>[] classArr =
+      new Class<?>[registered.size()];
+    Map<Class<?>, Integer> idMap =
+      new IdentityHashMap<>();
+    int hash = registered.size();
+    int id = 0;
+    for (Map.Entry<String, Class<? extends Writable>> entry : registered
+      .entrySet()) {
+      classArr[id] = entry.getValue();
+      idMap.put(entry.getValue(), id);
+      hash = 31 * hash + entry.getKey().hashCode();
+      id++;
+    }
+    // 0 is kept for an unsealed registry
+    fingerprint = hash == 0 ? 1 : hash;
+    ids = idMap;
+    classes = classArr;
+    LOG.info("Registered " + classArr.length
+      + " writable classes, fingerprint "
+      + fingerprint);
+    return fingerprint;
+  }
+
+  /**
+   * Get the fingerprint of the registry
+   *
+   * @return the fingerprint, or 0 if the registry
+   *         is not sealed
+   */
+  public int getFingerprint() {
+    return fingerprint;
+  }
+
+  /**
+   * Start or stop encoding registered classes
+   * with IDs. Only enable it after all the
+   * workers have sealed the same registry.
+   *
+   * @param enable
+   *          encode with IDs or not
+   */
+  public void setEnabled(boolean enable) {
+    if (enable && classes == null) {
+      throw new IllegalStateException(
+        "The registry is not sealed.");
+    }
+    enabled = enable;
+  }
+
+  /**
+   * Check if registered classes are encoded with
+   * IDs
+   *
+   * @return true if enabled
+   */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Get the ID used to encode the class
+   *
+   * @param clazz
+   *          the class
+   * @return the ID, or -1 if the class should be
+   *         encoded with its name
+   */
+  public int getID(Class<?> clazz) {
+    // Cleared after the check by clear()
+    Map<Class<?>, Integer> idMap = ids;
+    if (!enabled || idMap == null) {
+      return -1;
+    }
+    Integer id = idMap.get(clazz);
+    return id == null ? -1 : id;
+  }
+
+  /**
+   * Get the class of an ID
+   *
+   * @param id
+   *          the ID
+   * @return the class, or null if the ID is
+   *         unknown
+   */
+  public Class<? extends Writable>
+    getClass(int id) {
+    Class<?>[] classArr = classes;
+    if (classArr == null || id < 0
+      || id >= classArr.length) {
+      return null;
+    }
+    return classArr[id].asSubclass(Writable.class);
+  }
+
+  /**
+   * Get the class with the given name. The class
+   * is loaded once and cached.
+   *
+   * @param className
+   *          the name of the class
+   * @return the class, or null if not found
+   */
+  // The caller names the class it expects, as
+  // with Writable.forClass
+  @SuppressWarnings("unchecked")
+  public <W extends Writable> Class<W>
+    forName(String className) {
+    Class<? extends Writable> clazz =
+      classesByName.get(className);
+    if (clazz == null) {
+      try {
+        clazz = Class.forName(className)
+          .asSubclass(Writable.class);
+      } catch (ClassNotFoundException
+        | ClassCastException e) {
+        return null;
+      }
+      classesByName.putIfAbsent(className, clazz);
+    }
+    return (Class<W>) clazz;
+  }
+
+  /**
+   * Create a new instance of the class with the
+   * cached constructor
+   *
+   * @param clazz
+   *          the class
+   * @return the new instance, or null if failed
+   */
+  public <W extends Writable> W
+    newInstance(Class<W> clazz) {
+    MethodHandle constructor =
+      constructors.get(clazz);
+    if (constructor == null) {
+      return null;
+    }
+    try {
+      return clazz.cast(
+        (Writable) constructor.invokeExact());
+    } catch (Throwable t) {
+      LOG.error("Fail to create an instance of "
+        + clazz.getName(), t);
+      return null;
+    }
+  }
+
+  /**
+   * Remove all the registered classes and stop
+   * encoding with IDs
+   */
+  public synchronized void clear() {
+    enabled = false;
+    classes = null;
+    ids = null;
+    fingerprint = 0;
+    registered.clear();
+  }
+}
@@ -19,16 +19,89 @@ package edu.iu.harp.schdynamic;
 import org.apache.log4j.Logger;
 
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 
 /*******************************************************
- * Some utils including acquiring semaphora and
- * joining threads
+ * Some utils including acquiring semaphora,
+ * creating and joining threads
  ******************************************************/
 public class ComputeUtil {
 
   protected static final Logger LOG =
       Logger.getLogger(ComputeUtil.class);
 
+  /**
+   * The factory of the virtual threads, null
+   * before JDK 21. Looked up by reflection to
+   * build on Java 8.
+   */
+  private static final ThreadFactory virtualThreadFactory =
+      createVirtualThreadFactory();
+
+  private static volatile ThreadMode threadMode =
+      ThreadMode.PLATFORM;
+
+  private static ThreadFactory createVirtualThreadFactory() {
+    try {
+      Object builder =
+          Thread.class.getMethod("ofVirtual").invoke(null);
+      return (ThreadFactory) Class
+          .forName("java.lang.Thread$Builder")
+          .getMethod("factory").invoke(builder);
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
+  /**
+   * Check if virtual threads are supported
+   *
+   * @return true if supported, false otherwise
+   */
+  public static boolean isVirtualThreadSupported() {
+    return virtualThreadFactory != null;
+  }
+
+  /**
+   * Set the kind of the threads created by
+   * newThread
+   *
+   * @param mode the thread mode
+   * @return true if set, false if VIRTUAL is not
+   * supported and PLATFORM is kept
+   */
+  public static boolean setThreadMode(ThreadMode mode) {
+    if (mode == ThreadMode.VIRTUAL
+        && !isVirtualThreadSupported()) {
+      LOG.warn("Virtual threads are not supported,"
+          + " use platform threads.");
+      threadMode = ThreadMode.PLATFORM;
+      return false;
+    }
+    threadMode = mode;
+    return true;
+  }
+
+  public static ThreadMode getThreadMode() {
+    return threadMode;
+  }
+
+  /**
+   * Create a thread not started, in the current
+   * thread mode. Virtual threads are always daemon
+   * threads.
+   *
+   * @param runnable the runnable of the thread
+   * @return the thread
+   */
+  public static Thread newThread(Runnable runnable) {
+    if (threadMode == ThreadMode.VIRTUAL) {
+      return virtualThreadFactory.newThread(runnable);
+    } else {
+      return new Thread(runnable);
+    }
+  }
+
   /**
    * Acquires the given number of permits from
    * this semaphore
@@ -28,7 +28,9 @@ import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.Semaphore;
 
 /*******************************************************
- * The dynamic scheduler
+ * The dynamic scheduler. The inputs are run by
+ * one thread per task through the backend chosen
+ * at construction, SHARED_QUEUE by default.
  ******************************************************/
 public class DynamicScheduler<I, O, T extends Task<I, O>> {
 
@@ -48,8 +50,23 @@ public class DynamicScheduler<I, O, T extends Task<I, O>> {
   private final List<T> tasks;
   private final int numTaskMonitors;
   private final Semaphore barrier1;
+  /** The pool of WORK_STEALING, null otherwise */
+  private final WorkStealingPool<I, O, T> pool;
 
   public DynamicScheduler(List<T> tasks) {
+    this(tasks, SchedulerBackend.SHARED_QUEUE);
+  }
+
+  /**
+   * Create the scheduler with the backend
+   * 
+   * @param tasks
+   *          the tasks, one thread per task
+   * @param backend
+   *          the backend
+   */
+  public DynamicScheduler(List<T> tasks,
+    SchedulerBackend backend) {
     inputQueue = new LinkedBlockingDeque<>();
     outputQueue = new LinkedBlockingQueue<>();
     threads = null;
@@ -62,9 +79,14 @@ public class DynamicScheduler<I, O, T extends Task<I, O>> {
     numTaskMonitors = tasks.size();
     this.tasks = tasks;
     taskMonitors = new ObjectArrayList<>();
-    for (T task : tasks) {
-      taskMonitors.add(new TaskMonitor<>(
-        inputQueue, outputQueue, task, barrier1));
+    if (backend == SchedulerBackend.WORK_STEALING) {
+      pool = new WorkStealingPool<>(tasks);
+    } else {
+      pool = null;
+      for (T task : tasks) {
+        taskMonitors.add(new TaskMonitor<>(
+          inputQueue, outputQueue, task, barrier1));
+      }
     }
   }
 
@@ -85,8 +107,12 @@ public class DynamicScheduler<I, O, T extends Task<I, O>> {
    */
   public synchronized void submit(I input) {
     if (input != null) {
-      inputQueue
-        .add(new Input<I>(input, false, false));
+      if (pool != null) {
+        pool.submit(input);
+      } else {
+        inputQueue
+          .add(new Input<I>(input, false, false));
+      }
       if (isRunning) {
         inputCount++;
       }
@@ -101,9 +127,13 @@ public class DynamicScheduler<I, O, T extends Task<I, O>> {
    */
   public synchronized void
     submitAll(Collection<I> inputs) {
-    for (I input : inputs) {
-      inputQueue
-        .add(new Input<I>(input, false, false));
+    if (pool != null) {
+      pool.submitAll(inputs);
+    } else {
+      for (I input : inputs) {
+        inputQueue
+          .add(new Input<I>(input, false, false));
+      }
     }
     if (isRunning) {
       inputCount += inputs.size();
@@ -119,11 +149,15 @@ public class DynamicScheduler<I, O, T extends Task<I, O>> {
   public synchronized void submitAll(I[] inputs) {
     // Submit inputs
     int submitCount = 0;
-    for (int i = 0; i < inputs.length; i++) {
-      if (inputs[i] != null) {
-        inputQueue.add(
-          new Input<I>(inputs[i], false, false));
-        submitCount++;
+    if (pool != null) {
+      submitCount = pool.submitAll(inputs);
+    } else {
+      for (int i = 0; i < inputs.length; i++) {
+        if (inputs[i] != null) {
+          inputQueue.add(
+            new Input<I>(inputs[i], false, false));
+          submitCount++;
+        }
       }
     }
     if (isRunning) {
@@ -138,6 +172,12 @@ public class DynamicScheduler<I, O, T extends Task<I, O>> {
     // Start monitor threads, wait for inputs
     if (!isRunning) {
       isRunning = true;
+      if (pool != null) {
+        inputCount += pool.getNumQueued();
+        isPausing = false;
+        pool.start();
+        return;
+      }
       inputCount += inputQueue.size();
       if (isPausing) {
         isPausing = false;
@@ -148,7 +188,7 @@ public class DynamicScheduler<I, O, T extends Task<I, O>> {
         threads = new Thread[numTaskMonitors];
         int i = 0;
         for (TaskMonitor<I, O, T> monitor : taskMonitors) {
-          threads[i] = new Thread(monitor);
+          threads[i] = ComputeUtil.newThread(monitor);
           threads[i].start();
           i++;
         }
@@ -163,6 +203,10 @@ public class DynamicScheduler<I, O, T extends Task<I, O>> {
     if (isRunning && !isPausing) {
       isRunning = false;
       isPausing = true;
+      if (pool != null) {
+        inputCount -= pool.pause(false);
+        return;
+      }
       for (int i = 0; i < numTaskMonitors; i++) {
         inputQueue.addLast(
           new Input<I>(null, true, false));
@@ -180,6 +224,10 @@ public class DynamicScheduler<I, O, T extends Task<I, O>> {
     if (isRunning && !isPausing) {
       isRunning = false;
       isPausing = true;
+      if (pool != null) {
+        inputCount -= pool.pause(true);
+        return;
+      }
       for (int i = 0; i < numTaskMonitors; i++) {
         inputQueue.addFirst(
           new Input<I>(null, true, false));
@@ -195,7 +243,11 @@ public class DynamicScheduler<I, O, T extends Task<I, O>> {
    */
   public synchronized void cleanInputQueue() {
     if (isPausing || !isRunning) {
-      inputQueue.clear();
+      if (pool != null) {
+        pool.clear();
+      } else {
+        inputQueue.clear();
+      }
     }
   }
 
@@ -210,6 +262,10 @@ public class DynamicScheduler<I, O, T extends Task<I, O>> {
     }
     if (isRunning) {
       isRunning = false;
+      if (pool != null) {
+        pool.stop();
+        return;
+      }
       for (int i = 0; i < numTaskMonitors; i++) {
         inputQueue.addLast(
           new Input<I>(null, false, true));
@@ -229,7 +285,12 @@ public class DynamicScheduler<I, O, T extends Task<I, O>> {
    */
   public synchronized O waitForOutput() {
     // If no output is available, wait for one
-    if (hasNext()) {
+    if (hasNext() && pool != null) {
+      O output = pool.takeOutput();
+      outputCount++;
+      errorCount += pool.takeNumErrors();
+      return output;
+    } else if (hasNext()) {
       boolean isFailed = false;
       Output<O> output = null;
       do {
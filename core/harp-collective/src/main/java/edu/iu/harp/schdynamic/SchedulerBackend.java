@@ -0,0 +1,30 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.schdynamic;
+
+/**
+ * The backends of the DynamicScheduler.
+ * SHARED_QUEUE feeds all the task threads from
+ * one input queue and collects the outputs in one
+ * output queue. WORK_STEALING gives each thread
+ * its own deque, submits and collects in batches,
+ * and lets idle threads steal inputs from the
+ * others, which suits many fine-grained inputs.
+ **/
+public enum SchedulerBackend {
+  SHARED_QUEUE, WORK_STEALING
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.schdynamic;
+
+/**
+ * The kinds of the threads created by the
+ * schedulers, the server acceptors and the
+ * senders of the SyncClient. VIRTUAL needs JDK 21
+ * or later and falls back to PLATFORM otherwise.
+ * Virtual threads let many blocking tasks, e.g.
+ * reading files, run at once without one OS
+ * thread each.
+ **/
+public enum ThreadMode {
+  PLATFORM, VIRTUAL
+}
@@ -0,0 +1,444 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.schdynamic;
+
+import org.apache.log4j.Logger;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*******************************************************
+ * The work-stealing backend of the
+ * DynamicScheduler. Each task thread takes the
+ * inputs from the head of its own deque and steals
+ * up to half of the inputs from the tail of
+ * another deque when its own is empty. The inputs
+ * and the outputs are kept in array deques without
+ * wrappers, submitted in one chunk per deque and
+ * collected in batches.
+ ******************************************************/
+class WorkStealingPool<I, O, T extends Task<I, O>> {
+
+  protected static final Logger LOG =
+    Logger.getLogger(WorkStealingPool.class);
+
+  /** The most inputs stolen at a time */
+  private static final int MAX_STEAL = 64;
+  /** Mark the null outputs in the output deque */
+  private static final Object NULL_OUTPUT =
+    new Object();
+  /** Mark the failed inputs in the output deque */
+  private static final Object ERROR_OUTPUT =
+    new Object();
+
+  private enum State {
+    RUNNING, PAUSE, PAUSE_NOW, STOP
+  }
+
+  /*******************************************************
+   * The deque of a task thread
+   ******************************************************/
+  private static class WorkDeque<I> {
+    private final ArrayDeque<I> deque =
+      new ArrayDeque<>();
+
+    synchronized void add(I input) {
+      deque.addLast(input);
+    }
+
+    synchronized void addAll(Iterator<I> it,
+      int count) {
+      for (int i = 0; i < count; i++) {
+        deque.addLast(it.next());
+      }
+    }
+
+    synchronized int addAll(I[] inputs,
+      int start, int end) {
+      int count = 0;
+      for (int i = start; i < end; i++) {
+        if (inputs[i] != null) {
+          deque.addLast(inputs[i]);
+          count++;
+        }
+      }
+      return count;
+    }
+
+    synchronized I poll() {
+      return deque.pollFirst();
+    }
+
+    /**
+     * Take up to half of the inputs from the tail
+     */
+    synchronized int steal(Object[] buffer) {
+      int count = Math.min((deque.size() + 1) / 2,
+        buffer.length);
+      for (int i = 0; i < count; i++) {
+        buffer[i] = deque.pollLast();
+      }
+      return count;
+    }
+
+    synchronized void clear() {
+      deque.clear();
+    }
+  }
+
+  private final List<T> tasks;
+  private final WorkDeque<I>[] deques;
+  /** The inputs in the deques */
+  private final AtomicInteger numQueued;
+  private Thread[] threads;
+  private int nextDeque;
+
+  /** Guards the states of the threads */
+  private final Object lock;
+  /** Read without the lock before taking inputs */
+  private volatile State state;
+  private int numParked;
+  private int generation;
+
+  /** Guards the output deque */
+  private final Object outputLock;
+  private ArrayDeque<Object> outputs;
+  /** The batch collected, used by the consumer */
+  private ArrayDeque<Object> collected;
+  private int numErrors;
+
+  @SuppressWarnings({"rawtypes", "unchecked"})
+  WorkStealingPool(List<T> tasks) {
+    this.tasks = tasks;
+    deques = new WorkDeque[tasks.size()];
+    for (int i = 0; i < deques.length; i++) {
+      deques[i] = new WorkDeque<>();
+    }
+    numQueued = new AtomicInteger(0);
+    threads = null;
+    nextDeque = 0;
+    lock = new Object();
+    state = State.RUNNING;
+    numParked = 0;
+    generation = 0;
+    outputLock = new Object();
+    outputs = new ArrayDeque<>();
+    collected = new ArrayDeque<>();
+    numErrors = 0;
+  }
+
+  /**
+   * Submit an input to the next deque
+   *
+   * @param input
+   *          the input
+   */
+  void submit(I input) {
+    deques[nextDeque].add(input);
+    nextDeque = (nextDeque + 1) % deques.length;
+    addQueued(1);
+  }
+
+  /**
+   * Submit the inputs in one chunk per deque
+   *
+   * @param inputs
+   *          the inputs
+   */
+  void submitAll(Collection<I> inputs) {
+    int size = inputs.size();
+    Iterator<I> it = inputs.iterator();
+    for (int i = 0; i < deques.length; i++) {
+      int count = getChunkSize(size, i);
+      if (count > 0) {
+        deques[(nextDeque + i) % deques.length]
+          .addAll(it, count);
+      }
+    }
+    addQueued(size);
+  }
+
+  /**
+   * Submit the non-null inputs in one chunk per
+   * deque
+   *
+   * @param inputs
+   *          the inputs
+   * @return the number of inputs submitted
+   */
+  int submitAll(I[] inputs) {
+    int start = 0;
+    int total = 0;
+    for (int i = 0; i < deques.length; i++) {
+      int end = start + getChunkSize(inputs.length, i);
+      if (end > start) {
+        total += deques[(nextDeque + i)
+          % deques.length].addAll(inputs, start, end);
+      }
+      start = end;
+    }
+    addQueued(total);
+    return total;
+  }
+
+  private int getChunkSize(int size, int index) {
+    return size / deques.length
+      + (index < size % deques.length ? 1 : 0);
+  }
+
+  private void addQueued(int count) {
+    if (count > 0) {
+      numQueued.addAndGet(count);
+      synchronized (lock) {
+        lock.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Get the number of inputs not taken by the
+   * threads
+   *
+   * @return the number of inputs
+   */
+  int getNumQueued() {
+    return numQueued.get();
+  }
+
+  /**
+   * Start the threads, or resume them if paused
+   */
+  void start() {
+    synchronized (lock) {
+      state = State.RUNNING;
+      if (threads != null) {
+        generation++;
+        lock.notifyAll();
+        return;
+      }
+    }
+    threads = new Thread[deques.length];
+    for (int i = 0; i < threads.length; i++) {
+      final int index = i;
+      threads[i] =
+        ComputeUtil.newThread(() -> runWorker(index));
+      threads[i].start();
+    }
+  }
+
+  /**
+   * Pause the threads and wait until all of them
+   * are paused
+   *
+   * @param isNow
+   *          pause after the inputs running, or
+   *          after all the inputs queued
+   * @return the number of inputs left in the
+   *         deques
+   */
+  int pause(boolean isNow) {
+    synchronized (lock) {
+      state = isNow ? State.PAUSE_NOW : State.PAUSE;
+      lock.notifyAll();
+      while (numParked < threads.length) {
+        try {
+          lock.wait();
+        } catch (InterruptedException e) {
+          LOG.error("Error when pausing", e);
+        }
+      }
+    }
+    return numQueued.get();
+  }
+
+  /**
+   * Run the inputs queued and stop the threads
+   */
+  void stop() {
+    synchronized (lock) {
+      state = State.STOP;
+      generation++;
+      lock.notifyAll();
+    }
+    for (Thread thread : threads) {
+      ComputeUtil.joinThread(thread);
+    }
+    threads = null;
+  }
+
+  /**
+   * Remove the inputs in the deques
+   */
+  void clear() {
+    for (WorkDeque<I> deque : deques) {
+      deque.clear();
+    }
+    numQueued.set(0);
+  }
+
+  private void runWorker(int index) {
+    T task = tasks.get(index);
+    WorkDeque<I> own = deques[index];
+    Object[] buffer = new Object[MAX_STEAL];
+    while (true) {
+      I input = null;
+      if (state != State.PAUSE_NOW) {
+        input = own.poll();
+        if (input == null) {
+          input = steal(index, buffer);
+        }
+      }
+      if (input == null) {
+        if (waitForInput()) {
+          continue;
+        } else {
+          break;
+        }
+      }
+      numQueued.decrementAndGet();
+      Object output;
+      try {
+        output = task.run(input);
+        if (output == null) {
+          output = NULL_OUTPUT;
+        }
+      } catch (Exception e) {
+        LOG.error("Error when processing input", e);
+        output = ERROR_OUTPUT;
+      }
+      synchronized (outputLock) {
+        outputs.addLast(output);
+        outputLock.notify();
+      }
+    }
+  }
+
+  /**
+   * Steal inputs from the other deques, keep one
+   * and add the rest to the own deque
+   */
+  @SuppressWarnings("unchecked")
+  private I steal(int index, Object[] buffer) {
+    for (int i = 1; i < deques.length; i++) {
+      WorkDeque<I> victim =
+        deques[(index + i) % deques.length];
+      int count = victim.steal(buffer);
+      if (count > 0) {
+        WorkDeque<I> own = deques[index];
+        for (int j = 1; j < count; j++) {
+          own.add((I) buffer[j]);
+          buffer[j] = null;
+        }
+        I input = (I) buffer[0];
+        buffer[0] = null;
+        return input;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Wait while there is no input to run
+   *
+   * @return true to look for inputs again, false
+   *         to stop the thread
+   */
+  private boolean waitForInput() {
+    synchronized (lock) {
+      while (true) {
+        if (state == State.RUNNING) {
+          if (numQueued.get() > 0) {
+            return true;
+          }
+        } else if (state == State.STOP) {
+          return numQueued.get() > 0;
+        } else if (state == State.PAUSE_NOW
+          || numQueued.get() == 0) {
+          int parkedGeneration = generation;
+          numParked++;
+          lock.notifyAll();
+          while (parkedGeneration == generation) {
+            waitOnLock();
+          }
+          numParked--;
+          continue;
+        } else {
+          return true;
+        }
+        waitOnLock();
+      }
+    }
+  }
+
+  private void waitOnLock() {
+    try {
+      lock.wait();
+    } catch (InterruptedException e) {
+      LOG.error("Error when waiting input", e);
+    }
+  }
+
+  /**
+   * Take the next output, waiting if none.
+   * Invoked by one thread at a time.
+   *
+   * @return the output, null if failed
+   */
+  @SuppressWarnings("unchecked")
+  O takeOutput() {
+    if (collected.isEmpty()) {
+      synchronized (outputLock) {
+        while (outputs.isEmpty()) {
+          try {
+            outputLock.wait();
+          } catch (InterruptedException e) {
+            LOG.error("Error when waiting output",
+              e);
+          }
+        }
+        // Swap to take all the outputs at once
+        ArrayDeque<Object> batch = outputs;
+        outputs = collected;
+        collected = batch;
+      }
+    }
+    Object output = collected.pollFirst();
+    if (output == ERROR_OUTPUT) {
+      numErrors++;
+      return null;
+    } else if (output == NULL_OUTPUT) {
+      return null;
+    } else {
+      return (O) output;
+    }
+  }
+
+  /**
+   * Get and reset the number of failed inputs
+   * taken by takeOutput
+   *
+   * @return the number of errors
+   */
+  int takeNumErrors() {
+    int count = numErrors;
+    numErrors = 0;
+    return count;
+  }
+}
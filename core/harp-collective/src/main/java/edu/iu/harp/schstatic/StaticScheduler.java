@@ -16,15 +16,25 @@
 
 package edu.iu.harp.schstatic;
 
+import edu.iu.harp.affinity.CpuTopology;
+import edu.iu.harp.affinity.ThreadAffinity;
 import edu.iu.harp.schdynamic.ComputeUtil;
 import edu.iu.harp.schdynamic.Input;
+import edu.iu.harp.schdynamic.ThreadMode;
 import org.apache.log4j.Logger;
 
 import java.util.List;
 import java.util.concurrent.Semaphore;
 
 /*******************************************************
- * The static scheduler
+ * The static scheduler. The tasks are placed on
+ * the NUMA nodes in contiguous blocks by task ID,
+ * so the apps can bind the splits of the data to
+ * the nodes by getNode(taskID). If the thread
+ * affinity is enabled, each task thread is bound
+ * to the CPUs of its node, then runs
+ * Task.prepare() to allocate the data of the task
+ * on the node. The virtual threads are not bound.
  ******************************************************/
 public class StaticScheduler<I, O, T extends Task<I, O>> {
   protected static final Logger LOG =
@@ -37,23 +47,101 @@ public class StaticScheduler<I, O, T extends Task<I, O>> {
   private final int numTaskMonitors;
   private final Submitter<I> submitter;
   private final Semaphore barrier1;
+  private final CpuTopology topology;
+  /** the node of each task */
+  private final int[] taskNodes;
 
-  @SuppressWarnings("unchecked")
+  /**
+   * Create the scheduler. The threads are bound
+   * if ThreadAffinity is enabled.
+   *
+   * @param tasks
+   *          the tasks
+   */
   public StaticScheduler(List<T> tasks) {
+    this(tasks, ThreadAffinity.get().getTopology(),
+      ThreadAffinity.get().isEnabled());
+  }
+
+  /**
+   * Create the scheduler on the CPUs given
+   *
+   * @param tasks
+   *          the tasks
+   * @param topology
+   *          the CPUs of the nodes
+   * @param isBound
+   *          bind the threads to the CPUs of
+   *          their nodes or not
+   */
+  @SuppressWarnings("unchecked")
+  public StaticScheduler(List<T> tasks,
+    CpuTopology topology, boolean isBound) {
     threads = null;
     barrier1 = new Semaphore(0);
     numTaskMonitors = tasks.size();
     taskMonitors =
       new TaskMonitor[numTaskMonitors];
     submitter = new Submitter<>(taskMonitors);
+    this.topology = topology;
+    taskNodes = topology.placeTasks(numTaskMonitors);
+    // Binding a virtual thread binds its carrier
+    isBound &= ComputeUtil
+      .getThreadMode() == ThreadMode.PLATFORM;
     int i = 0;
     for (T task : tasks) {
       taskMonitors[i] = new TaskMonitor<>(i, task,
-        submitter, numTaskMonitors, barrier1);
+        submitter, numTaskMonitors, barrier1,
+        isBound ? topology.getCpus(taskNodes[i])
+          : null);
       i++;
     }
   }
 
+  /**
+   * Get the topology the tasks are placed on
+   *
+   * @return the topology
+   */
+  public CpuTopology getTopology() {
+    return topology;
+  }
+
+  /**
+   * Get the NUMA node of the task
+   *
+   * @param taskID
+   *          the ID of the task
+   * @return the index of the node in the topology
+   */
+  public int getNode(int taskID) {
+    return taskNodes[taskID];
+  }
+
+  /**
+   * Get the IDs of the tasks on the NUMA node
+   *
+   * @param node
+   *          the index of the node in the topology
+   * @return the IDs of the tasks, in order
+   */
+  public int[] getTaskIDs(int node) {
+    int count = 0;
+    for (int taskNode : taskNodes) {
+      if (taskNode == node) {
+        count++;
+      }
+    }
+    int[] taskIDs = new int[count];
+    count = 0;
+    for (int i = 0; i < taskNodes.length; i++) {
+      if (taskNodes[i] == node) {
+        taskIDs[count++] = i;
+      }
+    }
+    return taskIDs;
+  }
+
   /**
    * Get the Task by its ID
    * 
@@ -94,7 +182,7 @@ public class StaticScheduler<I, O, T extends Task<I, O>> {
         threads = new Thread[numTaskMonitors];
         int i = 0;
         for (TaskMonitor<I, O, T> monitor : taskMonitors) {
-          threads[i] = new Thread(monitor);
+          threads[i] = ComputeUtil.newThread(monitor);
           monitor.start();
           threads[i].start();
           i++;
@@ -34,6 +34,18 @@ public abstract class Task<I, O> {
    */
   public abstract O run(I input) throws Exception;
 
+  /**
+   * Invoked on the task thread when it starts,
+   * after it is bound to the CPUs of its node.
+   * Allocate the data of the task here to place
+   * it on the local NUMA node. Does nothing by
+   * default.
+   *
+   * @throws Exception
+   */
+  public void prepare() throws Exception {
+  }
+
   /**
    * Get the ID of the task
    *
@@ -16,6 +16,7 @@
 
 package edu.iu.harp.schstatic;
 
+import edu.iu.harp.affinity.ThreadAffinity;
 import edu.iu.harp.schdynamic.ComputeUtil;
 import edu.iu.harp.schdynamic.Input;
 import edu.iu.harp.schdynamic.Output;
@@ -44,10 +45,12 @@ public class TaskMonitor<I, O, T extends Task<I, O>>
   private boolean isRunning;
   private final Semaphore barrier1;
   private final Semaphore barrier2;
+  /** the CPUs to bind, null if not bound */
+  private final int[] cpus;
 
   TaskMonitor(int taskID, T task,
     Submitter<I> submitter, int numTasks,
-    Semaphore barrier1) {
+    Semaphore barrier1, int[] cpus) {
     this.taskObject = task;
     this.taskObject.setTaskID(taskID);
     this.taskObject.setNumTasks(numTasks);
@@ -60,6 +63,7 @@ public class TaskMonitor<I, O, T extends Task<I, O>>
     this.errorCount = 0;
     this.barrier1 = barrier1;
     this.barrier2 = new Semaphore(0);
+    this.cpus = cpus;
   }
 
   /**
@@ -178,6 +182,14 @@ public class TaskMonitor<I, O, T extends Task<I, O>>
    */
   @Override
   public void run() {
+    if (cpus != null) {
+      ThreadAffinity.get().bind(cpus);
+    }
+    try {
+      taskObject.prepare();
+    } catch (Exception e) {
+      LOG.error("Error when preparing task", e);
+    }
     while (true) {
       try {
         Input<I> input = inputQueue.take();
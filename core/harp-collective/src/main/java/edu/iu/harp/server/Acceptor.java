@@ -23,8 +23,10 @@ import edu.iu.harp.worker.Workers;
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 
+import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 
 /*******************************************************
  * The Acceptor for handling the messages received
@@ -42,8 +44,6 @@ public class Acceptor implements Runnable {
   private byte commandType;
   private final int selfID;
 
-  private InputStream in;
-
   public Acceptor(ServerConn conn,
                   EventQueue queue, DataMap map, Workers w,
                   byte command) {
@@ -53,13 +53,15 @@ public class Acceptor implements Runnable {
     this.workers = w;
     this.commandType = command;
     this.selfID = workers.getSelfID();
-    this.in = conn.getInputDtream();
   }
 
   public void forceStop(){
-    if(this.in!=null){
+    // The stream changes if the connection
+    // switches to shared memory
+    InputStream in = conn.getInputDtream();
+    if(in!=null){
       try {
-        this.in.close();
+        in.close();
       } catch (IOException e) {
         LOG.log(Level.DEBUG,"Error occurred when closing input stream",e);
       }
@@ -75,53 +77,13 @@ public class Acceptor implements Runnable {
     // All commands should use positive byte
     // integer 0 ~ 127
     try {
-      do {
-        if (commandType == Constant.CONNECTION_END) {
-          break;
-        } else if (commandType == Constant.SEND) {
-          DataReceiver receiver =
-            new DataReceiver(selfID, conn,
-              eventQueue, dataMap, Constant.SEND);
-          receiver.run();
-        } else if (commandType == Constant.SEND_DECODE) {
-          DataReceiver receiver =
-            new DataReceiver(selfID, conn,
-              eventQueue, dataMap,
-              Constant.SEND_DECODE);
-          receiver.run();
-        } else if (commandType == Constant.CHAIN_BCAST) {
-          Receiver receiver =
-            new DataChainBcastReceiver(selfID,
-              conn, eventQueue, dataMap, workers,
-              Constant.CHAIN_BCAST);
-          receiver.run();
-        } else if (commandType == Constant.CHAIN_BCAST_DECODE) {
-          Receiver receiver =
-            new DataChainBcastReceiver(selfID,
-              conn, eventQueue, dataMap, workers,
-              Constant.CHAIN_BCAST_DECODE);
-          receiver.run();
-        } else if (commandType == Constant.MST_BCAST) {
-          Receiver receiver =
-            new DataMSTBcastReceiver(selfID, conn,
-              eventQueue, dataMap, workers,
-              Constant.MST_BCAST);
-          receiver.run();
-        } else if (commandType == Constant.MST_BCAST_DECODE) {
-          Receiver receiver =
-            new DataMSTBcastReceiver(selfID, conn,
-              eventQueue, dataMap, workers,
-              Constant.MST_BCAST_DECODE);
-          receiver.run();
-        } else {
-          LOG.info(
-            "Unknown command: " + commandType);
-          break;
-        }
-        commandType = (byte) in.read();
+      while (handleCommand(commandType, selfID,
+        conn, eventQueue, dataMap, workers)) {
+        commandType =
+          (byte) conn.getInputDtream().read();
         // LOG.info("Read next command " +
         // commandType);
-      } while (true);
+      }
     } catch (Exception e) {
       LOG.error("Exception on Acceptor.", e);
     } finally {
@@ -130,4 +92,95 @@ public class Acceptor implements Runnable {
       }
     }
   }
+
+  /**
+   * Receive one message of the given command
+   * from the connection. Shared by the
+   * thread-per-connection acceptor and the
+   * selector-based server.
+   *
+   * @param commandType
+   *          the command read from the connection
+   * @param selfID
+   *          the ID of the local worker
+   * @param conn
+   *          the connection to receive from
+   * @param eventQueue
+   *          the EventQueue
+   * @param dataMap
+   *          the DataMap
+   * @param workers
+   *          the Workers
+   * @return true if more commands may follow on
+   *         the connection, false if it ends
+   * @throws Exception
+   */
+  static boolean handleCommand(byte commandType,
+    int selfID, ServerConn conn,
+    EventQueue eventQueue, DataMap dataMap,
+    Workers workers) throws Exception {
+    if (commandType == Constant.CONNECTION_END) {
+      return false;
+    } else if (commandType == Constant.SEND) {
+      DataReceiver receiver =
+        new DataReceiver(selfID, conn,
+          eventQueue, dataMap, Constant.SEND);
+      receiver.run();
+    } else if (commandType == Constant.SEND_DECODE) {
+      DataReceiver receiver =
+        new DataReceiver(selfID, conn,
+          eventQueue, dataMap,
+          Constant.SEND_DECODE);
+      receiver.run();
+    } else if (commandType == Constant.CHAIN_BCAST) {
+      Receiver receiver =
+        new DataChainBcastReceiver(selfID,
+          conn, eventQueue, dataMap, workers,
+          Constant.CHAIN_BCAST);
+      receiver.run();
+    } else if (commandType == Constant.CHAIN_BCAST_DECODE) {
+      Receiver receiver =
+        new DataChainBcastReceiver(selfID,
+          conn, eventQueue, dataMap, workers,
+          Constant.CHAIN_BCAST_DECODE);
+      receiver.run();
+    } else if (commandType == Constant.MST_BCAST) {
+      Receiver receiver =
+        new DataMSTBcastReceiver(selfID, conn,
+          eventQueue, dataMap, workers,
+          Constant.MST_BCAST);
+      receiver.run();
+    } else if (commandType == Constant.MST_BCAST_DECODE) {
+      Receiver receiver =
+        new DataMSTBcastReceiver(selfID, conn,
+          eventQueue, dataMap, workers,
+          Constant.MST_BCAST_DECODE);
+      receiver.run();
+    } else if (commandType == Constant.TREE_BCAST
+      || commandType == Constant.TREE_BCAST_DECODE) {
+      Receiver receiver =
+        new DataTreeBcastReceiver(selfID, conn,
+          eventQueue, dataMap, workers,
+          commandType);
+      receiver.run();
+    } else if (commandType == Constant.STRIPED_SEND
+      || commandType == Constant.STRIPED_SEND_DECODE
+      || commandType == Constant.STRIPE) {
+      Receiver receiver =
+        new StripeReceiver(selfID, conn,
+          eventQueue, dataMap, commandType);
+      receiver.run();
+    } else if (commandType == Constant.SHM_CONNECT) {
+      DataInputStream din = new DataInputStream(
+        conn.getInputDtream());
+      byte[] pathBytes = new byte[din.readInt()];
+      din.readFully(pathBytes);
+      conn.openRing(new String(pathBytes,
+        StandardCharsets.UTF_8));
+    } else {
+      LOG.info("Unknown command: " + commandType);
+      return false;
+    }
+    return true;
+  }
 }
@@ -25,6 +25,8 @@ import edu.iu.harp.io.DataUtil;
 import edu.iu.harp.io.Deserializer;
 import edu.iu.harp.io.EventQueue;
 import edu.iu.harp.io.IOUtil;
+import edu.iu.harp.io.ReceivePool;
+import edu.iu.harp.metrics.CommMetrics;
 import edu.iu.harp.resource.ByteArray;
 import edu.iu.harp.worker.WorkerInfo;
 import edu.iu.harp.worker.Workers;
@@ -79,15 +81,19 @@ public class DataChainBcastReceiver
   protected void handleData(final ServerConn conn)
     throws Exception {
     InputStream in = conn.getInputDtream();
-    // Receive data
+    // Receive data, the time includes forwarding
+    long startTime = CommMetrics.now();
     Data data = receiveData(in);
+    this.getDataMap().resolveNames(data);
+    CommMetrics.get().recordReceived(data,
+      CommMetrics.getNumBytes(data),
+      CommMetrics.elapsed(startTime));
     if (this
       .getCommandType() == Constant.CHAIN_BCAST_DECODE) {
       // here only body array is decoded
-      (new Decoder(data, selfID,
-        EventType.COLLECTIVE_EVENT,
-        this.getEventQueue(), this.getDataMap()))
-          .fork();
+      ReceivePool.get().execute(new Decoder(data,
+        selfID, EventType.COLLECTIVE_EVENT,
+        this.getEventQueue(), this.getDataMap()));
     } else {
       // If the data is not for operation,
       // put it to the queue
@@ -25,6 +25,8 @@ import edu.iu.harp.io.DataUtil;
 import edu.iu.harp.io.Deserializer;
 import edu.iu.harp.io.EventQueue;
 import edu.iu.harp.io.IOUtil;
+import edu.iu.harp.io.ReceivePool;
+import edu.iu.harp.metrics.CommMetrics;
 import edu.iu.harp.io.Serializer;
 import edu.iu.harp.resource.ByteArray;
 import edu.iu.harp.worker.WorkerInfo;
@@ -79,14 +81,18 @@ public class DataMSTBcastReceiver
   @Override
   protected void handleData(final ServerConn conn)
     throws Exception {
-    // Receive data
+    // Receive data, the time includes forwarding
+    long startTime = CommMetrics.now();
     Data data = receiveData(conn);
+    this.getDataMap().resolveNames(data);
+    CommMetrics.get().recordReceived(data,
+      CommMetrics.getNumBytes(data),
+      CommMetrics.elapsed(startTime));
     if (this
       .getCommandType() == Constant.MST_BCAST_DECODE) {
-      (new Decoder(data, selfID,
-        EventType.COLLECTIVE_EVENT,
-        this.getEventQueue(), this.getDataMap()))
-          .fork();
+      ReceivePool.get().execute(new Decoder(data,
+        selfID, EventType.COLLECTIVE_EVENT,
+        this.getEventQueue(), this.getDataMap()));
     } else {
       // If the data is not for operation,
       // put it to the queue with collective event
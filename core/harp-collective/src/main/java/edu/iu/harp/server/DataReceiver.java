@@ -20,10 +20,15 @@ import edu.iu.harp.client.EventType;
 import edu.iu.harp.io.Constant;
 import edu.iu.harp.io.Data;
 import edu.iu.harp.io.DataMap;
+import edu.iu.harp.io.DataStatus;
+import edu.iu.harp.io.DataType;
 import edu.iu.harp.io.DataUtil;
 import edu.iu.harp.io.Deserializer;
+import edu.iu.harp.io.DirectTransfer;
 import edu.iu.harp.io.EventQueue;
 import edu.iu.harp.io.IOUtil;
+import edu.iu.harp.io.ReceivePool;
+import edu.iu.harp.metrics.CommMetrics;
 import edu.iu.harp.resource.ByteArray;
 import org.apache.log4j.Logger;
 
@@ -53,15 +58,14 @@ public class DataReceiver extends Receiver {
   @Override
   protected void handleData(final ServerConn conn)
     throws Exception {
-    InputStream in = conn.getInputDtream();
     // Receive data
-    Data data = receiveData(in);
+    Data data = receiveData(conn);
     if (this
-      .getCommandType() == Constant.SEND_DECODE) {
-      (new Decoder(data, selfID,
-        EventType.MESSAGE_EVENT,
-        this.getEventQueue(), this.getDataMap()))
-          .fork();
+      .getCommandType() == Constant.SEND_DECODE
+      && data.getBodyStatus() != DataStatus.DECODED) {
+      ReceivePool.get().execute(new Decoder(data,
+        selfID, EventType.MESSAGE_EVENT,
+        this.getEventQueue(), this.getDataMap()));
     } else {
       DataUtil.addDataToQueueOrMap(selfID,
         this.getEventQueue(),
@@ -73,13 +77,15 @@ public class DataReceiver extends Receiver {
   /**
    * Receive the Data
    * 
-   * @param in
-   *          the InputStream
+   * @param conn
+   *          the connection
    * @return the Data received
    * @throws Exception
    */
-  private Data receiveData(final InputStream in)
+  private Data receiveData(final ServerConn conn)
     throws Exception {
+    InputStream in = conn.getInputDtream();
+    long startTime = CommMetrics.now();
     // Read head array size and body array size
     int headArrSize = -1;
     ByteArray opArray = ByteArray.create(4, true);
@@ -117,7 +123,39 @@ public class DataReceiver extends Receiver {
     // Prepare bytes from resource pool
     // Sending or receiving null array is allowed
     Data data = new Data(headArray);
-    data.decodeHeadArray();
+    data.decodeHeadArray(false);
+    this.getDataMap().resolveNames(data);
+    // Wait if the queue of the operation is full,
+    // the waiting is not counted as receiving
+    long receiveNanos = CommMetrics.elapsed(startTime);
+    this.getDataMap().reserve(data);
+    startTime = CommMetrics.now();
+    if (this
+      .getCommandType() == Constant.SEND_DECODE
+      && data
+        .getHeadStatus() == DataStatus.ENCODED_ARRAY_DECODED
+      && data
+        .getBodyType() == DataType.PARTITION_LIST
+      && !data.isBodyCompressed()) {
+      // Decode while receiving, the arrays are
+      // filled without the body array
+      try {
+        data.setReceivedBody(
+          DirectTransfer.receivePartitionList(
+            conn.getChannel(), data.getBodySize()));
+      } catch (Exception e) {
+        LOG.error("Fail to receive partition list",
+          e);
+        this.getDataMap().cancelReserve(data);
+        headArray.release();
+        throw e;
+      }
+      CommMetrics.get().recordReceived(data,
+        headArrSize + data.getBodySize(),
+        receiveNanos + CommMetrics.elapsed(startTime));
+      return data;
+    }
+    data.prepareBodyArray();
     ByteArray bodyArray = data.getBodyArray();
     if (bodyArray != null) {
       try {
@@ -126,11 +164,16 @@ public class DataReceiver extends Receiver {
       } catch (Exception e) {
         LOG.error("Fail to receive body array",
           e);
+        this.getDataMap().cancelReserve(data);
         headArray.release();
         bodyArray.release();
         throw e;
       }
     }
+    CommMetrics.get().recordReceived(data,
+      headArrSize + (bodyArray == null ? 0
+        : bodyArray.size()),
+      receiveNanos + CommMetrics.elapsed(startTime));
     return data;
   }
 }
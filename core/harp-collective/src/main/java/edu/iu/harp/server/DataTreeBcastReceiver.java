@@ -0,0 +1,251 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.server;
+
+import edu.iu.harp.client.DataTreeBcastSender;
+import edu.iu.harp.client.EventType;
+import edu.iu.harp.io.Connection;
+import edu.iu.harp.io.Constant;
+import edu.iu.harp.io.Data;
+import edu.iu.harp.io.DataMap;
+import edu.iu.harp.io.DataUtil;
+import edu.iu.harp.io.Deserializer;
+import edu.iu.harp.io.EventQueue;
+import edu.iu.harp.io.IOUtil;
+import edu.iu.harp.io.ReceivePool;
+import edu.iu.harp.metrics.CommMetrics;
+import edu.iu.harp.resource.ByteArray;
+import edu.iu.harp.worker.WorkerInfo;
+import edu.iu.harp.worker.Workers;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/*******************************************************
+ * The actual receiver for receiving the
+ * broadcasted data through a pipelined binary
+ * tree. Each chunk of the body is forwarded to the
+ * children once it is received.
+ ******************************************************/
+public class DataTreeBcastReceiver
+  extends Receiver {
+
+  @SuppressWarnings("unused")
+  private static final Logger LOG = Logger
+    .getLogger(DataTreeBcastReceiver.class);
+
+  private final Workers workers;
+  private final int selfID;
+
+  /**
+   * Throw exception when failing to initialize
+   *
+   * @param selfID
+   * @param conn
+   * @param queue
+   * @param map
+   * @param w
+   * @param commandType
+   * @throws Exception
+   */
+  public DataTreeBcastReceiver(int selfID,
+    ServerConn conn, EventQueue queue,
+    DataMap map, Workers w, byte commandType)
+    throws Exception {
+    super(conn, queue, map, commandType);
+    this.selfID = selfID;
+    this.workers = w;
+    if (selfID == Constant.UNKNOWN_WORKER_ID) {
+      throw new Exception(
+        "Fail to initialize receiver.");
+    }
+  }
+
+  /**
+   * Defines how to handle the Data
+   */
+  @Override
+  protected void handleData(final ServerConn conn)
+    throws Exception {
+    InputStream in = conn.getInputDtream();
+    // Receive data, the time includes forwarding
+    long startTime = CommMetrics.now();
+    Data data = receiveData(in);
+    this.getDataMap().resolveNames(data);
+    CommMetrics.get().recordReceived(data,
+      CommMetrics.getNumBytes(data),
+      CommMetrics.elapsed(startTime));
+    if (this
+      .getCommandType() == Constant.TREE_BCAST_DECODE) {
+      ReceivePool.get().execute(new Decoder(data,
+        selfID, EventType.COLLECTIVE_EVENT,
+        this.getEventQueue(), this.getDataMap()));
+    } else {
+      DataUtil.addDataToQueueOrMap(selfID,
+        this.getEventQueue(),
+        EventType.COLLECTIVE_EVENT,
+        this.getDataMap(), data);
+    }
+  }
+
+  /**
+   * Receive the Data: 1. command 2. head size and
+   * root ID 3. head array 4. body array in chunks
+   *
+   * @param in
+   *          the InputStream
+   * @return the Data received
+   * @throws Exception
+   */
+  private Data receiveData(final InputStream in)
+    throws Exception {
+    // Read head array size and root ID
+    int headArrSize = -1;
+    int rootID = -1;
+    ByteArray opArray = ByteArray.create(8, true);
+    try {
+      IOUtil.receiveBytes(in, opArray.get(),
+        opArray.start(), opArray.size());
+      Deserializer deserializer =
+        new Deserializer(opArray);
+      headArrSize = deserializer.readInt();
+      rootID = deserializer.readInt();
+    } catch (Exception e) {
+      opArray.release();
+      throw e;
+    }
+    // Connect to the children
+    int[] childIDs =
+      DataTreeBcastSender.getChildIDs(selfID,
+        rootID, workers.getMinID(),
+        workers.getMaxID());
+    Connection[] childConns =
+      new Connection[childIDs.length];
+    OutputStream[] outs =
+      new OutputStream[childIDs.length];
+    for (int i = 0; i < childIDs.length; i++) {
+      WorkerInfo child =
+        workers.getWorkerInfo(childIDs[i]);
+      if (child != null) {
+        childConns[i] = Connection.create(
+          child.getNode(), child.getPort(), true);
+      }
+      if (childConns[i] == null) {
+        opArray.release();
+        freeConns(childConns);
+        throw new IOException(
+          "Cannot create the child connection.");
+      }
+      outs[i] = childConns[i].getOutputStream();
+    }
+    // Prepare and read head array
+    ByteArray headArray =
+      ByteArray.create(headArrSize, true);
+    if (headArray != null) {
+      try {
+        IOUtil.receiveBytes(in, headArray.get(),
+          headArray.start(), headArray.size());
+        // Forward op bytes and head bytes, the
+        // root ID stays the same
+        for (OutputStream out : outs) {
+          out.write(getCommandType());
+          IOUtil.sendBytes(out, opArray.get(),
+            opArray.start(), opArray.size());
+          IOUtil.sendBytes(out, headArray.get(),
+            headArray.start(), headArray.size());
+          out.flush();
+        }
+      } catch (Exception e) {
+        headArray.release();
+        freeConns(childConns);
+        throw e;
+      } finally {
+        opArray.release();
+      }
+    } else {
+      opArray.release();
+      freeConns(childConns);
+      throw new Exception("Null head array.");
+    }
+    // Prepare body array
+    Data data = new Data(headArray);
+    data.decodeHeadArray();
+    ByteArray bodyArray = data.getBodyArray();
+    // Receive and forward body array
+    if (bodyArray != null) {
+      try {
+        receiveChunks(in, outs, bodyArray.get(),
+          bodyArray.start(), bodyArray.size());
+      } catch (Exception e) {
+        headArray.release();
+        bodyArray.release();
+        freeConns(childConns);
+        throw e;
+      }
+    }
+    // Close connections to the children
+    for (Connection childConn : childConns) {
+      childConn.release();
+    }
+    return data;
+  }
+
+  /**
+   * Receive the bytes chunk by chunk and forward
+   * each chunk to the children
+   *
+   * @param in
+   *          the InputStream
+   * @param outs
+   *          the OutputStreams to the children
+   * @param bytes
+   *          the byte[] to put data received
+   * @param start
+   *          the offset index
+   * @param size
+   *          the size of the data
+   * @throws IOException
+   */
+  private static void receiveChunks(
+    InputStream in, OutputStream[] outs,
+    byte[] bytes, int start, int size)
+    throws IOException {
+    while (size > 0) {
+      int len =
+        Math.min(size, Constant.PIPELINE_SIZE);
+      IOUtil.receiveBytes(in, bytes, start, len);
+      for (OutputStream out : outs) {
+        out.write(bytes, start, len);
+        out.flush();
+      }
+      start += len;
+      size -= len;
+    }
+  }
+
+  private static void freeConns(
+    Connection[] conns) {
+    for (int i = 0; i < conns.length; i++) {
+      if (conns[i] != null) {
+        conns[i].free();
+        conns[i] = null;
+      }
+    }
+  }
+}
@@ -0,0 +1,362 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package edu.iu.harp.server;
+
+import edu.iu.harp.io.Constant;
+import edu.iu.harp.io.DataMap;
+import edu.iu.harp.io.EventQueue;
+import edu.iu.harp.io.IOUtil;
+import edu.iu.harp.schdynamic.ComputeUtil;
+import edu.iu.harp.worker.Workers;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channel;
+import java.nio.channels.Channels;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*******************************************************
+ * A selector based server. All the incoming
+ * connections are registered to one selector.
+ * When a connection becomes readable, it is
+ * removed from the selector and handed to a
+ * fixed pool of I/O threads which receives one
+ * message with the existing receivers, then the
+ * connection goes back to the selector. The
+ * number of threads no longer grows with the
+ * number of peers.
+ * <p>
+ * A receiver waiting for space in a limited
+ * DataMap queue would hold one of the few I/O
+ * threads in the middle of a message, and stall
+ * the other connections, so a DataMap with a
+ * queue limit is rejected.
+ ******************************************************/
+public class SelectorServer implements Runnable {
+
+  private static final Logger LOG =
+    Logger.getLogger(SelectorServer.class);
+
+  private final EventQueue eventQueue;
+  private final DataMap dataMap;
+  private final Workers workers;
+  private final int selfID;
+
+  private final String node;
+  private final int port;
+
+  private final ServerSocketChannel serverChannel;
+  private final Selector selector;
+  private final Thread selectorThread;
+  private final ExecutorService ioThreads;
+  /** Connections waiting to be registered again */
+  private final ConcurrentLinkedQueue<SocketChannel> pendingChannels;
+
+  private volatile boolean stopped;
+
+  /**
+   * Initialization
+   *
+   * @param node
+   *          the host
+   * @param port
+   *          the port
+   * @param queue
+   *          the EventQueue
+   * @param map
+   *          the DataMap
+   * @param workers
+   *          the Workers
+   * @param numIOThreads
+   *          the number of I/O threads
+   * @throws Exception
+   */
+  public SelectorServer(String node, int port,
+    EventQueue queue, DataMap map,
+    Workers workers, int numIOThreads)
+    throws Exception {
+    if (map.getQueueLimit() > 0L) {
+      throw new IllegalArgumentException(
+        "The NIO engine cannot be used with a "
+          + "queue limit on the DataMap.");
+    }
+    this.eventQueue = queue;
+    this.dataMap = map;
+    this.workers = workers;
+    this.selfID = workers.getSelfID();
+    this.node = node;
+    this.port = port;
+    this.pendingChannels =
+      new ConcurrentLinkedQueue<>();
+    this.stopped = false;
+    try {
+      serverChannel = ServerSocketChannel.open();
+      IOUtil.setServerSocketOptions(
+        serverChannel.socket());
+      serverChannel.socket()
+        .bind(new InetSocketAddress(node, port));
+      serverChannel.configureBlocking(false);
+      selector = Selector.open();
+      serverChannel.register(selector,
+        SelectionKey.OP_ACCEPT);
+    } catch (Exception e) {
+      LOG.error("Error in starting receiver.", e);
+      throw new Exception(e);
+    }
+    ioThreads = Executors.newFixedThreadPool(
+      numIOThreads > 0 ? numIOThreads
+        : Constant.NUM_THREADS,
+      new ThreadFactory() {
+        private final AtomicInteger threadNum =
+          new AtomicInteger(0);
+
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r);
+          thread.setName("harp-io-thread-"
+            + threadNum.getAndIncrement());
+          return thread;
+        }
+      });
+    selectorThread = new Thread(this);
+    selectorThread.setName("Harp-Selector");
+    LOG.info("Selector server on " + this.node
+      + " " + this.port + " starts.");
+  }
+
+  /**
+   * Start the server
+   */
+  public void start() {
+    selectorThread.start();
+  }
+
+  /**
+   * Stop the server. If not forced, the messages
+   * in receiving are completed before the
+   * connections are closed.
+   *
+   * @param force
+   *          true if not to wait for the messages
+   *          in receiving
+   */
+  public void stop(boolean force) {
+    stopped = true;
+    selector.wakeup();
+    ComputeUtil.joinThread(selectorThread);
+    if (force) {
+      ioThreads.shutdownNow();
+    } else {
+      ioThreads.shutdown();
+    }
+    try {
+      ioThreads.awaitTermination(
+        Constant.TERMINATION_TIMEOUT,
+        TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      LOG.error("Fail to wait I/O threads.", e);
+    }
+    for (SelectionKey key : selector.keys()) {
+      closeChannel(key.channel());
+    }
+    SocketChannel channel = null;
+    while ((channel =
+      pendingChannels.poll()) != null) {
+      closeChannel(channel);
+    }
+    try {
+      selector.close();
+    } catch (IOException e) {
+      LOG.error("Fail to close the selector.", e);
+    }
+    LOG.info("Selector server on " + this.node
+      + " " + this.port + " is stopped.");
+  }
+
+  /**
+   * The selector loop. Accept connections and
+   * dispatch readable connections to the I/O
+   * threads.
+   */
+  @Override
+  public void run() {
+    List<SocketChannel> readyChannels =
+      new ObjectArrayList<>();
+    while (!stopped) {
+      try {
+        selector.select();
+        registerPendingChannels();
+        Iterator<SelectionKey> iterator =
+          selector.selectedKeys().iterator();
+        while (iterator.hasNext()) {
+          SelectionKey key = iterator.next();
+          iterator.remove();
+          if (!key.isValid()) {
+            continue;
+          }
+          if (key.isAcceptable()) {
+            accept();
+          } else if (key.isReadable()) {
+            // Stop selecting until the message is
+            // received
+            key.cancel();
+            readyChannels
+              .add((SocketChannel) key.channel());
+          }
+        }
+        if (!readyChannels.isEmpty()) {
+          // Flush cancelled keys so that the
+          // channels can be switched to blocking
+          selector.selectNow();
+          for (SocketChannel channel : readyChannels) {
+            ioThreads
+              .execute(new ChannelHandler(channel));
+          }
+          readyChannels.clear();
+        }
+      } catch (Exception e) {
+        if (!stopped) {
+          LOG.error("Exception on Selector Server",
+            e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Accept a new connection and register it to
+   * the selector
+   *
+   * @throws IOException
+   */
+  private void accept() throws IOException {
+    SocketChannel channel = serverChannel.accept();
+    if (channel == null) {
+      return;
+    }
+    try {
+      IOUtil.setSocketOptions(channel.socket());
+      channel.configureBlocking(false);
+      channel.register(selector,
+        SelectionKey.OP_READ);
+    } catch (IOException e) {
+      closeChannel(channel);
+      throw e;
+    }
+  }
+
+  /**
+   * Register the connections returned from the
+   * I/O threads to the selector again
+   */
+  private void registerPendingChannels() {
+    SocketChannel channel = null;
+    while ((channel =
+      pendingChannels.poll()) != null) {
+      try {
+        channel.register(selector,
+          SelectionKey.OP_READ);
+      } catch (Exception e) {
+        LOG.error("Fail to register connection.",
+          e);
+        closeChannel(channel);
+      }
+    }
+  }
+
+  /**
+   * Close the channel quietly
+   *
+   * @param channel
+   *          the channel to close
+   */
+  private static void closeChannel(
+    Channel channel) {
+    try {
+      channel.close();
+    } catch (IOException e) {
+    }
+  }
+
+  /*******************************************************
+   * Receive one message from a readable
+   * connection with blocking reads, then return
+   * the connection to the selector
+   ******************************************************/
+  private class ChannelHandler
+    implements Runnable {
+
+    private final SocketChannel channel;
+
+    ChannelHandler(SocketChannel channel) {
+      this.channel = channel;
+    }
+
+    @Override
+    public void run() {
+      ServerConn conn = null;
+      boolean isEnd = true;
+      try {
+        channel.configureBlocking(true);
+        InputStream in =
+          Channels.newInputStream(channel);
+        conn = new ServerConn(in, channel.socket());
+        byte commandType = (byte) in.read();
+        if (commandType != Constant.SERVER_QUIT
+          && commandType != Constant.UNKNOWN_CMD) {
+          isEnd = !Acceptor.handleCommand(
+            commandType, selfID, conn, eventQueue,
+            dataMap, workers);
+        }
+      } catch (Exception e) {
+        LOG.error("Exception on I/O thread.", e);
+        isEnd = true;
+      }
+      if (isEnd || stopped) {
+        if (conn != null) {
+          conn.close();
+        } else {
+          closeChannel(channel);
+        }
+        return;
+      }
+      try {
+        channel.configureBlocking(false);
+        pendingChannels.add(channel);
+        selector.wakeup();
+      } catch (Exception e) {
+        LOG.error("Fail to return connection.", e);
+        conn.close();
+      }
+    }
+  }
+}
@@ -49,7 +49,7 @@ public class Server implements Runnable {
    * operations
    */
   private final DataMap dataMap;
-  private Thread server;
+  private final Thread server;
   private List<Thread> acceptorThreads;
   private List<Acceptor> acceptors;
   /** Make sure the access is synchronized */
@@ -65,6 +65,8 @@ public class Server implements Runnable {
   private final int port;
   /** Server socket */
   private final ServerSocket serverSocket;
+  /** The server used by the NIO engine */
+  private final SelectorServer selectorServer;
 
   /**
    * Initialization
@@ -84,16 +86,54 @@ public class Server implements Runnable {
   public Server(String node, int port,
                 EventQueue queue, DataMap map,
                 Workers workers) throws Exception {
+    this(node, port, queue, map, workers,
+            ServerEngine.BLOCKING,
+            Constant.NUM_THREADS);
+  }
+
+  /**
+   * Initialization with a selected engine
+   *
+   * @param node
+   *          the host
+   * @param port
+   *          the port
+   * @param queue
+   *          the EventQueue
+   * @param map
+   *          the DataMap
+   * @param workers
+   *          the Workers
+   * @param engine
+   *          the engine for receiving data
+   * @param numIOThreads
+   *          the number of I/O threads, only used
+   *          by the NIO engine
+   * @throws Exception
+   */
+  public Server(String node, int port,
+                EventQueue queue, DataMap map,
+                Workers workers, ServerEngine engine,
+                int numIOThreads) throws Exception {
     this.eventQueue = queue;
     this.dataMap = map;
-    server = new Thread(this);
-    server.setName("Harp-Server");
     acceptorThreads = new ObjectArrayList<>();
     acceptors = new ObjectArrayList<>();
     this.workers = workers;
     // Cache local information
     this.node = node;
     this.port = port;
+    if (engine == ServerEngine.NIO) {
+      server = null;
+      serverSocket = null;
+      selectorServer = new SelectorServer(node,
+              port, queue, map, workers,
+              numIOThreads);
+      return;
+    }
+    selectorServer = null;
+    server = new Thread(this);
+    server.setName("Harp-Server");
     // Server socket
     try {
       serverSocket = new ServerSocket();
@@ -112,6 +152,10 @@ public class Server implements Runnable {
    * Start the server
    */
   public void start() {
+    if (selectorServer != null) {
+      selectorServer.start();
+      return;
+    }
     server.start();
   }
 
@@ -124,6 +168,10 @@ public class Server implements Runnable {
   }
 
   public void stop(boolean force){
+    if (selectorServer != null) {
+      selectorServer.stop(force);
+      return;
+    }
     if(!force) {
       closeServer(this.node, this.port);
       for (Thread thread : acceptorThreads) {
@@ -193,7 +241,8 @@ public class Server implements Runnable {
         IOUtil.setSocketOptions(socket);
         InputStream in = socket.getInputStream();
         // Receiver connection
-        conn = new ServerConn(in, socket);
+        // Each acceptor owns its connection
+        conn = new ServerConn(in, socket, true);
         commandType = (byte) in.read();
       } catch (Exception e) {
         LOG.error("Exception on Server", e);
@@ -211,7 +260,8 @@ public class Server implements Runnable {
                 new Acceptor(conn, eventQueue, dataMap,
                         workers, commandType);
         acceptors.add(acceptor);
-        Thread thread = new Thread(acceptor);
+        Thread thread =
+                ComputeUtil.newThread(acceptor);
         thread.setName("harp-thread-"+(threadNum++));
         thread.start();
         acceptorThreads.add(thread);
@@ -16,21 +16,95 @@
 
 package edu.iu.harp.server;
 
+import edu.iu.harp.io.Constant;
+import edu.iu.harp.io.ShmRing;
+import org.apache.log4j.Logger;
+
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.Socket;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 
 /*******************************************************
  * The connection object for Server
  ******************************************************/
 public class ServerConn {
 
+  private static final Logger LOG =
+    Logger.getLogger(ServerConn.class);
+
   private InputStream in;
   private Socket socket;
+  private ReadableByteChannel channel;
+  private ShmRing ring;
+  /** If the connection can switch to a ring */
+  private final boolean isRingAllowed;
 
   ServerConn(InputStream in, Socket socket) {
+    this(in, socket, false);
+  }
+
+  /**
+   * @param in
+   *          the InputStream
+   * @param socket
+   *          the socket
+   * @param isRingAllowed
+   *          true if the connection is owned by
+   *          one thread and can read from a ring
+   *          in shared memory
+   */
+  ServerConn(InputStream in, Socket socket,
+    boolean isRingAllowed) {
     this.socket = socket;
     this.in = in;
+    this.isRingAllowed = isRingAllowed;
+  }
+
+  /**
+   * Read the following commands from the ring
+   * created by the client, and reply to the
+   * client whether the ring is used. The
+   * connections of the selector-based server are
+   * shared by threads and always refuse.
+   * 
+   * @param path
+   *          the path of the ring file
+   * @return true if the ring is used
+   * @throws IOException
+   */
+  boolean openRing(String path)
+    throws IOException {
+    ShmRing shmRing = null;
+    if (isRingAllowed && ring == null) {
+      try {
+        shmRing = ShmRing.open(path);
+      } catch (IOException e) {
+        LOG.info("Fail to open the ring " + path
+          + ", " + e.getMessage());
+      }
+    }
+    try {
+      OutputStream out = socket.getOutputStream();
+      out.write(shmRing != null
+        ? Constant.SHM_ACCEPTED
+        : Constant.SHM_REJECTED);
+      out.flush();
+    } catch (IOException e) {
+      if (shmRing != null) {
+        shmRing.close();
+      }
+      throw e;
+    }
+    if (shmRing != null) {
+      shmRing.setPeer(socket);
+      ring = shmRing;
+      in = Channels.newInputStream(shmRing);
+      channel = shmRing;
+    }
+    return shmRing != null;
   }
 
   /**
@@ -42,10 +116,33 @@ public class ServerConn {
     return this.in;
   }
 
+  /**
+   * Get a channel reading the same bytes as the
+   * InputStream. The ring or the socket's own
+   * channel is used if there is one.
+   *
+   * @return the ReadableByteChannel
+   */
+  ReadableByteChannel getChannel() {
+    if (channel == null && in != null) {
+      if (socket != null
+        && socket.getChannel() != null) {
+        channel = socket.getChannel();
+      } else {
+        channel = Channels.newChannel(in);
+      }
+    }
+    return this.channel;
+  }
+
   /**
    * Close the connection
    */
   void close() {
+    if (ring != null) {
+      ring.close();
+      ring = null;
+    }
     if (in != null || socket != null) {
       try {
         if (in != null) {
@@ -61,6 +158,7 @@ public class ServerConn {
       }
       in = null;
       socket = null;
+      channel = null;
     }
   }
 }
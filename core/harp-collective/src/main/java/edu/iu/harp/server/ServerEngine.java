@@ -0,0 +1,29 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.server;
+
+/**
+ * The engines available for receiving data.
+ * BLOCKING starts one acceptor thread per
+ * incoming connection. NIO multiplexes all
+ * connections on a selector and receives
+ * messages with a fixed pool of I/O threads, it
+ * does not support a queue limit on the DataMap.
+ **/
+public enum ServerEngine {
+  BLOCKING, NIO
+}
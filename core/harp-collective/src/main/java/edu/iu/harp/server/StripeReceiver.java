@@ -0,0 +1,451 @@
+/*
+ * Copyright 2013-2017 Indiana University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.iu.harp.server;
+
+import edu.iu.harp.client.EventType;
+import edu.iu.harp.io.Constant;
+import edu.iu.harp.io.Data;
+import edu.iu.harp.io.DataMap;
+import edu.iu.harp.io.DataStatus;
+import edu.iu.harp.io.DataUtil;
+import edu.iu.harp.io.Deserializer;
+import edu.iu.harp.io.EventQueue;
+import edu.iu.harp.io.IOUtil;
+import edu.iu.harp.io.ReceivePool;
+import edu.iu.harp.resource.ByteArray;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*******************************************************
+ * The receiver of the stripes of a body sent
+ * through multiple connections. The first stripe
+ * comes with the head, which gives the size of
+ * the body array. Other stripes arriving before
+ * the head are kept in their own arrays and
+ * copied when the body array is ready. The
+ * receiver of the last stripe delivers the data,
+ * so no receiver waits for another.
+ * <p>
+ * The transfers are keyed by the sender ID and
+ * the transfer ID. If a stripe fails, the
+ * transfer is released by the last receiver
+ * writing to it. A transfer without a stripe for
+ * Constant.DATA_MAX_WAIT_TIME, as the sender died
+ * in the middle, is expired when a later stripe
+ * arrives.
+ ******************************************************/
+public class StripeReceiver extends Receiver {
+
+  private static final Logger LOG =
+    Logger.getLogger(StripeReceiver.class);
+
+  /** The transfers in progress */
+  private static final ConcurrentHashMap<TransferKey, Transfer> transfers =
+    new ConcurrentHashMap<>();
+  /** The idle time after which a transfer expires */
+  private static volatile long transferTimeout =
+    TimeUnit.SECONDS
+      .toNanos(Constant.DATA_MAX_WAIT_TIME);
+  /** The last time the transfers were checked */
+  private static final AtomicLong lastExpireTime =
+    new AtomicLong(System.nanoTime());
+
+  /*******************************************************
+   * The sender ID and the transfer ID
+   ******************************************************/
+  private static final class TransferKey {
+    private final int senderID;
+    private final long transferID;
+
+    private TransferKey(int senderID,
+      long transferID) {
+      this.senderID = senderID;
+      this.transferID = transferID;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof TransferKey)) {
+        return false;
+      }
+      TransferKey other = (TransferKey) obj;
+      return senderID == other.senderID
+        && transferID == other.transferID;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * Long.hashCode(transferID)
+        + senderID;
+    }
+
+    @Override
+    public String toString() {
+      return senderID + "/" + transferID;
+    }
+  }
+
+  /*******************************************************
+   * The stripes of a body received so far,
+   * guarded by this
+   ******************************************************/
+  private static class Transfer {
+    private Data data;
+    private DataMap dataMap;
+    private byte commandType;
+    private int numRemaining;
+    /** The receivers writing to the arrays */
+    private int numWriting;
+    private boolean isFailed;
+    private boolean isReleased;
+    /** The last time a stripe started or ended */
+    private long lastTime;
+    private final LinkedList<ByteArray> earlyStripes;
+    private final LinkedList<Integer> earlyOffsets;
+
+    private Transfer(int numStripes) {
+      data = null;
+      dataMap = null;
+      numRemaining = numStripes;
+      numWriting = 0;
+      isFailed = false;
+      isReleased = false;
+      lastTime = System.nanoTime();
+      earlyStripes = new LinkedList<>();
+      earlyOffsets = new LinkedList<>();
+    }
+
+    /**
+     * Mark the transfer as failed
+     *
+     * @return true if the caller releases it
+     */
+    private synchronized boolean fail() {
+      isFailed = true;
+      if (numWriting == 0 && !isReleased) {
+        isReleased = true;
+        return true;
+      }
+      return false;
+    }
+
+    /**
+     * Release the arrays and the bytes reserved.
+     * Called once, when no receiver writes.
+     */
+    private void release() {
+      for (ByteArray stripe : earlyStripes) {
+        stripe.release();
+      }
+      earlyStripes.clear();
+      earlyOffsets.clear();
+      if (data != null) {
+        dataMap.cancelReserve(data);
+        data.release();
+        data = null;
+      }
+    }
+  }
+
+  private final int selfID;
+
+  public StripeReceiver(int selfID,
+    ServerConn conn, EventQueue queue,
+    DataMap map, byte commandType) {
+    super(conn, queue, map, commandType);
+    this.selfID = selfID;
+  }
+
+  /**
+   * Defines how to handle the Data
+   */
+  @Override
+  protected void handleData(final ServerConn conn)
+    throws Exception {
+    InputStream in = conn.getInputDtream();
+    int headArrSize;
+    int senderID;
+    long transferID;
+    int numStripes;
+    int offset;
+    int length;
+    ByteArray opArray = ByteArray
+      .create(Constant.STRIPE_OP_SIZE, true);
+    try {
+      IOUtil.receiveBytes(in, opArray.get(),
+        opArray.start(), Constant.STRIPE_OP_SIZE);
+      Deserializer deserializer =
+        new Deserializer(opArray);
+      headArrSize = deserializer.readInt();
+      senderID = deserializer.readInt();
+      transferID = deserializer.readLong();
+      numStripes = deserializer.readInt();
+      offset = deserializer.readInt();
+      length = deserializer.readInt();
+    } catch (IOException e) {
+      LOG.error("Fail to receive op array", e);
+      throw e;
+    } finally {
+      opArray.release();
+    }
+    expireTransfers();
+    TransferKey key =
+      new TransferKey(senderID, transferID);
+    Transfer transfer = transfers.computeIfAbsent(
+      key, k -> new Transfer(numStripes));
+    synchronized (transfer) {
+      if (transfer.isReleased) {
+        throw new IOException("Transfer " + key
+          + " is expired");
+      }
+      transfer.numWriting++;
+      transfer.lastTime = System.nanoTime();
+    }
+    boolean isReceived = false;
+    try {
+      if (this.getCommandType() == Constant.STRIPE) {
+        receiveStripe(in, transfer, offset, length);
+      } else {
+        receiveFirstStripe(in, transfer,
+          headArrSize, length);
+      }
+      isReceived = true;
+    } finally {
+      finish(key, transfer, isReceived);
+    }
+  }
+
+  /**
+   * Count a stripe as finished. The receiver of
+   * the last stripe delivers the data; if the
+   * transfer failed, the last receiver writing to
+   * it releases it.
+   */
+  private void finish(TransferKey key,
+    Transfer transfer, boolean isReceived) {
+    boolean isDone = false;
+    boolean isFailed;
+    boolean isToRelease = false;
+    synchronized (transfer) {
+      transfer.numWriting--;
+      transfer.numRemaining--;
+      transfer.lastTime = System.nanoTime();
+      if (!isReceived) {
+        transfer.isFailed = true;
+      }
+      isFailed = transfer.isFailed;
+      if (isFailed) {
+        if (transfer.numWriting == 0
+          && !transfer.isReleased) {
+          transfer.isReleased = true;
+          isToRelease = true;
+        }
+      } else {
+        isDone = transfer.numRemaining == 0;
+      }
+    }
+    if (isDone) {
+      transfers.remove(key, transfer);
+      deliver(transfer);
+    } else if (isFailed) {
+      // Later stripes of the transfer are expired
+      transfers.remove(key, transfer);
+      if (isToRelease) {
+        transfer.release();
+      }
+    }
+  }
+
+  /**
+   * Expire the transfers without a stripe for the
+   * timeout, checked at most once in a tenth of
+   * the timeout
+   */
+  static void expireTransfers() {
+    long now = System.nanoTime();
+    long timeout = transferTimeout;
+    long lastTime = lastExpireTime.get();
+    if (now - lastTime < timeout / 10
+      || !lastExpireTime.compareAndSet(lastTime,
+        now)) {
+      return;
+    }
+    for (Map.Entry<TransferKey, Transfer> entry : transfers
+      .entrySet()) {
+      Transfer transfer = entry.getValue();
+      boolean isExpired;
+      synchronized (transfer) {
+        isExpired = !transfer.isFailed
+          && now - transfer.lastTime > timeout;
+      }
+      if (isExpired) {
+        LOG.warn("Transfer " + entry.getKey()
+          + " is expired");
+        transfers.remove(entry.getKey(), transfer);
+        if (transfer.fail()) {
+          transfer.release();
+        }
+      }
+    }
+  }
+
+  /**
+   * Set the idle time after which a transfer
+   * expires
+   *
+   * @param timeoutMillis
+   *          the time in milliseconds
+   */
+  static void setTransferTimeout(
+    long timeoutMillis) {
+    transferTimeout = TimeUnit.MILLISECONDS
+      .toNanos(timeoutMillis);
+    lastExpireTime.set(System.nanoTime());
+  }
+
+  static int getNumTransfers() {
+    return transfers.size();
+  }
+
+  /**
+   * Receive the head and the first stripe, then
+   * copy the stripes arrived earlier
+   */
+  private void receiveFirstStripe(InputStream in,
+    Transfer transfer, int headArrSize,
+    int length) throws Exception {
+    ByteArray headArray =
+      ByteArray.create(headArrSize, true);
+    if (headArray == null) {
+      throw new Exception("Null head array");
+    }
+    try {
+      IOUtil.receiveBytes(in, headArray.get(),
+        headArray.start(), headArrSize);
+    } catch (Exception e) {
+      LOG.error("Fail to receive head array", e);
+      headArray.release();
+      throw e;
+    }
+    Data data = new Data(headArray);
+    data.decodeHeadArray(false);
+    // Wait if the queue of the operation is full
+    this.getDataMap().reserve(data);
+    data.prepareBodyArray();
+    ByteArray bodyArray = data.getBodyArray();
+    if (bodyArray == null) {
+      this.getDataMap().cancelReserve(data);
+      data.release();
+      throw new Exception("Null body array");
+    }
+    synchronized (transfer) {
+      transfer.data = data;
+      transfer.dataMap = this.getDataMap();
+      transfer.commandType = this.getCommandType();
+      while (!transfer.earlyStripes.isEmpty()) {
+        ByteArray stripe =
+          transfer.earlyStripes.removeFirst();
+        int offset =
+          transfer.earlyOffsets.removeFirst();
+        System.arraycopy(stripe.get(),
+          stripe.start(), bodyArray.get(),
+          bodyArray.start() + offset,
+          stripe.size());
+        stripe.release();
+      }
+    }
+    try {
+      IOUtil.receiveBytes(in, bodyArray.get(),
+        bodyArray.start(), length);
+    } catch (Exception e) {
+      LOG.error("Fail to receive body stripe", e);
+      throw e;
+    }
+  }
+
+  /**
+   * Receive a stripe other than the first one,
+   * into the body array if it is ready
+   */
+  private void receiveStripe(InputStream in,
+    Transfer transfer, int offset, int length)
+    throws Exception {
+    ByteArray bodyArray = null;
+    synchronized (transfer) {
+      if (transfer.data != null) {
+        bodyArray = transfer.data.getBodyArray();
+      }
+    }
+    if (bodyArray != null) {
+      IOUtil.receiveBytes(in, bodyArray.get(),
+        bodyArray.start() + offset, length);
+      return;
+    }
+    ByteArray stripe =
+      ByteArray.create(length, true);
+    if (stripe == null) {
+      throw new Exception("Null stripe array");
+    }
+    try {
+      IOUtil.receiveBytes(in, stripe.get(),
+        stripe.start(), length);
+    } catch (Exception e) {
+      LOG.error("Fail to receive body stripe", e);
+      stripe.release();
+      throw e;
+    }
+    synchronized (transfer) {
+      if (transfer.data == null) {
+        transfer.earlyStripes.add(stripe);
+        transfer.earlyOffsets.add(offset);
+        return;
+      }
+      bodyArray = transfer.data.getBodyArray();
+    }
+    System.arraycopy(stripe.get(), stripe.start(),
+      bodyArray.get(), bodyArray.start() + offset,
+      length);
+    stripe.release();
+  }
+
+  /**
+   * Decode the data or add it to the queue, as
+   * DataReceiver does
+   */
+  private void deliver(Transfer transfer) {
+    Data data = transfer.data;
+    if (transfer
+      .commandType == Constant.STRIPED_SEND_DECODE
+      && data.getBodyStatus() != DataStatus.DECODED) {
+      ReceivePool.get().execute(new Decoder(data,
+        selfID, EventType.MESSAGE_EVENT,
+        this.getEventQueue(), this.getDataMap()));
+    } else {
+      DataUtil.addDataToQueueOrMap(selfID,
+        this.getEventQueue(),
+        EventType.MESSAGE_EVENT,
+        this.getDataMap(), data);
+    }
+  }
+}
@@ -28,9 +28,12 @@ import java.io.IOException;
 public class Barrier extends Writable {
 
   private boolean status;
+  /** The fingerprint of the WritableRegistry */
+  private int fingerprint;
 
   public Barrier() {
     status = false;
+    fingerprint = 0;
   }
 
   /**
@@ -53,21 +56,44 @@ public class Barrier extends Writable {
   }
 
   /**
-   * Write the status to DataOutput
+   * Set the fingerprint of the WritableRegistry
+   * 
+   * @param fp
+   *          the fingerprint
+   */
+  public void setFingerprint(int fp) {
+    fingerprint = fp;
+  }
+
+  /**
+   * Get the fingerprint of the WritableRegistry
+   * 
+   * @return the fingerprint
+   */
+  public int getFingerprint() {
+    return fingerprint;
+  }
+
+  /**
+   * Write the status and the fingerprint to
+   * DataOutput
    */
   @Override
   public void write(DataOutput out)
     throws IOException {
     out.writeBoolean(status);
+    out.writeInt(fingerprint);
   }
 
   /**
-   * Read the status from DataInput
+   * Read the status and the fingerprint from
+   * DataInput
    */
   @Override
   public void read(DataInput in)
     throws IOException {
     status = in.readBoolean();
+    fingerprint = in.readInt();
   }
 
   /**
@@ -75,7 +101,7 @@ public class Barrier extends Writable {
    */
   @Override
   public int getNumWriteBytes() {
-    return 1;
+    return 5;
   }
 
   /**
@@ -83,5 +109,7 @@ public class Barrier extends Writable {
    */
   @Override
   public void clear() {
+    status = false;
+    fingerprint = 0;
   }
 }
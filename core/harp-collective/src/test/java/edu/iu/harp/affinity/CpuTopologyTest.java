@@ -0,0 +1,112 @@
+package edu.iu.harp.affinity;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+public class CpuTopologyTest {
+
+  @Test
+  public void testCpuList() {
+    Assert.assertArrayEquals(new int[] {0, 1, 2, 3, 8, 10, 11},
+        CpuTopology.parseCpuList("0-3,8, 10-11\n"));
+    Assert.assertArrayEquals(new int[] {1, 2},
+        CpuTopology.parseCpuList("2,1,2"));
+    Assert.assertEquals(0, CpuTopology.parseCpuList("").length);
+    Assert.assertEquals("0-3,8,10-11", CpuTopology.toCpuList(
+        new int[] {0, 1, 2, 3, 8, 10, 11}));
+    try {
+      CpuTopology.parseCpuList("3-1");
+      Assert.fail();
+    } catch (IllegalArgumentException e) {
+      // Expected
+    }
+  }
+
+  @Test
+  public void testDiscover() throws IOException {
+    File dir = Files.createTempDirectory("harp-node").toFile();
+    try {
+      writeCpuList(dir, "node0", "0-3,8-11");
+      writeCpuList(dir, "node1", "4-7,12-15");
+      // A node of memory only
+      writeCpuList(dir, "node2", "");
+      new File(dir, "possible").createNewFile();
+      CpuTopology topology = CpuTopology.discover(dir);
+      Assert.assertEquals(2, topology.getNumNodes());
+      Assert.assertEquals(16, topology.getNumCpus());
+      Assert.assertArrayEquals(new int[] {4, 5, 6, 7, 12, 13, 14, 15},
+          topology.getCpus(1));
+      Assert.assertEquals(1, topology.getNode(13));
+      Assert.assertEquals(-1, topology.getNode(16));
+
+      CpuTopology restricted =
+          topology.restrict(CpuTopology.parseCpuList("0-5"));
+      Assert.assertEquals(2, restricted.getNumNodes());
+      Assert.assertEquals("0-3", CpuTopology.toCpuList(restricted.getCpus(0)));
+      Assert.assertEquals("4-5", CpuTopology.toCpuList(restricted.getCpus(1)));
+      Assert.assertEquals(1,
+          topology.restrict(new int[] {12, 13}).getNumNodes());
+    } finally {
+      delete(dir);
+    }
+  }
+
+  @Test
+  public void testDiscoverMissing() {
+    CpuTopology topology =
+        CpuTopology.discover(new File("/nonexistent/harp-node"));
+    Assert.assertEquals(1, topology.getNumNodes());
+    Assert.assertEquals(Runtime.getRuntime().availableProcessors(),
+        topology.getNumCpus());
+  }
+
+  @Test
+  public void testPlaceTasks() {
+    CpuTopology topology = new CpuTopology(
+        new int[][] {{0, 1, 2, 3}, {4, 5, 6, 7}});
+    Assert.assertArrayEquals(new int[] {0, 0, 1, 1},
+        topology.placeTasks(4));
+    Assert.assertArrayEquals(new int[] {0, 0, 0, 1, 1, 1},
+        topology.placeTasks(6));
+    Assert.assertArrayEquals(new int[] {0}, topology.placeTasks(1));
+    // Balanced by the number of CPUs
+    CpuTopology uneven = new CpuTopology(
+        new int[][] {{0, 1, 2, 3, 4, 5}, {6, 7}});
+    Assert.assertArrayEquals(new int[] {0, 0, 0, 1},
+        uneven.placeTasks(4));
+  }
+
+  @Test
+  public void testBind() throws InterruptedException {
+    Assume.assumeTrue(ThreadAffinity.getThreadID() > 0);
+    int[] cpus = ThreadAffinity.get().getTopology().getCpus(0);
+    // Fails without taskset, but never throws
+    Thread thread = new Thread(() -> ThreadAffinity.get().bind(cpus));
+    thread.start();
+    thread.join();
+  }
+
+  private static void writeCpuList(File dir, String node, String cpuList)
+      throws IOException {
+    File nodeDir = new File(dir, node);
+    nodeDir.mkdir();
+    Files.write(new File(nodeDir, "cpulist").toPath(),
+        (cpuList + "\n").getBytes(StandardCharsets.US_ASCII));
+  }
+
+  private static void delete(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+}
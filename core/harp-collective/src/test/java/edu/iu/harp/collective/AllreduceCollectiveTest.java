@@ -0,0 +1,136 @@
+package edu.iu.harp.collective;
+
+import edu.iu.harp.partition.Table;
+import edu.iu.harp.resource.DoubleArray;
+import edu.iu.harp.worker.Workers;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class AllreduceCollectiveTest {
+
+  @Test
+  public void testSelectAlgorithm() throws Exception {
+    Workers workers = LocalWorkers.readTestNodes(0);
+
+    Table<DoubleArray> small = LocalWorkers.createTable(0, 4, 16);
+    Assert.assertEquals(AllreduceAlgorithm.RECURSIVE_HALVING,
+        AllreduceCollective.selectAlgorithm(small, workers));
+    // Fewer partitions than workers
+    Table<DoubleArray> single = LocalWorkers.createTable(0, 1, 1 << 20);
+    Assert.assertEquals(AllreduceAlgorithm.RECURSIVE_HALVING,
+        AllreduceCollective.selectAlgorithm(single, workers));
+    Table<DoubleArray> large = LocalWorkers.createTable(0, 4, 1 << 17);
+    Assert.assertEquals(AllreduceAlgorithm.RING,
+        AllreduceCollective.selectAlgorithm(large, workers));
+  }
+
+  @Test
+  public void testRingAllreduce() throws Exception {
+    int numPartitions = 5;
+    int size = 1000;
+    try (LocalWorkers localWorkers = LocalWorkers.fromTestNodes()) {
+      int numWorkers = localWorkers.getNumWorkers();
+      List<Table<DoubleArray>> tables = new ArrayList<>();
+      for (int i = 0; i < numWorkers; i++) {
+        tables.add(LocalWorkers.createTable(i, numPartitions, size));
+      }
+      for (boolean result : localWorkers.runOnEach(
+          (workerID, workers, dataMap) -> AllreduceCollective.allreduce(
+              "ctx", "allreduce", tables.get(workerID), dataMap, workers,
+              AllreduceAlgorithm.RING))) {
+        Assert.assertTrue(result);
+      }
+      for (Table<DoubleArray> table : tables) {
+        Assert.assertEquals(numPartitions, table.getNumPartitions());
+        for (int i = 0; i < numPartitions; i++) {
+          double[] doubles = table.getPartition(i).get().get();
+          Assert.assertEquals(numWorkers, doubles[0], 0);
+          // Sum of (workerID + i) over the workers
+          Assert.assertEquals(1 + 2 * i, doubles[size - 1], 0);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testAutoUnevenTables() throws Exception {
+    int size = 1 << 17;
+    try (LocalWorkers localWorkers = LocalWorkers.fromTestNodes()) {
+      int numWorkers = localWorkers.getNumWorkers();
+      // Worker 0 alone would select RING, worker 1
+      // with a single partition RECURSIVE_HALVING
+      List<Table<DoubleArray>> tables = new ArrayList<>();
+      tables.add(LocalWorkers.createTable(0, 4, size));
+      tables.add(LocalWorkers.createTable(1, 1, size));
+      Assert.assertEquals(AllreduceAlgorithm.RING,
+          AllreduceCollective.selectAlgorithm(tables.get(0),
+              localWorkers.getWorkers(0)));
+      Assert.assertEquals(AllreduceAlgorithm.RECURSIVE_HALVING,
+          AllreduceCollective.selectAlgorithm(tables.get(1),
+              localWorkers.getWorkers(1)));
+      for (boolean result : localWorkers.runOnEach(
+          (workerID, workers, dataMap) -> AllreduceCollective.allreduce(
+              "ctx", "allreduce", tables.get(workerID), dataMap, workers,
+              AllreduceAlgorithm.AUTO))) {
+        Assert.assertTrue(result);
+      }
+      for (int i = 0; i < numWorkers; i++) {
+        Assert.assertEquals(AllreduceAlgorithm.RING,
+            AllreduceCollective.getAgreedAlgorithm("ctx",
+                localWorkers.getWorkers(i)));
+      }
+      for (Table<DoubleArray> table : tables) {
+        Assert.assertEquals(4, table.getNumPartitions());
+        double[] doubles = table.getPartition(0).get().get();
+        Assert.assertEquals(numWorkers, doubles[0], 0);
+        Assert.assertEquals(1, doubles[size - 1], 0);
+        for (int i = 1; i < 4; i++) {
+          doubles = table.getPartition(i).get().get();
+          Assert.assertEquals(1, doubles[0], 0);
+          Assert.assertEquals(i, doubles[size - 1], 0);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testAutoAgreedOncePerContext() throws Exception {
+    try (LocalWorkers localWorkers = LocalWorkers.fromTestNodes()) {
+      int numWorkers = localWorkers.getNumWorkers();
+      // Large tables select RING in the context
+      for (boolean result : localWorkers.runOnEach(
+          (workerID, workers, dataMap) -> AllreduceCollective.allreduce(
+              "ctx-once", "allreduce-0",
+              LocalWorkers.createTable(workerID, 4, 1 << 17), dataMap,
+              workers, AllreduceAlgorithm.AUTO))) {
+        Assert.assertTrue(result);
+      }
+      // Small tables reuse RING without agreeing again
+      List<Table<DoubleArray>> tables = new ArrayList<>();
+      for (int i = 0; i < numWorkers; i++) {
+        tables.add(LocalWorkers.createTable(i, 4, 16));
+      }
+      for (boolean result : localWorkers.runOnEach(
+          (workerID, workers, dataMap) -> AllreduceCollective.allreduce(
+              "ctx-once", "allreduce-1", tables.get(workerID), dataMap,
+              workers, AllreduceAlgorithm.AUTO))) {
+        Assert.assertTrue(result);
+      }
+      for (int i = 0; i < numWorkers; i++) {
+        Assert.assertEquals(AllreduceAlgorithm.RING,
+            AllreduceCollective.getAgreedAlgorithm("ctx-once",
+                localWorkers.getWorkers(i)));
+      }
+      for (Table<DoubleArray> table : tables) {
+        for (int i = 0; i < 4; i++) {
+          double[] doubles = table.getPartition(i).get().get();
+          Assert.assertEquals(numWorkers, doubles[0], 0);
+          Assert.assertEquals(1 + 2 * i, doubles[15], 0);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,88 @@
+package edu.iu.harp.collective;
+
+import edu.iu.harp.io.DataMap;
+import edu.iu.harp.partition.Table;
+import edu.iu.harp.resource.DoubleArray;
+import edu.iu.harp.worker.Workers;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+
+public class AsyncCollectiveTest {
+
+  @Test
+  public void testConcurrentAllreduce() throws Exception {
+    int numPartitions = 3;
+    int size = 1000;
+    try (LocalWorkers localWorkers = LocalWorkers.fromTestNodes()) {
+      int numWorkers = localWorkers.getNumWorkers();
+      List<AsyncCollective> asyncs = new ArrayList<>();
+      List<Table<DoubleArray>> tables = new ArrayList<>();
+      List<CompletableFuture<Boolean>> results = new ArrayList<>();
+      for (int i = 0; i < numWorkers; i++) {
+        Workers workers = localWorkers.getWorkers(i);
+        DataMap dataMap = localWorkers.getDataMap(i);
+        AsyncCollective async = new AsyncCollective(dataMap, 2);
+        asyncs.add(async);
+        // Two operations in flight on each worker
+        for (String operationName : new String[] {"a", "b"}) {
+          Table<DoubleArray> table =
+              LocalWorkers.createTable(i, numPartitions, size);
+          tables.add(table);
+          results.add(async.submit("ctx", operationName,
+              () -> AllreduceCollective.allreduce("ctx", operationName,
+                  table, dataMap, workers,
+                  AllreduceAlgorithm.RECURSIVE_HALVING)));
+        }
+      }
+      for (CompletableFuture<Boolean> result : results) {
+        Assert.assertTrue(result.get());
+      }
+      for (Table<DoubleArray> table : tables) {
+        for (int i = 0; i < numPartitions; i++) {
+          double[] doubles = table.getPartition(i).get().get();
+          Assert.assertEquals(numWorkers, doubles[0], 0);
+          Assert.assertEquals(1 + 2 * i, doubles[size - 1], 0);
+        }
+      }
+      for (AsyncCollective async : asyncs) {
+        async.shutdown();
+      }
+    }
+  }
+
+  @Test
+  public void testSameOperationName() throws Exception {
+    DataMap dataMap = new DataMap();
+    AsyncCollective async = new AsyncCollective(dataMap, 2);
+    CountDownLatch latch = new CountDownLatch(1);
+    CompletableFuture<Boolean> first = async.submit("ctx", "op", () -> {
+      try {
+        latch.await();
+      } catch (InterruptedException e) {
+        return false;
+      }
+      return true;
+    });
+    Assert.assertFalse(first.isDone());
+    Assert.assertTrue(dataMap.isOperationActive("ctx", "op"));
+    CompletableFuture<Boolean> second =
+        async.submit("ctx", "op", () -> true);
+    try {
+      second.get();
+      Assert.fail("Run two operations with the same names");
+    } catch (ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+    latch.countDown();
+    Assert.assertTrue(first.get());
+    Assert.assertFalse(dataMap.isOperationActive("ctx", "op"));
+    Assert.assertTrue(async.submit("ctx", "op", () -> true).get());
+    async.shutdown();
+  }
+}
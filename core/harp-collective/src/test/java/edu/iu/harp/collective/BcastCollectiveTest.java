@@ -0,0 +1,89 @@
+package edu.iu.harp.collective;
+
+import edu.iu.harp.client.DataTreeBcastSender;
+import edu.iu.harp.example.DoubleArrPlus;
+import edu.iu.harp.io.Constant;
+import edu.iu.harp.partition.Partition;
+import edu.iu.harp.partition.Table;
+import edu.iu.harp.resource.DoubleArray;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class BcastCollectiveTest {
+
+  @Test
+  public void testChildIDs() {
+    for (int numWorkers = 1; numWorkers <= 9; numWorkers++) {
+      for (int rootID = 0; rootID < numWorkers; rootID++) {
+        int[] numParents = new int[numWorkers];
+        for (int i = 0; i < numWorkers; i++) {
+          for (int childID : DataTreeBcastSender.getChildIDs(i, rootID, 0,
+              numWorkers - 1)) {
+            numParents[childID]++;
+          }
+        }
+        for (int i = 0; i < numWorkers; i++) {
+          Assert.assertEquals(i == rootID ? 0 : 1, numParents[i]);
+        }
+      }
+    }
+    Assert.assertArrayEquals(new int[] {3, 4},
+        DataTreeBcastSender.getChildIDs(2, 2, 0, 4));
+    Assert.assertArrayEquals(new int[] {0, 1},
+        DataTreeBcastSender.getChildIDs(3, 2, 0, 4));
+    Assert.assertEquals(0, DataTreeBcastSender.getChildIDs(4, 2, 0, 4).length);
+  }
+
+  @Test
+  public void testSelectAlgorithm() {
+    Assert.assertEquals(BcastAlgorithm.MST,
+        BcastCollective.selectAlgorithm(1000, 100));
+    Assert.assertEquals(BcastAlgorithm.PIPELINED_TREE,
+        BcastCollective.selectAlgorithm(10L * Constant.PIPELINE_SIZE, 100));
+    Assert.assertEquals(BcastAlgorithm.CHAIN,
+        BcastCollective.selectAlgorithm(10L * Constant.PIPELINE_SIZE, 8));
+  }
+
+  @Test
+  public void testPipelinedTreeBcast() throws Exception {
+    int numWorkers = 5;
+    int numPartitions = 3;
+    // Each partition spans several chunks
+    int size = 100000;
+    int rootID = 2;
+    try (LocalWorkers localWorkers = LocalWorkers.onLocalhost(numWorkers)) {
+      List<Table<DoubleArray>> tables = new ArrayList<>();
+      for (int i = 0; i < numWorkers; i++) {
+        Table<DoubleArray> table = new Table<>(0, new DoubleArrPlus());
+        if (i == rootID) {
+          for (int j = 0; j < numPartitions; j++) {
+            DoubleArray array = new DoubleArray(new double[size], 0, size);
+            for (int k = 0; k < size; k++) {
+              array.get()[k] = j * size + k;
+            }
+            table.addPartition(new Partition<>(j, array));
+          }
+        }
+        tables.add(table);
+      }
+      for (boolean result : localWorkers.runOnEach(
+          (workerID, workers, dataMap) -> BcastCollective.broadcast("ctx",
+              "bcast", tables.get(workerID), rootID,
+              BcastAlgorithm.PIPELINED_TREE, dataMap, workers))) {
+        Assert.assertTrue(result);
+      }
+      for (Table<DoubleArray> table : tables) {
+        Assert.assertEquals(numPartitions, table.getNumPartitions());
+        for (int j = 0; j < numPartitions; j++) {
+          double[] doubles = table.getPartition(j).get().get();
+          for (int k = 0; k < size; k++) {
+            Assert.assertEquals(j * size + k, doubles[k], 0);
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,62 @@
+package edu.iu.harp.collective;
+
+import edu.iu.harp.partition.Table;
+import edu.iu.harp.resource.DoubleArray;
+import edu.iu.harp.worker.Workers;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class HierarchicalCollectiveTest {
+
+  @Test
+  public void testGetGroups() throws Exception {
+    Workers workers = LocalWorkers.readTestNodes(0);
+
+    // Two racks with one worker each
+    List<IntArrayList> racks =
+        HierarchicalCollective.getGroups(workers, HierarchyLevel.RACK);
+    Assert.assertEquals(2, racks.size());
+    Assert.assertEquals(0, racks.get(0).getInt(0));
+    Assert.assertEquals(1, racks.get(1).getInt(0));
+    // Both workers are on the same host
+    List<IntArrayList> nodes =
+        HierarchicalCollective.getGroups(workers, HierarchyLevel.NODE);
+    Assert.assertEquals(1, nodes.size());
+    Assert.assertEquals(2, nodes.get(0).size());
+  }
+
+  @Test
+  public void testAllreduce() throws Exception {
+    int numPartitions = 3;
+    int size = 100;
+    try (LocalWorkers localWorkers = LocalWorkers.fromTestNodes()) {
+      int numWorkers = localWorkers.getNumWorkers();
+      // Across the rack leaders, then within the node
+      for (HierarchyLevel level : HierarchyLevel.values()) {
+        String operationName = "allreduce-" + level;
+        List<Table<DoubleArray>> tables = new ArrayList<>();
+        for (int i = 0; i < numWorkers; i++) {
+          tables.add(LocalWorkers.createTable(i, numPartitions, size));
+        }
+        for (boolean result : localWorkers.runOnEach(
+            (workerID, workers, dataMap) -> HierarchicalCollective.allreduce(
+                "ctx", operationName, tables.get(workerID), level, dataMap,
+                workers))) {
+          Assert.assertTrue(result);
+        }
+        for (Table<DoubleArray> table : tables) {
+          Assert.assertEquals(numPartitions, table.getNumPartitions());
+          for (int j = 0; j < numPartitions; j++) {
+            double[] doubles = table.getPartition(j).get().get();
+            Assert.assertEquals(numWorkers, doubles[0], 0);
+            Assert.assertEquals(1 + 2 * j, doubles[size - 1], 0);
+          }
+        }
+      }
+    }
+  }
+}
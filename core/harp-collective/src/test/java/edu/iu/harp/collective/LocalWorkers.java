@@ -0,0 +1,150 @@
+package edu.iu.harp.collective;
+
+import edu.iu.harp.example.DoubleArrPlus;
+import edu.iu.harp.io.ConnPool;
+import edu.iu.harp.io.DataMap;
+import edu.iu.harp.io.EventQueue;
+import edu.iu.harp.partition.Partition;
+import edu.iu.harp.partition.Table;
+import edu.iu.harp.resource.DoubleArray;
+import edu.iu.harp.server.Server;
+import edu.iu.harp.worker.Workers;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Workers in this JVM for the tests of the collectives. Each worker has
+ * its own DataMap and a started Server. Closing stops the servers and
+ * cleans the connection pool.
+ */
+class LocalWorkers implements AutoCloseable {
+
+  /** The work of one worker */
+  interface Task<T> {
+    T call(int workerID, Workers workers, DataMap dataMap) throws Exception;
+  }
+
+  private final List<Workers> workersList = new ArrayList<>();
+  private final List<DataMap> dataMaps = new ArrayList<>();
+  private final List<Server> servers = new ArrayList<>();
+
+  /**
+   * Read the test_nodes resource, two workers in two racks on the same
+   * host, without starting a server
+   */
+  static Workers readTestNodes(int workerID) throws Exception {
+    return new Workers(new BufferedReader(new FileReader(getTestNodes())),
+        workerID);
+  }
+
+  /** Start the workers of the test_nodes resource */
+  static LocalWorkers fromTestNodes() throws Exception {
+    LocalWorkers localWorkers = new LocalWorkers();
+    do {
+      localWorkers.start(new FileReader(getTestNodes()),
+          localWorkers.getNumWorkers());
+    } while (localWorkers.getNumWorkers()
+        < localWorkers.getWorkers(0).getNumWorkers());
+    return localWorkers;
+  }
+
+  private static File getTestNodes() {
+    return new File(Objects.requireNonNull(
+        LocalWorkers.class.getClassLoader().getResource("test_nodes"))
+        .getFile());
+  }
+
+  /** Start the workers on 127.0.0.1 in one rack */
+  static LocalWorkers onLocalhost(int numWorkers) throws Exception {
+    StringBuilder nodes = new StringBuilder("#0\n");
+    for (int i = 0; i < numWorkers; i++) {
+      nodes.append("127.0.0.1\n");
+    }
+    LocalWorkers localWorkers = new LocalWorkers();
+    for (int i = 0; i < numWorkers; i++) {
+      localWorkers.start(new StringReader(nodes.toString()), i);
+    }
+    return localWorkers;
+  }
+
+  private void start(Reader nodes, int workerID) throws Exception {
+    Workers workers = new Workers(new BufferedReader(nodes), workerID);
+    DataMap dataMap = new DataMap();
+    Server server = new Server(workers.getSelfInfo().getNode(),
+        workers.getSelfInfo().getPort(), new EventQueue(), dataMap, workers);
+    server.start();
+    workersList.add(workers);
+    dataMaps.add(dataMap);
+    servers.add(server);
+  }
+
+  int getNumWorkers() {
+    return workersList.size();
+  }
+
+  Workers getWorkers(int workerID) {
+    return workersList.get(workerID);
+  }
+
+  DataMap getDataMap(int workerID) {
+    return dataMaps.get(workerID);
+  }
+
+  /**
+   * Run the task on all the workers at the same time
+   *
+   * @return the results in the order of the worker IDs
+   */
+  <T> List<T> runOnEach(Task<T> task) throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(getNumWorkers());
+    try {
+      List<Future<T>> futures = new ArrayList<>();
+      for (int i = 0; i < getNumWorkers(); i++) {
+        int workerID = i;
+        futures.add(executor.submit(() -> task.call(workerID,
+            workersList.get(workerID), dataMaps.get(workerID))));
+      }
+      List<T> results = new ArrayList<>();
+      for (Future<T> future : futures) {
+        results.add(future.get());
+      }
+      return results;
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Create a table whose partition i holds 1 first and workerID + i last,
+   * so that the sums tell how many workers and which ones took part
+   */
+  static Table<DoubleArray> createTable(int workerID, int numPartitions,
+                                        int size) {
+    Table<DoubleArray> table = new Table<>(0, new DoubleArrPlus());
+    for (int i = 0; i < numPartitions; i++) {
+      DoubleArray array = new DoubleArray(new double[size], 0, size);
+      array.get()[0] = 1;
+      array.get()[size - 1] = workerID + i;
+      table.addPartition(new Partition<>(i, array));
+    }
+    return table;
+  }
+
+  @Override
+  public void close() {
+    ConnPool.get().clean();
+    for (Server server : servers) {
+      server.stop();
+    }
+  }
+}
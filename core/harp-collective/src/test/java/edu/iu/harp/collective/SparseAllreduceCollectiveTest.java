@@ -0,0 +1,60 @@
+package edu.iu.harp.collective;
+
+import edu.iu.harp.keyval.Int2IntKVTable;
+import edu.iu.harp.keyval.Long2DoubleKVTable;
+import edu.iu.harp.keyval.TypeDoubleCombiner;
+import edu.iu.harp.keyval.TypeIntCombiner;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class SparseAllreduceCollectiveTest {
+
+  @Test
+  public void testAllreduce() throws Exception {
+    try (LocalWorkers localWorkers = LocalWorkers.fromTestNodes()) {
+      int numWorkers = localWorkers.getNumWorkers();
+      List<Long2DoubleKVTable> doubleTables = new ArrayList<>();
+      List<Int2IntKVTable> intTables = new ArrayList<>();
+      for (int i = 0; i < numWorkers; i++) {
+        // Worker 0 touches every 20th key below 100, worker 1 touches
+        // all of them, which makes its int block dense
+        Long2DoubleKVTable doubleTable =
+            new Long2DoubleKVTable(0, new TypeDoubleCombiner());
+        Int2IntKVTable intTable = new Int2IntKVTable(1, new TypeIntCombiner());
+        for (int key = 0; key < 100; key += (i == 0 ? 20 : 1)) {
+          doubleTable.addKeyVal(key, 0.5);
+          intTable.addKeyVal(key, 1);
+        }
+        doubleTable.addKeyVal(1000000L * (i + 1), 1.0);
+        doubleTables.add(doubleTable);
+        intTables.add(intTable);
+      }
+      for (boolean result : localWorkers.runOnEach(
+          (workerID, workers, dataMap) -> SparseAllreduceCollective.allreduce(
+              "ctx", "sparse-double", doubleTables.get(workerID), dataMap,
+              workers)
+              && SparseAllreduceCollective.allreduce(
+              "ctx", "sparse-int", intTables.get(workerID), dataMap,
+              workers))) {
+        Assert.assertTrue(result);
+      }
+
+      for (int i = 0; i < numWorkers; i++) {
+        Long2DoubleKVTable doubleTable = doubleTables.get(i);
+        Int2IntKVTable intTable = intTables.get(i);
+        Assert.assertEquals(102, doubleTable.getNumPartitions());
+        Assert.assertEquals(100, intTable.getNumPartitions());
+        for (int key = 0; key < 100; key++) {
+          int count = key % 20 == 0 ? 2 : 1;
+          Assert.assertEquals(0.5 * count, doubleTable.getVal(key), 0.0);
+          Assert.assertEquals(count, intTable.getVal(key));
+        }
+        Assert.assertEquals(1.0, doubleTable.getVal(1000000L), 0.0);
+        Assert.assertEquals(1.0, doubleTable.getVal(2000000L), 0.0);
+      }
+    }
+  }
+}
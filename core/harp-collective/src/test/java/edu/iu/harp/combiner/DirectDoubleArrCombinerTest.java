@@ -0,0 +1,52 @@
+package edu.iu.harp.combiner;
+
+import edu.iu.harp.resource.DirectDoubleArray;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DirectDoubleArrCombinerTest {
+
+  private DirectDoubleArray createArr(int length, double value) {
+    DirectDoubleArray array = DirectDoubleArray.create(length, false);
+    for (int i = 0; i < length; i++) {
+      array.set(i, value + i);
+    }
+    return array;
+  }
+
+  @Test
+  public void testCombineSUM() {
+    DirectDoubleArrCombiner combiner =
+        new DirectDoubleArrCombiner(Operation.SUM);
+
+    int length = 128;
+    DirectDoubleArray a1 = createArr(length, 1);
+    DirectDoubleArray a2 = createArr(length, 2);
+
+    combiner.combine(a1, a2);
+
+    for (int i = 0; i < length; i++) {
+      Assert.assertEquals(3 + 2 * i, a1.get(i), 0.00001);
+    }
+    a1.release();
+    a2.release();
+  }
+
+  @Test
+  public void testCombineMAX() {
+    DirectDoubleArrCombiner combiner =
+        new DirectDoubleArrCombiner(Operation.MAX);
+
+    int length = 128;
+    DirectDoubleArray a1 = createArr(length, 1);
+    DirectDoubleArray a2 = createArr(length, 2);
+
+    combiner.combine(a1, a2);
+
+    for (int i = 0; i < length; i++) {
+      Assert.assertEquals(2 + i, a1.get(i), 0.00001);
+    }
+    a1.release();
+    a2.release();
+  }
+}
@@ -90,6 +90,36 @@ public class DoubleArrCombinerTest {
     }
   }
 
+  @Test
+  public void testCombineLarge() {
+    // Combined in parallel ranges
+    int length = ArrayCombine.PARALLEL_THRESHOLD * 2 + 3;
+    DoubleArray a1 = new DoubleArray(createArr(length, (double) 1), 0, length);
+    DoubleArray a2 = new DoubleArray(createArr(length, (double) 2), 0, length);
+    a2.get()[length - 1] = 5;
+
+    new DoubleArrCombiner(Operation.SUM).combine(a1, a2);
+
+    for (int i = 0; i < length - 1; i++) {
+      Assert.assertEquals((double) 3, a1.get()[i], 0.00001);
+    }
+    Assert.assertEquals((double) 6, a1.get()[length - 1], 0.00001);
+  }
+
+  @Test
+  public void testCombineMAXWithNaN() {
+    DoubleArrCombiner combiner = new DoubleArrCombiner(Operation.MAX);
+
+    DoubleArray a1 = new DoubleArray(new double[] {Double.NaN, 1}, 0, 2);
+    DoubleArray a2 = new DoubleArray(new double[] {1, Double.NaN}, 0, 2);
+
+    combiner.combine(a1, a2);
+
+    // NaN in the new array is ignored as before
+    Assert.assertTrue(Double.isNaN(a1.get()[0]));
+    Assert.assertEquals((double) 1, a1.get()[1], 0.00001);
+  }
+
   private double[] createArr(int length, double val) {
     double[] b = new double[length];
     for (int i = 0; i < length; i++) {
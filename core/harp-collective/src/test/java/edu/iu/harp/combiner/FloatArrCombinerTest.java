@@ -0,0 +1,100 @@
+package edu.iu.harp.combiner;
+
+import edu.iu.harp.resource.FloatArray;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class FloatArrCombinerTest {
+  private Random random;
+
+  @Before
+  public void setUp() throws Exception {
+    random = new Random();
+  }
+
+  @Test
+  public void testCombineSUM() {
+    FloatArrCombiner combiner = new FloatArrCombiner(Operation.SUM);
+
+    int length = 128;
+    FloatArray a1 = new FloatArray(createArr(length, (float) 1), 0, length);
+    FloatArray a2 = new FloatArray(createArr(length, (float) 2), 0, length);
+
+    combiner.combine(a1, a2);
+
+    for (int i = 0; i < length; i++) {
+      Assert.assertEquals((float)1 + (float)2, a1.get()[i], 0.00001);
+    }
+  }
+
+  @Test
+  public void testCombineMUL() {
+    FloatArrCombiner combiner = new FloatArrCombiner(Operation.MULTIPLY);
+
+    int length = 128;
+    FloatArray a1 = new FloatArray(createArr(length, (float) 1), 0, length);
+    FloatArray a2 = new FloatArray(createArr(length, (float) 2), 0, length);
+
+    combiner.combine(a1, a2);
+
+    for (int i = 0; i < length; i++) {
+      Assert.assertEquals((float)1 * (float)2, a1.get()[i], 0.00001);
+    }
+  }
+
+  @Test
+  public void testCombineMIN() {
+    FloatArrCombiner combiner = new FloatArrCombiner(Operation.MIN);
+
+    int length = 128;
+    FloatArray a1 = new FloatArray(createArr(length, (float) 1), 0, length);
+    FloatArray a2 = new FloatArray(createArr(length, (float) 2), 0, length);
+
+    combiner.combine(a1, a2);
+
+    for (int i = 0; i < length; i++) {
+      Assert.assertEquals((byte)1, a1.get()[i], 0.00001);
+    }
+  }
+
+  @Test
+  public void testCombineMAX() {
+    FloatArrCombiner combiner = new FloatArrCombiner(Operation.MAX);
+
+    int length = 128;
+    FloatArray a1 = new FloatArray(createArr(length, (float) 1), 0, length);
+    FloatArray a2 = new FloatArray(createArr(length, (float) 2), 0, length);
+
+    combiner.combine(a1, a2);
+
+    for (int i = 0; i < length; i++) {
+      Assert.assertEquals((byte)2, a1.get()[i], 0.00001);
+    }
+  }
+
+  @Test
+  public void testCombineMINUS() {
+    FloatArrCombiner combiner = new FloatArrCombiner(Operation.MINUS);
+
+    int length = 128;
+    FloatArray a1 = new FloatArray(createArr(length, (float) 1), 0, length);
+    FloatArray a2 = new FloatArray(createArr(length, (float) 2), 0, length);
+
+    combiner.combine(a1, a2);
+
+    for (int i = 0; i < length; i++) {
+      Assert.assertEquals((byte)-1, a1.get()[i], 0.00001);
+    }
+  }
+
+  private float[] createArr(int length, float val) {
+    float[] b = new float[length];
+    for (int i = 0; i < length; i++) {
+      b[i] = val;
+    }
+    return b;
+  }
+}
@@ -0,0 +1,147 @@
+package edu.iu.harp.io;
+
+import edu.iu.harp.partition.Partition;
+import edu.iu.harp.resource.ByteArray;
+import edu.iu.harp.resource.DoubleArray;
+import edu.iu.harp.resource.Transferable;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+public class CompressionTest {
+
+  private ByteArray createDoubles(int numDoubles) {
+    ByteArray raw = ByteArray.create(numDoubles * 8 + 3, false);
+    Serializer serializer = new Serializer(raw);
+    Random random = new Random(7);
+    try {
+      for (int i = 0; i < numDoubles; i++) {
+        // Few distinct values, like counts
+        serializer.writeDouble(random.nextInt(16) * 0.5);
+      }
+      serializer.writeByte(1);
+      serializer.writeShort(2);
+    } catch (IOException e) {
+      Assert.fail(e.getMessage());
+    }
+    return raw;
+  }
+
+  @Test
+  public void testLzRoundTrip() throws Exception {
+    byte[] bytes = new byte[100000];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) ((i / 7) % 13);
+    }
+    byte[] compressed = new byte[LzCodec.maxCompressedLength(bytes.length)];
+    int len = LzCodec.compress(bytes, 0, bytes.length, compressed, 0);
+    Assert.assertTrue(len < bytes.length / 10);
+    byte[] decompressed = new byte[bytes.length];
+    LzCodec.decompress(compressed, 0, len, decompressed, 0, bytes.length);
+    Assert.assertArrayEquals(bytes, decompressed);
+
+    // Random bytes and tiny inputs are kept as literals
+    new Random(1).nextBytes(bytes);
+    for (int size : new int[] {0, 1, 12, 13, 1000, bytes.length}) {
+      len = LzCodec.compress(bytes, 0, size, compressed, 0);
+      Assert.assertTrue(len <= LzCodec.maxCompressedLength(size));
+      byte[] out = new byte[size];
+      LzCodec.decompress(compressed, 0, len, out, 0, size);
+      for (int i = 0; i < size; i++) {
+        Assert.assertEquals(bytes[i], out[i]);
+      }
+    }
+  }
+
+  @Test
+  public void testShuffleRoundTrip() throws Exception {
+    Compression compression = Compression.get();
+    ByteArray raw = createDoubles(10000);
+    ByteArray lz = compression.compress(raw, Codec.LZ);
+    ByteArray shuffleLz = compression.compress(raw, Codec.SHUFFLE_LZ);
+    Assert.assertNotNull(lz);
+    Assert.assertNotNull(shuffleLz);
+    Assert.assertTrue(shuffleLz.size() < lz.size());
+    for (ByteArray compressed : new ByteArray[] {lz, shuffleLz}) {
+      ByteArray decompressed = compression.decompress(compressed);
+      Assert.assertEquals(raw.size(), decompressed.size());
+      for (int i = 0; i < raw.size(); i++) {
+        Assert.assertEquals(raw.get()[i], decompressed.get()[i]);
+      }
+      decompressed.release();
+      compressed.release();
+    }
+    Assert.assertTrue(compression.getRatio() > 1.0);
+    raw.release();
+  }
+
+  @Test
+  public void testCorrupted() {
+    ByteArray raw = createDoubles(10000);
+    ByteArray compressed = Compression.get().compress(raw, Codec.LZ);
+    Assert.assertNotNull(compressed);
+    compressed.get()[4]++;
+    try {
+      Compression.get().decompress(compressed);
+      Assert.fail("Decompress with a wrong size");
+    } catch (IOException e) {
+    }
+    compressed.release();
+    raw.release();
+  }
+
+  @Test
+  public void testDataBody() {
+    Compression compression = Compression.get();
+    DoubleArray array = DoubleArray.create(100000, false);
+    for (int i = 0; i < array.size(); i++) {
+      array.get()[i] = i % 10;
+    }
+    List<Transferable> partitions = new LinkedList<>();
+    partitions.add(new Partition<>(5, array));
+    int size = DataUtil.getNumTransListBytes(partitions);
+    Data data = new Data(DataType.PARTITION_LIST, "context", 0,
+        partitions, size, "allreduce");
+
+    compression.setDefaultCodec(Codec.SHUFFLE_LZ);
+    compression.setCodec("allreduce", Codec.LZ);
+    compression.setThreshold(size + 1);
+    Assert.assertEquals(Codec.NONE, compression.getCodec(data));
+    compression.setThreshold(Compression.DEFAULT_THRESHOLD);
+    Assert.assertEquals(Codec.LZ, compression.getCodec(data));
+    compression.setCodec("allreduce", null);
+    Assert.assertEquals(Codec.SHUFFLE_LZ, compression.getCodec(data));
+    compression.setDefaultCodec(Codec.NONE);
+
+    data.encodeBody();
+    Assert.assertTrue(data.compressBody(Codec.SHUFFLE_LZ));
+    Assert.assertTrue(data.getBodySize() < size);
+    data.encodeHead();
+
+    // Receive the arrays as they are sent
+    Data received = new Data(data.getHeadArray(), data.getBodyArray());
+    received.decodeHeadArray();
+    Assert.assertTrue(received.isBodyCompressed());
+    Assert.assertEquals(DataType.PARTITION_LIST, received.getBodyType());
+    received.decodeBodyArray();
+    Assert.assertEquals(DataStatus.ENCODED_ARRAY_DECODED,
+        received.getBodyStatus());
+    Assert.assertFalse(received.isBodyCompressed());
+    Assert.assertEquals(size, received.getBodySize());
+    Partition<DoubleArray> partition =
+        (Partition<DoubleArray>) received.getBody().get(0);
+    Assert.assertEquals(5, partition.id());
+    Assert.assertEquals(9.0, partition.get().get()[99999], 0.0);
+
+    // The head array now describes the raw body
+    Data forwarded = new Data(received.getHeadArray());
+    forwarded.decodeHeadArray(false);
+    Assert.assertFalse(forwarded.isBodyCompressed());
+    Assert.assertEquals(size, forwarded.getBodySize());
+    received.release();
+  }
+}
@@ -6,7 +6,9 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class DataTest {
   @Test
@@ -137,4 +139,215 @@ public class DataTest {
     Data encodedData = new Data(data.getHeadArray(), data.getBodyArray());
     encodedData.decodeHeadArray();
   }
+
+  @Test
+  public void testOperationHandle() throws Exception {
+    IntArray intArray = new IntArray(new int[1000], 0, 1000);
+    List<Transferable> transList = new ArrayList<>(1);
+    transList.add(intArray);
+
+    Data data = new Data(DataType.PARTITION_LIST, "a-long-context-name", 3,
+        transList, DataUtil.getNumTransListBytes(transList),
+        "regroup-12", 7);
+    Assert.assertEquals(
+        OperationRegistry.getHandle("a-long-context-name", "regroup-12"),
+        data.getOperationHandle());
+    data.encodeHead();
+    // Type, handle, check, worker ID, body size and partition ID
+    Assert.assertEquals(1 + 8 + 8 + 4 + 4 + 4, data.getHeadArray().size());
+
+    Data received = new Data(data.getHeadArray());
+    received.decodeHeadArray(false);
+    Assert.assertTrue(received.isPartitionData());
+    Assert.assertEquals(DataType.PARTITION_LIST, received.getBodyType());
+    Assert.assertEquals(3, received.getWorkerID());
+    Assert.assertEquals(7, received.getPartitionID());
+    Assert.assertEquals(data.getOperationHandle(),
+        received.getOperationHandle());
+    Assert.assertEquals(data.getOperationKey(), received.getOperationKey());
+    Assert.assertNull(received.getContextName());
+
+    // The names are given when the data is taken by them
+    DataMap dataMap = new DataMap();
+    dataMap.putData(received);
+    Assert.assertNull(dataMap.waitAndGetData("a-long-context-name",
+        "regroup-13", 0));
+    Data taken = dataMap.waitAndGetData("a-long-context-name",
+        "regroup-12", 0);
+    Assert.assertSame(received, taken);
+    Assert.assertEquals("a-long-context-name", taken.getContextName());
+    Assert.assertEquals("regroup-12", taken.getOperationName());
+
+    // Names are sent if the handles are disabled
+    OperationRegistry.setEnabled(false);
+    try {
+      Data named = new Data(DataType.PARTITION_LIST, "ctx", 3, transList,
+          DataUtil.getNumTransListBytes(transList), "op", 7);
+      named.encodeHead();
+      Data namedReceived = new Data(named.getHeadArray());
+      namedReceived.decodeHeadArray(false);
+      Assert.assertEquals("ctx", namedReceived.getContextName());
+      Assert.assertEquals("op", namedReceived.getOperationName());
+      Assert.assertEquals(OperationRegistry.getHandle("ctx", "op"),
+          namedReceived.getOperationHandle());
+    } finally {
+      OperationRegistry.setEnabled(true);
+    }
+  }
+
+  @Test
+  public void testCleanContext() throws Exception {
+    DataMap dataMap = new DataMap();
+    for (String contextName : new String[] {"ctx-1", "ctx-2"}) {
+      for (int i = 0; i < 3; i++) {
+        List<Transferable> transList = new ArrayList<>(1);
+        transList.add(new IntArray(new int[10], 0, 10));
+        dataMap.putData(new Data(DataType.INT_ARRAY, contextName, 0,
+            transList, DataUtil.getNumTransListBytes(transList), "op-" + i));
+      }
+    }
+    dataMap.cleanData("ctx-1");
+    for (int i = 0; i < 3; i++) {
+      Assert.assertNull(dataMap.waitAndGetData("ctx-1", "op-" + i, 0));
+      Assert.assertNotNull(dataMap.waitAndGetData("ctx-2", "op-" + i, 0));
+    }
+  }
+
+  /**
+   * Find two names with the same handle, under the same context or as
+   * contexts of the same operation
+   */
+  private static String[] findCollision(String prefix, boolean isContext) {
+    Map<Long, String> names = new HashMap<>();
+    for (int i = 0; ; i++) {
+      String name = prefix + i;
+      long handle = isContext ? OperationRegistry.getHandle(name, "op")
+          : OperationRegistry.getHandle("ctx", name);
+      String other = names.put(handle, name);
+      if (other != null) {
+        return new String[] {other, name};
+      }
+    }
+  }
+
+  @Test
+  public void testHandleCollision() throws Exception {
+    // The names built per iteration collide in 32-bit hashes
+    String[] operations = findCollision("regroup-", false);
+    Assert.assertEquals(OperationRegistry.getHandle("ctx", operations[0]),
+        OperationRegistry.getHandle("ctx", operations[1]));
+    Assert.assertFalse(OperationKey.of("ctx", operations[0])
+        .equals(OperationKey.of("ctx", operations[1])));
+    DataMap dataMap = new DataMap();
+    Assert.assertNotNull(
+        dataMap.getRegistry().register("ctx", operations[0]));
+    Assert.assertNotNull(
+        dataMap.getRegistry().register("ctx", operations[1]));
+
+    // Routed apart when received with the handle
+    Data[] received = new Data[2];
+    for (int i = 0; i < 2; i++) {
+      Data data = createOpData(operations[i], 10);
+      data.encodeHead();
+      received[i] = new Data(data.getHeadArray());
+      received[i].decodeHeadArray(false);
+      dataMap.putData(received[i]);
+    }
+    Assert.assertSame(received[1],
+        dataMap.waitAndGetData("ctx", operations[1], 0));
+    Assert.assertSame(received[0],
+        dataMap.waitAndGetData("ctx", operations[0], 0));
+
+    // Cleaning a context keeps the data of a colliding context
+    String[] contexts = findCollision("ctx-", true);
+    List<Transferable> transList = new ArrayList<>(1);
+    transList.add(new IntArray(new int[10], 0, 10));
+    dataMap.putData(new Data(DataType.INT_ARRAY, contexts[1], 0,
+        transList, DataUtil.getNumTransListBytes(transList), "op"));
+    dataMap.cleanData(contexts[0]);
+    Assert.assertNotNull(dataMap.waitAndGetData(contexts[1], "op", 0));
+  }
+
+  @Test
+  public void testRegistryPerDataMap() throws Exception {
+    // Two workers in the same JVM
+    DataMap first = new DataMap();
+    DataMap second = new DataMap();
+    Assert.assertNull(first.waitAndGetData("ctx", "op", 0));
+    Assert.assertNull(second.waitAndGetData("ctx", "op", 0));
+    OperationKey key = OperationKey.of("ctx", "op");
+
+    // Cleaning the operation on one keeps the names on the other
+    first.cleanOperationData("ctx", "op");
+    Assert.assertNull(first.getRegistry().getNames(key));
+    Assert.assertArrayEquals(new String[] {"ctx", "op"},
+        second.getRegistry().getNames(key));
+
+    // Registered again by the same strings after cleaning
+    Assert.assertNull(first.waitAndGetData("ctx", "op", 0));
+    Assert.assertArrayEquals(new String[] {"ctx", "op"},
+        first.getRegistry().getNames(key));
+  }
+
+  private static Data createOpData(String operationName, int size) {
+    List<Transferable> transList = new ArrayList<>(1);
+    transList.add(new IntArray(new int[size], 0, size));
+    return new Data(DataType.INT_ARRAY, "ctx", 0, transList,
+        DataUtil.getNumTransListBytes(transList), operationName);
+  }
+
+  @Test
+  public void testQueueLimit() throws Exception {
+    DataMap dataMap = new DataMap();
+    Data first = createOpData("op", 100);
+    long bytes = first.getBodySize();
+    dataMap.setQueueLimit(bytes, 10000L);
+    dataMap.reserve(first);
+    dataMap.putData(first);
+    Assert.assertEquals(bytes, dataMap.getQueuedBytes());
+
+    // The second reserve waits until the first data is taken
+    Data second = createOpData("op", 100);
+    Thread receiver = new Thread(() -> {
+      dataMap.reserve(second);
+      dataMap.putData(second);
+    });
+    receiver.start();
+    Thread.sleep(200);
+    Assert.assertTrue(receiver.isAlive());
+    Assert.assertEquals(1, dataMap.getNumBlocked());
+
+    Assert.assertSame(first, dataMap.waitAndGetData("ctx", "op", 1));
+    receiver.join(5000);
+    Assert.assertFalse(receiver.isAlive());
+    Assert.assertSame(second, dataMap.waitAndGetData("ctx", "op", 1));
+    Assert.assertEquals(0, dataMap.getQueuedBytes());
+    Assert.assertEquals(bytes, dataMap.getPeakQueuedBytes());
+    Assert.assertEquals(0, dataMap.getNumOverflows());
+    Assert.assertTrue(dataMap.getBlockedNanos() > 0);
+
+    // Other operations are not limited by this queue
+    dataMap.putData(createOpData("op", 100));
+    Data other = createOpData("other", 100);
+    dataMap.reserve(other);
+    Assert.assertEquals(1, dataMap.getNumBlocked());
+    Assert.assertEquals(2 * bytes, dataMap.getQueuedBytes());
+  }
+
+  @Test
+  public void testQueueOverflow() throws Exception {
+    DataMap dataMap = new DataMap();
+    dataMap.setQueueLimit(1, 100L);
+    dataMap.putData(createOpData("op", 100));
+    Data data = createOpData("op", 100);
+    long start = System.currentTimeMillis();
+    dataMap.reserve(data);
+    Assert.assertTrue(System.currentTimeMillis() - start >= 90);
+    Assert.assertEquals(1, dataMap.getNumOverflows());
+    dataMap.putData(data);
+    Assert.assertEquals(2 * data.getBodySize(), dataMap.getQueuedBytes());
+
+    dataMap.clean();
+    Assert.assertEquals(0, dataMap.getQueuedBytes());
+  }
 }
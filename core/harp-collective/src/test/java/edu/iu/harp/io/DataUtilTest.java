@@ -1,12 +1,18 @@
 package edu.iu.harp.io;
 
+import edu.iu.harp.partition.Partition;
 import edu.iu.harp.resource.ByteArray;
 import edu.iu.harp.resource.DoubleArray;
+import edu.iu.harp.resource.IntArray;
 import edu.iu.harp.resource.ShortArray;
+import edu.iu.harp.resource.Transferable;
+import edu.iu.harp.util.Ack;
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.nio.ByteBuffer;
+import java.util.LinkedList;
+import java.util.List;
 
 public class DataUtilTest {
 
@@ -77,4 +83,52 @@ public class DataUtilTest {
       Assert.assertEquals((double) i, ret[i], .0000001);
     }
   }
+
+  @Test
+  public void testDecodePartitionListInParallel() {
+    ReceivePool.get().setNumThreads(4);
+    List<Transferable> partitions = new LinkedList<>();
+    for (int i = 0; i < 64; i++) {
+      double[] doubles = new double[4096];
+      doubles[4095] = i;
+      partitions.add(new Partition<>(i, new DoubleArray(doubles, 0, 4096)));
+      partitions.add(new Partition<>(100 + i, new IntArray(new int[] {i}, 0, 1)));
+    }
+    ByteArray byteArray = DataUtil.encodeTransList(partitions);
+    Assert.assertTrue(byteArray.size() >= DataUtil.PARALLEL_DECODE_BYTES);
+    int[] offsets = DataUtil.getPartitionOffsets(byteArray);
+    Assert.assertEquals(129, offsets.length);
+    Assert.assertEquals(byteArray.start() + byteArray.size(), offsets[128]);
+
+    List<Transferable> decoded = DataUtil.decodePartitionList(byteArray);
+    Assert.assertEquals(128, decoded.size());
+    int i = 0;
+    for (Transferable obj : decoded) {
+      Partition<?> partition = (Partition<?>) obj;
+      if (i % 2 == 0) {
+        Assert.assertEquals(i / 2, partition.id());
+        Assert.assertEquals(i / 2,
+            ((DoubleArray) partition.get()).get()[4095], 0.0);
+      } else {
+        Assert.assertEquals(100 + i / 2, partition.id());
+        Assert.assertEquals(i / 2, ((IntArray) partition.get()).get()[0]);
+      }
+      i++;
+    }
+    DataUtil.releaseTransList(decoded);
+    byteArray.release();
+  }
+
+  @Test
+  public void testPartitionOffsetsWithWritable() {
+    List<Transferable> partitions = new LinkedList<>();
+    partitions.add(new Partition<>(0, new IntArray(new int[] {1}, 0, 1)));
+    partitions.add(new Partition<>(1, new Ack()));
+    ByteArray byteArray = DataUtil.encodeTransList(partitions);
+    // The length of a Writable is unknown
+    Assert.assertNull(DataUtil.getPartitionOffsets(byteArray));
+    List<Transferable> decoded = DataUtil.decodePartitionList(byteArray);
+    Assert.assertEquals(2, decoded.size());
+    byteArray.release();
+  }
 }
@@ -54,5 +54,42 @@ public class DeserializerTest {
     }
   }
 
+  @Test
+  public void testBulkReadMatchesScalar() throws IOException {
+    byte[] b = new byte[64];
+    Serializer serializer = new Serializer(b, 0, 64);
+    serializer.writeDouble(-2.5);
+    serializer.writeLong(Long.MIN_VALUE);
+    serializer.writeInt(42);
+    serializer.writeFloat(0.75f);
+    serializer.writeShort(-9);
+    Deserializer deserializer = new Deserializer(b, 0, 64);
+    double[] doubles = new double[2];
+    deserializer.readDoubles(doubles, 1, 1);
+    long[] longs = new long[1];
+    deserializer.readLongs(longs, 0, 1);
+    int[] ints = new int[1];
+    deserializer.readInts(ints, 0, 1);
+    float[] floats = new float[1];
+    deserializer.readFloats(floats, 0, 1);
+    short[] shorts = new short[1];
+    deserializer.readShorts(shorts, 0, 1);
+    Assert.assertEquals(-2.5, doubles[1], 0.0);
+    Assert.assertEquals(Long.MIN_VALUE, longs[0]);
+    Assert.assertEquals(42, ints[0]);
+    Assert.assertEquals(0.75f, floats[0], 0.0f);
+    Assert.assertEquals(-9, shorts[0]);
+    Assert.assertEquals(serializer.getPos(), deserializer.getPos());
+  }
 
+  @Test
+  public void testBulkReadOutOfBytes() {
+    Deserializer deserializer = new Deserializer(new byte[12], 0, 12);
+    try {
+      deserializer.readLongs(new long[2], 0, 2);
+      Assert.fail();
+    } catch (IOException e) {
+      Assert.assertEquals(0, deserializer.getPos());
+    }
+  }
 }
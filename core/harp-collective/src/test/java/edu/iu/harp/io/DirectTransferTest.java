@@ -0,0 +1,191 @@
+package edu.iu.harp.io;
+
+import edu.iu.harp.partition.Partition;
+import edu.iu.harp.resource.ByteArray;
+import edu.iu.harp.resource.DirectDoubleArray;
+import edu.iu.harp.resource.DirectIntArray;
+import edu.iu.harp.resource.DoubleArray;
+import edu.iu.harp.resource.IntArray;
+import edu.iu.harp.resource.LongArray;
+import edu.iu.harp.resource.Transferable;
+import edu.iu.harp.resource.Writable;
+import edu.iu.harp.util.PartitionCount;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.util.LinkedList;
+import java.util.List;
+
+public class DirectTransferTest {
+
+  private List<Transferable> createPartitions() {
+    // Larger than one direct buffer
+    DoubleArray doubleArray = DoubleArray.create(100000, false);
+    for (int i = 0; i < doubleArray.size(); i++) {
+      doubleArray.get()[i] = i * 0.5;
+    }
+    IntArray intArray = IntArray.create(10, false);
+    for (int i = 0; i < intArray.size(); i++) {
+      intArray.get()[i] = -i;
+    }
+    LongArray longArray = LongArray.create(3, false);
+    longArray.get()[2] = Long.MAX_VALUE;
+    ByteArray byteArray = new ByteArray(new byte[]{1, 2, 3, 4}, 1, 2);
+    List<Transferable> partitions = new LinkedList<>();
+    partitions.add(new Partition<>(0, doubleArray));
+    partitions.add(new Partition<>(7, intArray));
+    partitions.add(new Partition<>(8, longArray));
+    partitions.add(new Partition<>(9, byteArray));
+    return partitions;
+  }
+
+  @Test
+  public void testSendMatchesEncoding() throws Exception {
+    final List<Transferable> partitions = createPartitions();
+    final int bodySize = DataUtil.getNumTransListBytes(partitions);
+    Data data = new Data(DataType.PARTITION_LIST, "ctx", 0, partitions,
+        bodySize, "op");
+    Assert.assertTrue(DirectTransfer.isDirectBody(data));
+
+    final Pipe pipe = Pipe.open();
+    Thread writer = new Thread(() -> {
+      try {
+        ByteBuffer preamble = ByteBuffer.wrap(new byte[]{5, 6});
+        DirectTransfer.sendPartitionList(pipe.sink(), preamble, partitions);
+        pipe.sink().close();
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    });
+    writer.start();
+    byte[] received = new byte[2 + bodySize];
+    IOUtil.receiveBytes(Channels.newInputStream(pipe.source()), received, 0,
+        received.length);
+    writer.join();
+
+    ByteArray encoded = DataUtil.encodeTransList(partitions);
+    Assert.assertEquals(5, received[0]);
+    Assert.assertEquals(6, received[1]);
+    for (int i = 0; i < bodySize; i++) {
+      Assert.assertEquals(encoded.get()[i], received[i + 2]);
+    }
+    encoded.release();
+  }
+
+  @Test
+  public void testReceive() throws Exception {
+    List<Transferable> partitions = createPartitions();
+    ByteArray encoded = DataUtil.encodeTransList(partitions);
+    int bodySize = DataUtil.getNumTransListBytes(partitions);
+    // Bytes of the next message must not be read
+    byte[] bytes = new byte[bodySize + 1];
+    System.arraycopy(encoded.get(), 0, bytes, 0, bodySize);
+    bytes[bodySize] = 42;
+    ByteArrayInputStream in = new ByteArrayInputStream(bytes);
+
+    List<Transferable> recvPartitions = DirectTransfer
+        .receivePartitionList(Channels.newChannel(in), bodySize);
+    Assert.assertEquals(42, in.read());
+    Assert.assertEquals(4, recvPartitions.size());
+    Partition<?> doublePartition = (Partition<?>) recvPartitions.get(0);
+    Assert.assertEquals(0, doublePartition.id());
+    DoubleArray doubleArray = (DoubleArray) doublePartition.get();
+    Assert.assertEquals(100000, doubleArray.size());
+    Assert.assertEquals(99999 * 0.5, doubleArray.get()[99999], 0);
+    Partition<?> intPartition = (Partition<?>) recvPartitions.get(1);
+    Assert.assertEquals(7, intPartition.id());
+    Assert.assertEquals(-9, ((IntArray) intPartition.get()).get()[9]);
+    Partition<?> longPartition = (Partition<?>) recvPartitions.get(2);
+    Assert.assertEquals(Long.MAX_VALUE,
+        ((LongArray) longPartition.get()).get()[2]);
+    Partition<?> bytePartition = (Partition<?>) recvPartitions.get(3);
+    Assert.assertEquals(9, bytePartition.id());
+    Assert.assertEquals(3, ((ByteArray) bytePartition.get()).get()[1]);
+    encoded.release();
+    DataUtil.releaseTransList(recvPartitions);
+  }
+
+  @Test
+  public void testReceiveWritable() throws Exception {
+    List<Transferable> partitions = createPartitions();
+    PartitionCount count = Writable.create(PartitionCount.class);
+    count.setWorkerID(1);
+    count.setPartitionCount(5);
+    partitions.add(1, new Partition<>(3, count));
+    Data data = new Data(DataType.PARTITION_LIST, "ctx", 0, partitions,
+        DataUtil.getNumTransListBytes(partitions), "op");
+    Assert.assertFalse(DirectTransfer.isDirectBody(data));
+
+    ByteArray encoded = DataUtil.encodeTransList(partitions);
+    int bodySize = DataUtil.getNumTransListBytes(partitions);
+    List<Transferable> recvPartitions = DirectTransfer.receivePartitionList(
+        Channels.newChannel(
+            new ByteArrayInputStream(encoded.get(), 0, bodySize)), bodySize);
+    Assert.assertEquals(5, recvPartitions.size());
+    Partition<?> countPartition = (Partition<?>) recvPartitions.get(1);
+    Assert.assertEquals(3, countPartition.id());
+    Assert.assertEquals(5,
+        ((PartitionCount) countPartition.get()).getPartitionCount());
+    Assert.assertEquals(9, ((Partition<?>) recvPartitions.get(4)).id());
+    encoded.release();
+  }
+
+  @Test
+  public void testDirectArrays() throws Exception {
+    DirectDoubleArray doubleArray = DirectDoubleArray.create(100000, false);
+    for (int i = 0; i < doubleArray.size(); i++) {
+      doubleArray.set(i, i * 0.5);
+    }
+    DirectIntArray intArray = DirectIntArray.create(10, true);
+    for (int i = 0; i < intArray.size(); i++) {
+      intArray.set(i, -i);
+    }
+    final List<Transferable> partitions = new LinkedList<>();
+    partitions.add(new Partition<>(0, doubleArray));
+    partitions.add(new Partition<>(7, LongArray.create(3, false)));
+    partitions.add(new Partition<>(8, intArray));
+    final int bodySize = DataUtil.getNumTransListBytes(partitions);
+    Data data = new Data(DataType.PARTITION_LIST, "ctx", 0, partitions,
+        bodySize, "op");
+    Assert.assertTrue(DirectTransfer.isDirectBody(data));
+
+    final Pipe pipe = Pipe.open();
+    Thread writer = new Thread(() -> {
+      try {
+        DirectTransfer.sendPartitionList(pipe.sink(),
+            ByteBuffer.allocate(0), partitions);
+        pipe.sink().close();
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    });
+    writer.start();
+    List<Transferable> recvPartitions =
+        DirectTransfer.receivePartitionList(pipe.source(), bodySize);
+    writer.join();
+    Assert.assertEquals(3, recvPartitions.size());
+    DirectDoubleArray recvDoubles =
+        (DirectDoubleArray) ((Partition<?>) recvPartitions.get(0)).get();
+    Assert.assertEquals(100000, recvDoubles.size());
+    Assert.assertEquals(99999 * 0.5, recvDoubles.get(99999), 0);
+    Partition<?> intPartition = (Partition<?>) recvPartitions.get(2);
+    Assert.assertEquals(8, intPartition.id());
+    Assert.assertEquals(-9, ((DirectIntArray) intPartition.get()).get(9));
+
+    // The encoded bytes decode to the same arrays
+    ByteArray encoded = DataUtil.encodeTransList(partitions);
+    List<Transferable> decoded = DataUtil.decodePartitionList(
+        new ByteArray(encoded.get(), 0, bodySize));
+    DirectIntArray decodedInts =
+        (DirectIntArray) ((Partition<?>) decoded.get(2)).get();
+    Assert.assertEquals(-9, decodedInts.get(9));
+    encoded.release();
+    DataUtil.releaseTransList(decoded);
+    DataUtil.releaseTransList(recvPartitions);
+    DataUtil.releaseTransList(partitions);
+  }
+}
@@ -112,4 +112,51 @@ public class SerializerTest {
       Assert.fail();
     }
   }
+
+  @Test
+  public void testBulkWriteMatchesScalar() throws IOException {
+    double[] doubles = new double[]{0.5, -1.25, 3.0, 7.75};
+    long[] longs = new long[]{-1L, 2L, Long.MAX_VALUE};
+    int[] ints = new int[]{-3, 4, Integer.MIN_VALUE};
+    float[] floats = new float[]{1.5f, -2.5f};
+    short[] shorts = new short[]{-7, 8, 9};
+    byte[] scalarBytes = new byte[128];
+    Serializer scalar = new Serializer(scalarBytes, 0, 128);
+    for (int i = 1; i < doubles.length; i++) {
+      scalar.writeDouble(doubles[i]);
+    }
+    for (long v : longs) {
+      scalar.writeLong(v);
+    }
+    for (int v : ints) {
+      scalar.writeInt(v);
+    }
+    for (float v : floats) {
+      scalar.writeFloat(v);
+    }
+    for (short v : shorts) {
+      scalar.writeShort(v);
+    }
+    byte[] bulkBytes = new byte[128];
+    Serializer bulk = new Serializer(bulkBytes, 0, 128);
+    bulk.writeDoubles(doubles, 1, doubles.length - 1);
+    bulk.writeLongs(longs, 0, longs.length);
+    bulk.writeInts(ints, 0, ints.length);
+    bulk.writeFloats(floats, 0, floats.length);
+    bulk.writeShorts(shorts, 0, shorts.length);
+    Assert.assertEquals(scalar.getLength(), bulk.getLength());
+    Assert.assertArrayEquals(scalarBytes, bulkBytes);
+  }
+
+  @Test
+  public void testBulkWriteOutOfSpace() {
+    byte[] bytes = new byte[16];
+    Serializer serializer = new Serializer(bytes, 0, 16);
+    try {
+      serializer.writeDoubles(new double[3], 0, 3);
+      Assert.fail();
+    } catch (IOException e) {
+      Assert.assertEquals(0, serializer.getPos());
+    }
+  }
 }
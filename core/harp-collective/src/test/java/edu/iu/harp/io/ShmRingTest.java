@@ -0,0 +1,150 @@
+package edu.iu.harp.io;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class ShmRingTest {
+  private String dir;
+
+  @Before
+  public void setUp() {
+    dir = System.getProperty("java.io.tmpdir");
+    Assume.assumeTrue(ShmRing.isSupported(dir));
+  }
+
+  @Test
+  public void testWriteAndRead() throws Exception {
+    // Larger than the ring so that it wraps around
+    int capacity = 1000;
+    byte[] bytes = new byte[10 * capacity + 7];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) i;
+    }
+    ShmRing writer = ShmRing.create(dir, capacity);
+    ShmRing reader = ShmRing.open(writer.getPath());
+    writer.unlink();
+    Assert.assertFalse(new File(writer.getPath()).exists());
+
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    Future<?> result = executor.submit(() -> {
+      OutputStream out = Channels.newOutputStream(writer);
+      out.write(bytes, 0, 3);
+      out.write(bytes, 3, bytes.length - 3);
+      out.close();
+      return null;
+    });
+    InputStream in = Channels.newInputStream(reader);
+    byte[] received = new byte[bytes.length];
+    IOUtil.receiveBytes(in, received, 0, received.length);
+    result.get();
+    executor.shutdown();
+    Assert.assertArrayEquals(bytes, received);
+    // The writer is closed and the ring is drained
+    Assert.assertEquals(-1, in.read());
+    reader.close();
+  }
+
+  @Test
+  public void testClosedReader() throws Exception {
+    ShmRing writer = ShmRing.create(dir, 16);
+    ShmRing reader = ShmRing.open(writer.getPath());
+    writer.unlink();
+    reader.close();
+    OutputStream out = Channels.newOutputStream(writer);
+    out.write(new byte[16]);
+    try {
+      out.write(1);
+      Assert.fail("Write to a full ring without a reader");
+    } catch (IOException e) {
+    }
+    writer.close();
+  }
+
+  @Test
+  public void testDoorbell() throws Exception {
+    ShmRing writer = ShmRing.create(dir, 16);
+    ShmRing reader = ShmRing.open(writer.getPath());
+    writer.unlink();
+    try (ServerSocket server =
+           new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+         Socket client = new Socket(server.getInetAddress(),
+           server.getLocalPort());
+         Socket accepted = server.accept()) {
+      writer.setPeer(client);
+      reader.setPeer(accepted);
+      ExecutorService executor = Executors.newSingleThreadExecutor();
+      Future<?> result = executor.submit(() -> {
+        // The reader is blocked on the doorbell by now
+        Thread.sleep(200);
+        OutputStream out = Channels.newOutputStream(writer);
+        out.write(new byte[100]);
+        out.close();
+        return null;
+      });
+      InputStream in = Channels.newInputStream(reader);
+      long start = System.currentTimeMillis();
+      Assert.assertEquals(0, in.read());
+      // Woken up by the bell, not by the socket timeout
+      Assert.assertTrue(System.currentTimeMillis() - start
+        < 200 + Constant.LONG_SLEEP / 2);
+      IOUtil.receiveBytes(in, new byte[99], 0, 99);
+      Assert.assertEquals(-1, in.read());
+      result.get();
+      executor.shutdown();
+      reader.close();
+      try {
+        reader.read(ByteBuffer.allocate(1));
+        Assert.fail("Read from a closed ring");
+      } catch (ClosedChannelException e) {
+      }
+    }
+  }
+
+  @Test
+  public void testPeerGone() throws Exception {
+    ShmRing writer = ShmRing.create(dir, 16);
+    ShmRing reader = ShmRing.open(writer.getPath());
+    writer.unlink();
+    try (ServerSocket server =
+           new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+         Socket client = new Socket(server.getInetAddress(),
+           server.getLocalPort());
+         Socket accepted = server.accept()) {
+      reader.setPeer(accepted);
+      // The writer dies without closing its end
+      client.close();
+      try {
+        reader.read(ByteBuffer.allocate(1));
+        Assert.fail("Read from a ring without a peer");
+      } catch (IOException e) {
+      }
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testOrderedArch() {
+    Assert.assertTrue(ShmRing.isOrderedArch("amd64"));
+    Assert.assertTrue(ShmRing.isOrderedArch("x86_64"));
+    Assert.assertTrue(ShmRing.isOrderedArch("i386"));
+    Assert.assertFalse(ShmRing.isOrderedArch("aarch64"));
+    Assert.assertFalse(ShmRing.isOrderedArch("ppc64le"));
+    Assert.assertFalse(ShmRing.isOrderedArch(null));
+  }
+}
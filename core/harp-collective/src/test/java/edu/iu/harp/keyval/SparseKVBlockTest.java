@@ -0,0 +1,92 @@
+package edu.iu.harp.keyval;
+
+import edu.iu.harp.io.DataUtil;
+import edu.iu.harp.resource.ByteArray;
+import edu.iu.harp.resource.Transferable;
+import edu.iu.harp.resource.Writable;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.LinkedList;
+import java.util.List;
+
+public class SparseKVBlockTest {
+
+  private SparseKVBlock encodeAndDecode(SparseKVBlock block) {
+    List<Transferable> objs = new LinkedList<>();
+    objs.add(block);
+    int size = DataUtil.getNumTransListBytes(objs);
+    ByteArray byteArray = DataUtil.encodeTransList(objs);
+    Assert.assertEquals(size, byteArray.size());
+    List<Transferable> decoded = DataUtil.decodeSimpleList(byteArray);
+    byteArray.release();
+    Assert.assertNotNull(decoded);
+    Assert.assertEquals(1, decoded.size());
+    SparseKVBlock decodedBlock = (SparseKVBlock) decoded.get(0);
+    Assert.assertEquals(block.getNumWriteBytes(),
+        decodedBlock.getNumWriteBytes());
+    return decodedBlock;
+  }
+
+  @Test
+  public void testSparse() {
+    long[] keys = {-5L, 3L, 1000L, 1L << 40, Long.MAX_VALUE};
+    double[] vals = {1.0, 2.0, 3.0, 4.0, 5.0};
+    SparseKVBlock block = Writable.create(SparseKVBlock.class);
+    block.set(keys, vals, keys.length);
+    Assert.assertFalse(block.isDense());
+    // 8 bytes of the first key and the gaps
+    Assert.assertEquals(6 + 8 + 1 + 2 + 6 + 9 + 5 * 8,
+        block.getNumWriteBytes());
+
+    SparseKVBlock decoded = encodeAndDecode(block);
+    Assert.assertFalse(decoded.isDense());
+    Assert.assertEquals(keys.length, decoded.size());
+    Assert.assertNull(decoded.getIntVals());
+    for (int i = 0; i < keys.length; i++) {
+      Assert.assertEquals(keys[i], decoded.getKeys()[i]);
+      Assert.assertEquals(vals[i], decoded.getDoubleVals()[i], 0.0);
+    }
+    decoded.release();
+    block.release();
+  }
+
+  @Test
+  public void testDense() {
+    int size = 100;
+    long[] keys = new long[size];
+    int[] vals = new int[size];
+    for (int i = 0; i < size; i++) {
+      // Half of the keys in the range
+      keys[i] = 7 + 2 * i;
+      vals[i] = -i;
+    }
+    SparseKVBlock block = Writable.create(SparseKVBlock.class);
+    block.set(keys, vals, size);
+    Assert.assertTrue(block.isDense());
+    Assert.assertEquals(6 + 8 + 4 + 25 + size * 4,
+        block.getNumWriteBytes());
+
+    SparseKVBlock decoded = encodeAndDecode(block);
+    Assert.assertTrue(decoded.isDense());
+    Assert.assertEquals(size, decoded.size());
+    Assert.assertNull(decoded.getDoubleVals());
+    for (int i = 0; i < size; i++) {
+      Assert.assertEquals(keys[i], decoded.getKeys()[i]);
+      Assert.assertEquals(vals[i], decoded.getIntVals()[i]);
+    }
+    decoded.release();
+    block.release();
+  }
+
+  @Test
+  public void testEmpty() {
+    SparseKVBlock block = Writable.create(SparseKVBlock.class);
+    block.set(new long[0], new double[0], 0);
+    Assert.assertEquals(6, block.getNumWriteBytes());
+    SparseKVBlock decoded = encodeAndDecode(block);
+    Assert.assertEquals(0, decoded.size());
+    decoded.release();
+    block.release();
+  }
+}
@@ -0,0 +1,114 @@
+package edu.iu.harp.metrics;
+
+import edu.iu.harp.io.Data;
+import edu.iu.harp.io.DataMap;
+import edu.iu.harp.io.DataStatus;
+import edu.iu.harp.io.DataType;
+import edu.iu.harp.io.DataUtil;
+import edu.iu.harp.resource.IntArray;
+import edu.iu.harp.resource.Transferable;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class CommMetricsTest {
+
+  @After
+  public void tearDown() {
+    CommMetrics.get().setEnabled(false);
+    CommMetrics.get().reset();
+  }
+
+  @Test
+  public void testHistogram() {
+    Histogram histogram = new Histogram();
+    Assert.assertEquals(0, histogram.getPercentile(0.5));
+    for (int i = 1; i <= 100; i++) {
+      histogram.record(i * 1000L);
+    }
+    Assert.assertEquals(100, histogram.getCount());
+    Assert.assertEquals(100000, histogram.getMax());
+    Assert.assertEquals(50500.0, histogram.getMean(), 0.0);
+    // Within a factor of two of the exact percentiles
+    long p50 = histogram.getPercentile(0.5);
+    Assert.assertTrue(p50 >= 50000 && p50 < 100000);
+    Assert.assertEquals(100000, histogram.getPercentile(1.0));
+    Assert.assertEquals(0, Histogram.getBucket(0));
+    Assert.assertEquals(1, Histogram.getBucket(1));
+    Assert.assertEquals(63, Histogram.getBucket(Long.MAX_VALUE));
+  }
+
+  @Test
+  public void testNormalize() {
+    Assert.assertEquals("regroup-#", CommMetrics.normalize("regroup-12"));
+    Assert.assertEquals("#-a#b", CommMetrics.normalize("0-a12b"));
+    Assert.assertEquals("main", CommMetrics.normalize("main"));
+    Assert.assertEquals("?", CommMetrics.normalize(null));
+  }
+
+  @Test
+  public void testDisabled() throws Exception {
+    Assert.assertEquals(CommMetrics.NOT_STARTED, CommMetrics.now());
+    Assert.assertEquals(0, CommMetrics.elapsed(CommMetrics.now()));
+    Data data = createOpData("op-1");
+    data.encodeHead();
+    data.encodeBody();
+    CommMetrics.get().recordCollective("allreduce", "ctx", "op-1",
+        CommMetrics.now());
+    Assert.assertTrue(CommMetrics.get().getOperationMetrics().isEmpty());
+  }
+
+  @Test
+  public void testEnabled() throws Exception {
+    CommMetrics.get().setEnabled(true);
+    Data data = createOpData("op-1");
+    data.encodeHead();
+    Assert.assertEquals(DataStatus.ENCODED_ARRAY_DECODED, data.encodeBody());
+    CommMetrics.get().recordSent(data, CommMetrics.getNumBytes(data),
+        CommMetrics.now());
+
+    // The data received with the handle is recorded under the names
+    // registered by the receiver
+    DataMap dataMap = new DataMap();
+    dataMap.getRegistry().register("ctx", "op-1");
+    Data recvData = new Data(data.getHeadArray(), data.getBodyArray());
+    recvData.decodeHeadArray();
+    dataMap.resolveNames(recvData);
+    recvData.decodeBodyArray();
+    dataMap.putData(recvData);
+    Assert.assertSame(recvData, dataMap.waitAndGetData("ctx", "op-1", 1));
+    CommMetrics.get().recordCollective("allreduce", "ctx", "op-2",
+        CommMetrics.now());
+
+    // The iterations share the metrics
+    Assert.assertEquals(1, CommMetrics.get().getOperationMetrics().size());
+    OperationMetrics metrics =
+        CommMetrics.get().getOperationMetrics("ctx", "op-#");
+    Assert.assertEquals(1, metrics.getNumSent());
+    Assert.assertEquals(CommMetrics.getNumBytes(data), metrics.getBytesSent());
+    Assert.assertEquals(CommMetrics.getNumBytes(data),
+        CommMetrics.get().getBytesSent());
+    for (CommStage stage : new CommStage[] {CommStage.ENCODE,
+        CommStage.DECODE, CommStage.SEND, CommStage.QUEUE_WAIT}) {
+      Assert.assertEquals(1, metrics.getHistogram(stage).getCount());
+    }
+    Assert.assertEquals(0,
+        metrics.getHistogram(CommStage.RECEIVE).getCount());
+    Assert.assertEquals(1,
+        metrics.getCollectives().get("allreduce").getCount());
+    Assert.assertEquals(1, CommMetrics.get().getReport().length);
+    recvData.release();
+    dataMap.clean();
+  }
+
+  private static Data createOpData(String operationName) {
+    IntArray intArray = new IntArray(new int[1000], 0, 1000);
+    List<Transferable> transList = new ArrayList<>(1);
+    transList.add(intArray);
+    return new Data(DataType.SIMPLE_LIST, "ctx", 0, transList,
+        DataUtil.getNumTransListBytes(transList), operationName);
+  }
+}
@@ -0,0 +1,138 @@
+package edu.iu.harp.partition;
+
+import edu.iu.harp.combiner.IntArrCombiner;
+import edu.iu.harp.combiner.Operation;
+import edu.iu.harp.resource.IntArray;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class DenseTableTest {
+
+  private static IntArray newArray(int value) {
+    return new IntArray(new int[] {value}, 0, 1);
+  }
+
+  @Test
+  public void testAddAndGet() {
+    DenseTable<IntArray> table =
+        new DenseTable<>(0, new IntArrCombiner(Operation.SUM), 4);
+    Assert.assertTrue(table.isEmpty());
+    Assert.assertEquals(PartitionStatus.ADDED,
+        table.addPartition(new Partition<>(1, newArray(1))));
+    Assert.assertEquals(PartitionStatus.ADDED, table.addValue(2, newArray(2)));
+    // Combined with the partition of the same ID
+    table.addValue(2, newArray(5));
+    table.addPartition(new Partition<>(1, newArray(3)));
+    Assert.assertEquals(2, table.getNumPartitions());
+    Assert.assertEquals(4, table.getValue(1).get()[0]);
+    Assert.assertEquals(7, table.getPartition(2).get().get()[0]);
+    // The wrapper is kept once created
+    Assert.assertSame(table.getPartition(2), table.getPartition(2));
+    Assert.assertNull(table.getPartition(0));
+    Assert.assertNull(table.getValue(-5));
+    Assert.assertEquals(PartitionStatus.ADD_FAILED, table.addValue(3, null));
+
+    Partition<IntArray> removed = table.removePartition(1);
+    Assert.assertEquals(1, removed.id());
+    Assert.assertNull(table.getValue(1));
+    Assert.assertEquals(1, table.getNumPartitions());
+  }
+
+  @Test
+  public void testOverflow() {
+    DenseTable<IntArray> table =
+        new DenseTable<>(0, new IntArrCombiner(Operation.SUM), 16);
+    table.addValue(-3, newArray(-3));
+    table.addValue(1000, newArray(1000));
+    table.addValue(20, newArray(20));
+    for (int i = 0; i < 10; i++) {
+      table.addValue(i, newArray(i));
+    }
+    Assert.assertEquals(13, table.getNumPartitions());
+    Assert.assertEquals(-3, table.getValue(-3).get()[0]);
+    Assert.assertEquals(1000, table.getPartition(1000).get().get()[0]);
+    // Growing the array takes the IDs from the overflow map
+    for (int i = 10; i < 600; i++) {
+      table.addValue(i, newArray(i));
+    }
+    Assert.assertEquals(1000, table.getValue(1000).get()[0]);
+    Assert.assertEquals(40, table.getValue(20).get()[0]);
+    Assert.assertEquals(602, table.getNumPartitions());
+
+    IntOpenHashSet ids = new IntOpenHashSet();
+    for (int id : table.getPartitionIDs()) {
+      Assert.assertTrue(ids.add(id));
+    }
+    Assert.assertEquals(602, ids.size());
+    Assert.assertTrue(ids.contains(-3));
+    Assert.assertTrue(table.getPartitionIDs().contains(1000));
+    int count = 0;
+    for (Partition<IntArray> partition : table.getPartitions()) {
+      Assert.assertEquals(partition.id() == 20 ? 40 : partition.id(),
+          partition.get().get()[0]);
+      count++;
+    }
+    Assert.assertEquals(602, count);
+  }
+
+  @Test
+  public void testIteratorRemove() {
+    DenseTable<IntArray> table =
+        new DenseTable<>(0, new IntArrCombiner(Operation.SUM), 8);
+    for (int i = -2; i < 8; i++) {
+      table.addValue(i, newArray(i));
+    }
+    IntIterator iterator = table.getPartitionIDs().iterator();
+    while (iterator.hasNext()) {
+      if (iterator.nextInt() % 2 == 0) {
+        iterator.remove();
+      }
+    }
+    Assert.assertEquals(5, table.getNumPartitions());
+    Assert.assertNull(table.getValue(-2));
+    Assert.assertNull(table.getValue(4));
+    Assert.assertNotNull(table.getValue(-1));
+    Assert.assertNotNull(table.getValue(7));
+    table.release();
+    Assert.assertTrue(table.isEmpty());
+  }
+
+  @Test
+  public void testForEachAndSpliterator() {
+    DenseTable<IntArray> table =
+        new DenseTable<>(0, new IntArrCombiner(Operation.SUM), 1024);
+    long expected = 0;
+    for (int i = 0; i < 1000; i++) {
+      if (i % 7 != 0) {
+        table.addValue(i, newArray(i));
+        expected += i;
+      }
+    }
+    table.addValue(5000, newArray(5000));
+    expected += 5000;
+
+    AtomicLong sum = new AtomicLong();
+    table.forEachValue((value, id) -> {
+      Assert.assertEquals(id, value.get()[0]);
+      sum.addAndGet(id);
+    });
+    Assert.assertEquals(expected, sum.get());
+
+    Spliterator<Partition<IntArray>> spliterator = table.spliterator();
+    Spliterator<Partition<IntArray>> prefix = spliterator.trySplit();
+    Assert.assertNotNull(prefix);
+    long[] splitSum = new long[1];
+    prefix.forEachRemaining(p -> splitSum[0] += p.id());
+    spliterator.forEachRemaining(p -> splitSum[0] += p.id());
+    Assert.assertEquals(expected, splitSum[0]);
+
+    Assert.assertEquals(expected, table.stream(true)
+        .mapToLong(p -> p.get().get()[0]).sum());
+    Assert.assertEquals(table.getNumPartitions(), table.stream(false).count());
+  }
+}
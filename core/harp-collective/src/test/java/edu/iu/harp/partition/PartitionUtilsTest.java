@@ -23,4 +23,23 @@ public class PartitionUtilsTest {
     PartitionUtil.addPartitionsToTable(transList, table);
     Assert.assertEquals(1, table.getNumPartitions());
   }
+
+  @Test
+  public void testCombinePartitionsInParallel() {
+    Table<IntArray> table = new Table<>(0, new IntArrCombiner(Operation.SUM));
+    List<Transferable> transList = new ArrayList<>();
+    for (int round = 0; round < 3; round++) {
+      for (int i = 0; i < 100; i++) {
+        transList.add(new Partition<>(i, new IntArray(new int[] {i, 1}, 0, 2)));
+      }
+    }
+    PartitionUtil.addPartitionsToTable(transList, table);
+    Assert.assertTrue(transList.isEmpty());
+    Assert.assertEquals(100, table.getNumPartitions());
+    for (int i = 0; i < 100; i++) {
+      int[] values = table.getPartition(i).get().get();
+      Assert.assertEquals(3 * i, values[0]);
+      Assert.assertEquals(3, values[1]);
+    }
+  }
 }
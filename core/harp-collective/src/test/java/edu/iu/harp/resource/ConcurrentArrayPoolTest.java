@@ -0,0 +1,215 @@
+package edu.iu.harp.resource;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class ConcurrentArrayPoolTest {
+  @Test
+  public void testReleaseOnce() {
+    DoublesPool pool = new DoublesPool();
+    double[] array = pool.getArray(100, false);
+
+    Assert.assertTrue(pool.releaseArray(array));
+    Assert.assertFalse(pool.releaseArray(array));
+    // Not created by the pool
+    Assert.assertFalse(pool.releaseArray(new double[100]));
+
+    Assert.assertSame(array, pool.getArray(100, false));
+    Assert.assertTrue(pool.freeArray(array));
+    Assert.assertFalse(pool.releaseArray(array));
+  }
+
+  @Test
+  public void testMaxRetainedBytes() {
+    DoublesPool pool = new DoublesPool();
+    pool.setMaxRetainedBytes(1000);
+    double[] small = pool.getArray(100, false);
+    double[] large = pool.getArray(200, false);
+
+    Assert.assertTrue(pool.releaseArray(small));
+    Assert.assertEquals(800, pool.getRetainedBytes());
+    // Over the limit, not cached
+    Assert.assertTrue(pool.releaseArray(large));
+    Assert.assertEquals(800, pool.getRetainedBytes());
+    Assert.assertNotSame(large, pool.getArray(200, false));
+    Assert.assertSame(small, pool.getArray(100, false));
+    Assert.assertEquals(0, pool.getRetainedBytes());
+  }
+
+  @Test
+  public void testBudgetEviction() throws Exception {
+    PoolBudget budget = new PoolBudget(4000);
+    DoublesPool doubles = new DoublesPool();
+    doubles.setBudget(budget);
+    IntsPool ints = new IntsPool();
+    ints.setBudget(budget);
+    // Fill the magazine of this thread, five go
+    // to the shared stack
+    double[][] arrays = new double[9][];
+    for (int i = 0; i < arrays.length; i++) {
+      arrays[i] = doubles.getArray(100, false);
+    }
+    for (double[] array : arrays) {
+      Assert.assertTrue(doubles.releaseArray(array));
+    }
+    Assert.assertEquals(4000, budget.getSharedBytes());
+    Assert.assertEquals(7200, budget.getRetainedBytes());
+    Thread.sleep(10);
+
+    // The ints in the magazine are not counted, the
+    // one moved to the shared stack evicts the least
+    // recently used doubles
+    int[][] intArrays = new int[5][];
+    for (int i = 0; i < intArrays.length; i++) {
+      intArrays[i] = ints.getArray(200, false);
+    }
+    for (int[] array : intArrays) {
+      Assert.assertTrue(ints.releaseArray(array));
+    }
+    Assert.assertEquals(4000, budget.getSharedBytes());
+    Assert.assertEquals(0, ints.getStats().getEvictions());
+    Assert.assertEquals(4000, ints.getStats().getRetainedBytes());
+    Assert.assertEquals(1, doubles.getStats().getEvictions());
+    Assert.assertEquals(6400, doubles.getStats().getRetainedBytes());
+
+    // Hits on the magazine do not touch the budget
+    double[] array = doubles.getArray(100, false);
+    Assert.assertEquals(4000, budget.getSharedBytes());
+    Assert.assertTrue(doubles.releaseArray(array));
+    Assert.assertEquals(4000, budget.getSharedBytes());
+    PoolStats stats = doubles.getStats();
+    Assert.assertEquals(1, stats.getHits());
+    Assert.assertEquals(9, stats.getMisses());
+    Assert.assertEquals(6400, stats.getRetainedBytes());
+    Assert.assertEquals(10400, budget.getRetainedBytes());
+  }
+
+  @Test
+  public void testConcurrentBudget() throws Exception {
+    PoolBudget budget = new PoolBudget(4000);
+    DoublesPool pool = new DoublesPool();
+    pool.setBudget(budget);
+    pool.setMaxRetainedBytes(8000);
+    int numThreads = 8;
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    List<Future<Boolean>> results = new ArrayList<>();
+    for (int i = 0; i < numThreads; i++) {
+      results.add(executor.submit(() -> {
+        for (int j = 0; j < 1000; j++) {
+          double[][] arrays = new double[8][];
+          for (int k = 0; k < arrays.length; k++) {
+            arrays[k] = pool.getArray(100, false);
+          }
+          for (double[] array : arrays) {
+            pool.releaseArray(array);
+          }
+          // Never over the limits, which apply to the
+          // shared stack
+          if (pool.getSharedBytes() > 8000
+              || budget.getSharedBytes() > 4000) {
+            return false;
+          }
+        }
+        return true;
+      }));
+    }
+    for (Future<Boolean> result : results) {
+      Assert.assertTrue(result.get());
+    }
+    executor.shutdown();
+    Assert.assertEquals(pool.getSharedBytes(), budget.getSharedBytes());
+  }
+
+  @Test
+  public void testStatsOfMagazines() throws Exception {
+    DoublesPool pool = new DoublesPool();
+    pool.setMaxRetainedBytes(800);
+    Thread thread = new Thread(() -> {
+      double[] array = pool.getArray(100, false);
+      pool.releaseArray(array);
+      pool.releaseArray(pool.getArray(100, false));
+    });
+    thread.start();
+    thread.join();
+    // Kept in the magazine of the thread, out of
+    // the shared stack
+    PoolStats stats = pool.getStats();
+    Assert.assertEquals(1, stats.getHits());
+    Assert.assertEquals(1, stats.getMisses());
+    Assert.assertEquals(800, stats.getRetainedBytes());
+    Assert.assertEquals(0, pool.getSharedBytes());
+
+    pool.clean();
+    Assert.assertEquals(1, pool.getStats().getHits());
+    Assert.assertEquals(0, pool.getRetainedBytes());
+  }
+
+  @Test
+  public void testClean() {
+    DoublesPool pool = new DoublesPool();
+    double[] array = pool.getArray(100, true);
+    pool.releaseArray(array);
+    pool.clean();
+
+    Assert.assertNotSame(array, pool.getArray(100, true));
+    Assert.assertEquals(0, pool.getRetainedBytes());
+  }
+
+  @Test
+  public void testMagazinesOfExitedThreads() throws Exception {
+    PoolBudget budget = new PoolBudget(Long.MAX_VALUE);
+    DoublesPool pool = new DoublesPool();
+    pool.setBudget(budget);
+    for (int i = 0; i < 64; i++) {
+      // Each thread leaves its array in its magazine
+      Thread thread = new Thread(() -> {
+        pool.releaseArray(pool.getArray(100, false));
+      });
+      thread.start();
+      thread.join();
+    }
+    // The magazines of the exited threads are
+    // flushed to the shared stack and reused
+    Assert.assertTrue(pool.getStats().getMisses() < 64);
+    Assert.assertTrue(pool.getRetainedBytes() > 0);
+
+    pool.clean();
+    Assert.assertEquals(0, pool.getNumArrays());
+    Assert.assertEquals(0, pool.getRetainedBytes());
+    Assert.assertEquals(0, budget.getRetainedBytes());
+    Assert.assertEquals(0, budget.getSharedBytes());
+  }
+
+  @Test
+  public void testConcurrentGetAndRelease() throws Exception {
+    DoublesPool pool = new DoublesPool();
+    int numThreads = 8;
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    List<Future<Boolean>> results = new ArrayList<>();
+    for (int i = 0; i < numThreads; i++) {
+      int value = i;
+      results.add(executor.submit(() -> {
+        for (int j = 0; j < 10000; j++) {
+          double[] array = pool.getArray(64, true);
+          array[0] = value;
+          Thread.yield();
+          // No other thread got the same array
+          if (array[0] != value || !pool.releaseArray(array)) {
+            return false;
+          }
+        }
+        return true;
+      }));
+    }
+    for (Future<Boolean> result : results) {
+      Assert.assertTrue(result.get());
+    }
+    executor.shutdown();
+  }
+}
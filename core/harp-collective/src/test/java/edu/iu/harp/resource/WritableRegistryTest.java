@@ -0,0 +1,83 @@
+package edu.iu.harp.resource;
+
+import edu.iu.harp.io.DataUtil;
+import edu.iu.harp.util.Ack;
+import edu.iu.harp.util.PartitionCount;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.LinkedList;
+import java.util.List;
+
+public class WritableRegistryTest {
+
+  @After
+  public void tearDown() {
+    WritableRegistry.get().clear();
+  }
+
+  @Test
+  public void testFingerprint() {
+    WritableRegistry registry = WritableRegistry.get();
+    registry.register(PartitionCount.class);
+    registry.register(Ack.class);
+    int fingerprint = registry.seal();
+    Assert.assertEquals(Ack.class, registry.getClass(0));
+    Assert.assertEquals(PartitionCount.class, registry.getClass(1));
+    Assert.assertNull(registry.getClass(2));
+
+    // The order of registration does not matter
+    registry.clear();
+    registry.register(Ack.class);
+    registry.register(PartitionCount.class.getName());
+    Assert.assertEquals(fingerprint, registry.seal());
+    try {
+      registry.register(PartitionCount.class);
+      Assert.fail("Register to a sealed registry");
+    } catch (IllegalStateException e) {
+    }
+  }
+
+  @Test
+  public void testEncodeAndDecode() {
+    WritableRegistry registry = WritableRegistry.get();
+    registry.register(PartitionCount.class);
+    registry.seal();
+
+    PartitionCount count = Writable.create(PartitionCount.class);
+    count.setWorkerID(3);
+    count.setPartitionCount(7);
+    List<Transferable> objs = new LinkedList<>();
+    objs.add(count);
+    objs.add(Writable.create(Ack.class));
+    int nameBytes = DataUtil.getNumTransListBytes(objs);
+
+    registry.setEnabled(true);
+    Assert.assertEquals(0, registry.getID(PartitionCount.class));
+    Assert.assertEquals(-1, registry.getID(Ack.class));
+    Assert.assertEquals(1 + 2 + 8, count.getNumEnocdeBytes());
+    Assert.assertTrue(DataUtil.getNumTransListBytes(objs) < nameBytes);
+
+    ByteArray byteArray = DataUtil.encodeTransList(objs);
+    List<Transferable> decoded = DataUtil.decodeSimpleList(byteArray);
+    Assert.assertNotNull(decoded);
+    Assert.assertEquals(2, decoded.size());
+    PartitionCount decodedCount = (PartitionCount) decoded.get(0);
+    Assert.assertEquals(3, decodedCount.getWorkerID());
+    Assert.assertEquals(7, decodedCount.getPartitionCount());
+    Assert.assertTrue(decoded.get(1) instanceof Ack);
+    DataUtil.releaseTransList(decoded);
+    DataUtil.releaseTransList(objs);
+    byteArray.release();
+  }
+
+  @Test
+  public void testNewInstance() {
+    WritableRegistry registry = WritableRegistry.get();
+    Assert.assertNotNull(registry.newInstance(Ack.class));
+    Assert.assertEquals(Ack.class, registry.forName(Ack.class.getName()));
+    Assert.assertNull(registry.forName("edu.iu.harp.NoSuchClass"));
+    Assert.assertNull(registry.forName(String.class.getName()));
+  }
+}
@@ -0,0 +1,146 @@
+package edu.iu.harp.schdynamic;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+public class DynamicSchedulerTest {
+
+  @Test
+  public void testSharedQueue() throws Exception {
+    testBackend(SchedulerBackend.SHARED_QUEUE);
+  }
+
+  @Test
+  public void testWorkStealing() throws Exception {
+    testBackend(SchedulerBackend.WORK_STEALING);
+  }
+
+  @Test
+  public void testVirtualThreads() throws Exception {
+    Assert.assertEquals(ComputeUtil.isVirtualThreadSupported(),
+        ComputeUtil.setThreadMode(ThreadMode.VIRTUAL));
+    try {
+      // Falls back to platform threads before JDK 21
+      testBackend(SchedulerBackend.SHARED_QUEUE);
+      testBackend(SchedulerBackend.WORK_STEALING);
+    } finally {
+      ComputeUtil.setThreadMode(ThreadMode.PLATFORM);
+    }
+    Assert.assertEquals(ThreadMode.PLATFORM, ComputeUtil.getThreadMode());
+  }
+
+  @Test
+  public void testStealing() throws Exception {
+    // All the inputs go to the deque of the first task, which is blocked
+    List<LatchTask> tasks = new ArrayList<>();
+    CountDownLatch latch = new CountDownLatch(1);
+    for (int i = 0; i < 4; i++) {
+      tasks.add(new LatchTask(latch));
+    }
+    DynamicScheduler<Integer, Integer, LatchTask> scheduler =
+        new DynamicScheduler<>(tasks, SchedulerBackend.WORK_STEALING);
+    scheduler.submit(-1);
+    scheduler.start();
+    for (int i = 0; i < 100; i++) {
+      scheduler.submit(i * 4);
+    }
+    long sum = 0;
+    for (int i = 0; i < 100; i++) {
+      sum += scheduler.waitForOutput();
+    }
+    Assert.assertEquals(99 * 100 / 2 * 4, sum);
+    latch.countDown();
+    Assert.assertEquals(-1, (int) scheduler.waitForOutput());
+    Assert.assertFalse(scheduler.hasOutput());
+    scheduler.stop();
+  }
+
+  private void testBackend(SchedulerBackend backend) throws Exception {
+    List<SquareTask> tasks = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      tasks.add(new SquareTask());
+    }
+    DynamicScheduler<Integer, Integer, SquareTask> scheduler =
+        new DynamicScheduler<>(tasks, backend);
+    Integer[] inputs = new Integer[1000];
+    for (int i = 0; i < inputs.length; i++) {
+      inputs[i] = i % 10 == 0 ? null : i;
+    }
+    scheduler.submitAll(inputs);
+    scheduler.start();
+    long sum = 0;
+    int count = 0;
+    while (scheduler.hasOutput()) {
+      sum += scheduler.waitForOutput();
+      count++;
+    }
+    Assert.assertEquals(900, count);
+    long expected = 0;
+    for (Integer input : inputs) {
+      if (input != null) {
+        expected += input * input;
+      }
+    }
+    Assert.assertEquals(expected, sum);
+    Assert.assertFalse(scheduler.hasError());
+
+    // Failed inputs give null outputs
+    List<Integer> list = new ArrayList<>();
+    list.add(-1);
+    list.add(3);
+    scheduler.submitAll(list);
+    int numNulls = 0;
+    while (scheduler.hasOutput()) {
+      if (scheduler.waitForOutput() == null) {
+        numNulls++;
+      }
+    }
+    Assert.assertEquals(1, numNulls);
+    Assert.assertTrue(scheduler.hasError());
+
+    // Inputs submitted during the pause run after the start
+    scheduler.pause();
+    scheduler.submit(2);
+    Assert.assertFalse(scheduler.hasOutput());
+    scheduler.start();
+    Assert.assertEquals(4, (int) scheduler.waitForOutput());
+
+    // The inputs left by pauseNow are not counted until the start
+    scheduler.pauseNow();
+    scheduler.submit(5);
+    scheduler.cleanInputQueue();
+    scheduler.start();
+    Assert.assertFalse(scheduler.hasOutput());
+    scheduler.stop();
+  }
+
+  private static class SquareTask implements Task<Integer, Integer> {
+    @Override
+    public Integer run(Integer input) throws Exception {
+      if (input < 0) {
+        throw new Exception("Negative input");
+      }
+      return input * input;
+    }
+  }
+
+  private static class LatchTask implements Task<Integer, Integer> {
+    private final CountDownLatch latch;
+
+    LatchTask(CountDownLatch latch) {
+      this.latch = latch;
+    }
+
+    @Override
+    public Integer run(Integer input) throws Exception {
+      if (input < 0) {
+        latch.await();
+      }
+      return input;
+    }
+  }
+}
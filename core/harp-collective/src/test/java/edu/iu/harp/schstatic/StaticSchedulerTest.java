@@ -1,6 +1,8 @@
 package edu.iu.harp.schstatic;
 
+import edu.iu.harp.affinity.CpuTopology;
 import edu.iu.harp.schdynamic.SimpleObject;
+import org.junit.Assert;
 import org.junit.Test;
 
 import java.util.ArrayList;
@@ -20,7 +22,44 @@ public class StaticSchedulerTest {
     scheduler.stop();
   }
 
+  @Test
+  public void testPlacement() {
+    List<TestTask> testTasks = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      testTasks.add(new TestTask());
+    }
+    CpuTopology topology = new CpuTopology(
+        new int[][] {{0, 1}, {2, 3}});
+    StaticScheduler<SimpleObject, SimpleObject, TestTask> scheduler
+        = new StaticScheduler<>(testTasks, topology, false);
+    Assert.assertSame(topology, scheduler.getTopology());
+    Assert.assertEquals(0, scheduler.getNode(1));
+    Assert.assertEquals(1, scheduler.getNode(2));
+    Assert.assertArrayEquals(new int[] {2, 3}, scheduler.getTaskIDs(1));
+
+    scheduler.start();
+    for (int i = 0; i < 4; i++) {
+      scheduler.submit(i, new SimpleObject());
+    }
+    for (int i = 0; i < 4; i++) {
+      Assert.assertNotNull(scheduler.waitForOutput(i));
+    }
+    scheduler.stop();
+    // Prepared on the task threads
+    for (TestTask task : testTasks) {
+      Assert.assertNotNull(task.preparedThread);
+      Assert.assertNotSame(Thread.currentThread(), task.preparedThread);
+    }
+  }
+
   private static class TestTask extends Task<SimpleObject, SimpleObject>  {
+    private volatile Thread preparedThread;
+
+    @Override
+    public void prepare() {
+      preparedThread = Thread.currentThread();
+    }
+
     @Override
     public SimpleObject run(SimpleObject input) throws Exception {
       return new SimpleObject();
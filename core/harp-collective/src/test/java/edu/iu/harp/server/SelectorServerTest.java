@@ -0,0 +1,238 @@
+package edu.iu.harp.server;
+
+import edu.iu.harp.client.DataSender;
+import edu.iu.harp.io.Codec;
+import edu.iu.harp.io.Compression;
+import edu.iu.harp.io.ConnPool;
+import edu.iu.harp.io.Constant;
+import edu.iu.harp.io.Data;
+import edu.iu.harp.io.DataMap;
+import edu.iu.harp.io.DataStatus;
+import edu.iu.harp.io.DataType;
+import edu.iu.harp.io.DataUtil;
+import edu.iu.harp.io.EventQueue;
+import edu.iu.harp.partition.Partition;
+import edu.iu.harp.resource.DoubleArray;
+import edu.iu.harp.resource.IntArray;
+import edu.iu.harp.resource.Transferable;
+import edu.iu.harp.worker.Workers;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+public class SelectorServerTest {
+  private String fileName;
+
+  @Before
+  public void setUp() {
+    ClassLoader classLoader = getClass().getClassLoader();
+    fileName = new File(Objects.requireNonNull(
+        classLoader.getResource("test_nodes")).getFile()).getAbsolutePath();
+  }
+
+  @Test
+  public void testStart() throws Exception {
+    Workers workers = new Workers(new BufferedReader(new FileReader(fileName)), 0);
+
+    Server s = new Server("localhost", 10093, new EventQueue(), new DataMap(),
+        workers, ServerEngine.NIO, 2);
+    s.start();
+    s.stop();
+  }
+
+  @Test
+  public void testRejectQueueLimit() throws Exception {
+    Workers workers = new Workers(new BufferedReader(new FileReader(fileName)), 0);
+    DataMap dataMap = new DataMap();
+    dataMap.setQueueLimit(1000L, 100L);
+    try {
+      new Server("localhost", 10093, new EventQueue(), dataMap,
+          workers, ServerEngine.NIO, 2);
+      Assert.fail("NIO engine with a queue limit");
+    } catch (IllegalArgumentException e) {
+    }
+    // The port is not taken
+    Server s = new Server("localhost", 10093, new EventQueue(), new DataMap(),
+        workers, ServerEngine.NIO, 2);
+    s.start();
+    s.stop();
+  }
+
+  @Test
+  public void testReceive() throws Exception {
+    Workers workers = new Workers(new BufferedReader(new FileReader(fileName)), 0);
+    DataMap dataMap = new DataMap();
+
+    Server s = new Server("localhost", 10094, new EventQueue(), dataMap,
+        workers, ServerEngine.NIO, 2);
+    s.start();
+    // The second message goes through the cached connection
+    for (int i = 0; i < 2; i++) {
+      IntArray intArray = new IntArray(new int[1000], 0, 1000);
+      intArray.get()[0] = i;
+      List<Transferable> transList = new ArrayList<>(1);
+      transList.add(intArray);
+      Data data = new Data(DataType.SIMPLE_LIST, "ctx", 0, transList,
+          DataUtil.getNumTransListBytes(transList), "op");
+      Assert.assertTrue(
+          new DataSender(data, "localhost", 10094, Constant.SEND).execute());
+      data.releaseHeadArray();
+      data.releaseBodyArray();
+    }
+    for (int i = 0; i < 2; i++) {
+      Data received = dataMap.waitAndGetData("ctx", "op", 10);
+      Assert.assertNotNull(received);
+      received.decodeBodyArray();
+      IntArray intArray = (IntArray) received.getBody().get(0);
+      Assert.assertEquals(1000, intArray.size());
+      Assert.assertEquals(i, intArray.get()[0]);
+      received.release();
+    }
+    ConnPool.get().clean();
+    s.stop();
+  }
+
+  @Test
+  public void testReceivePartitions() throws Exception {
+    Workers workers = new Workers(new BufferedReader(new FileReader(fileName)), 0);
+    DataMap dataMap = new DataMap();
+
+    Server s = new Server("localhost", 10095, new EventQueue(), dataMap,
+        workers, ServerEngine.NIO, 2);
+    s.start();
+    List<Transferable> partitions = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      DoubleArray doubleArray = DoubleArray.create(50000, false);
+      doubleArray.get()[49999] = i;
+      partitions.add(new Partition<>(i, doubleArray));
+    }
+    Data data = new Data(DataType.PARTITION_LIST, "ctx", 0, partitions,
+        DataUtil.getNumTransListBytes(partitions), "op");
+    Assert.assertTrue(new DataSender(data, "localhost", 10095,
+        Constant.SEND_DECODE).execute());
+    // Sent from the arrays without the body array
+    Assert.assertNull(data.getBodyArray());
+    data.release();
+
+    Data received = dataMap.waitAndGetData("ctx", "op", 10);
+    Assert.assertNotNull(received);
+    Assert.assertEquals(DataStatus.DECODED, received.getBodyStatus());
+    Assert.assertEquals(4, received.getBody().size());
+    for (int i = 0; i < 4; i++) {
+      Partition<?> partition = (Partition<?>) received.getBody().get(i);
+      Assert.assertEquals(i, partition.id());
+      Assert.assertEquals(i, ((DoubleArray) partition.get()).get()[49999], 0);
+    }
+    received.release();
+    ConnPool.get().clean();
+    s.stop();
+  }
+
+  @Test
+  public void testReceiveCompressed() throws Exception {
+    Workers workers = new Workers(new BufferedReader(new FileReader(fileName)), 0);
+    DataMap dataMap = new DataMap();
+
+    Server s = new Server("localhost", 10096, new EventQueue(), dataMap,
+        workers, ServerEngine.NIO, 2);
+    s.start();
+    List<Transferable> partitions = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      DoubleArray doubleArray = DoubleArray.create(50000, false);
+      Arrays.fill(doubleArray.get(), 0, 50000, 0.5);
+      doubleArray.get()[49999] = i;
+      partitions.add(new Partition<>(i, doubleArray));
+    }
+    int size = DataUtil.getNumTransListBytes(partitions);
+    Data data = new Data(DataType.PARTITION_LIST, "ctx", 0, partitions,
+        size, "compressed");
+    Compression.get().setCodec("compressed", Codec.SHUFFLE_LZ);
+    try {
+      Assert.assertTrue(new DataSender(data, "localhost", 10096,
+          Constant.SEND_DECODE).execute());
+    } finally {
+      Compression.get().setCodec("compressed", null);
+    }
+    Assert.assertTrue(data.isBodyCompressed());
+    Assert.assertTrue(data.getBodySize() < size / 10);
+    data.release();
+
+    Data received = dataMap.waitAndGetData("ctx", "compressed", 10);
+    Assert.assertNotNull(received);
+    Assert.assertEquals(DataStatus.ENCODED_ARRAY_DECODED,
+        received.getBodyStatus());
+    Assert.assertEquals(4, received.getBody().size());
+    for (int i = 0; i < 4; i++) {
+      Partition<?> partition = (Partition<?>) received.getBody().get(i);
+      Assert.assertEquals(i, partition.id());
+      Assert.assertEquals(0.5, ((DoubleArray) partition.get()).get()[0], 0);
+      Assert.assertEquals(i, ((DoubleArray) partition.get()).get()[49999], 0);
+    }
+    received.release();
+    ConnPool.get().clean();
+    s.stop();
+  }
+
+  @Test
+  public void testReceiveStriped() throws Exception {
+    Workers workers = new Workers(new BufferedReader(new FileReader(fileName)), 0);
+    DataMap dataMap = new DataMap();
+
+    // Fewer I/O threads than stripes
+    Server s = new Server("localhost", 10097, new EventQueue(), dataMap,
+        workers, ServerEngine.NIO, 2);
+    s.start();
+    List<Transferable> partitions = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      DoubleArray doubleArray = DoubleArray.create(50001, false);
+      for (int j = 0; j < 50001; j++) {
+        doubleArray.get()[j] = i * j;
+      }
+      partitions.add(new Partition<>(i, doubleArray));
+    }
+    int size = DataUtil.getNumTransListBytes(partitions);
+    ConnPool.get().setStriping(4, 64 * 1024);
+    Assert.assertEquals(4, ConnPool.get().getNumStripes(size));
+    Assert.assertEquals(1, ConnPool.get().getNumStripes(100 * 1024));
+    try {
+      for (int k = 0; k < 3; k++) {
+        Data data = new Data(DataType.PARTITION_LIST, "ctx", 0, partitions,
+            size, "striped");
+        Assert.assertTrue(new DataSender(data, "localhost", 10097,
+            Constant.SEND_DECODE).execute());
+        data.releaseHeadArray();
+        data.releaseBodyArray();
+      }
+    } finally {
+      ConnPool.get().setStriping(1, ConnPool.DEFAULT_STRIPE_SIZE);
+    }
+    DataUtil.releaseTransList(partitions);
+
+    for (int k = 0; k < 3; k++) {
+      Data received = dataMap.waitAndGetData("ctx", "striped", 10);
+      Assert.assertNotNull(received);
+      Assert.assertEquals(DataStatus.ENCODED_ARRAY_DECODED,
+          received.getBodyStatus());
+      Assert.assertEquals(4, received.getBody().size());
+      for (int i = 0; i < 4; i++) {
+        Partition<?> partition = (Partition<?>) received.getBody().get(i);
+        Assert.assertEquals(i, partition.id());
+        double[] doubles = ((DoubleArray) partition.get()).get();
+        for (int j = 0; j < 50001; j++) {
+          Assert.assertEquals(i * j, doubles[j], 0);
+        }
+      }
+      received.release();
+    }
+    ConnPool.get().clean();
+    s.stop();
+  }
+}
@@ -0,0 +1,92 @@
+package edu.iu.harp.server;
+
+import edu.iu.harp.io.Constant;
+import edu.iu.harp.io.Data;
+import edu.iu.harp.io.DataMap;
+import edu.iu.harp.io.DataType;
+import edu.iu.harp.io.DataUtil;
+import edu.iu.harp.io.EventQueue;
+import edu.iu.harp.resource.ByteArray;
+import edu.iu.harp.resource.IntArray;
+import edu.iu.harp.resource.Transferable;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class StripeReceiverTest {
+
+  @After
+  public void tearDown() {
+    StripeReceiver.setTransferTimeout(
+        Constant.DATA_MAX_WAIT_TIME * 1000L);
+  }
+
+  private static byte[] stripe(int senderID, long transferID, int offset,
+      ByteArray headArray, byte[] body) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(headArray == null ? 0 : headArray.size());
+    out.writeInt(senderID);
+    out.writeLong(transferID);
+    out.writeInt(2);
+    out.writeInt(offset);
+    out.writeInt(body.length);
+    if (headArray != null) {
+      out.write(headArray.get(), headArray.start(), headArray.size());
+    }
+    out.write(body);
+    return bytes.toByteArray();
+  }
+
+  private static void receive(DataMap dataMap, byte command, byte[] bytes)
+      throws Exception {
+    ServerConn conn = new ServerConn(new ByteArrayInputStream(bytes), null);
+    new StripeReceiver(0, conn, new EventQueue(), dataMap, command).run();
+  }
+
+  @Test
+  public void testFailedStripe() throws Exception {
+    List<Transferable> transList = new ArrayList<>(1);
+    transList.add(new IntArray(new int[100], 0, 100));
+    Data data = new Data(DataType.PARTITION_LIST, "ctx", 1, transList,
+        DataUtil.getNumTransListBytes(transList), "op", 1);
+    data.encodeHead();
+    DataMap dataMap = new DataMap();
+    // The sender dies in the middle of the first stripe
+    byte[] bytes = stripe(1, 7L, 0, data.getHeadArray(), new byte[200]);
+    try {
+      receive(dataMap, Constant.STRIPED_SEND,
+          Arrays.copyOf(bytes, bytes.length - 50));
+      Assert.fail();
+    } catch (IOException e) {
+      // Expected
+    }
+    Assert.assertEquals(0, StripeReceiver.getNumTransfers());
+    Assert.assertEquals(0, dataMap.getQueuedBytes());
+  }
+
+  @Test
+  public void testExpiredTransfer() throws Exception {
+    DataMap dataMap = new DataMap();
+    // Stripes arrived before the head, from two senders
+    receive(dataMap, Constant.STRIPE, stripe(1, 7L, 100, null, new byte[100]));
+    receive(dataMap, Constant.STRIPE, stripe(2, 7L, 100, null, new byte[100]));
+    Assert.assertEquals(2, StripeReceiver.getNumTransfers());
+    StripeReceiver.expireTransfers();
+    Assert.assertEquals(2, StripeReceiver.getNumTransfers());
+
+    // The heads never come
+    StripeReceiver.setTransferTimeout(1L);
+    Thread.sleep(20L);
+    StripeReceiver.expireTransfers();
+    Assert.assertEquals(0, StripeReceiver.getNumTransfers());
+  }
+}
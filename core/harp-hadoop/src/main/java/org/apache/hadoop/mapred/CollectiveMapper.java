@@ -16,29 +16,54 @@
 
 package org.apache.hadoop.mapred;
 
+import edu.iu.harp.affinity.ThreadAffinity;
 import edu.iu.harp.client.Event;
 import edu.iu.harp.client.EventType;
 import edu.iu.harp.client.SyncClient;
 import edu.iu.harp.collective.AllgatherCollective;
+import edu.iu.harp.collective.AllreduceAlgorithm;
 import edu.iu.harp.collective.AllreduceCollective;
+import edu.iu.harp.collective.AsyncCollective;
+import edu.iu.harp.collective.BcastAlgorithm;
 import edu.iu.harp.collective.BcastCollective;
 import edu.iu.harp.collective.Communication;
+import edu.iu.harp.collective.HierarchicalCollective;
+import edu.iu.harp.collective.HierarchyLevel;
 import edu.iu.harp.collective.LocalGlobalSyncCollective;
 import edu.iu.harp.collective.ReduceCollective;
 import edu.iu.harp.collective.RegroupCollective;
+import edu.iu.harp.collective.SparseAllreduceCollective;
+import edu.iu.harp.io.Codec;
+import edu.iu.harp.io.Compression;
 import edu.iu.harp.io.ConnPool;
 import edu.iu.harp.io.Constant;
 import edu.iu.harp.io.DataMap;
 import edu.iu.harp.io.EventQueue;
+import edu.iu.harp.io.OperationRegistry;
+import edu.iu.harp.io.ReceivePool;
+import edu.iu.harp.keyval.Int2IntKVTable;
+import edu.iu.harp.keyval.Long2DoubleKVTable;
+import edu.iu.harp.keyval.SparseKVBlock;
+import edu.iu.harp.metrics.CommMetrics;
 import edu.iu.harp.partition.Partitioner;
 import edu.iu.harp.partition.Table;
 import edu.iu.harp.resource.ResourcePool;
 import edu.iu.harp.resource.Simple;
+import edu.iu.harp.resource.WritableRegistry;
+import edu.iu.harp.schdynamic.ComputeUtil;
+import edu.iu.harp.schdynamic.ThreadMode;
 import edu.iu.harp.server.Server;
+import edu.iu.harp.server.ServerEngine;
+import edu.iu.harp.util.Ack;
+import edu.iu.harp.util.Barrier;
+import edu.iu.harp.util.Join;
+import edu.iu.harp.util.PartitionCount;
+import edu.iu.harp.util.PartitionSet;
 import edu.iu.harp.worker.Workers;
 import it.unimi.dsi.fastutil.ints.Int2IntMap;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
@@ -51,6 +76,7 @@ import java.lang.management.GarbageCollectorMXBean;
 import java.lang.management.ManagementFactory;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 
@@ -74,12 +100,133 @@ public class CollectiveMapper<KEYIN, VALUEIN, KEYOUT, VALUEOUT>
   protected static final Log LOG =
     LogFactory.getLog(CollectiveMapper.class);
 
+  /** The engine used by the server, BLOCKING or NIO */
+  public static final String SERVER_ENGINE =
+    "mapreduce.map.collective.server.engine";
+  /** The number of I/O threads of the NIO engine */
+  public static final String SERVER_IO_THREADS =
+    "mapreduce.map.collective.server.io.threads";
+  /**
+   * The default allreduce algorithm, AUTO,
+   * RECURSIVE_HALVING, RING or HIERARCHICAL
+   */
+  public static final String ALLREDUCE_ALGORITHM =
+    "mapreduce.map.collective.allreduce.algorithm";
+  /**
+   * The default broadcast algorithm, AUTO, CHAIN,
+   * MST or PIPELINED_TREE
+   */
+  public static final String BCAST_ALGORITHM =
+    "mapreduce.map.collective.bcast.algorithm";
+  /**
+   * Send to workers on the same node through
+   * shared memory, false by default. Only
+   * supported on x86.
+   */
+  public static final String SHM_ENABLED =
+    "mapreduce.map.collective.shm.enabled";
+  /**
+   * The largest number of connections a large
+   * body is striped across, 1 by default
+   */
+  public static final String CONN_STRIPES =
+    "mapreduce.map.collective.conn.stripes";
+  /** The smallest size of a stripe */
+  public static final String CONN_STRIPE_SIZE =
+    "mapreduce.map.collective.conn.stripe.size";
+  /**
+   * Send the operation handles instead of the
+   * names in the heads of the data, true by
+   * default
+   */
+  public static final String OPERATION_HANDLES =
+    "mapreduce.map.collective.operation.handles";
+  /**
+   * The bytes of the received data queued for an
+   * operation before receivers wait, 0 (no limit)
+   * by default. Not supported by the NIO engine.
+   */
+  public static final String QUEUE_MAX_BYTES =
+    "mapreduce.map.collective.queue.max.bytes";
+  /** The longest time a receiver waits, in ms */
+  public static final String QUEUE_MAX_BLOCK_MS =
+    "mapreduce.map.collective.queue.max.block.ms";
+  /**
+   * Collect the communication metrics and expose
+   * them through JMX, false by default
+   */
+  public static final String METRICS_ENABLED =
+    "mapreduce.map.collective.metrics.enabled";
+  /**
+   * The period of logging the metrics in ms, 0
+   * (only at the end) by default
+   */
+  public static final String METRICS_DUMP_INTERVAL_MS =
+    "mapreduce.map.collective.metrics.dump.interval.ms";
+  /**
+   * Bind the threads of the StaticSchedulers to
+   * the CPUs of their NUMA nodes, false by default
+   */
+  public static final String AFFINITY_ENABLED =
+    "mapreduce.map.collective.affinity.enabled";
+  /**
+   * The CPUs used by the StaticSchedulers, in the
+   * format of taskset, e.g. "0-15,32-47", all by
+   * default
+   */
+  public static final String AFFINITY_CPUS =
+    "mapreduce.map.collective.affinity.cpus";
+  /**
+   * The threads of the schedulers, the server
+   * acceptors and the senders, PLATFORM (default)
+   * or VIRTUAL (JDK 21 or later)
+   */
+  public static final String THREAD_MODE =
+    "mapreduce.map.collective.thread.mode";
+  /**
+   * The threads decoding the data received and
+   * combining the partitions received, the
+   * number of the processors by default
+   */
+  public static final String RECEIVE_THREADS =
+    "mapreduce.map.collective.receive.threads";
+  /**
+   * The limit of the bytes of the free arrays
+   * cached by the ResourcePool
+   */
+  public static final String POOL_MAX_RETAINED_BYTES =
+    "mapreduce.map.collective.pool.max.retained.bytes";
+  /**
+   * The comma separated names of the Writable
+   * classes encoded with compact class IDs
+   */
+  public static final String WRITABLE_CLASSES =
+    "mapreduce.map.collective.writable.classes";
+  /**
+   * The default codec of the data bodies sent,
+   * NONE, LZ or SHUFFLE_LZ
+   */
+  public static final String COMPRESSION_CODEC =
+    "mapreduce.map.collective.compression.codec";
+  /** The smallest body size to compress */
+  public static final String COMPRESSION_THRESHOLD =
+    "mapreduce.map.collective.compression.threshold";
+  /**
+   * The number of threads running asynchronous
+   * collective operations
+   */
+  public static final String ASYNC_THREADS =
+    "mapreduce.map.collective.async.threads";
+
   private int workerID;
   private Workers workers;
   private EventQueue eventQueue;
   private DataMap dataMap;
   private Server server;
   private SyncClient client;
+  private AllreduceAlgorithm allreduceAlgorithm;
+  private BcastAlgorithm bcastAlgorithm;
+  private AsyncCollective asyncCollective;
 
   /*******************************************************
    * A Key-Value reader to read key-value inputs
@@ -292,14 +439,84 @@ public class CollectiveMapper<KEYIN, VALUEIN, KEYOUT, VALUEOUT>
     // Initialize receiver
     String host = workers.getSelfInfo().getNode();
     int port = workers.getSelfInfo().getPort();
+    Configuration conf = context.getConfiguration();
+    ConnPool.get().setUseShm(
+      conf.getBoolean(SHM_ENABLED, false));
+    ConnPool.get().setStriping(
+      conf.getInt(CONN_STRIPES, 1),
+      conf.getInt(CONN_STRIPE_SIZE,
+        ConnPool.DEFAULT_STRIPE_SIZE));
+    OperationRegistry.setEnabled(
+      conf.getBoolean(OPERATION_HANDLES, true));
+    dataMap.setQueueLimit(
+      conf.getLong(QUEUE_MAX_BYTES, 0L),
+      conf.getLong(QUEUE_MAX_BLOCK_MS,
+        DataMap.DEFAULT_MAX_BLOCK_TIME));
+    ResourcePool.get().setMaxRetainedBytes(
+      conf.getLong(POOL_MAX_RETAINED_BYTES,
+        ResourcePool.DEFAULT_MAX_RETAINED_BYTES));
+    if (conf.getBoolean(METRICS_ENABLED, false)) {
+      CommMetrics.get().setEnabled(true);
+      CommMetrics.get().registerMBean();
+      CommMetrics.get().startDump(
+        conf.getLong(METRICS_DUMP_INTERVAL_MS, 0L));
+    }
+    ComputeUtil.setThreadMode(ThreadMode.valueOf(
+      conf.get(THREAD_MODE,
+        ThreadMode.PLATFORM.name()).toUpperCase()));
+    ReceivePool.get().setNumThreads(
+      conf.getInt(RECEIVE_THREADS, 0));
+    ThreadAffinity.get().setCpus(
+      conf.get(AFFINITY_CPUS));
+    ThreadAffinity.get().setEnabled(
+      conf.getBoolean(AFFINITY_ENABLED, false));
+    // Every worker seals the same registry before
+    // the handshake, which then enables the IDs
+    WritableRegistry registry =
+      WritableRegistry.get();
+    registry.clear();
+    registry.register(Ack.class);
+    registry.register(Barrier.class);
+    registry.register(Join.class);
+    registry.register(PartitionCount.class);
+    registry.register(PartitionSet.class);
+    registry.register(SparseKVBlock.class);
+    for (String className : conf
+      .getTrimmedStrings(WRITABLE_CLASSES)) {
+      if (!registry.register(className)) {
+        throw new IOException(
+          "Cannot register class " + className);
+      }
+    }
+    registry.seal();
+    Compression.get().setDefaultCodec(
+      Codec.valueOf(conf.get(COMPRESSION_CODEC,
+        Codec.NONE.name()).toUpperCase()));
+    Compression.get().setThreshold(
+      conf.getInt(COMPRESSION_THRESHOLD,
+        Compression.DEFAULT_THRESHOLD));
     try {
+      ServerEngine engine =
+        ServerEngine.valueOf(conf.get(SERVER_ENGINE,
+          ServerEngine.BLOCKING.name()).toUpperCase());
       server = new Server(host, port, eventQueue,
-        dataMap, workers);
+        dataMap, workers, engine,
+        conf.getInt(SERVER_IO_THREADS,
+          Constant.NUM_THREADS));
+      allreduceAlgorithm = AllreduceAlgorithm
+        .valueOf(conf.get(ALLREDUCE_ALGORITHM,
+          AllreduceAlgorithm.RECURSIVE_HALVING
+            .name()).toUpperCase());
+      bcastAlgorithm = BcastAlgorithm
+        .valueOf(conf.get(BCAST_ALGORITHM,
+          BcastAlgorithm.AUTO.name()).toUpperCase());
     } catch (Exception e) {
       LOG.error("Cannot initialize receivers.",
         e);
       throw new IOException(e);
     }
+    asyncCollective = new AsyncCollective(dataMap,
+      conf.getInt(ASYNC_THREADS, 2));
     client.start();
     server.start();
     context.getProgress();
@@ -381,6 +598,22 @@ public class CollectiveMapper<KEYIN, VALUEIN, KEYOUT, VALUEOUT>
     return isSuccess;
   }
 
+  /**
+   * Set the codec of the data bodies sent in an
+   * operation. Bodies smaller than the
+   * compression threshold are always sent raw.
+   *
+   * @param operationName
+   *          the name of the operation
+   * @param codec
+   *          the codec, or null to use the default
+   */
+  public void setCompression(String operationName,
+    Codec codec) {
+    Compression.get().setCodec(operationName,
+      codec);
+  }
+
   /**
    * Broadcast the partitions of the table on a
    * worker to other workers.
@@ -413,6 +646,94 @@ public class CollectiveMapper<KEYIN, VALUEIN, KEYOUT, VALUEOUT>
     return isSucess;
   }
 
+  /**
+   * Broadcast the partitions of the table on a
+   * worker to other workers with the default
+   * algorithm.
+   *
+   * @param contextName
+   *          the name of the operation context
+   * @param operationName
+   *          the name of the operation
+   * @param table
+   *          the table used to hold the
+   *          partitions
+   * @param bcastWorkerID
+   *          the worker ID of broadcasting data
+   * @return a boolean tells if the operation
+   *         succeeds
+   */
+  public <P extends Simple> boolean broadcast(
+    String contextName, String operationName,
+    Table<P> table, int bcastWorkerID) {
+    return broadcast(contextName, operationName,
+      table, bcastWorkerID, bcastAlgorithm);
+  }
+
+  /**
+   * Broadcast the partitions of the table on a
+   * worker to other workers with the given
+   * algorithm.
+   *
+   * @param contextName
+   *          the name of the operation context
+   * @param operationName
+   *          the name of the operation
+   * @param table
+   *          the table used to hold the
+   *          partitions
+   * @param bcastWorkerID
+   *          the worker ID of broadcasting data
+   * @param algorithm
+   *          the broadcast algorithm
+   * @return a boolean tells if the operation
+   *         succeeds
+   */
+  public <P extends Simple> boolean broadcast(
+    String contextName, String operationName,
+    Table<P> table, int bcastWorkerID,
+    BcastAlgorithm algorithm) {
+    boolean isSucess =
+      BcastCollective.broadcast(contextName,
+        operationName, table, bcastWorkerID,
+        algorithm, dataMap, workers);
+    dataMap.cleanOperationData(contextName,
+      operationName);
+    return isSucess;
+  }
+
+  /**
+   * Broadcast the partitions of the table on a
+   * worker to other workers, first to one worker
+   * in each group, then within the groups.
+   *
+   * @param contextName
+   *          the name of the operation context
+   * @param operationName
+   *          the name of the operation
+   * @param table
+   *          the table used to hold the
+   *          partitions
+   * @param bcastWorkerID
+   *          the worker ID of broadcasting data
+   * @param level
+   *          group the workers by rack or by node
+   * @return a boolean tells if the operation
+   *         succeeds
+   */
+  public <P extends Simple> boolean broadcast(
+    String contextName, String operationName,
+    Table<P> table, int bcastWorkerID,
+    HierarchyLevel level) {
+    boolean isSucess =
+      HierarchicalCollective.broadcast(contextName,
+        operationName, table, bcastWorkerID,
+        level, dataMap, workers);
+    dataMap.cleanOperationData(contextName,
+      operationName);
+    return isSucess;
+  }
+
   /**
    * Reduce the partitions of the tables to one of
    * them.
@@ -463,6 +784,34 @@ public class CollectiveMapper<KEYIN, VALUEIN, KEYOUT, VALUEOUT>
     return isSuccess;
   }
 
+  /**
+   * Allgather partitions of the tables to all the
+   * local tables, first within the groups, then
+   * among the groups.
+   *
+   * @param contextName
+   *          the name of the operation context
+   * @param operationName
+   *          the name of the operation
+   * @param table
+   *          the table to hold the partitions
+   * @param level
+   *          group the workers by rack or by node
+   * @return a boolean tells if the operations
+   *         succeeds
+   */
+  public <P extends Simple> boolean allgather(
+    String contextName, String operationName,
+    Table<P> table, HierarchyLevel level) {
+    boolean isSuccess =
+      HierarchicalCollective.allgather(contextName,
+        operationName, table, level, dataMap,
+        workers);
+    dataMap.cleanOperationData(contextName,
+      operationName);
+    return isSuccess;
+  }
+
   /**
    * Allreduce partitions of the tables to all the
    * local tables.
@@ -479,9 +828,82 @@ public class CollectiveMapper<KEYIN, VALUEIN, KEYOUT, VALUEOUT>
   public <P extends Simple> boolean allreduce(
     String contextName, String operationName,
     Table<P> table) {
+    return allreduce(contextName, operationName,
+      table, allreduceAlgorithm);
+  }
+
+  /**
+   * Allreduce partitions of the tables to all the
+   * local tables with the given algorithm.
+   *
+   * @param contextName
+   *          the name of the operation context
+   * @param operationName
+   *          the name of the operation
+   * @param table
+   *          the table to hold the partitions
+   * @param algorithm
+   *          the allreduce algorithm
+   * @return a boolean tells if the operation
+   *         succeeds
+   */
+  public <P extends Simple> boolean allreduce(
+    String contextName, String operationName,
+    Table<P> table, AllreduceAlgorithm algorithm) {
     boolean isSuccess =
       AllreduceCollective.allreduce(contextName,
-        operationName, table, dataMap, workers);
+        operationName, table, dataMap, workers,
+        algorithm);
+    dataMap.cleanOperationData(contextName,
+      operationName);
+    return isSuccess;
+  }
+
+  /**
+   * Allreduce the key-value pairs of the tables,
+   * sending only the keys in the local tables.
+   *
+   * @param contextName
+   *          the name of the operation context
+   * @param operationName
+   *          the name of the operation
+   * @param table
+   *          the table with the updated keys
+   * @return a boolean tells if the operation
+   *         succeeds
+   */
+  public boolean sparseAllreduce(
+    String contextName, String operationName,
+    Long2DoubleKVTable table) {
+    boolean isSuccess =
+      SparseAllreduceCollective.allreduce(
+        contextName, operationName, table,
+        dataMap, workers);
+    dataMap.cleanOperationData(contextName,
+      operationName);
+    return isSuccess;
+  }
+
+  /**
+   * Allreduce the key-value pairs of the tables,
+   * sending only the keys in the local tables.
+   *
+   * @param contextName
+   *          the name of the operation context
+   * @param operationName
+   *          the name of the operation
+   * @param table
+   *          the table with the updated keys
+   * @return a boolean tells if the operation
+   *         succeeds
+   */
+  public boolean sparseAllreduce(
+    String contextName, String operationName,
+    Int2IntKVTable table) {
+    boolean isSuccess =
+      SparseAllreduceCollective.allreduce(
+        contextName, operationName, table,
+        dataMap, workers);
     dataMap.cleanOperationData(contextName,
       operationName);
     return isSuccess;
@@ -614,6 +1036,167 @@ public class CollectiveMapper<KEYIN, VALUEIN, KEYOUT, VALUEOUT>
     return isSuccess;
   }
 
+  /**
+   * Start broadcasting the partitions of the
+   * table on a worker to other workers. The table
+   * must not be used until the returned future
+   * completes.
+   *
+   * @param contextName
+   *          the name of the operation context
+   * @param operationName
+   *          the name of the operation
+   * @param table
+   *          the table used to hold the
+   *          partitions
+   * @param bcastWorkerID
+   *          the worker ID of broadcasting data
+   * @param useMSTBcast
+   *          if minimum-spanning tree algorithm
+   *          is used
+   * @return the future of the result of the
+   *         operation
+   */
+  public <P extends Simple> CompletableFuture<Boolean>
+    ibroadcast(String contextName,
+      String operationName, Table<P> table,
+      int bcastWorkerID, boolean useMSTBcast) {
+    return asyncCollective.submit(contextName,
+      operationName,
+      () -> BcastCollective.broadcast(contextName,
+        operationName, table, bcastWorkerID,
+        useMSTBcast, dataMap, workers));
+  }
+
+  /**
+   * Start allgathering partitions of the tables
+   * to all the local tables. The table must not
+   * be used until the returned future completes.
+   *
+   * @param contextName
+   *          the name of the operation context
+   * @param operationName
+   *          the name of the operation
+   * @param table
+   *          the table to hold the partitions
+   * @return the future of the result of the
+   *         operation
+   */
+  public <P extends Simple> CompletableFuture<Boolean>
+    iallgather(String contextName,
+      String operationName, Table<P> table) {
+    return asyncCollective.submit(contextName,
+      operationName,
+      () -> AllgatherCollective.allgather(
+        contextName, operationName, table,
+        dataMap, workers));
+  }
+
+  /**
+   * Start allreducing partitions of the tables to
+   * all the local tables. The table must not be
+   * used until the returned future completes.
+   *
+   * @param contextName
+   *          the name of the operation context
+   * @param operationName
+   *          the name of the operation
+   * @param table
+   *          the table to hold the partitions
+   * @return the future of the result of the
+   *         operation
+   */
+  public <P extends Simple> CompletableFuture<Boolean>
+    iallreduce(String contextName,
+      String operationName, Table<P> table) {
+    return iallreduce(contextName, operationName,
+      table, allreduceAlgorithm);
+  }
+
+  /**
+   * Start allreducing partitions of the tables to
+   * all the local tables with the given
+   * algorithm. The table must not be used until
+   * the returned future completes.
+   *
+   * @param contextName
+   *          the name of the operation context
+   * @param operationName
+   *          the name of the operation
+   * @param table
+   *          the table to hold the partitions
+   * @param algorithm
+   *          the allreduce algorithm
+   * @return the future of the result of the
+   *         operation
+   */
+  public <P extends Simple> CompletableFuture<Boolean>
+    iallreduce(String contextName,
+      String operationName, Table<P> table,
+      AllreduceAlgorithm algorithm) {
+    return asyncCollective.submit(contextName,
+      operationName,
+      () -> AllreduceCollective.allreduce(
+        contextName, operationName, table,
+        dataMap, workers, algorithm));
+  }
+
+  /**
+   * Start regrouping the partitions of the tables
+   * based on a partitioner. The table must not be
+   * used until the returned future completes.
+   *
+   * @param contextName
+   *          the name of the operation context
+   * @param operationName
+   *          the name of the operation
+   * @param table
+   *          the table to hold the partitions
+   * @param partitioner
+   *          the partitioner
+   * @return the future of the result of the
+   *         operation
+   */
+  public <P extends Simple, PT extends Partitioner>
+    CompletableFuture<Boolean> iregroup(
+      String contextName, String operationName,
+      Table<P> table, PT partitioner) {
+    return asyncCollective.submit(contextName,
+      operationName,
+      () -> RegroupCollective.regroupCombine(
+        contextName, operationName, table,
+        partitioner, dataMap, workers));
+  }
+
+  /**
+   * Start rotating the partitions of the global
+   * table from worker to worker. The table must
+   * not be used until the returned future
+   * completes.
+   *
+   * @param contextName
+   *          the name of the operation context
+   * @param operationName
+   *          the name of operation
+   * @param globalTable
+   *          the global table
+   * @param rotateMap
+   *          the map from worker to worker,
+   *          defines how to rotate the data
+   * @return the future of the result of the
+   *         operation
+   */
+  public <P extends Simple> CompletableFuture<Boolean>
+    irotate(String contextName,
+      String operationName, Table<P> globalTable,
+      Int2IntMap rotateMap) {
+    return asyncCollective.submit(contextName,
+      operationName,
+      () -> LocalGlobalSyncCollective.rotate(
+        contextName, operationName, globalTable,
+        rotateMap, dataMap, workers));
+  }
+
   /**
    * Get an event from the event queue.
    *
@@ -775,11 +1358,16 @@ public class CollectiveMapper<KEYIN, VALUEIN, KEYOUT, VALUEOUT>
       mapCollective(reader, context);
       ResourcePool.get().log();
       ConnPool.get().log();
+      Compression.get().log();
+      dataMap.log();
+      CommMetrics.get().log();
     } catch (Throwable t) {
       LOG.error("Fail to do map-collective.", t);
       throw new IOException(t);
     } finally {
       cleanup(context);
+      CommMetrics.get().stopDump();
+      asyncCollective.shutdown();
       ConnPool.get().clean();
       client.stop();
       server.stop();
@@ -299,8 +299,7 @@ public class KMeansCollectiveMapper extends
     boolean isSuccess = false;
     try {
       isSuccess = this.broadcast("main",
-        "broadcast-centroids", table, bcastID,
-        false);
+        "broadcast-centroids", table, bcastID);
     } catch (Exception e) {
       LOG.error("Fail to bcast.", e);
     }